@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+/**
+ * Comparison functions that impose a <i>total ordering</i> on the intervals
+ * that make up each dimension of an axis-aligned box. Each dimension is
+ * compared as by an {@link IntervalComparator}, including the treatment of
+ * degenerate intervals. BoxComparators are <i>not necessarily consistent
+ * with equal</i>.
+ * <p>
+ * In addition to exact comparisons, a BoxComparator provides approximate
+ * coordinates as doubles. These are used only to estimate areas and centers
+ * when deciding how to arrange boxes within a {@link BoxMap}, and never
+ * affect the results of queries.
+ *
+ * @author Philip DeCamp
+ * @see IntervalComparator
+ */
+public interface BoxComparator<T> {
+
+    /**
+     * @return number of dimensions of each box.
+     */
+    int dims();
+
+    /**
+     * Compare the minimum values of two boxes along one dimension.
+     *
+     * @param a   First object to compare.
+     * @param b   Second object to compare.
+     * @param dim Dimension to compare.
+     * @return negative mValue iff min of <tt>a</tt> is less than min of <tt>b</tt>;
+     *         0 iff equivalent; positive mValue iff min of <tt>a</tt> is greater
+     *         than min of <tt>b</tt>
+     */
+    int compareMins( T a, T b, int dim );
+
+    /**
+     * Compare the maximum values of two boxes along one dimension.
+     *
+     * @param a   First object to compare.
+     * @param b   Second object to compare.
+     * @param dim Dimension to compare.
+     * @return negative mValue iff max of <tt>a</tt> is less than max of <tt>b</tt>;
+     *         0 iff equivalent; positive mValue iff max of <tt>a</tt> is greater
+     *         than max of <tt>b</tt>
+     */
+    int compareMaxes( T a, T b, int dim );
+
+    /**
+     * Compare the minimum mValue of one box to the maximum mValue of another
+     * along one dimension.
+     *
+     * @param a   First object to compare.
+     * @param b   Second object to compare.
+     * @param dim Dimension to compare.
+     * @return negative mValue iff min of <tt>a</tt> is smaller than max of
+     *         <tt>b</tt>; 0 iff equivalent; positive mValue iff min of <tt>a</tt> is
+     *         greater than max of <tt>b</tt>
+     */
+    int compareMinToMax( T a, T b, int dim );
+
+    /**
+     * @return approximate minimum coordinate of <tt>box</tt> along <tt>dim</tt>.
+     */
+    double min( T box, int dim );
+
+    /**
+     * @return approximate maximum coordinate of <tt>box</tt> along <tt>dim</tt>.
+     */
+    double max( T box, int dim );
+
+}
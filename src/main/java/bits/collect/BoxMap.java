@@ -0,0 +1,1421 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+
+/**
+ * An R-tree that maps axis-aligned boxes to values. BoxMap extends the
+ * interval relations of IntervalMap to any number of dimensions: given a
+ * test box, you can find all intersecting boxes in the collection, all
+ * boxes that are supersets of the test box, or all boxes that are subsets of
+ * it. Multiple overlapping or equivalent boxes may be stored. Null keys are
+ * not supported.
+ * <p>
+ * Each node of the tree bounds its subtree by keeping, for each dimension,
+ * a reference to the descendant box with the lowest min and the descendant
+ * box with the greatest max. This is the same technique IntervalMap uses
+ * with its max stops. Because bounds are actual keys rather than computed
+ * boxes, all pruning is performed with the exact comparisons of the
+ * {@link BoxComparator}, and degenerate boxes are handled the same way as
+ * degenerate intervals in IntervalMap.
+ * <p>
+ * Boxes inserted individually are placed by least enlargement and nodes are
+ * split along the axis and position that minimize overlap. For better
+ * query performance, large sets of boxes should be bulk loaded, either by
+ * calling {@link #putAll} on an empty map or by calling {@link #pack()},
+ * both of which arrange the tree with Sort-Tile-Recursive packing.
+ * <p>
+ * Unlike IntervalMap, BoxMap imposes no order on its entries. Iterators over
+ * views do not support <tt>remove()</tt>.
+ *
+ * @param <K> The mKey type that defines the boxes.
+ * @param <V> The mValue type associated with each box.
+ * @author Philip DeCamp
+ * @see IntervalMap
+ */
+@SuppressWarnings( "unchecked" )
+public class BoxMap<K, V> implements Map<K, V> {
+
+    private static final int MAX_FILL = 16;
+    private static final int MIN_FILL = 6;
+
+    private final BoxComparator<? super K> mComp;
+    private final int                      mDims;
+
+    private Node mRoot = null;
+    private int  mSize = 0;
+
+    private transient int mModCount = 0;
+
+
+    public BoxMap( BoxComparator<? super K> comp ) {
+        mComp = comp;
+        mDims = comp.dims();
+    }
+
+
+    public BoxMap( BoxComparator<? super K> comp, Map<? extends K, ? extends V> map ) {
+        this( comp );
+        putAll( map );
+    }
+
+
+    /**
+     * @param key A box
+     * @return true iff this map contains a box, <code>g</code>, such that
+     *         <code>g</code> is equivalent to <code>key</code> AND
+     *         <code>key.equals( g )</code>.
+     */
+    @Override
+    public boolean containsKey( Object key ) {
+        Iterator<K> iter = equivKeySet( (K)key ).iterator();
+        while( iter.hasNext() ) {
+            if( key.equals( iter.next() ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key A box
+     * @return true iff this map contains a box equivalent to <i>key</i> in every dimension.
+     */
+    public boolean containsEquivKey( Object key ) {
+        return firstEntry( new EquivQuery( (K)key ) ) != null;
+    }
+
+    /**
+     * @param key A box
+     * @return true iff this map contains a box that intersects <i>key</i>.
+     */
+    public boolean containsIntersectionKey( Object key ) {
+        return firstEntry( new IntersectionQuery( (K)key ) ) != null;
+    }
+
+    /**
+     * @param key A box
+     * @return true iff this map contains a box that is a superset of <i>key</i>.
+     */
+    public boolean containsSupersetKey( Object key ) {
+        return firstEntry( new SupersetQuery( (K)key ) ) != null;
+    }
+
+    /**
+     * @param key A box
+     * @return true iff this map contains a box that is a subset of <i>key</i>.
+     */
+    public boolean containsSubsetKey( Object key ) {
+        return firstEntry( new SubsetQuery( (K)key ) ) != null;
+    }
+
+
+    @Override
+    public boolean containsValue( Object value ) {
+        Iterator<V> iter = values().iterator();
+        while( iter.hasNext() ) {
+            V v = iter.next();
+            if( value == v || value != null && value.equals( v ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key A box
+     * @return mValue mapped to a box equivalent to <tt>key</tt>.
+     */
+    @Override
+    public V get( Object key ) {
+        Entry e = firstEntry( new EquivQuery( (K)key ) );
+        return e == null ? null : e.mValue;
+    }
+
+    /**
+     * @param key A box
+     * @return mValue mapped to a box intersecting <tt>key</tt>.
+     */
+    public V getIntersection( Object key ) {
+        Entry e = firstEntry( new IntersectionQuery( (K)key ) );
+        return e == null ? null : e.mValue;
+    }
+
+    /**
+     * @param key A box
+     * @return mValue mapped to a box that is a superset of <tt>key</tt>.
+     */
+    public V getSuperset( Object key ) {
+        Entry e = firstEntry( new SupersetQuery( (K)key ) );
+        return e == null ? null : e.mValue;
+    }
+
+    /**
+     * @param key A box
+     * @return mValue mapped to a box that is a subset of <tt>key</tt>.
+     */
+    public V getSubset( Object key ) {
+        Entry e = firstEntry( new SubsetQuery( (K)key ) );
+        return e == null ? null : e.mValue;
+    }
+
+    /**
+     * @param key   A box
+     * @param value Arbitrary mValue
+     * @return null (Existing mappings are never overwritten by calls to <i>put()</i>)
+     */
+    @Override
+    public V put( K key, V value ) {
+        if( key == null ) {
+            throw new NullPointerException();
+        }
+
+        insertItem( new Entry( key, value ), 0 );
+        mSize++;
+        mModCount++;
+        return null;
+    }
+
+    /**
+     * Adds all mappings in <tt>map</tt>. If this map is empty, the tree is
+     * bulk loaded with Sort-Tile-Recursive packing, which is much faster
+     * than adding boxes individually and produces a better tree.
+     */
+    @Override
+    public void putAll( Map<? extends K, ? extends V> map ) {
+        if( map == null || map.isEmpty() ) {
+            return;
+        }
+
+        if( mRoot != null ) {
+            for( Map.Entry<? extends K, ? extends V> e: map.entrySet() ) {
+                put( e.getKey(), e.getValue() );
+            }
+            return;
+        }
+
+        Object[] items = new Object[map.size()];
+        int n = 0;
+        for( Map.Entry<? extends K, ? extends V> e: map.entrySet() ) {
+            if( e.getKey() == null ) {
+                throw new NullPointerException();
+            }
+            items[n++] = new Entry( e.getKey(), e.getValue() );
+        }
+
+        build( items, n );
+    }
+
+    /**
+     * Rebuilds the tree with Sort-Tile-Recursive packing. Useful after a large
+     * number of individual insertions and removals.
+     */
+    public void pack() {
+        if( mRoot == null ) {
+            return;
+        }
+
+        Object[] items = new Object[mSize];
+        List<Entry> entries = new ArrayList<Entry>( mSize );
+        collectEntries( mRoot, entries );
+        entries.toArray( items );
+        build( items, items.length );
+    }
+
+    /**
+     * Removes the mapping for a box that is equivalent to <tt>key</tt>.
+     *
+     * @param key A box
+     * @return the mValue removed by this call
+     */
+    @Override
+    public V remove( Object key ) {
+        return removeFirst( new EquivQuery( (K)key ) );
+    }
+
+    /**
+     * Removes the mapping for a box that intersects <tt>key</tt>.
+     *
+     * @param key A box
+     * @return the mValue removed by this call
+     */
+    public V removeIntersection( Object key ) {
+        return removeFirst( new IntersectionQuery( (K)key ) );
+    }
+
+    /**
+     * Removes the mapping for a box that is a superset of <tt>key</tt>.
+     *
+     * @param key A box
+     * @return the mValue removed by this call
+     */
+    public V removeSuperset( Object key ) {
+        return removeFirst( new SupersetQuery( (K)key ) );
+    }
+
+    /**
+     * Removes the mapping for a box that is a subset of <tt>key</tt>.
+     *
+     * @param key A box
+     * @return the mValue removed by this call
+     */
+    public V removeSubset( Object key ) {
+        return removeFirst( new SubsetQuery( (K)key ) );
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+
+    @Override
+    public void clear() {
+        mModCount++;
+        mRoot = null;
+        mSize = 0;
+    }
+
+
+    @Override
+    public Set<K> keySet() {
+        return new QuerySet<K>( new AllQuery(), VIEW_KEYS );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of the boxes in this map that are equivalent to <tt>key</tt>.
+     */
+    public Set<K> equivKeySet( K key ) {
+        return new QuerySet<K>( new EquivQuery( key ), VIEW_KEYS );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of the boxes in this map that intersect <tt>key</tt>.
+     */
+    public Set<K> intersectionKeySet( K key ) {
+        return new QuerySet<K>( new IntersectionQuery( key ), VIEW_KEYS );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of the boxes in this map that are supersets of <tt>key</tt>.
+     */
+    public Set<K> supersetKeySet( K key ) {
+        return new QuerySet<K>( new SupersetQuery( key ), VIEW_KEYS );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of the boxes in this map that are subsets of <tt>key</tt>.
+     */
+    public Set<K> subsetKeySet( K key ) {
+        return new QuerySet<K>( new SubsetQuery( key ), VIEW_KEYS );
+    }
+
+
+    @Override
+    public Collection<V> values() {
+        return new QueryValues( new AllQuery() );
+    }
+
+    /**
+     * @param key A box
+     * @return a collection view of values mapped to boxes equivalent to <tt>key</tt>.
+     */
+    public Collection<V> equivValues( K key ) {
+        return new QueryValues( new EquivQuery( key ) );
+    }
+
+    /**
+     * @param key A box
+     * @return a collection view of values mapped to boxes that intersect <tt>key</tt>.
+     */
+    public Collection<V> intersectionValues( K key ) {
+        return new QueryValues( new IntersectionQuery( key ) );
+    }
+
+    /**
+     * @param key A box
+     * @return a collection view of values mapped to boxes that are supersets of <tt>key</tt>.
+     */
+    public Collection<V> supersetValues( K key ) {
+        return new QueryValues( new SupersetQuery( key ) );
+    }
+
+    /**
+     * @param key A box
+     * @return a collection view of values mapped to boxes that are subsets of <tt>key</tt>.
+     */
+    public Collection<V> subsetValues( K key ) {
+        return new QueryValues( new SubsetQuery( key ) );
+    }
+
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new QuerySet<Map.Entry<K, V>>( new AllQuery(), VIEW_ENTRIES );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of mappings with boxes equivalent to <tt>key</tt>.
+     */
+    public Set<Map.Entry<K, V>> equivEntrySet( K key ) {
+        return new QuerySet<Map.Entry<K, V>>( new EquivQuery( key ), VIEW_ENTRIES );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of mappings with boxes that intersect <tt>key</tt>.
+     */
+    public Set<Map.Entry<K, V>> intersectionEntrySet( K key ) {
+        return new QuerySet<Map.Entry<K, V>>( new IntersectionQuery( key ), VIEW_ENTRIES );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of mappings with boxes that are supersets of <tt>key</tt>.
+     */
+    public Set<Map.Entry<K, V>> supersetEntrySet( K key ) {
+        return new QuerySet<Map.Entry<K, V>>( new SupersetQuery( key ), VIEW_ENTRIES );
+    }
+
+    /**
+     * @param key A box
+     * @return a set view of mappings with boxes that are subsets of <tt>key</tt>.
+     */
+    public Set<Map.Entry<K, V>> subsetEntrySet( K key ) {
+        return new QuerySet<Map.Entry<K, V>>( new SubsetQuery( key ), VIEW_ENTRIES );
+    }
+
+
+
+    /* ************************************************************
+     * Package private debugging
+     * ***********************************************************
+     */
+
+    /**
+     * @return true iff all leaves are at the same depth, all non-root nodes
+     *         are within fill limits, parent links are correct, and every
+     *         node's bounds are exactly the bounds of its children.
+     */
+    boolean validate() {
+        if( mRoot == null ) {
+            return mSize == 0;
+        }
+
+        int[] count = { 0 };
+        return mRoot.mParent == null && validate( mRoot, count ) && count[0] == mSize;
+    }
+
+
+    private boolean validate( Node node, int[] count ) {
+        if( node != mRoot && (node.mCount < MIN_FILL || node.mCount > MAX_FILL) ) {
+            return false;
+        }
+
+        for( int i = 0; i < node.mCount; i++ ) {
+            Object item = node.mItems[i];
+            if( node.mLevel == 0 ) {
+                if( !(item instanceof BoxMap.Entry) ) {
+                    return false;
+                }
+                count[0]++;
+            } else {
+                Node child = (Node)item;
+                if( child.mParent != node || child.mLevel != node.mLevel - 1 || !validate( child, count ) ) {
+                    return false;
+                }
+            }
+        }
+
+        for( int d = 0; d < mDims; d++ ) {
+            K lo = lo( node.mItems[0], d );
+            K hi = hi( node.mItems[0], d );
+            for( int i = 1; i < node.mCount; i++ ) {
+                K a = lo( node.mItems[i], d );
+                if( mComp.compareMins( a, lo, d ) < 0 ) {
+                    lo = a;
+                }
+                K b = hi( node.mItems[i], d );
+                if( mComp.compareMaxes( b, hi, d ) > 0 ) {
+                    hi = b;
+                }
+            }
+
+            if( mComp.compareMins( lo, (K)node.mLo[d], d ) != 0 ||
+                mComp.compareMaxes( hi, (K)node.mHi[d], d ) != 0 )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+
+    /* ************************************************************
+     * Box relations
+     * ***********************************************************
+     */
+
+    private K lo( Object item, int dim ) {
+        return item instanceof BoxMap.Node ? (K)((Node)item).mLo[dim] : ((Entry)item).mKey;
+    }
+
+
+    private K hi( Object item, int dim ) {
+        return item instanceof BoxMap.Node ? (K)((Node)item).mHi[dim] : ((Entry)item).mKey;
+    }
+
+
+    private boolean equiv( K a, K b ) {
+        for( int d = 0; d < mDims; d++ ) {
+            if( mComp.compareMins( a, b, d ) != 0 || mComp.compareMaxes( a, b, d ) != 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true iff box <tt>a</tt> intersects box <tt>b</tt>.
+     */
+    private boolean intersects( K a, K b ) {
+        for( int d = 0; d < mDims; d++ ) {
+            if( mComp.compareMinToMax( a, b, d ) >= 0 || mComp.compareMinToMax( b, a, d ) >= 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true iff box <tt>a</tt> is a superset of box <tt>b</tt>.
+     */
+    private boolean contains( K a, K b ) {
+        for( int d = 0; d < mDims; d++ ) {
+            if( mComp.compareMins( b, a, d ) < 0 || mComp.compareMaxes( b, a, d ) > 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true iff bounds of <tt>node</tt> intersect <tt>key</tt>.
+     */
+    private boolean nodeIntersects( Node node, K key ) {
+        for( int d = 0; d < mDims; d++ ) {
+            if( mComp.compareMinToMax( key, (K)node.mHi[d], d ) >= 0 ||
+                mComp.compareMinToMax( (K)node.mLo[d], key, d ) >= 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true iff bounds of <tt>node</tt> contain <tt>key</tt>.
+     */
+    private boolean nodeContains( Node node, K key ) {
+        for( int d = 0; d < mDims; d++ ) {
+            if( mComp.compareMins( key, (K)node.mLo[d], d ) < 0 ||
+                mComp.compareMaxes( key, (K)node.mHi[d], d ) > 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+
+    /* ************************************************************
+     * Tree operations
+     * ***********************************************************
+     */
+
+    /**
+     * Inserts an entry (level 0) or a node (level &gt; 0) into a node at the
+     * given level, splitting nodes as needed.
+     */
+    private void insertItem( Object item, int level ) {
+        if( mRoot == null ) {
+            mRoot = new Node( 0 );
+        }
+
+        Node node = chooseNode( item, level );
+        node.add( item );
+
+        Node sibling = null;
+        while( true ) {
+            if( sibling != null ) {
+                node.add( sibling );
+            }
+
+            if( node.mCount > MAX_FILL ) {
+                sibling = splitNode( node );
+            } else {
+                sibling = null;
+                // Bounds of node still cover any split children, so only need
+                // to extend them by the new item.
+                extendBounds( node, item );
+            }
+
+            Node parent = node.mParent;
+            if( parent == null ) {
+                if( sibling != null ) {
+                    Node root = new Node( node.mLevel + 1 );
+                    root.add( node );
+                    root.add( sibling );
+                    computeBounds( root );
+                    mRoot = root;
+                }
+                return;
+            }
+
+            node = parent;
+        }
+    }
+
+    /**
+     * Descends from root to a node at <tt>level</tt>, choosing children by
+     * least enlargement of area, then least enlargement of margin, then least area.
+     */
+    private Node chooseNode( Object item, int level ) {
+        Node node = mRoot;
+        final int dims = mDims;
+        final double[] box = approxBounds( item );
+
+        while( node.mLevel > level ) {
+            Node best = null;
+            double bestGrowth = 0.0;
+            double bestMarginGrowth = 0.0;
+            double bestArea = 0.0;
+
+            for( int i = 0; i < node.mCount; i++ ) {
+                Node child = (Node)node.mItems[i];
+                double area = 1.0;
+                double grownArea = 1.0;
+                double margin = 0.0;
+                double grownMargin = 0.0;
+
+                for( int d = 0; d < dims; d++ ) {
+                    double min = mComp.min( (K)child.mLo[d], d );
+                    double max = mComp.max( (K)child.mHi[d], d );
+                    double ext = max - min;
+                    double grownExt = Math.max( max, box[dims + d] ) - Math.min( min, box[d] );
+                    area *= ext;
+                    grownArea *= grownExt;
+                    margin += ext;
+                    grownMargin += grownExt;
+                }
+
+                double growth = grownArea - area;
+                double marginGrowth = grownMargin - margin;
+
+                if( best == null ||
+                    growth < bestGrowth ||
+                    growth == bestGrowth && (marginGrowth < bestMarginGrowth ||
+                                             marginGrowth == bestMarginGrowth && area < bestArea) )
+                {
+                    best = child;
+                    bestGrowth = growth;
+                    bestMarginGrowth = marginGrowth;
+                    bestArea = area;
+                }
+            }
+
+            node = best;
+        }
+
+        return node;
+    }
+
+    /**
+     * Splits an overfull node. The split axis is the one that minimizes the
+     * total margin of candidate distributions, and the split position on that
+     * axis minimizes overlap, then total area.
+     *
+     * @return new sibling node containing upper part of split.
+     */
+    private Node splitNode( Node node ) {
+        final int n = node.mCount;
+        final Object[] items = Arrays.copyOf( node.mItems, n );
+
+        int bestDim = 0;
+        double bestMargin = Double.POSITIVE_INFINITY;
+
+        for( int d = 0; d < mDims; d++ ) {
+            sortByCenter( items, 0, n, d );
+            double margin = 0.0;
+            for( int k = MIN_FILL; k <= n - MIN_FILL; k++ ) {
+                margin += margin( approxBounds( items, 0, k ) ) + margin( approxBounds( items, k, n ) );
+            }
+            if( margin < bestMargin ) {
+                bestMargin = margin;
+                bestDim = d;
+            }
+        }
+
+        sortByCenter( items, 0, n, bestDim );
+
+        int bestSplit = MIN_FILL;
+        double bestOverlap = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+
+        for( int k = MIN_FILL; k <= n - MIN_FILL; k++ ) {
+            double[] a = approxBounds( items, 0, k );
+            double[] b = approxBounds( items, k, n );
+            double overlap = overlap( a, b );
+            double area = area( a ) + area( b );
+
+            if( overlap < bestOverlap || overlap == bestOverlap && area < bestArea ) {
+                bestSplit = k;
+                bestOverlap = overlap;
+                bestArea = area;
+            }
+        }
+
+        Arrays.fill( node.mItems, null );
+        node.mCount = 0;
+        for( int i = 0; i < bestSplit; i++ ) {
+            node.add( items[i] );
+        }
+
+        Node sibling = new Node( node.mLevel );
+        for( int i = bestSplit; i < n; i++ ) {
+            sibling.add( items[i] );
+        }
+
+        computeBounds( node );
+        computeBounds( sibling );
+        return sibling;
+    }
+
+
+    private Entry firstEntry( Query query ) {
+        QueryIterator<Entry> iter = new QueryIterator<Entry>( query, VIEW_ENTRIES );
+        return iter.hasNext() ? iter.next() : null;
+    }
+
+
+    private V removeFirst( Query query ) {
+        QueryIterator<Entry> iter = new QueryIterator<Entry>( query, VIEW_ENTRIES );
+        if( !iter.hasNext() ) {
+            return null;
+        }
+
+        Entry e = iter.next();
+        removeEntry( iter.leaf(), e );
+        return e.mValue;
+    }
+
+    /**
+     * Removes entry from leaf. Underfull nodes are dissolved and their
+     * entries reinserted.
+     */
+    private void removeEntry( Node leaf, Entry entry ) {
+        mSize--;
+        mModCount++;
+        leaf.remove( entry );
+
+        List<Entry> orphans = null;
+        Node node = leaf;
+
+        while( node.mParent != null ) {
+            Node parent = node.mParent;
+            if( node.mCount < MIN_FILL ) {
+                parent.remove( node );
+                if( orphans == null ) {
+                    orphans = new ArrayList<Entry>();
+                }
+                collectEntries( node, orphans );
+            } else {
+                computeBounds( node );
+            }
+            node = parent;
+        }
+
+        // Shrink tree.
+        while( mRoot.mLevel > 0 && mRoot.mCount == 1 ) {
+            mRoot = (Node)mRoot.mItems[0];
+            mRoot.mParent = null;
+        }
+
+        if( mRoot.mCount == 0 ) {
+            mRoot = null;
+        } else {
+            computeBounds( mRoot );
+        }
+
+        if( orphans != null ) {
+            for( Entry e: orphans ) {
+                insertItem( e, 0 );
+            }
+        }
+    }
+
+
+    private void collectEntries( Node node, List<Entry> out ) {
+        for( int i = 0; i < node.mCount; i++ ) {
+            if( node.mLevel == 0 ) {
+                out.add( (Entry)node.mItems[i] );
+            } else {
+                collectEntries( (Node)node.mItems[i], out );
+            }
+        }
+    }
+
+
+    private void extendBounds( Node node, Object item ) {
+        if( node.mLo[0] == null ) {
+            computeBounds( node );
+            return;
+        }
+
+        for( int d = 0; d < mDims; d++ ) {
+            K lo = lo( item, d );
+            if( mComp.compareMins( lo, (K)node.mLo[d], d ) < 0 ) {
+                node.mLo[d] = lo;
+            }
+            K hi = hi( item, d );
+            if( mComp.compareMaxes( hi, (K)node.mHi[d], d ) > 0 ) {
+                node.mHi[d] = hi;
+            }
+        }
+    }
+
+
+    private void computeBounds( Node node ) {
+        if( node.mCount == 0 ) {
+            Arrays.fill( node.mLo, null );
+            Arrays.fill( node.mHi, null );
+            return;
+        }
+
+        for( int d = 0; d < mDims; d++ ) {
+            K lo = lo( node.mItems[0], d );
+            K hi = hi( node.mItems[0], d );
+            for( int i = 1; i < node.mCount; i++ ) {
+                K a = lo( node.mItems[i], d );
+                if( mComp.compareMins( a, lo, d ) < 0 ) {
+                    lo = a;
+                }
+                K b = hi( node.mItems[i], d );
+                if( mComp.compareMaxes( b, hi, d ) > 0 ) {
+                    hi = b;
+                }
+            }
+            node.mLo[d] = lo;
+            node.mHi[d] = hi;
+        }
+    }
+
+
+
+    /* ************************************************************
+     * Sort-Tile-Recursive packing
+     * ***********************************************************
+     */
+
+    private void build( Object[] items, int n ) {
+        mModCount++;
+        mSize = n;
+        if( n == 0 ) {
+            mRoot = null;
+            return;
+        }
+
+        int level = 0;
+        while( true ) {
+            List<Node> nodes = new ArrayList<Node>( (n + MAX_FILL - 1) / MAX_FILL );
+            tile( items, 0, n, 0, level, nodes );
+
+            if( nodes.size() == 1 ) {
+                mRoot = nodes.get( 0 );
+                mRoot.mParent = null;
+                return;
+            }
+
+            items = nodes.toArray();
+            n = items.length;
+            level++;
+        }
+    }
+
+    /**
+     * Sorts items along one dimension, divides them into slabs, and
+     * recursively tiles each slab along the next dimension. On the last
+     * dimension, each slab is divided evenly into nodes.
+     */
+    private void tile( Object[] items, int from, int to, int dim, int level, List<Node> out ) {
+        final int n = to - from;
+        final int groups = (n + MAX_FILL - 1) / MAX_FILL;
+
+        if( groups > 1 ) {
+            sortByCenter( items, from, to, dim );
+        }
+
+        if( dim == mDims - 1 || groups <= 1 ) {
+            for( int g = 0; g < groups; g++ ) {
+                int a = from + (int)((long)n * g / groups);
+                int b = from + (int)((long)n * (g + 1) / groups);
+                Node node = new Node( level );
+                for( int i = a; i < b; i++ ) {
+                    node.add( items[i] );
+                }
+                computeBounds( node );
+                out.add( node );
+            }
+            return;
+        }
+
+        final int slabs = (int)Math.ceil( Math.pow( groups, 1.0 / (mDims - dim) ) - 1e-9 );
+        for( int s = 0; s < slabs; s++ ) {
+            int a = from + (int)((long)n * s / slabs);
+            int b = from + (int)((long)n * (s + 1) / slabs);
+            tile( items, a, b, dim + 1, level, out );
+        }
+    }
+
+
+    private void sortByCenter( Object[] items, int from, int to, final int dim ) {
+        Arrays.sort( items, from, to, new Comparator<Object>() {
+            @Override
+            public int compare( Object a, Object b ) {
+                double ca = mComp.min( lo( a, dim ), dim ) + mComp.max( hi( a, dim ), dim );
+                double cb = mComp.min( lo( b, dim ), dim ) + mComp.max( hi( b, dim ), dim );
+                return Double.compare( ca, cb );
+            }
+        } );
+    }
+
+
+    private double[] approxBounds( Object item ) {
+        double[] ret = new double[mDims * 2];
+        for( int d = 0; d < mDims; d++ ) {
+            ret[d] = mComp.min( lo( item, d ), d );
+            ret[mDims + d] = mComp.max( hi( item, d ), d );
+        }
+        return ret;
+    }
+
+    /**
+     * @return approximate bounds of items as <tt>{ min0, min1, ..., max0, max1, ... }</tt>
+     */
+    private double[] approxBounds( Object[] items, int from, int to ) {
+        double[] ret = approxBounds( items[from] );
+        for( int i = from + 1; i < to; i++ ) {
+            for( int d = 0; d < mDims; d++ ) {
+                ret[d] = Math.min( ret[d], mComp.min( lo( items[i], d ), d ) );
+                ret[mDims + d] = Math.max( ret[mDims + d], mComp.max( hi( items[i], d ), d ) );
+            }
+        }
+        return ret;
+    }
+
+
+    private double area( double[] box ) {
+        double ret = 1.0;
+        for( int d = 0; d < mDims; d++ ) {
+            ret *= box[mDims + d] - box[d];
+        }
+        return ret;
+    }
+
+
+    private double margin( double[] box ) {
+        double ret = 0.0;
+        for( int d = 0; d < mDims; d++ ) {
+            ret += box[mDims + d] - box[d];
+        }
+        return ret;
+    }
+
+
+    private double overlap( double[] a, double[] b ) {
+        double ret = 1.0;
+        for( int d = 0; d < mDims; d++ ) {
+            double ext = Math.min( a[mDims + d], b[mDims + d] ) - Math.max( a[d], b[d] );
+            if( ext <= 0.0 ) {
+                return 0.0;
+            }
+            ret *= ext;
+        }
+        return ret;
+    }
+
+
+
+    //************************************************************
+    // Node classes
+    //************************************************************
+
+    private final class Node {
+        final int      mLevel;
+        final Object[] mItems = new Object[MAX_FILL + 1];
+        int            mCount = 0;
+        Node           mParent;
+
+        // Bounds: for each dimension, the descendant mKey with the lowest
+        // min and the descendant mKey with the greatest max.
+        final Object[] mLo;
+        final Object[] mHi;
+
+        Node( int level ) {
+            mLevel = level;
+            mLo = new Object[mDims];
+            mHi = new Object[mDims];
+        }
+
+
+        void add( Object item ) {
+            mItems[mCount++] = item;
+            if( item instanceof BoxMap.Node ) {
+                ((Node)item).mParent = this;
+            }
+        }
+
+
+        void remove( Object item ) {
+            for( int i = 0; i < mCount; i++ ) {
+                if( mItems[i] == item ) {
+                    mItems[i] = mItems[--mCount];
+                    mItems[mCount] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+
+    private final class Entry implements Map.Entry<K, V> {
+        final K mKey;
+        V       mValue;
+
+        Entry( K key, V value ) {
+            mKey = key;
+            mValue = value;
+        }
+
+
+        @Override
+        public K getKey() {
+            return mKey;
+        }
+
+        @Override
+        public V getValue() {
+            return mValue;
+        }
+
+        @Override
+        public V setValue( V value ) {
+            V ret = mValue;
+            mValue = value;
+            return ret;
+        }
+
+        @Override
+        public int hashCode() {
+            int code = mKey.hashCode();
+            if( mValue != null ) {
+                code ^= mValue.hashCode();
+            }
+            return code;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if( !(obj instanceof Map.Entry) ) {
+                return false;
+            }
+
+            Object key = ((Map.Entry<K, V>)obj).getKey();
+            if( mKey == key || mKey.equals( key ) ) {
+                Object value = ((Map.Entry<K, V>)obj).getValue();
+                return mValue == value || mValue != null && mValue.equals( value );
+            }
+
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return String.format( "%s = %s", mKey, mValue );
+        }
+    }
+
+
+
+    /* ************************************************************
+     * Queries
+     * ************************************************************/
+
+    private abstract class Query {
+        /**
+         * @return false if no box within bounds of <tt>node</tt> can match.
+         */
+        abstract boolean mayContain( Node node );
+
+        abstract boolean matches( K key );
+    }
+
+
+    private final class AllQuery extends Query {
+        @Override
+        boolean mayContain( Node node ) {
+            return true;
+        }
+
+        @Override
+        boolean matches( K key ) {
+            return true;
+        }
+    }
+
+
+    private final class EquivQuery extends Query {
+        private final K mKey;
+
+        EquivQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return nodeContains( node, mKey );
+        }
+
+        @Override
+        boolean matches( K key ) {
+            return equiv( key, mKey );
+        }
+    }
+
+
+    private final class IntersectionQuery extends Query {
+        private final K mKey;
+
+        IntersectionQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return nodeIntersects( node, mKey );
+        }
+
+        @Override
+        boolean matches( K key ) {
+            return intersects( key, mKey );
+        }
+    }
+
+
+    private final class SupersetQuery extends Query {
+        private final K mKey;
+
+        SupersetQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return nodeContains( node, mKey );
+        }
+
+        @Override
+        boolean matches( K key ) {
+            return contains( key, mKey );
+        }
+    }
+
+
+    private final class SubsetQuery extends Query {
+        private final K mKey;
+
+        SubsetQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return nodeIntersects( node, mKey );
+        }
+
+        @Override
+        boolean matches( K key ) {
+            return contains( mKey, key );
+        }
+    }
+
+
+
+    /* ************************************************************
+     * Iterators and Views
+     * ************************************************************/
+
+    private static final int VIEW_KEYS    = 0;
+    private static final int VIEW_VALUES  = 1;
+    private static final int VIEW_ENTRIES = 2;
+
+
+    private static int iterSize( Iterator<?> iter ) {
+        int size = 0;
+        while( iter.hasNext() ) {
+            iter.next();
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Depth-first traversal of all entries matching a query, pruning nodes
+     * whose bounds cannot contain a match.
+     */
+    private final class QueryIterator<E> implements Iterator<E> {
+        private final Query    mQuery;
+        private final int      mViewType;
+        private final int      mIterModCount = mModCount;
+        private final Object[] mNodes;
+        private final int[]    mPos;
+
+        private int   mDepth = -1;
+        private Entry mNext;
+        private Node  mNextLeaf;
+        private Node  mLeaf;
+
+        QueryIterator( Query query, int viewType ) {
+            mQuery = query;
+            mViewType = viewType;
+
+            Node root = mRoot;
+            int height = root == null ? 0 : root.mLevel + 1;
+            mNodes = new Object[height];
+            mPos = new int[height];
+
+            if( root != null && query.mayContain( root ) ) {
+                mNodes[++mDepth] = root;
+            }
+
+            mNext = advance();
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public E next() {
+            if( mNext == null ) {
+                throw new NoSuchElementException();
+            }
+            if( mModCount != mIterModCount ) {
+                throw new ConcurrentModificationException();
+            }
+
+            Entry e = mNext;
+            mLeaf = mNextLeaf;
+            mNext = advance();
+
+            switch( mViewType ) {
+            case VIEW_KEYS:
+                return (E)e.mKey;
+            case VIEW_VALUES:
+                return (E)e.mValue;
+            default:
+                return (E)e;
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @return leaf containing the entry most recently returned by next().
+         */
+        Node leaf() {
+            return mLeaf;
+        }
+
+
+        private Entry advance() {
+            while( mDepth >= 0 ) {
+                Node node = (Node)mNodes[mDepth];
+                int pos = mPos[mDepth];
+
+                if( pos >= node.mCount ) {
+                    mNodes[mDepth] = null;
+                    mPos[mDepth--] = 0;
+                    continue;
+                }
+
+                mPos[mDepth] = pos + 1;
+                Object item = node.mItems[pos];
+
+                if( node.mLevel == 0 ) {
+                    Entry e = (Entry)item;
+                    if( mQuery.matches( e.mKey ) ) {
+                        mNextLeaf = node;
+                        return e;
+                    }
+                } else if( mQuery.mayContain( (Node)item ) ) {
+                    mNodes[++mDepth] = item;
+                    mPos[mDepth] = 0;
+                }
+            }
+
+            return null;
+        }
+    }
+
+
+    private final class QuerySet<E> extends AbstractCollection<E> implements Set<E> {
+        private final Query mQuery;
+        private final int   mViewType;
+
+        QuerySet( Query query, int viewType ) {
+            mQuery = query;
+            mViewType = viewType;
+        }
+
+
+        @Override
+        public boolean contains( Object obj ) {
+            return find( obj ) != null;
+        }
+
+        @Override
+        public boolean remove( Object obj ) {
+            QueryIterator<Entry> iter = find( obj );
+            if( iter == null ) {
+                return false;
+            }
+
+            Entry e = iter.next();
+            removeEntry( iter.leaf(), e );
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return mQuery instanceof BoxMap.AllQuery ? mSize : iterSize( iterator() );
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public void clear() {
+            if( mQuery instanceof BoxMap.AllQuery ) {
+                BoxMap.this.clear();
+            } else {
+                super.clear();
+            }
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new QueryIterator<E>( mQuery, mViewType );
+        }
+
+        /**
+         * @return iterator positioned so that next() returns the entry
+         *         matching <tt>obj</tt>, or null if not found.
+         */
+        private QueryIterator<Entry> find( Object obj ) {
+            if( obj == null ) {
+                return null;
+            }
+
+            final K key;
+            final Object value;
+            if( mViewType == VIEW_KEYS ) {
+                key = (K)obj;
+                value = null;
+            } else if( obj instanceof Map.Entry ) {
+                key = ((Map.Entry<K, V>)obj).getKey();
+                value = ((Map.Entry<K, V>)obj).getValue();
+            } else {
+                return null;
+            }
+
+            if( key == null || !mQuery.matches( key ) ) {
+                return null;
+            }
+
+            EquivQuery equiv = new EquivQuery( key );
+            QueryIterator<Entry> iter = new QueryIterator<Entry>( equiv, VIEW_ENTRIES );
+            while( iter.hasNext() ) {
+                Entry e = iter.mNext;
+                if( mViewType == VIEW_KEYS || value == e.mValue || value != null && value.equals( e.mValue ) ) {
+                    return iter;
+                }
+                iter.next();
+            }
+
+            return null;
+        }
+    }
+
+
+    private final class QueryValues extends AbstractCollection<V> {
+        private final Query mQuery;
+
+        QueryValues( Query query ) {
+            mQuery = query;
+        }
+
+
+        @Override
+        public int size() {
+            return mQuery instanceof BoxMap.AllQuery ? mSize : iterSize( iterator() );
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public void clear() {
+            if( mQuery instanceof BoxMap.AllQuery ) {
+                BoxMap.this.clear();
+            } else {
+                super.clear();
+            }
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new QueryIterator<V>( mQuery, VIEW_VALUES );
+        }
+    }
+
+}
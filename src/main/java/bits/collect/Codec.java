@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * Writes objects to and reads objects from a binary stream. Used by
+ * collections that support persistence so that elements need not implement
+ * Serializable.
+ *
+ * @param <T> The type of object handled by this codec.
+ * @author Philip DeCamp
+ */
+public interface Codec<T> {
+
+    /**
+     * @param item Object to write. May be null if the codec supports it.
+     * @param out  Destination stream.
+     */
+    void write( T item, DataOutput out ) throws IOException;
+
+    /**
+     * @param in Source stream.
+     * @return the next object decoded from <tt>in</tt>.
+     */
+    T read( DataInput in ) throws IOException;
+
+}
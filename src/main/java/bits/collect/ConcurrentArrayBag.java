@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Array-backed variant of {@link ConcurrentBag}. A collection that may be
+ * accessed by multiple threads while being modified, and that is optimized for
+ * frequent iteration and infrequent modification, such as a list of listeners.
+ * <p>
+ * ConcurrentArrayBag is a "bag" in that it holds some collection of elements
+ * in no defined order and may contain a given element an arbitrary number
+ * of times. Items may be null.
+ * <p>
+ * ConcurrentArrayBag works by holding a single reference to an immutable
+ * array of elements. Each modification copies the array and installs the copy
+ * with a compare-and-set, retrying if another thread modified the bag first.
+ * As with ConcurrentBag, all iterators are valid indefinitely and modifications
+ * never generate ConcurrentModificationExceptions. Unlike ConcurrentBag,
+ * iteration reads elements sequentially from a single array rather than
+ * following a linked list, but every modification takes linear time.
+ * <p>
+ * The current array can be accessed directly by calling the <code>array()</code>
+ * method, which provides the cheapest possible iteration. The returned array
+ * must not be modified.
+ *
+ * @param <T> Element type.
+ * @author Philip DeCamp
+ * @see ConcurrentBag
+ */
+public class ConcurrentArrayBag<T> extends AbstractCollection<T> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<ConcurrentArrayBag, Object[]> ITEMS =
+            AtomicReferenceFieldUpdater.newUpdater( ConcurrentArrayBag.class, Object[].class, "mItems" );
+
+
+    protected volatile Object[] mItems = EMPTY;
+
+
+    public ConcurrentArrayBag() {}
+
+
+    public ConcurrentArrayBag( Collection<? extends T> coll ) {
+        addAll( coll );
+    }
+
+
+    /**
+     * Returns a direct link to the immutable, internal item array. The array
+     * holds exactly <code>size()</code> elements and MUST NOT be modified.
+     *
+     * @return internal item array. Never <code>null</code>.
+     */
+    public Object[] array() {
+        return mItems;
+    }
+
+    @Override
+    public int size() {
+        return mItems.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mItems.length == 0;
+    }
+
+    /**
+     * Adds element to bag. Elements may be added multiple times.
+     * <code>null</code> may be added.
+     * @param item Item to add
+     * @return true as insertion is always successful.
+     */
+    @Override
+    public boolean add( T item ) {
+        while( true ) {
+            Object[] items = mItems;
+            Object[] next  = Arrays.copyOf( items, items.length + 1 );
+            next[items.length] = item;
+            if( casItems( items, next ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds all elements of <code>coll</code> with a single copy of the array.
+     */
+    @Override
+    public boolean addAll( Collection<? extends T> coll ) {
+        Object[] add = coll.toArray();
+        if( add.length == 0 ) {
+            return false;
+        }
+
+        while( true ) {
+            Object[] items = mItems;
+            Object[] next  = Arrays.copyOf( items, items.length + add.length );
+            System.arraycopy( add, 0, next, items.length, add.length );
+            if( casItems( items, next ) ) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        mItems = EMPTY;
+    }
+
+    @Override
+    public boolean remove( Object item ) {
+        while( true ) {
+            Object[] items = mItems;
+            int idx = indexOf( items, item, false );
+            if( idx < 0 ) {
+                return false;
+            }
+            if( casItems( items, removeIndex( items, idx ) ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all elements contained in <code>coll</code>, including duplicates,
+     * with a single copy of the array.
+     */
+    @Override
+    public boolean removeAll( final Collection<?> coll ) {
+        return removeMatching( new ConcurrentBag.Filter<T>() {
+            public boolean matches( T item ) {
+                return coll.contains( item );
+            }
+        } );
+    }
+
+    /**
+     * Removes all elements not contained in <code>coll</code> with a single
+     * copy of the array.
+     */
+    @Override
+    public boolean retainAll( final Collection<?> coll ) {
+        return removeMatching( new ConcurrentBag.Filter<T>() {
+            public boolean matches( T item ) {
+                return !coll.contains( item );
+            }
+        } );
+    }
+
+    /**
+     * Removes all elements selected by <code>filter</code> in a single atomic
+     * update. If another thread modifies the bag during the call, the operation
+     * is retried, so <code>filter</code> may be applied to an element more
+     * than once.
+     *
+     * @param filter Selects items to remove.
+     * @return true iff any elements were removed.
+     */
+    @SuppressWarnings( "unchecked" )
+    public boolean removeMatching( ConcurrentBag.Filter<? super T> filter ) {
+        while( true ) {
+            final Object[] items = mItems;
+            Object[] next = null;
+            int count = 0;
+
+            for( int i = 0; i < items.length; i++ ) {
+                Object item = items[i];
+                if( filter.matches( (T)item ) ) {
+                    if( next == null ) {
+                        next = new Object[items.length - 1];
+                        System.arraycopy( items, 0, next, 0, i );
+                        count = i;
+                    }
+                } else if( next != null ) {
+                    next[count++] = item;
+                }
+            }
+
+            if( next == null ) {
+                return false;
+            }
+            if( casItems( items, count == next.length ? next : Arrays.copyOf( next, count ) ) ) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains( Object item ) {
+        return indexOf( mItems, item, false ) >= 0;
+    }
+
+    /**
+     * Visits every element of the current array without allocating an
+     * iterator. Modifications made during the traversal, including those made
+     * by <code>visitor</code>, are not reflected.
+     *
+     * @param visitor receives each element. Note that elements may be null.
+     */
+    @SuppressWarnings( "unchecked" )
+    public void visit( Visitor<? super T> visitor ) {
+        for( Object item : mItems ) {
+            visitor.visit( (T)item );
+        }
+    }
+
+    /**
+     * Returns an iterator over the contents of the bag at the time this method
+     * is called. This iterator will always be valid and will never throw
+     * ConcurrentModificationExceptions.
+     * <p>
+     * The iterator supports the <code>remove()</code> operation, which removes
+     * one occurrence of the previous element, compared by identity, from the
+     * current contents of the bag. If no such element remains, the call will
+     * not modify the collection in any way.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iter( mItems );
+    }
+
+    @Override
+    public Object[] toArray() {
+        return mItems.clone();
+    }
+
+
+
+    private static int indexOf( Object[] items, Object item, boolean identity ) {
+        for( int i = 0; i < items.length; i++ ) {
+            Object x = items[i];
+            if( item == x || !identity && item != null && item.equals( x ) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Object[] removeIndex( Object[] items, int idx ) {
+        if( items.length == 1 ) {
+            return EMPTY;
+        }
+        Object[] ret = new Object[items.length - 1];
+        System.arraycopy( items, 0, ret, 0, idx );
+        System.arraycopy( items, idx + 1, ret, idx, ret.length - idx );
+        return ret;
+    }
+
+    private boolean casItems( Object[] expect, Object[] update ) {
+        return ITEMS.compareAndSet( this, expect, update.length == 0 ? EMPTY : update );
+    }
+
+
+
+    private final class Iter implements Iterator<T> {
+
+        private final Object[] mArr;
+        private int mPos = 0;
+        private boolean mCanRemove = false;
+
+
+        Iter( Object[] arr ) {
+            mArr = arr;
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            return mPos < mArr.length;
+        }
+
+        @Override
+        @SuppressWarnings( "unchecked" )
+        public T next() {
+            if( mPos >= mArr.length ) {
+                throw new NoSuchElementException();
+            }
+            mCanRemove = true;
+            return (T)mArr[mPos++];
+        }
+
+        @Override
+        public void remove() {
+            if( !mCanRemove ) {
+                throw new NoSuchElementException();
+            }
+            mCanRemove = false;
+            Object item = mArr[mPos - 1];
+
+            while( true ) {
+                Object[] items = mItems;
+                int idx = indexOf( items, item, true );
+                if( idx < 0 || casItems( items, removeIndex( items, idx ) ) ) {
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -6,6 +6,7 @@
 package bits.collect;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * A collection that may be accessed by multiple threads 
@@ -21,14 +22,18 @@ import java.util.*;
  * ConcurrentBag works by holding a single reference, "head", to
  * an immutable linked list. This allows all iterators provided by 
  * ConcurrentBag to be valid indefinitely. Modifications to ConcurrentBag are 
- * synchronized and guarantee transaction isolation. Modifications do not generate 
- * ConcurrentModificationExceptions. 
+ * lock-free: each builds a new list from a snapshot of head and installs it 
+ * with a compare-and-set, retrying if another thread modified the bag first.
+ * Modifications are atomic and do not generate ConcurrentModificationExceptions. 
  * <p>
- * Adding elements to ConcurrentBag occurs in constant time.
+ * Adding elements to ConcurrentBag occurs in constant time, as does size().
  * Removing elements occurs in linear time, but notably may cause large portions of the linked list to be rebuilt. 
  * On average, the removal of a random element of the collection will cause half of all nodes to be reallocated. 
  * Removal of the tail node requires recreating the entire structure, 
  * while removal of the head node requires no object allocations.
+ * When removing several elements, <code>removeAll()</code>, <code>retainAll()</code> 
+ * and <code>removeMatching()</code> rebuild the list at most once per attempt, 
+ * rather than once per removed element.
  * <p>
  * The head node can be accessed directly by calling the <code>head()</code> method,
  * and each subsequent node wit node.mNext. This provides more efficient
@@ -41,8 +46,25 @@ import java.util.*;
  * @author Philip DeCamp
  */
 public class ConcurrentBag<T> extends AbstractCollection<T> {
-    
-    protected Node<T> mHead = null;
+
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicReferenceFieldUpdater<ConcurrentBag, Node> HEAD =
+            AtomicReferenceFieldUpdater.newUpdater( ConcurrentBag.class, Node.class, "mHead" );
+
+
+    /**
+     * Selects elements for removal by <code>removeMatching()</code>.
+     */
+    public interface Filter<T> {
+        /**
+         * @param item Element of bag. May be null.
+         * @return true to remove item.
+         */
+        boolean matches( T item );
+    }
+
+
+    protected volatile Node<T> mHead = null;
     
     
     public ConcurrentBag() {}
@@ -67,13 +89,7 @@ public class ConcurrentBag<T> extends AbstractCollection<T> {
     @Override
     public int size() {
         Node<T> n = mHead;
-        int ret = 0;
-        while( n != null ) {
-            ret++;
-            n = n.mNext;
-        }
-        
-        return ret;
+        return n == null ? 0 : n.mSize;
     }
 
     @Override
@@ -88,31 +104,121 @@ public class ConcurrentBag<T> extends AbstractCollection<T> {
      * @return true as insertation is always succesful.
      */
     @Override
-    public synchronized boolean add( T item ) {
-        mHead = new Node<T>( item, mHead );
-        return true;
+    public boolean add( T item ) {
+        while( true ) {
+            Node<T> head = mHead;
+            if( casHead( head, new Node<T>( item, head ) ) ) {
+                return true;
+            }
+        }
     }
 
     @Override
-    public synchronized void clear() {
+    public void clear() {
         mHead = null;
     }
 
     @Override
-    public synchronized boolean remove( Object item ) {
-        Node<T> node = mHead;
-        
-        // Loop until out of nodes or node contains item.
-        while( node != null ) {
-            if( item == node.mItem || item != null && item.equals( node.mItem ) ) {
-                removeNode( node );
-                return true;
+    public boolean remove( Object item ) {
+        while( true ) {
+            Node<T> head = mHead;
+            Node<T> node = head;
+            
+            // Loop until out of nodes or node contains item.
+            while( node != null ) {
+                if( item == node.mItem || item != null && item.equals( node.mItem ) ) {
+                    break;
+                }
+                node = node.mNext;
             }
             
-            node = node.mNext;
+            if( node == null ) {
+                return false;
+            }
+            if( casHead( head, rebuildWithout( head, node ) ) ) {
+                return true;
+            }
         }
+    }
+
+    /**
+     * Removes all elements contained in <code>coll</code>, including duplicates,
+     * in a single rebuild of the list.
+     */
+    @Override
+    public boolean removeAll( final Collection<?> coll ) {
+        return removeMatching( new Filter<T>() {
+            public boolean matches( T item ) {
+                return coll.contains( item );
+            }
+        } );
+    }
+
+    /**
+     * Removes all elements not contained in <code>coll</code> in a single 
+     * rebuild of the list.
+     */
+    @Override
+    public boolean retainAll( final Collection<?> coll ) {
+        return removeMatching( new Filter<T>() {
+            public boolean matches( T item ) {
+                return !coll.contains( item );
+            }
+        } );
+    }
+
+    /**
+     * Removes all elements selected by <code>filter</code>. All elements are 
+     * removed in a single atomic update that rebuilds only the portion of the 
+     * list preceding the last removed element. If another thread modifies the 
+     * bag during the call, the operation is retried, so <code>filter</code> may be 
+     * applied to an element more than once.
+     * 
+     * @param filter Selects items to remove.
+     * @return true iff any elements were removed.
+     */
+    @SuppressWarnings( "unchecked" )
+    public boolean removeMatching( Filter<? super T> filter ) {
+        Object[] kept = null;
         
-        return false;
+        while( true ) {
+            final Node<T> head = mHead;
+            if( head == null ) {
+                return false;
+            }
+            
+            if( kept == null || kept.length < head.mSize ) {
+                kept = new Object[head.mSize];
+            }
+            
+            // Items kept before the last removed node must be copied.
+            // Everything after it is shared with the current list.
+            Node<T> lastRemoved = null;
+            int keptCount = 0;
+            int copyCount = 0;
+            
+            for( Node<T> node = head; node != null; node = node.mNext ) {
+                if( filter.matches( node.mItem ) ) {
+                    lastRemoved = node;
+                    copyCount = keptCount;
+                } else {
+                    kept[keptCount++] = node.mItem;
+                }
+            }
+            
+            if( lastRemoved == null ) {
+                return false;
+            }
+            
+            Node<T> tail = lastRemoved.mNext;
+            for( int i = copyCount - 1; i >= 0; i-- ) {
+                tail = new Node<T>( (T)kept[i], tail );
+            }
+
+            if( casHead( head, tail ) ) {
+                return true;
+            }
+        }
     }
 
     @Override
@@ -153,33 +259,57 @@ public class ConcurrentBag<T> extends AbstractCollection<T> {
     public static final class Node<T> {
         public final T mItem;
         public final Node<T> mNext;
+        /** Number of nodes in list starting with this node. */
+        public final int mSize;
         
         public Node( T listener, Node<T> next ) {
             mItem = listener;
             mNext     = next;
+            mSize     = next == null ? 1 : next.mSize + 1;
         }
     }
 
 
     
-    private synchronized void removeNode( Node<T> node ) {
-        Node<T> head = mHead;
+    private void removeNode( Node<T> node ) {
+        while( true ) {
+            Node<T> head = mHead;
+            Node<T> newHead = rebuildWithout( head, node );
+            
+            // Node not found. No change to mHead is made.
+            if( newHead == head || casHead( head, newHead ) ) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return list equivalent to <code>head</code> with <code>node</code> removed, 
+     *         or <code>head</code> if list does not contain <code>node</code>.
+     */
+    private static <T> Node<T> rebuildWithout( Node<T> head, Node<T> node ) {
+        Node<T> h = head;
         Node<T> tail = node.mNext;
         
-        while( head != null ) {
-            if( head == node ) {
+        while( h != null ) {
+            if( h == node ) {
                 // Found the node to remove.
-                mHead = tail;
-                return;
+                return tail;
             }
             // Add mNext element of head to tail list.
-            tail = new Node<T>( head.mItem, tail );
-            head = head.mNext;
+            tail = new Node<T>( h.mItem, tail );
+            h = h.mNext;
         }
         
-        // At this point, head is null, and the condition
-        // head == node was never true, meaning that node
-        // was not found. No change to mHead is made.
+        // At this point, h is null, and the condition
+        // h == node was never true, meaning that node
+        // was not found.
+        return head;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private boolean casHead( Node<T> expect, Node<T> update ) {
+        return HEAD.compareAndSet( this, expect, update );
     }
     
         
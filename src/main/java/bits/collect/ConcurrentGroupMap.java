@@ -0,0 +1,862 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe counterpart to {@link GroupMap}. Like GroupMap,
+ * ConcurrentGroupMap provides three indices over its elements: <br/>
+ * 1. An index over all elements in the collection. <br/>
+ * 2. An index over all elements within a given "group" in the collection. <br/>
+ * 3. A hash table that provides a mapping between a key and each element. <br/>
+ * <p>
+ * The ordered indices are concurrent skip lists, and the key table is a
+ * ConcurrentHashMap. All reads, including iteration over any view, are
+ * lock-free. Iterators are weakly consistent: they never throw
+ * ConcurrentModificationExceptions, and they may or may not reflect
+ * modifications made after they were created.
+ * <p>
+ * Writes are guarded by a set of locks striped on the hash of the group, so
+ * threads that modify different groups rarely contend. A write that moves a
+ * key from one group to another holds the locks of both groups. A write holds
+ * its locks until every index has been updated, so modifications to a single
+ * group are atomic with respect to one another, although readers may observe
+ * the indices in an intermediate state.
+ * <p>
+ * Ordering and equivalence rules are the same as GroupMap, with one additional
+ * requirement: the group comparison must be consistent with
+ * <tt>equals()</tt>. That is, two distinct groups may not compare as equal.
+ * <p>
+ * Groups may be null. Keys and values may not be null.
+ *
+ * @param <G> Group identifiers type
+ * @param <K> Key type
+ * @param <V> Value type
+ *
+ * @author Philip DeCamp
+ * @see GroupMap
+ */
+@SuppressWarnings( "unchecked" )
+public class ConcurrentGroupMap<G, K, V> extends AbstractMap<K, V> {
+
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    static final int MAXIMUM_LOCKS             = 1 << 16;
+
+    private static final Object NULL_GROUP = new Object();
+    private static final Object LOW_GROUP  = new Object();
+    private static final Object HIGH_GROUP = new Object();
+
+    private static final int MODE_ENTRY = 0;
+    private static final int MODE_KEY   = 1;
+    private static final int MODE_VALUE = 2;
+
+    private final Comparator<? super G> mGroupComparator;
+    private final Comparator<? super V> mValueComparator;
+
+    private final ReentrantLock[] mLocks;
+
+    private final ConcurrentHashMap<K, Node<K, V>>     mKeys;
+    private final ConcurrentHashMap<Object, GroupNode> mGroupTable;
+    private final ConcurrentSkipListSet<Node<K, V>>    mAll;
+
+    private final Comparator<Node<K, V>> mGroupOrder;
+
+    private transient Set<Map.Entry<K, V>> mEntrySet = null;
+    private transient Set<G>               mGroups   = null;
+
+
+    public ConcurrentGroupMap() {
+        this( null, null, DEFAULT_CONCURRENCY_LEVEL );
+    }
+
+
+    public ConcurrentGroupMap( Comparator<? super G> groupComparator, Comparator<? super V> valueComparator ) {
+        this( groupComparator, valueComparator, DEFAULT_CONCURRENCY_LEVEL );
+    }
+
+    /**
+     * @param groupComparator  Group ordering, or null for natural ordering.
+     * @param valueComparator  Value ordering, or null for natural ordering.
+     * @param concurrencyLevel Estimated number of concurrently writing threads.
+     *                         Determines the number of group locks.
+     */
+    public ConcurrentGroupMap( Comparator<? super G> groupComparator,
+                               Comparator<? super V> valueComparator,
+                               int concurrencyLevel )
+    {
+        if( concurrencyLevel <= 0 ) {
+            throw new IllegalArgumentException( "Illegal concurrency level: " + concurrencyLevel );
+        }
+
+        mGroupComparator = groupComparator;
+        mValueComparator = valueComparator;
+
+        int lockCount = 1;
+        while( lockCount < concurrencyLevel && lockCount < MAXIMUM_LOCKS ) {
+            lockCount <<= 1;
+        }
+
+        mLocks = new ReentrantLock[lockCount];
+        for( int i = 0; i < lockCount; i++ ) {
+            mLocks[i] = new ReentrantLock();
+        }
+
+        mKeys = new ConcurrentHashMap<K, Node<K, V>>( 16, 0.75f, lockCount );
+        mGroupTable = new ConcurrentHashMap<Object, GroupNode>( 16, 0.75f, lockCount );
+        mGroupOrder = new GroupOrder();
+        mAll = new ConcurrentSkipListSet<Node<K, V>>( new AllOrder() );
+    }
+
+
+    /**
+     * Gets a value mapped to the provided key.
+     *
+     * @param key Key to lookup.
+     * @return value associated with key, or null if not present.
+     */
+    @Override
+    public V get( Object key ) {
+        if( key == null ) { return null; }
+
+        Node<K, V> node = mKeys.get( key );
+        return node == null ? null : node.mValue;
+    }
+
+    /**
+     * Equivalent to calling {@code put(null, key, value) }
+     *
+     * @param key   Unique key
+     * @param value Arbitrary value associated with key
+     * @return previous value mapped to the provided key
+     */
+    @Override
+    public V put( K key, V value ) {
+        return put( null, key, value );
+    }
+
+    /**
+     * Places value into a group within the collection and associates the value
+     * with the provided key. If the provided key is already mapped to a value
+     * in the collection, that value will be removed from the collection
+     * entirely and returned after the new value has been inserted.
+     * <p>
+     * Importantly, if a comparison-equivalent value is already present in the
+     * group, it will be removed silently, even if it uses a different key.
+     *
+     * @param group Group into which value will be placed.
+     * @param key   Key to associate with value.
+     * @param value Value to place into group/collection.
+     * @return value previously associated with the provided key
+     */
+    public V put( G group, K key, V value ) {
+        if( key == null || value == null ) { throw new NullPointerException(); }
+
+        final Node<K, V> node = new Node<K, V>( group, key, value );
+        final int        lock = lockIndex( group );
+
+        while( true ) {
+            Node<K, V> old     = mKeys.get( key );
+            int        oldLock = old == null ? lock : lockIndex( old.mGroup );
+
+            lock( lock, oldLock );
+            try {
+                if( old == null ) {
+                    if( mKeys.putIfAbsent( key, node ) != null ) { continue; }
+                } else {
+                    if( !mKeys.replace( key, old, node ) ) { continue; }
+                    unlinkNode( old );
+                }
+
+                GroupNode groupNode = getGroupNodeInstance( group );
+                Node<K, V> equiv = groupNode.mSet.ceiling( node );
+
+                if( equiv != null && mGroupOrder.compare( equiv, node ) == 0 ) {
+                    mKeys.remove( equiv.mKey, equiv );
+                    unlinkNode( equiv );
+                }
+
+                groupNode.mSet.add( node );
+                groupNode.mSize++;
+                mAll.add( node );
+
+                if( old == null ) { return null; }
+
+                disposeGroupIfEmpty( old.mGroup );
+                return old.mValue;
+
+            } finally {
+                unlock( lock, oldLock );
+            }
+        }
+    }
+
+    @Override
+    public void putAll( Map<? extends K, ? extends V> t ) {
+        putAll( null, t );
+    }
+
+
+    public void putAll( G group, Map<? extends K, ? extends V> values ) {
+        for( Map.Entry<? extends K, ? extends V> entry : values.entrySet() ) {
+            put( group, entry.getKey(), entry.getValue() );
+        }
+    }
+
+    @Override
+    public V remove( Object key ) {
+        if( key == null ) { return null; }
+
+        while( true ) {
+            Node<K, V> old = mKeys.get( key );
+            if( old == null ) { return null; }
+
+            if( removeNode( old ) ) { return old.mValue; }
+        }
+    }
+
+    /**
+     * Removes all elements in the collection. Removes all groups.
+     */
+    @Override
+    public void clear() {
+        for( ReentrantLock lock : mLocks ) {
+            lock.lock();
+        }
+
+        try {
+            mKeys.clear();
+            mAll.clear();
+            mGroupTable.clear();
+        } finally {
+            for( ReentrantLock lock : mLocks ) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes all elements that belong to a given group.
+     *
+     * @param group Group to remove from collection.
+     */
+    public void clear( G group ) {
+        final ReentrantLock lock = mLocks[lockIndex( group )];
+        lock.lock();
+
+        try {
+            GroupNode groupNode = mGroupTable.remove( maskGroup( group ) );
+            if( groupNode == null ) { return; }
+
+            for( Node<K, V> node : groupNode.mSet ) {
+                mKeys.remove( node.mKey, node );
+                mAll.remove( node );
+            }
+
+            groupNode.mSize = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of elements in the entire collection
+     */
+    @Override
+    public int size() {
+        return mKeys.size();
+    }
+
+    /**
+     * @return number of elements in a given group within the collection.
+     */
+    public int size( G group ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? 0 : groupNode.mSize;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mKeys.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        return key != null && mKeys.containsKey( key );
+    }
+
+
+    public G getGroupForKey( Object key ) {
+        if( key == null ) { return null; }
+
+        Node<K, V> node = mKeys.get( key );
+        return node == null ? null : (G)node.mGroup;
+    }
+
+
+    public V firstValue() {
+        return valueOf( first( mAll ) );
+    }
+
+
+    public V firstValue( G group ) {
+        return valueOf( firstEntry( group ) );
+    }
+
+
+    public Map.Entry<K, V> firstEntry() {
+        return first( mAll );
+    }
+
+
+    public Map.Entry<K, V> firstEntry( G group ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? null : first( groupNode.mSet );
+    }
+
+
+    public V lastValue() {
+        return valueOf( lastEntry() );
+    }
+
+
+    public V lastValue( G group ) {
+        return valueOf( lastEntry( group ) );
+    }
+
+
+    public Map.Entry<K, V> lastEntry() {
+        return first( mAll.descendingSet() );
+    }
+
+
+    public Map.Entry<K, V> lastEntry( G group ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? null : first( groupNode.mSet.descendingSet() );
+    }
+
+
+    public V ceilingValue( V value ) {
+        return valueOf( ceilingEntry( value ) );
+    }
+
+
+    public V ceilingValue( G group, V value ) {
+        return valueOf( ceilingEntry( group, value ) );
+    }
+
+
+    public Map.Entry<K, V> ceilingEntry( V value ) {
+        return mAll.ceiling( probe( LOW_GROUP, value ) );
+    }
+
+
+    public Map.Entry<K, V> ceilingEntry( G group, V value ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? null : groupNode.mSet.ceiling( probe( LOW_GROUP, value ) );
+    }
+
+
+    public V floorValue( V value ) {
+        return valueOf( floorEntry( value ) );
+    }
+
+
+    public V floorValue( G group, V value ) {
+        return valueOf( floorEntry( group, value ) );
+    }
+
+
+    public Map.Entry<K, V> floorEntry( V value ) {
+        return mAll.floor( probe( HIGH_GROUP, value ) );
+    }
+
+
+    public Map.Entry<K, V> floorEntry( G group, V value ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? null : groupNode.mSet.floor( probe( HIGH_GROUP, value ) );
+    }
+
+
+    public V higherValue( V value ) {
+        return valueOf( higherEntry( value ) );
+    }
+
+
+    public V higherValue( G group, V value ) {
+        return valueOf( higherEntry( group, value ) );
+    }
+
+
+    public Map.Entry<K, V> higherEntry( V value ) {
+        return mAll.higher( probe( HIGH_GROUP, value ) );
+    }
+
+
+    public Map.Entry<K, V> higherEntry( G group, V value ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? null : groupNode.mSet.higher( probe( HIGH_GROUP, value ) );
+    }
+
+
+    public V lowerValue( V value ) {
+        return valueOf( lowerEntry( value ) );
+    }
+
+
+    public V lowerValue( G group, V value ) {
+        return valueOf( lowerEntry( group, value ) );
+    }
+
+
+    public Map.Entry<K, V> lowerEntry( V value ) {
+        return mAll.lower( probe( LOW_GROUP, value ) );
+    }
+
+
+    public Map.Entry<K, V> lowerEntry( G group, V value ) {
+        GroupNode groupNode = mGroupTable.get( maskGroup( group ) );
+        return groupNode == null ? null : groupNode.mSet.lower( probe( LOW_GROUP, value ) );
+    }
+
+    /**
+     * @return view of all entries, ordered first by value and second by group.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> ret = mEntrySet;
+        if( ret == null ) {
+            ret = new EntrySet();
+            mEntrySet = ret;
+        }
+        return ret;
+    }
+
+
+    public Set<Map.Entry<K, V>> groupEntrySet( G group ) {
+        return new GroupView<Map.Entry<K, V>>( group, MODE_ENTRY );
+    }
+
+
+    public Set<K> groupKeySet( G group ) {
+        return new GroupView<K>( group, MODE_KEY );
+    }
+
+
+    public Collection<V> groupValues( G group ) {
+        return new GroupView<V>( group, MODE_VALUE );
+    }
+
+    /**
+     * @return view of all groups that currently contain elements. Removing
+     *         a group from the view removes all of its elements.
+     */
+    public Set<G> groups() {
+        Set<G> ret = mGroups;
+        if( ret == null ) {
+            ret = new Groups();
+            mGroups = ret;
+        }
+        return ret;
+    }
+
+
+
+    private static int rehash( int hash ) {
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+
+    private static Object maskGroup( Object group ) {
+        return group == null ? NULL_GROUP : group;
+    }
+
+
+    private int lockIndex( Object group ) {
+        return group == null ? 0 : rehash( group.hashCode() ) & (mLocks.length - 1);
+    }
+
+    /**
+     * Acquires two locks in index order to avoid deadlock.
+     */
+    private void lock( int a, int b ) {
+        if( a == b ) {
+            mLocks[a].lock();
+        } else if( a < b ) {
+            mLocks[a].lock();
+            mLocks[b].lock();
+        } else {
+            mLocks[b].lock();
+            mLocks[a].lock();
+        }
+    }
+
+
+    private void unlock( int a, int b ) {
+        mLocks[a].unlock();
+        if( a != b ) {
+            mLocks[b].unlock();
+        }
+    }
+
+    /**
+     * Must hold lock for group.
+     */
+    private GroupNode getGroupNodeInstance( G group ) {
+        Object    mask      = maskGroup( group );
+        GroupNode groupNode = mGroupTable.get( mask );
+
+        if( groupNode == null ) {
+            groupNode = new GroupNode( new ConcurrentSkipListSet<Node<K, V>>( mGroupOrder ) );
+            mGroupTable.put( mask, groupNode );
+        }
+
+        return groupNode;
+    }
+
+    /**
+     * Must hold lock for group.
+     */
+    private void disposeGroupIfEmpty( Object group ) {
+        Object    mask      = maskGroup( group );
+        GroupNode groupNode = mGroupTable.get( mask );
+
+        if( groupNode != null && groupNode.mSize == 0 ) {
+            mGroupTable.remove( mask, groupNode );
+        }
+    }
+
+    /**
+     * Removes node from ordered indices, but not from key table.
+     * Must hold lock for node's group.
+     */
+    private void unlinkNode( Node<K, V> node ) {
+        mAll.remove( node );
+
+        GroupNode groupNode = mGroupTable.get( maskGroup( node.mGroup ) );
+        if( groupNode != null && groupNode.mSet.remove( node ) ) {
+            groupNode.mSize--;
+        }
+    }
+
+    /**
+     * Removes node if it is still mapped by its key.
+     *
+     * @return true iff node was removed by this call.
+     */
+    private boolean removeNode( Node<K, V> node ) {
+        final ReentrantLock lock = mLocks[lockIndex( node.mGroup )];
+        lock.lock();
+
+        try {
+            if( !mKeys.remove( node.mKey, node ) ) { return false; }
+
+            unlinkNode( node );
+            disposeGroupIfEmpty( node.mGroup );
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private Node<K, V> probe( Object group, V value ) {
+        return new Node<K, V>( group, null, value );
+    }
+
+
+    private int compareValues( V a, V b ) {
+        if( mValueComparator != null ) {
+            return mValueComparator.compare( a, b );
+        }
+
+        return ((Comparable<? super V>)a).compareTo( b );
+    }
+
+
+    private static <K, V> Node<K, V> first( NavigableSet<Node<K, V>> set ) {
+        Iterator<Node<K, V>> iter = set.iterator();
+        return iter.hasNext() ? iter.next() : null;
+    }
+
+
+    private static <V> V valueOf( Map.Entry<?, V> entry ) {
+        return entry == null ? null : entry.getValue();
+    }
+
+
+
+    private static final class Node<K, V> implements Map.Entry<K, V> {
+        final Object mGroup;
+        final K      mKey;
+        final V      mValue;
+
+        Node( Object group, K key, V value ) {
+            mGroup = group;
+            mKey = key;
+            mValue = value;
+        }
+
+
+        public K getKey() {
+            return mKey;
+        }
+
+        public V getValue() {
+            return mValue;
+        }
+
+        public V setValue( V value ) {
+            throw new UnsupportedOperationException();
+        }
+
+
+        public int hashCode() {
+            return mKey.hashCode() ^ mValue.hashCode();
+        }
+
+        public boolean equals( Object obj ) {
+            if( !(obj instanceof Map.Entry) ) { return false; }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)obj;
+            return mKey.equals( e.getKey() ) && mValue.equals( e.getValue() );
+        }
+
+        public String toString() {
+            return mKey + "=" + mValue;
+        }
+
+    }
+
+
+    private final class GroupNode {
+        final ConcurrentSkipListSet<Node<K, V>> mSet;
+
+        //Only modified while holding lock for group.
+        volatile int mSize = 0;
+
+        GroupNode( ConcurrentSkipListSet<Node<K, V>> set ) {
+            mSet = set;
+        }
+    }
+
+    /**
+     * Orders nodes by value only.
+     */
+    private final class GroupOrder implements Comparator<Node<K, V>> {
+        public int compare( Node<K, V> a, Node<K, V> b ) {
+            return compareValues( a.mValue, b.mValue );
+        }
+    }
+
+    /**
+     * Orders nodes by value, then group. Probe nodes may use LOW_GROUP or
+     * HIGH_GROUP to sort before or after all groups with equivalent values.
+     */
+    private final class AllOrder implements Comparator<Node<K, V>> {
+        public int compare( Node<K, V> a, Node<K, V> b ) {
+            int c = compareValues( a.mValue, b.mValue );
+            if( c != 0 ) { return c; }
+
+            Object ga = a.mGroup;
+            Object gb = b.mGroup;
+
+            if( ga == gb ) { return 0; }
+            if( ga == LOW_GROUP || gb == HIGH_GROUP ) { return -1; }
+            if( ga == HIGH_GROUP || gb == LOW_GROUP ) { return 1; }
+            if( ga == null ) { return -1; }
+            if( gb == null ) { return 1; }
+
+            if( mGroupComparator != null ) {
+                return mGroupComparator.compare( (G)ga, (G)gb );
+            }
+
+            return ((Comparable<? super G>)ga).compareTo( (G)gb );
+        }
+    }
+
+
+    private final class NodeIterator<E> implements Iterator<E> {
+
+        private final Iterator<Node<K, V>> mIter;
+        private final int                  mMode;
+
+        private Node<K, V> mPrev = null;
+
+        NodeIterator( Iterator<Node<K, V>> iter, int mode ) {
+            mIter = iter;
+            mMode = mode;
+        }
+
+
+        public boolean hasNext() {
+            return mIter.hasNext();
+        }
+
+        public E next() {
+            Node<K, V> node = mIter.next();
+            mPrev = node;
+
+            switch( mMode ) {
+            case MODE_KEY:
+                return (E)node.mKey;
+            case MODE_VALUE:
+                return (E)node.mValue;
+            default:
+                return (E)node;
+            }
+        }
+
+        public void remove() {
+            if( mPrev == null ) { throw new IllegalStateException(); }
+
+            removeNode( mPrev );
+            mPrev = null;
+        }
+
+    }
+
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return ConcurrentGroupMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return ConcurrentGroupMap.this.isEmpty();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new NodeIterator<Map.Entry<K, V>>( mAll.iterator(), MODE_ENTRY );
+        }
+
+        @Override
+        public boolean contains( Object obj ) {
+            if( !(obj instanceof Map.Entry) ) { return false; }
+
+            Map.Entry<?, ?> e    = (Map.Entry<?, ?>)obj;
+            Object          key  = e.getKey();
+            Node<K, V>      node = key == null ? null : mKeys.get( key );
+
+            return node != null && node.mValue.equals( e.getValue() );
+        }
+
+        @Override
+        public boolean remove( Object obj ) {
+            if( !(obj instanceof Map.Entry) ) { return false; }
+
+            Map.Entry<?, ?> e    = (Map.Entry<?, ?>)obj;
+            Object          key  = e.getKey();
+            Node<K, V>      node = key == null ? null : mKeys.get( key );
+
+            return node != null && node.mValue.equals( e.getValue() ) && removeNode( node );
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentGroupMap.this.clear();
+        }
+
+    }
+
+
+    private final class GroupView<E> extends AbstractSet<E> {
+
+        private final G   mGroup;
+        private final int mMode;
+
+        GroupView( G group, int mode ) {
+            mGroup = group;
+            mMode = mode;
+        }
+
+
+        @Override
+        public int size() {
+            return ConcurrentGroupMap.this.size( mGroup );
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            GroupNode groupNode = mGroupTable.get( maskGroup( mGroup ) );
+            if( groupNode == null ) {
+                return Collections.<E>emptySet().iterator();
+            }
+
+            return new NodeIterator<E>( groupNode.mSet.iterator(), mMode );
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentGroupMap.this.clear( mGroup );
+        }
+
+    }
+
+
+    private final class Groups extends AbstractSet<G> {
+
+        @Override
+        public int size() {
+            return mGroupTable.size();
+        }
+
+        @Override
+        public boolean contains( Object obj ) {
+            return mGroupTable.containsKey( maskGroup( obj ) );
+        }
+
+        @Override
+        public Iterator<G> iterator() {
+            final Iterator<Object> iter = mGroupTable.keySet().iterator();
+
+            return new Iterator<G>() {
+                private Object mPrev = null;
+                private boolean mHasPrev = false;
+
+                public boolean hasNext() {
+                    return iter.hasNext();
+                }
+
+                public G next() {
+                    Object group = iter.next();
+                    mPrev = group == NULL_GROUP ? null : group;
+                    mHasPrev = true;
+                    return (G)mPrev;
+                }
+
+                public void remove() {
+                    if( !mHasPrev ) { throw new IllegalStateException(); }
+
+                    mHasPrev = false;
+                    ConcurrentGroupMap.this.clear( (G)mPrev );
+                }
+            };
+        }
+
+        @Override
+        public boolean remove( Object obj ) {
+            if( !contains( obj ) ) { return false; }
+
+            ConcurrentGroupMap.this.clear( (G)obj );
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentGroupMap.this.clear();
+        }
+
+    }
+
+}
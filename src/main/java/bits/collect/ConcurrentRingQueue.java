@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Bounded, lock-free queue that supports any number of concurrent producers
+ * and consumers. Elements are stored in a ring of power-of-two size, as in
+ * {@link RingList}, but the queue never grows: <tt>offer()</tt> fails when the
+ * ring is full.
+ * <p>
+ * Each slot of the ring carries a sequence number that records whether it is
+ * ready to be written or read for a given position. Producers claim positions
+ * by advancing the tail counter with a compare-and-set, and consumers claim
+ * them by advancing the head counter, so threads contend only when operating
+ * on the same end of the queue. The head and tail counters are padded onto
+ * separate cache lines to prevent false sharing between producers and
+ * consumers.
+ * <p>
+ * <tt>offer( E[], int, int )</tt>, <tt>drainTo()</tt> and <tt>drain()</tt>
+ * claim a run of slots with a single compare-and-set, which greatly reduces
+ * contention when moving elements in batches.
+ * <p>
+ * ConcurrentRingQueue does not permit null elements. <tt>size()</tt> is an
+ * estimate when the queue is being modified. Iterators are weakly consistent:
+ * they return elements that were in the queue at some point after the
+ * iterator was created, never throw ConcurrentModificationException, and do
+ * not support <tt>remove()</tt>.
+ *
+ * @param <E> Element type.
+ * @author Philip DeCamp
+ */
+@SuppressWarnings( "unchecked" )
+public class ConcurrentRingQueue<E> extends AbstractQueue<E> {
+
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // Counters are PAD longs apart and PAD longs from either end of the array,
+    // which is larger than a cache line pair on common hardware.
+    private static final int PAD  = 16;
+    private static final int HEAD = PAD;
+    private static final int TAIL = PAD * 2;
+
+
+    private final int             mMask;
+    private final Object[]        mBuffer;
+    private final AtomicLongArray mSeqs;
+    private final AtomicLongArray mCounters = new AtomicLongArray( PAD * 3 );
+
+
+    /**
+     * @param capacity Minimum capacity of queue. Will be rounded up to next power of two.
+     */
+    public ConcurrentRingQueue( int capacity ) {
+        if( capacity <= 0 || capacity > MAXIMUM_CAPACITY ) {
+            throw new IllegalArgumentException( "Illegal capacity: " + capacity );
+        }
+
+        int cap = 1;
+        while( cap < capacity ) {
+            cap <<= 1;
+        }
+
+        mMask   = cap - 1;
+        mBuffer = new Object[cap];
+        mSeqs   = new AtomicLongArray( cap );
+
+        for( int i = 0; i < cap; i++ ) {
+            mSeqs.set( i, i );
+        }
+    }
+
+
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+
+    public int remainingCapacity() {
+        return mBuffer.length - size();
+    }
+
+
+    @Override
+    public boolean offer( E item ) {
+        if( item == null ) {
+            throw new NullPointerException();
+        }
+
+        final AtomicLongArray seqs = mSeqs;
+        long pos = mCounters.get( TAIL );
+
+        while( true ) {
+            final int idx = (int)pos & mMask;
+            final long dif = seqs.get( idx ) - pos;
+
+            if( dif == 0 ) {
+                if( mCounters.compareAndSet( TAIL, pos, pos + 1 ) ) {
+                    mBuffer[idx] = item;
+                    // Publishes item to consumers.
+                    seqs.lazySet( idx, pos + 1 );
+                    return true;
+                }
+            } else if( dif < 0 ) {
+                // Slot still holds item from previous lap.
+                return false;
+            }
+
+            pos = mCounters.get( TAIL );
+        }
+    }
+
+    /**
+     * Offers a batch of items, claiming all slots with a single update.
+     * Offers as many items as will fit, in order.
+     *
+     * @param items Array of items. May not contain null elements.
+     * @param off   Offset into items.
+     * @param len   Number of items to offer.
+     * @return number of items added to queue, from 0 to <tt>len</tt>.
+     */
+    public int offer( E[] items, int off, int len ) {
+        for( int i = off; i < off + len; i++ ) {
+            if( items[i] == null ) {
+                throw new NullPointerException();
+            }
+        }
+
+        if( len <= 0 ) {
+            return 0;
+        }
+
+        final AtomicLongArray seqs = mSeqs;
+        final Object[] buf = mBuffer;
+        final int mask = mMask;
+
+        while( true ) {
+            final long pos = mCounters.get( TAIL );
+            int n = 0;
+
+            while( n < len && seqs.get( (int)(pos + n) & mask ) == pos + n ) {
+                n++;
+            }
+
+            if( n == 0 ) {
+                if( seqs.get( (int)pos & mask ) < pos ) {
+                    return 0;
+                }
+                // Another producer claimed pos.
+                continue;
+            }
+
+            if( mCounters.compareAndSet( TAIL, pos, pos + n ) ) {
+                for( int i = 0; i < n; i++ ) {
+                    int idx = (int)(pos + i) & mask;
+                    buf[idx] = items[off + i];
+                    seqs.lazySet( idx, pos + i + 1 );
+                }
+                return n;
+            }
+        }
+    }
+
+
+    @Override
+    public E poll() {
+        final AtomicLongArray seqs = mSeqs;
+        long pos = mCounters.get( HEAD );
+
+        while( true ) {
+            final int idx = (int)pos & mMask;
+            final long dif = seqs.get( idx ) - (pos + 1);
+
+            if( dif == 0 ) {
+                if( mCounters.compareAndSet( HEAD, pos, pos + 1 ) ) {
+                    E item = (E)mBuffer[idx];
+                    mBuffer[idx] = null;
+                    // Releases slot to producer of next lap.
+                    seqs.lazySet( idx, pos + mMask + 1 );
+                    return item;
+                }
+            } else if( dif < 0 ) {
+                // Slot not yet published.
+                return null;
+            }
+
+            pos = mCounters.get( HEAD );
+        }
+    }
+
+
+    @Override
+    public E peek() {
+        final AtomicLongArray seqs = mSeqs;
+
+        while( true ) {
+            final long pos = mCounters.get( HEAD );
+            final int idx = (int)pos & mMask;
+
+            final long seq = seqs.get( idx );
+
+            if( seq != pos + 1 ) {
+                if( seq < pos + 1 ) {
+                    return null;
+                }
+                continue;
+            }
+
+            E item = (E)mBuffer[idx];
+            // Item is valid only if slot was not consumed during read.
+            if( item != null && seqs.get( idx ) == pos + 1 ) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Removes up to <tt>max</tt> items, claiming all slots with a single
+     * update, and passes each to <tt>visitor</tt> in order. If
+     * <tt>visitor</tt> throws an exception, the remaining claimed items are
+     * discarded.
+     *
+     * @return number of items removed.
+     */
+    public int drain( Visitor<? super E> visitor, int max ) {
+        final AtomicLongArray seqs = mSeqs;
+        final Object[] buf = mBuffer;
+        final int mask = mMask;
+
+        while( true ) {
+            final long pos = mCounters.get( HEAD );
+            int n = 0;
+
+            while( n < max && seqs.get( (int)(pos + n) & mask ) == pos + n + 1 ) {
+                n++;
+            }
+
+            if( n == 0 ) {
+                if( max <= 0 || seqs.get( (int)pos & mask ) < pos + 1 ) {
+                    return 0;
+                }
+                // Another consumer claimed pos.
+                continue;
+            }
+
+            if( mCounters.compareAndSet( HEAD, pos, pos + n ) ) {
+                int i = 0;
+                try {
+                    while( i < n ) {
+                        int idx = (int)(pos + i) & mask;
+                        E item = (E)buf[idx];
+                        buf[idx] = null;
+                        seqs.lazySet( idx, pos + ++i + mask );
+                        visitor.visit( item );
+                    }
+                } finally {
+                    // Claimed slots must be released or producers will stall.
+                    while( i < n ) {
+                        int idx = (int)(pos + i) & mask;
+                        buf[idx] = null;
+                        seqs.lazySet( idx, pos + ++i + mask );
+                    }
+                }
+                return n;
+            }
+        }
+    }
+
+
+    public int drainTo( final Collection<? super E> out, int max ) {
+        return drain( new Visitor<E>() {
+            public void visit( E item ) {
+                out.add( item );
+            }
+        }, max );
+    }
+
+
+    /**
+     * Removes the items that are in the queue when this method is called. Items
+     * added during the call may or may not be removed, so the call ends even if
+     * producers keep the queue full.
+     *
+     * @return number of items removed.
+     */
+    public int drainTo( Collection<? super E> out ) {
+        int total = 0;
+        int remain = size();
+        int n;
+        while( remain > 0 && (n = drainTo( out, remain )) > 0 ) {
+            total += n;
+            remain -= n;
+        }
+        return total;
+    }
+
+
+    @Override
+    public int size() {
+        // Read head first so that tail is never behind it.
+        long head = mCounters.get( HEAD );
+        long tail = mCounters.get( TAIL );
+        return (int)Math.max( 0, Math.min( mBuffer.length, tail - head ) );
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+
+    @Override
+    public void clear() {
+        while( poll() != null ) {}
+    }
+
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iter();
+    }
+
+
+
+    private final class Iter implements Iterator<E> {
+
+        private final long mEnd;
+        private long mPos;
+        private E mNext;
+
+
+        Iter() {
+            mPos = mCounters.get( HEAD );
+            mEnd = mCounters.get( TAIL );
+            advance();
+        }
+
+
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        public E next() {
+            E ret = mNext;
+            if( ret == null ) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return ret;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        private void advance() {
+            mNext = null;
+
+            while( mPos < mEnd ) {
+                long pos = mPos++;
+                int idx = (int)pos & mMask;
+
+                if( mSeqs.get( idx ) == pos + 1 ) {
+                    E item = (E)mBuffer[idx];
+                    if( item != null && mSeqs.get( idx ) == pos + 1 ) {
+                        mNext = item;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+}
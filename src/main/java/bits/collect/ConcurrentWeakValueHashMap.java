@@ -0,0 +1,824 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A thread-safe counterpart to {@link WeakValueHashMap}, intended for
+ * interning and other canonicalization caches that are shared by many threads.
+ * As with WeakValueHashMap, values are weakly referenced and keys are strongly
+ * referenced, so an entry disappears once its value is no longer reachable
+ * elsewhere.
+ * <p>
+ * The table is divided into segments, each guarded by its own lock and
+ * holding its own ReferenceQueue. Retrievals never lock. Writes lock only the
+ * segment that holds the key, and each write first removes the stale entries
+ * queued for that segment, so segments are vacuumed independently and
+ * concurrently. Chains are never modified in place, so readers may traverse a
+ * segment while it is being modified.
+ * <p>
+ * {@link #putIfAbsent}, {@link #replace}, {@link #remove(Object, Object)} and
+ * {@link #getOrCreate} are atomic, and treat an entry whose value has been
+ * collected exactly as if the key were absent. In particular, putIfAbsent
+ * replaces a collected entry rather than returning null while leaving the
+ * collected entry in place.
+ * <p>
+ * Like {@link java.util.concurrent.ConcurrentHashMap}, neither keys nor values
+ * may be null. Iterators are weakly consistent: they never throw
+ * ConcurrentModificationExceptions and never return entries whose value has
+ * been collected, and they may or may not reflect modifications made after
+ * they were created. <tt>size()</tt> may include entries that have been
+ * collected but not yet removed.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ * @author Philip DeCamp
+ * @see WeakValueHashMap
+ */
+@SuppressWarnings( "unchecked" )
+public class ConcurrentWeakValueHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    static final int   DEFAULT_INITIAL_CAPACITY  = 16;
+    static final float DEFAULT_LOAD_FACTOR       = 0.75f;
+    static final int   DEFAULT_CONCURRENCY_LEVEL = 16;
+    static final int   MAXIMUM_CAPACITY          = 1 << 30;
+    static final int   MAXIMUM_SEGMENTS          = 1 << 16;
+
+
+    /**
+     * Creates values on demand for {@link #getOrCreate}.
+     */
+    public interface Factory<K, V> {
+        /**
+         * @param key Key for which a value is needed.
+         * @return new value for key, or null to leave the key absent.
+         */
+        V create( K key );
+    }
+
+
+    private final Segment<K, V>[] mSegments;
+    private final int             mSegmentShift;
+    private final int             mSegmentMask;
+
+    private transient KeySet   mKeySet   = null;
+    private transient Values   mValues   = null;
+    private transient EntrySet mEntrySet = null;
+
+
+    public ConcurrentWeakValueHashMap() {
+        this( DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL );
+    }
+
+
+    public ConcurrentWeakValueHashMap( int initialCapacity ) {
+        this( initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL );
+    }
+
+    /**
+     * @param initialCapacity  Initial capacity of entire map.
+     * @param loadFactor       Load factor of each segment.
+     * @param concurrencyLevel Estimated number of concurrently writing threads,
+     *                         which determines the number of segments.
+     */
+    public ConcurrentWeakValueHashMap( int initialCapacity, float loadFactor, int concurrencyLevel ) {
+        if( initialCapacity < 0 ) {
+            throw new IllegalArgumentException( "Illegal initial capacity: " + initialCapacity );
+        }
+
+        if( loadFactor <= 0 || Float.isNaN( loadFactor ) ) {
+            throw new IllegalArgumentException( "Illegal load factor: " + loadFactor );
+        }
+
+        if( concurrencyLevel <= 0 ) {
+            throw new IllegalArgumentException( "Illegal concurrency level: " + concurrencyLevel );
+        }
+
+        int shift    = 0;
+        int segCount = 1;
+        while( segCount < concurrencyLevel && segCount < MAXIMUM_SEGMENTS ) {
+            shift++;
+            segCount <<= 1;
+        }
+
+        mSegmentShift = 32 - shift;
+        mSegmentMask = segCount - 1;
+        mSegments = (Segment<K, V>[])new Segment<?, ?>[segCount];
+
+        initialCapacity = Math.min( initialCapacity, MAXIMUM_CAPACITY );
+        int perSeg   = (initialCapacity + segCount - 1) / segCount;
+        int capacity = 1;
+        while( capacity < perSeg ) {
+            capacity <<= 1;
+        }
+
+        for( int i = 0; i < segCount; i++ ) {
+            mSegments[i] = new Segment<K, V>( capacity, loadFactor );
+        }
+    }
+
+
+
+    @Override
+    public V get( Object key ) {
+        int hash = rehash( key.hashCode() );
+        return segmentFor( hash ).get( key, hash );
+    }
+
+    @Override
+    public boolean containsKey( Object key ) {
+        return get( key ) != null;
+    }
+
+    @Override
+    public boolean containsValue( Object value ) {
+        if( value == null ) {
+            throw new NullPointerException();
+        }
+
+        for( Segment<K, V> seg : mSegments ) {
+            if( seg.containsValue( value ) ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public V put( K key, V value ) {
+        if( value == null ) {
+            throw new NullPointerException();
+        }
+
+        int hash = rehash( key.hashCode() );
+        return segmentFor( hash ).put( key, hash, value, false );
+    }
+
+    /**
+     * Associates a value with a key unless the key is already mapped to a value
+     * that has not been collected.
+     *
+     * @return the value currently mapped to key, or null if <tt>value</tt> was added.
+     */
+    public V putIfAbsent( K key, V value ) {
+        if( value == null ) {
+            throw new NullPointerException();
+        }
+
+        int hash = rehash( key.hashCode() );
+        return segmentFor( hash ).put( key, hash, value, true );
+    }
+
+    /**
+     * Returns the value mapped to a key, creating it with <tt>factory</tt> if
+     * the key is absent or its value has been collected. The factory is called
+     * at most once per call, while holding the lock of the key's segment, so
+     * at most one value is ever created for a key at a time. The factory must
+     * not modify this map.
+     *
+     * @param key     Key to look up.
+     * @param factory Creates a value for key if needed.
+     * @return the current or newly created value, or null if the factory returned null.
+     */
+    public V getOrCreate( K key, Factory<? super K, ? extends V> factory ) {
+        int hash = rehash( key.hashCode() );
+        Segment<K, V> seg = segmentFor( hash );
+
+        V ret = seg.get( key, hash );
+        if( ret != null ) {
+            return ret;
+        }
+
+        return seg.getOrCreate( key, hash, factory );
+    }
+
+    @Override
+    public void putAll( Map<? extends K, ? extends V> map ) {
+        for( Map.Entry<? extends K, ? extends V> e : map.entrySet() ) {
+            put( e.getKey(), e.getValue() );
+        }
+    }
+
+    @Override
+    public V remove( Object key ) {
+        int hash = rehash( key.hashCode() );
+        return segmentFor( hash ).remove( key, hash, null );
+    }
+
+    public boolean remove( Object key, Object value ) {
+        int hash = rehash( key.hashCode() );
+        return value != null && segmentFor( hash ).remove( key, hash, value ) != null;
+    }
+
+    public boolean replace( K key, V oldValue, V newValue ) {
+        if( oldValue == null || newValue == null ) {
+            throw new NullPointerException();
+        }
+
+        int hash = rehash( key.hashCode() );
+        return segmentFor( hash ).replace( key, hash, oldValue, newValue ) != null;
+    }
+
+    public V replace( K key, V value ) {
+        if( value == null ) {
+            throw new NullPointerException();
+        }
+
+        int hash = rehash( key.hashCode() );
+        return segmentFor( hash ).replace( key, hash, null, value );
+    }
+
+    @Override
+    public void clear() {
+        for( Segment<K, V> seg : mSegments ) {
+            seg.clear();
+        }
+    }
+
+    /**
+     * @return number of entries, which may include entries with values that
+     *         have been collected but not yet removed.
+     */
+    @Override
+    public int size() {
+        long sum = 0;
+        for( Segment<K, V> seg : mSegments ) {
+            sum += seg.mCount;
+        }
+
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)sum;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for( Segment<K, V> seg : mSegments ) {
+            if( seg.mCount != 0 ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Removes all entries with values that have been garbage-collected. Each
+     * segment is locked only while its own stale entries are removed. Vacuum
+     * is also performed for a segment by every modification of that segment.
+     *
+     * @return size of the map immediately after vacuuming has been performed.
+     */
+    public int vacuum() {
+        for( Segment<K, V> seg : mSegments ) {
+            seg.vacuum();
+        }
+
+        return size();
+    }
+
+
+    @Override
+    public Set<K> keySet() {
+        KeySet ret = mKeySet;
+        return (ret != null ? ret : (mKeySet = new KeySet()));
+    }
+
+    @Override
+    public Collection<V> values() {
+        Values ret = mValues;
+        return (ret != null ? ret : (mValues = new Values()));
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet ret = mEntrySet;
+        return (ret != null ? ret : (mEntrySet = new EntrySet()));
+    }
+
+
+
+    private Segment<K, V> segmentFor( int hash ) {
+        return mSegments[(hash >>> mSegmentShift) & mSegmentMask];
+    }
+
+    private static int rehash( int hash ) {
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+
+
+    private static final class Segment<K, V> extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        final ReferenceQueue<V> mQueue = new ReferenceQueue<V>();
+        final float             mLoadFactor;
+
+        volatile RefEntry<K, V>[] mTable;
+        volatile int              mCount = 0;
+        int mThreshold;
+
+
+        Segment( int capacity, float loadFactor ) {
+            mLoadFactor = loadFactor;
+            mTable = (RefEntry<K, V>[])new RefEntry<?, ?>[capacity];
+            mThreshold = (int)(capacity * loadFactor);
+        }
+
+
+        V get( Object key, int hash ) {
+            // Volatile read of mCount sees all writes made before the last modification.
+            if( mCount == 0 ) {
+                return null;
+            }
+
+            RefEntry<K, V>[] tab = mTable;
+            for( RefEntry<K, V> e = tab[hash & (tab.length - 1)]; e != null; e = e.mNext ) {
+                if( hash == e.mHash && (key == e.mKey || key.equals( e.mKey )) ) {
+                    return e.get();
+                }
+            }
+
+            return null;
+        }
+
+        boolean containsValue( Object value ) {
+            if( mCount == 0 ) {
+                return false;
+            }
+
+            RefEntry<K, V>[] tab = mTable;
+            for( RefEntry<K, V> e : tab ) {
+                for( ; e != null; e = e.mNext ) {
+                    V v = e.get();
+                    if( v != null && value.equals( v ) ) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        V put( K key, int hash, V value, boolean onlyIfAbsent ) {
+            lock();
+            try {
+                expunge();
+
+                RefEntry<K, V>[] tab   = mTable;
+                int              idx   = hash & (tab.length - 1);
+                RefEntry<K, V>   first = tab[idx];
+                RefEntry<K, V>   e     = find( first, key, hash );
+
+                if( e != null ) {
+                    V old = e.get();
+                    if( old != null && onlyIfAbsent ) {
+                        return old;
+                    }
+
+                    replaceEntry( tab, idx, first, e, value );
+                    return old;
+                }
+
+                addEntry( key, hash, value );
+                return null;
+
+            } finally {
+                unlock();
+            }
+        }
+
+        V getOrCreate( K key, int hash, Factory<? super K, ? extends V> factory ) {
+            lock();
+            try {
+                expunge();
+
+                RefEntry<K, V>[] tab   = mTable;
+                int              idx   = hash & (tab.length - 1);
+                RefEntry<K, V>   first = tab[idx];
+                RefEntry<K, V>   e     = find( first, key, hash );
+
+                if( e != null ) {
+                    V old = e.get();
+                    if( old != null ) {
+                        return old;
+                    }
+                }
+
+                V value = factory.create( key );
+                if( value == null ) {
+                    return null;
+                }
+
+                if( e != null ) {
+                    replaceEntry( tab, idx, first, e, value );
+                } else {
+                    addEntry( key, hash, value );
+                }
+
+                return value;
+
+            } finally {
+                unlock();
+            }
+        }
+
+        V remove( Object key, int hash, Object value ) {
+            lock();
+            try {
+                expunge();
+
+                RefEntry<K, V>[] tab   = mTable;
+                int              idx   = hash & (tab.length - 1);
+                RefEntry<K, V>   first = tab[idx];
+                RefEntry<K, V>   e     = find( first, key, hash );
+
+                if( e == null ) {
+                    return null;
+                }
+
+                V old = e.get();
+                if( value != null && (old == null || !value.equals( old )) ) {
+                    return null;
+                }
+
+                tab[idx] = removeFromChain( first, e );
+                mCount = mCount - 1;
+                return old;
+
+            } finally {
+                unlock();
+            }
+        }
+
+        V replace( K key, int hash, V oldValue, V newValue ) {
+            lock();
+            try {
+                expunge();
+
+                RefEntry<K, V>[] tab   = mTable;
+                int              idx   = hash & (tab.length - 1);
+                RefEntry<K, V>   first = tab[idx];
+                RefEntry<K, V>   e     = find( first, key, hash );
+
+                if( e == null ) {
+                    return null;
+                }
+
+                V old = e.get();
+                if( old == null || oldValue != null && !oldValue.equals( old ) ) {
+                    return null;
+                }
+
+                replaceEntry( tab, idx, first, e, newValue );
+                return old;
+
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                RefEntry<K, V>[] tab = mTable;
+                for( int i = 0; i < tab.length; i++ ) {
+                    tab[i] = null;
+                }
+
+                mCount = 0;
+                while( mQueue.poll() != null ) {}
+
+            } finally {
+                unlock();
+            }
+        }
+
+        void vacuum() {
+            lock();
+            try {
+                expunge();
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Removes entries queued by the garbage collector. Must hold lock.
+         */
+        void expunge() {
+            Object ref;
+            while( (ref = mQueue.poll()) != null ) {
+                RefEntry<K, V>   entry = (RefEntry<K, V>)ref;
+                RefEntry<K, V>[] tab   = mTable;
+                int              idx   = entry.mHash & (tab.length - 1);
+                RefEntry<K, V>   first = tab[idx];
+
+                for( RefEntry<K, V> e = first; e != null; e = e.mNext ) {
+                    if( e == entry ) {
+                        tab[idx] = removeFromChain( first, e );
+                        mCount = mCount - 1;
+                        break;
+                    }
+                }
+            }
+        }
+
+
+        private RefEntry<K, V> find( RefEntry<K, V> e, Object key, int hash ) {
+            for( ; e != null; e = e.mNext ) {
+                if( hash == e.mHash && (key == e.mKey || key.equals( e.mKey )) ) {
+                    return e;
+                }
+            }
+
+            return null;
+        }
+
+        private void addEntry( K key, int hash, V value ) {
+            RefEntry<K, V>[] tab = mTable;
+            if( mCount >= mThreshold ) {
+                tab = resize();
+            }
+
+            int idx = hash & (tab.length - 1);
+            tab[idx] = new RefEntry<K, V>( key, value, hash, tab[idx], mQueue );
+            mCount = mCount + 1;
+        }
+
+        private void replaceEntry( RefEntry<K, V>[] tab, int idx, RefEntry<K, V> first, RefEntry<K, V> e, V value ) {
+            RefEntry<K, V> rest = removeFromChain( first, e );
+            tab[idx] = new RefEntry<K, V>( e.mKey, value, e.mHash, rest, mQueue );
+            // Volatile write publishes the new entry to unlocked readers.
+            mCount = mCount;
+        }
+
+        /**
+         * Creates a chain without <tt>e</tt>. Entries that follow <tt>e</tt> are
+         * shared, and entries that precede it are cloned, dropping any that
+         * have already been collected.
+         */
+        private RefEntry<K, V> removeFromChain( RefEntry<K, V> first, RefEntry<K, V> e ) {
+            RefEntry<K, V> ret = e.mNext;
+
+            for( RefEntry<K, V> p = first; p != e; p = p.mNext ) {
+                V v = p.get();
+                if( v == null ) {
+                    mCount = mCount - 1;
+                } else {
+                    ret = new RefEntry<K, V>( p.mKey, v, p.mHash, ret, mQueue );
+                }
+            }
+
+            return ret;
+        }
+
+        private RefEntry<K, V>[] resize() {
+            RefEntry<K, V>[] oldTab = mTable;
+            int              oldCap = oldTab.length;
+            if( oldCap >= MAXIMUM_CAPACITY ) {
+                mThreshold = Integer.MAX_VALUE;
+                return oldTab;
+            }
+
+            int              newCap = oldCap << 1;
+            RefEntry<K, V>[] newTab = (RefEntry<K, V>[])new RefEntry<?, ?>[newCap];
+            int              count  = mCount;
+
+            for( RefEntry<K, V> e : oldTab ) {
+                for( ; e != null; e = e.mNext ) {
+                    V v = e.get();
+                    if( v == null ) {
+                        count--;
+                        continue;
+                    }
+
+                    int idx = e.mHash & (newCap - 1);
+                    newTab[idx] = new RefEntry<K, V>( e.mKey, v, e.mHash, newTab[idx], mQueue );
+                }
+            }
+
+            mThreshold = (int)(newCap * mLoadFactor);
+            mTable = newTab;
+            mCount = count;
+            return newTab;
+        }
+
+    }
+
+
+
+    private static final class RefEntry<K, V> extends WeakReference<V> {
+
+        final K              mKey;
+        final int            mHash;
+        final RefEntry<K, V> mNext;
+
+        RefEntry( K key, V value, int hash, RefEntry<K, V> next, ReferenceQueue<V> queue ) {
+            super( value, queue );
+            mKey = key;
+            mHash = hash;
+            mNext = next;
+        }
+
+    }
+
+
+
+    private abstract class BaseIterator<E> implements Iterator<E> {
+
+        private int              mSegIndex = 0;
+        private RefEntry<K, V>[] mTable    = null;
+        private int              mIndex    = 0;
+        private RefEntry<K, V>   mEntry    = null;
+
+        private K mNextKey   = null;
+        private V mNextValue = null;
+
+        K mKey   = null;
+        V mValue = null;
+
+
+        BaseIterator() {
+            advance();
+        }
+
+
+        public final boolean hasNext() {
+            return mNextValue != null;
+        }
+
+        public final void remove() {
+            if( mKey == null ) {
+                throw new IllegalStateException();
+            }
+
+            ConcurrentWeakValueHashMap.this.remove( mKey, mValue );
+            mKey = null;
+            mValue = null;
+        }
+
+        final void nextEntry() {
+            if( mNextValue == null ) {
+                throw new NoSuchElementException();
+            }
+
+            mKey = mNextKey;
+            mValue = mNextValue;
+            advance();
+        }
+
+        private void advance() {
+            mNextKey = null;
+            mNextValue = null;
+
+            while( true ) {
+                if( mEntry != null ) {
+                    mEntry = mEntry.mNext;
+                }
+
+                while( mEntry == null ) {
+                    if( mTable != null && mIndex < mTable.length ) {
+                        mEntry = mTable[mIndex++];
+                    } else if( mSegIndex < mSegments.length ) {
+                        Segment<K, V> seg = mSegments[mSegIndex++];
+                        mTable = (seg.mCount != 0 ? seg.mTable : null);
+                        mIndex = 0;
+                    } else {
+                        return;
+                    }
+                }
+
+                V v = mEntry.get();
+                if( v != null ) {
+                    mNextKey = mEntry.mKey;
+                    mNextValue = v;
+                    return;
+                }
+            }
+        }
+
+    }
+
+
+
+    private final class KeyIterator extends BaseIterator<K> {
+        public K next() {
+            nextEntry();
+            return mKey;
+        }
+    }
+
+
+
+    private final class ValueIterator extends BaseIterator<V> {
+        public V next() {
+            nextEntry();
+            return mValue;
+        }
+    }
+
+
+
+    private final class EntryIterator extends BaseIterator<Map.Entry<K, V>> {
+        public Map.Entry<K, V> next() {
+            nextEntry();
+            return new AbstractMap.SimpleImmutableEntry<K, V>( mKey, mValue );
+        }
+    }
+
+
+
+    private final class KeySet extends AbstractSet<K> {
+
+        public int size() {
+            return ConcurrentWeakValueHashMap.this.size();
+        }
+
+        public boolean contains( Object key ) {
+            return containsKey( key );
+        }
+
+        public boolean remove( Object key ) {
+            return ConcurrentWeakValueHashMap.this.remove( key ) != null;
+        }
+
+        public void clear() {
+            ConcurrentWeakValueHashMap.this.clear();
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+    }
+
+
+
+    private final class Values extends AbstractCollection<V> {
+
+        public int size() {
+            return ConcurrentWeakValueHashMap.this.size();
+        }
+
+        public boolean contains( Object obj ) {
+            return containsValue( obj );
+        }
+
+        public void clear() {
+            ConcurrentWeakValueHashMap.this.clear();
+        }
+
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+    }
+
+
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        public int size() {
+            return ConcurrentWeakValueHashMap.this.size();
+        }
+
+        public boolean contains( Object obj ) {
+            if( !(obj instanceof Map.Entry) ) {
+                return false;
+            }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)obj;
+            V v = get( e.getKey() );
+            return v != null && v.equals( e.getValue() );
+        }
+
+        public boolean remove( Object obj ) {
+            if( !(obj instanceof Map.Entry) ) {
+                return false;
+            }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)obj;
+            return ConcurrentWeakValueHashMap.this.remove( e.getKey(), e.getValue() );
+        }
+
+        public void clear() {
+            ConcurrentWeakValueHashMap.this.clear();
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+    }
+
+}
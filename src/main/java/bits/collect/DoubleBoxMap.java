@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.Map;
+
+
+/**
+ * DoubleBoxMap is a version of BoxMap for boxes defined by double arrays
+ * of the form <tt>{ min0, max0, min1, max1, ... }</tt>. Each dimension is
+ * treated the same way as an interval in DoubleIntervalMap: half-open, with
+ * degenerate intervals treated as if the max were infinitesimally greater
+ * than the min.
+ * <p>
+ * As with DoubleIntervalMap, the map returns references to the actual keys and
+ * altering those keys while they are in the map has undefined results.
+ *
+ * @param <V> The mValue type to be associated with a box
+ * @author Philip DeCamp
+ * @see DoubleIntervalMap
+ */
+public class DoubleBoxMap<V> extends BoxMap<double[], V> {
+
+    /**
+     * Comparator for 2-dimensional boxes: <tt>double[] v = { x0, x1, y0, y1 }</tt>
+     */
+    public static final BoxComparator<double[]> DOUBLE_RECT_COMP = comparator( 2 );
+
+
+    /**
+     * @param dims Number of dimensions
+     * @return comparator for boxes defined by double arrays of length <tt>2 * dims</tt>,
+     *         <tt>{ min0, max0, min1, max1, ... }</tt>, where each dimension
+     *         is compared as by {@link DoubleIntervalMap#DOUBLE_PAIR_COMP}.
+     */
+    public static BoxComparator<double[]> comparator( final int dims ) {
+        return new BoxComparator<double[]>() {
+            public int dims() {
+                return dims;
+            }
+
+            public int compareMins( double[] a, double[] b, int dim ) {
+                return Double.compare( a[dim * 2], b[dim * 2] );
+            }
+
+            public int compareMaxes( double[] a, double[] b, int dim ) {
+                final int lo = dim * 2;
+                final int hi = lo + 1;
+                if( a[hi] < b[hi] ) {
+                    return -1;
+                }
+                if( a[hi] > b[hi] ) {
+                    return 1;
+                }
+
+                return (a[lo] == a[hi] ? 1 : 0) - (b[lo] == b[hi] ? 1 : 0);
+            }
+
+            public int compareMinToMax( double[] a, double[] b, int dim ) {
+                final int lo = dim * 2;
+                final int hi = lo + 1;
+                if( a[lo] < b[hi] ) {
+                    return -1;
+                }
+                if( a[lo] > b[hi] ) {
+                    return 1;
+                }
+
+                return (b[lo] == b[hi] ? -1 : 0);
+            }
+
+            public double min( double[] box, int dim ) {
+                return box[dim * 2];
+            }
+
+            public double max( double[] box, int dim ) {
+                return box[dim * 2 + 1];
+            }
+        };
+    }
+
+
+    public DoubleBoxMap() {
+        super( DOUBLE_RECT_COMP );
+    }
+
+
+    public DoubleBoxMap( Map<double[], ? extends V> map ) {
+        super( DOUBLE_RECT_COMP, map );
+    }
+
+
+    public DoubleBoxMap( BoxComparator<double[]> comp ) {
+        super( comp );
+    }
+
+
+    public DoubleBoxMap( BoxComparator<double[]> comp, Map<double[], ? extends V> map ) {
+        super( comp, map );
+    }
+
+}
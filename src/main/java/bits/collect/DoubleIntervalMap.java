@@ -5,6 +5,9 @@
  */
 package bits.collect;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 
@@ -72,6 +75,24 @@ public class DoubleIntervalMap<V> extends IntervalMap<double[], V> {
     };
 
 
+    /**
+     * Codec for intervals defined by length-2 double arrays. Each interval is
+     * written as two primitive double values.
+     */
+    public static final Codec<double[]> DOUBLE_PAIR_CODEC = new Codec<double[]>() {
+        public void write( double[] item, DataOutput out ) throws IOException {
+            out.writeDouble( item[0] );
+            out.writeDouble( item[1] );
+        }
+
+        public double[] read( DataInput in ) throws IOException {
+            double min = in.readDouble();
+            double max = in.readDouble();
+            return new double[]{ min, max };
+        }
+    };
+
+
     public DoubleIntervalMap() {
         super( DOUBLE_PAIR_COMP );
     }
@@ -215,6 +236,102 @@ public class DoubleIntervalMap<V> extends IntervalMap<double[], V> {
     }
 
 
+    /**
+     * @param point A point
+     * @return the entry with the greatest max among intervals that end at or before <tt>point</tt>
+     * and do not contain it.
+     * @see #lastEntryEndingBefore(Object)
+     */
+    public Map.Entry<double[], V> lastEntryEndingBefore( double point ) {
+        return super.lastEntryEndingBefore( new double[]{ point, point } );
+    }
+
+    /**
+     * @param point A point
+     * @return the first entry with an interval that starts after <tt>point</tt>.
+     * @see #firstEntryStartingAfter(Object)
+     */
+    public Map.Entry<double[], V> firstEntryStartingAfter( double point ) {
+        return super.firstEntryStartingAfter( new double[]{ point, point } );
+    }
+
+    /**
+     * Finds the interval closest to a point. If any intervals contain
+     * <tt>point</tt>, the first of those is returned. Otherwise, returns
+     * whichever is closer of the interval that ends last before <tt>point</tt>
+     * and the interval that starts first after it, preferring the earlier one
+     * in the case of a tie.
+     *
+     * @param point A point
+     * @return the entry nearest to <tt>point</tt>, or null if map is empty.
+     */
+    public Map.Entry<double[], V> nearestEntry( double point ) {
+        final double[] key = { point, point };
+        Map.Entry<double[], V> ret = firstIntersectionEntry( key );
+        if( ret != null ) {
+            return ret;
+        }
+
+        Map.Entry<double[], V> before = super.lastEntryEndingBefore( key );
+        Map.Entry<double[], V> after  = super.firstEntryStartingAfter( key );
+        if( before == null ) {
+            return after;
+        }
+        if( after == null ) {
+            return before;
+        }
+
+        return point - before.getKey()[1] <= after.getKey()[0] - point ? before : after;
+    }
+
+    /**
+     * Finds the <tt>k</tt> intervals closest to a point, ordered by distance.
+     * Intervals containing <tt>point</tt> come first, in ascending order.
+     * The remaining intervals are merged from those ending before <tt>point</tt>,
+     * by descending max, and those starting after, by ascending min. Ties are
+     * resolved in favor of earlier intervals.
+     *
+     * @param point A point
+     * @param k     Maximum number of entries to return
+     * @return list of at most <tt>k</tt> entries nearest to <tt>point</tt>.
+     */
+    public List<Map.Entry<double[], V>> kNearestEntries( double point, int k ) {
+        final double[] key = { point, point };
+        List<Map.Entry<double[], V>> ret = new ArrayList<Map.Entry<double[], V>>( Math.max( 0, Math.min( k, size() ) ) );
+        if( k <= 0 ) {
+            return ret;
+        }
+
+        for( Map.Entry<double[], V> e: intersectionEntrySet( key ) ) {
+            ret.add( e );
+            if( ret.size() >= k ) {
+                return ret;
+            }
+        }
+
+        Iterator<Map.Entry<double[], V>> beforeIter = endingBeforeIterator( key );
+        Iterator<Map.Entry<double[], V>> afterIter  = startingAfterIterator( key );
+        Map.Entry<double[], V> before = beforeIter.hasNext() ? beforeIter.next() : null;
+        Map.Entry<double[], V> after  = afterIter.hasNext() ? afterIter.next() : null;
+
+        while( ret.size() < k ) {
+            if( before == null && after == null ) {
+                break;
+            }
+
+            if( after == null || before != null && point - before.getKey()[1] <= after.getKey()[0] - point ) {
+                ret.add( before );
+                before = beforeIter.hasNext() ? beforeIter.next() : null;
+            } else {
+                ret.add( after );
+                after = afterIter.hasNext() ? afterIter.next() : null;
+            }
+        }
+
+        return ret;
+    }
+
+
     /**
      * Removes the mapping for the first interval that is equivalent to
      * <tt>mKey</tt>.
@@ -577,6 +694,31 @@ public class DoubleIntervalMap<V> extends IntervalMap<double[], V> {
     }
 
 
+    /**
+     * Writes all mappings to a stream in ascending order, with each interval
+     * stored as two primitive double values.
+     *
+     * @param out        Destination stream
+     * @param valueCodec Codec used to write each mValue
+     * @see IntervalMap#write(java.io.DataOutput, Codec, Codec)
+     */
+    public void write( DataOutput out, Codec<? super V> valueCodec ) throws IOException {
+        super.write( out, DOUBLE_PAIR_CODEC, valueCodec );
+    }
+
+    /**
+     * Replaces the contents of this map with mappings read from a stream
+     * produced by {@link #write(java.io.DataOutput, Codec)}. Runs in linear time.
+     *
+     * @param in         Source stream
+     * @param valueCodec Codec used to read each mValue
+     * @see IntervalMap#read(java.io.DataInput, Codec, Codec)
+     */
+    public void read( DataInput in, Codec<? extends V> valueCodec ) throws IOException {
+        super.read( in, DOUBLE_PAIR_CODEC, valueCodec );
+    }
+
+
     public Set<double[]> intersectingKeySet( double min, double max ) {
         return super.intersectionKeySet( new double[]{ min, max } );
     }
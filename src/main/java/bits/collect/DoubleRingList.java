@@ -0,0 +1,629 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+
+/**
+ * Primitive double version of {@link RingList}. Provides fast insertion and
+ * removal at both the beginning and end of the list without boxing, making
+ * it suitable for sliding windows of measurements.
+ * <p>
+ * Like RingList, DoubleRingList grows as needed up to a maximum capacity. By
+ * default, adding to a full list throws an exception. In overwrite mode,
+ * adding to the end of a full list instead discards the first (oldest)
+ * element, and adding to the front discards the last element.
+ * <p>
+ * DoubleRingList maintains windowed aggregates of its contents. <tt>sum()</tt>
+ * takes constant time, except after an overflow as described below. <tt>min()</tt> and <tt>max()</tt> are backed by
+ * monotonic deques of candidate elements, which are built on the first call
+ * and then maintained in amortized constant time while the list is only
+ * modified by <tt>addLast()</tt>, <tt>addFirst()</tt>, <tt>removeFirst()</tt>
+ * or <tt>clear()</tt>, which covers sliding-window use in either overwrite or
+ * normal mode. Any other modification discards the deques, and the next call
+ * to <tt>min()</tt> or <tt>max()</tt> rebuilds them in linear time.
+ * <p>
+ * The running sum is compensated to limit rounding error as values enter and
+ * leave the list. NaN and infinite values are counted separately, so the sum
+ * becomes finite again once they are removed. If finite elements overflow
+ * the running sum, <tt>sum()</tt> recomputes it from the elements in linear
+ * time until the overflow clears. Elements are compared as by
+ * {@link Double#compare}, so NaN is greater than every other value and -0.0
+ * is less than 0.0.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Philip DeCamp
+ * @see RingList
+ */
+public class DoubleRingList {
+
+    static final int DEFAULT_INITIAL_CAPACITY = 10;
+    static final int MAXIMUM_CAPACITY         = 1 << 29;
+
+    private final int     mMaxCap;
+    private final boolean mOverwrite;
+
+    private double[] mBuffer;
+    private int mPos  = 0;
+    private int mSize = 0;
+    // Finite elements are summed with Neumaier compensation.
+    private double mSum  = 0.0;
+    private double mComp = 0.0;
+    // Set if finite elements overflowed the running sum, which must then be recomputed.
+    private boolean mSumStale = false;
+    private int mNanCount    = 0;
+    private int mPosInfCount = 0;
+    private int mNegInfCount = 0;
+
+    // Sequence number of element at index 0. Elements keep their sequence
+    // numbers while the list is modified at either end.
+    private int      mBase     = 0;
+    private boolean  mTracking = false;
+    private SeqDeque mMinQ     = null;
+    private SeqDeque mMaxQ     = null;
+
+
+    public DoubleRingList() {
+        this( DEFAULT_INITIAL_CAPACITY, MAXIMUM_CAPACITY, false );
+    }
+
+
+    public DoubleRingList( int initialCapacity ) {
+        this( initialCapacity, MAXIMUM_CAPACITY, false );
+    }
+
+
+    public DoubleRingList( int initialCapacity, int maximumCapacity ) {
+        this( initialCapacity, maximumCapacity, false );
+    }
+
+    /**
+     * @param initialCapacity Initial capacity of list.
+     * @param maximumCapacity Max capacity of list.
+     * @param overwrite       If true, adding to a full list discards an element from the opposite end instead of failing.
+     */
+    public DoubleRingList( int initialCapacity, int maximumCapacity, boolean overwrite ) {
+        mMaxCap = Math.max( 0, Math.min( maximumCapacity, MAXIMUM_CAPACITY ) );
+        mOverwrite = overwrite;
+        if( initialCapacity <= 0 ) {
+            initialCapacity = DEFAULT_INITIAL_CAPACITY;
+        }
+
+        initialCapacity = Math.min( initialCapacity, mMaxCap );
+        mBuffer = new double[initialCapacity];
+    }
+
+
+
+    public boolean isOverwrite() {
+        return mOverwrite;
+    }
+
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+
+    public int maximumCapacity() {
+        return mMaxCap;
+    }
+
+    /**
+     * Equivalent to <tt>addLast( v )</tt>.
+     *
+     * @return true
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public boolean add( double v ) {
+        addLast( v );
+        return true;
+    }
+
+    /**
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public void add( int index, double v ) {
+        if( index < 0 || index > mSize ) {
+            throw new IndexOutOfBoundsException();
+        }
+        if( index == mSize ) {
+            addLast( v );
+            return;
+        }
+        if( index == 0 ) {
+            addFirst( v );
+            return;
+        }
+
+        if( !makeRoom() ) {
+            return;
+        }
+        if( mSize == mBuffer.length ) {
+            removeFirst();
+            index--;
+        }
+
+        mTracking = false;
+        final double[] buf = mBuffer;
+        for( int i = mSize; i > index; i-- ) {
+            buf[slot( i )] = buf[slot( i - 1 )];
+        }
+
+        buf[slot( index )] = v;
+        mSize++;
+        addToSum( v );
+    }
+
+    /**
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public void addLast( double v ) {
+        if( !makeRoom() ) {
+            return;
+        }
+        if( mSize == mBuffer.length ) {
+            removeFirst();
+        }
+
+        mBuffer[slot( mSize++ )] = v;
+        addToSum( v );
+
+        if( mTracking ) {
+            final int seq = mBase + mSize - 1;
+            while( !mMinQ.isEmpty() && Double.compare( value( mMinQ.last() ), v ) >= 0 ) {
+                mMinQ.removeLast();
+            }
+            mMinQ.addLast( seq );
+
+            while( !mMaxQ.isEmpty() && Double.compare( value( mMaxQ.last() ), v ) <= 0 ) {
+                mMaxQ.removeLast();
+            }
+            mMaxQ.addLast( seq );
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public void addFirst( double v ) {
+        if( !makeRoom() ) {
+            return;
+        }
+        if( mSize == mBuffer.length ) {
+            removeLast();
+        }
+
+        mPos = (mPos == 0 ? mBuffer.length : mPos) - 1;
+        mBuffer[mPos] = v;
+        mSize++;
+        mBase--;
+        addToSum( v );
+
+        if( mTracking ) {
+            // New first element is a candidate only if it beats every element after it.
+            if( mMinQ.isEmpty() || Double.compare( v, value( mMinQ.first() ) ) < 0 ) {
+                mMinQ.addFirst( mBase );
+            }
+            if( mMaxQ.isEmpty() || Double.compare( v, value( mMaxQ.first() ) ) > 0 ) {
+                mMaxQ.addFirst( mBase );
+            }
+        }
+    }
+
+    /**
+     * Adds <tt>v</tt> to end of list.
+     *
+     * @return true if <tt>v</tt> was added. False iff list is full and not in overwrite mode.
+     */
+    public boolean offer( double v ) {
+        if( !mOverwrite && mSize == mBuffer.length && !ensureCapacity( mSize + 1 ) ) {
+            return false;
+        }
+        addLast( v );
+        return true;
+    }
+
+
+    public double get( int index ) {
+        if( index < 0 || index >= mSize ) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return mBuffer[slot( index )];
+    }
+
+
+    public double set( int index, double v ) {
+        if( index < 0 || index >= mSize ) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        mTracking = false;
+        index = slot( index );
+        double ret = mBuffer[index];
+        mBuffer[index] = v;
+        removeFromSum( ret );
+        addToSum( v );
+        return ret;
+    }
+
+
+    public double getFirst() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        return mBuffer[mPos];
+    }
+
+
+    public double getLast() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        return mBuffer[slot( mSize - 1 )];
+    }
+
+
+    public double removeFirst() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+
+        double ret = mBuffer[mPos];
+        mPos = slot( 1 );
+        mSize--;
+        removeFromSum( ret );
+
+        if( mTracking ) {
+            if( mMinQ.first() == mBase ) {
+                mMinQ.removeFirst();
+            }
+            if( mMaxQ.first() == mBase ) {
+                mMaxQ.removeFirst();
+            }
+        }
+
+        mBase++;
+        return ret;
+    }
+
+
+    public double removeLast() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+
+        mTracking = false;
+        double ret = mBuffer[slot( --mSize )];
+        removeFromSum( ret );
+        return ret;
+    }
+
+    /**
+     * Removes element at given index. Named differently from
+     * <tt>remove( double )</tt> to avoid ambiguity.
+     *
+     * @return removed element
+     */
+    public double removeAt( int index ) {
+        if( index < 0 || index >= mSize ) {
+            throw new NoSuchElementException();
+        }
+        if( index == 0 ) {
+            return removeFirst();
+        }
+        if( index == mSize - 1 ) {
+            return removeLast();
+        }
+
+        mTracking = false;
+        final double[] buf = mBuffer;
+        double ret = buf[slot( index )];
+        for( int i = index + 1; i < mSize; i++ ) {
+            buf[slot( i - 1 )] = buf[slot( i )];
+        }
+
+        mSize--;
+        removeFromSum( ret );
+        return ret;
+    }
+
+
+    public boolean remove( double v ) {
+        int idx = indexOf( v );
+        if( idx < 0 ) {
+            return false;
+        }
+        removeAt( idx );
+        return true;
+    }
+
+
+    public void clear() {
+        mPos  = 0;
+        mSize = 0;
+        mBase = 0;
+        resetSum();
+        if( mTracking ) {
+            mMinQ.clear();
+            mMaxQ.clear();
+        }
+    }
+
+
+    public boolean contains( double v ) {
+        return indexOf( v ) >= 0;
+    }
+
+
+    public int indexOf( double v ) {
+        for( int i = 0; i < mSize; i++ ) {
+            if( Double.compare( mBuffer[slot( i )], v ) == 0 ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public int lastIndexOf( double v ) {
+        for( int i = mSize - 1; i >= 0; i-- ) {
+            if( Double.compare( mBuffer[slot( i )], v ) == 0 ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return sum of all elements. 0 if empty.
+     */
+    public double sum() {
+        if( mNanCount > 0 || mPosInfCount > 0 && mNegInfCount > 0 ) {
+            return Double.NaN;
+        }
+        if( mPosInfCount > 0 ) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if( mNegInfCount > 0 ) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if( mSumStale ) {
+            rebuildSum();
+            if( mSumStale ) {
+                return mSum;
+            }
+        }
+        return mSum + mComp;
+    }
+
+    /**
+     * @return smallest element
+     * @throws NoSuchElementException if list is empty
+     */
+    public double min() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        if( !mTracking ) {
+            rebuildAggregates();
+        }
+        return value( mMinQ.first() );
+    }
+
+    /**
+     * @return largest element
+     * @throws NoSuchElementException if list is empty
+     */
+    public double max() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        if( !mTracking ) {
+            rebuildAggregates();
+        }
+        return value( mMaxQ.first() );
+    }
+
+
+    public double[] toArray() {
+        return toArray( new double[mSize] );
+    }
+
+
+    public double[] toArray( double[] arr ) {
+        if( arr.length < mSize ) {
+            arr = new double[mSize];
+        }
+
+        int n = Math.min( mSize, mBuffer.length - mPos );
+        System.arraycopy( mBuffer, mPos, arr, 0, n );
+        System.arraycopy( mBuffer, 0, arr, n, mSize - n );
+        return arr;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append( '[' );
+        for( int i = 0; i < mSize; i++ ) {
+            if( i > 0 ) {
+                s.append( ", " );
+            }
+            s.append( mBuffer[slot( i )] );
+        }
+        return s.append( ']' ).toString();
+    }
+
+
+    public boolean ensureCapacity( int minCap ) {
+        final int oldCap = mBuffer.length;
+        if( minCap <= oldCap ) {
+            return true;
+        } else if( minCap > mMaxCap ) {
+            return false;
+        }
+
+        int newCap = ( oldCap * 3 ) / 2 + 1;
+        if( newCap > mMaxCap ) {
+            newCap = mMaxCap;
+        } else if( newCap < minCap ) {
+            newCap = minCap;
+        }
+
+        double[] arr = toArray( new double[newCap] );
+        mBuffer = arr;
+        mPos    = 0;
+        return true;
+    }
+
+
+
+    /**
+     * Ensures there is room for one more element, or that overwrite mode
+     * may discard one.
+     *
+     * @return false if element cannot be stored at all.
+     */
+    private boolean makeRoom() {
+        if( mSize < mBuffer.length || ensureCapacity( mSize + 1 ) ) {
+            return true;
+        }
+        if( !mOverwrite ) {
+            throw new IllegalStateException( "Maximum capacity exceeded." );
+        }
+        // Zero capacity list discards every element.
+        return mBuffer.length > 0;
+    }
+
+
+    private void addToSum( double v ) {
+        if( Double.isNaN( v ) ) {
+            mNanCount++;
+        } else if( v == Double.POSITIVE_INFINITY ) {
+            mPosInfCount++;
+        } else if( v == Double.NEGATIVE_INFINITY ) {
+            mNegInfCount++;
+        } else {
+            compensatedAdd( v );
+        }
+    }
+
+
+    private void removeFromSum( double v ) {
+        if( mSize == 0 ) {
+            // Discard accumulated rounding error.
+            resetSum();
+        } else if( Double.isNaN( v ) ) {
+            mNanCount--;
+        } else if( v == Double.POSITIVE_INFINITY ) {
+            mPosInfCount--;
+        } else if( v == Double.NEGATIVE_INFINITY ) {
+            mNegInfCount--;
+        } else {
+            compensatedAdd( -v );
+        }
+    }
+
+
+    private void compensatedAdd( double v ) {
+        if( mSumStale ) {
+            return;
+        }
+
+        double t = mSum + v;
+        if( Double.isInfinite( t ) ) {
+            // Compensation would become NaN and never recover.
+            mSum = t;
+            mSumStale = true;
+            return;
+        }
+
+        if( Math.abs( mSum ) >= Math.abs( v ) ) {
+            mComp += ( mSum - t ) + v;
+        } else {
+            mComp += ( v - t ) + mSum;
+        }
+        mSum = t;
+    }
+
+
+    private void rebuildSum() {
+        mSum  = 0.0;
+        mComp = 0.0;
+        mSumStale = false;
+
+        for( int i = 0; i < mSize && !mSumStale; i++ ) {
+            double v = mBuffer[slot( i )];
+            if( !Double.isNaN( v ) && !Double.isInfinite( v ) ) {
+                compensatedAdd( v );
+            }
+        }
+    }
+
+
+    private void resetSum() {
+        mSum  = 0.0;
+        mComp = 0.0;
+        mSumStale = false;
+        mNanCount    = 0;
+        mPosInfCount = 0;
+        mNegInfCount = 0;
+    }
+
+
+    private int slot( int index ) {
+        int s = mPos + index;
+        return s >= mBuffer.length ? s - mBuffer.length : s;
+    }
+
+
+    private double value( int seq ) {
+        return mBuffer[slot( seq - mBase )];
+    }
+
+
+    private void rebuildAggregates() {
+        if( mMinQ == null ) {
+            mMinQ = new SeqDeque( 16 );
+            mMaxQ = new SeqDeque( 16 );
+        } else {
+            mMinQ.clear();
+            mMaxQ.clear();
+        }
+
+        for( int i = 0; i < mSize; i++ ) {
+            final double v = mBuffer[slot( i )];
+            final int seq = mBase + i;
+
+            while( !mMinQ.isEmpty() && Double.compare( value( mMinQ.last() ), v ) >= 0 ) {
+                mMinQ.removeLast();
+            }
+            mMinQ.addLast( seq );
+
+            while( !mMaxQ.isEmpty() && Double.compare( value( mMaxQ.last() ), v ) <= 0 ) {
+                mMaxQ.removeLast();
+            }
+            mMaxQ.addLast( seq );
+        }
+
+        mTracking = true;
+    }
+
+}
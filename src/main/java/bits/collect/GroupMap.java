@@ -32,6 +32,13 @@ import java.util.*;
  * do not specify a group operate over all groups (<tt>size</tt>, 
  * <tt>clear</tt> and <tt>contains</tt>).  See documentation for specific
  * methods for details.
+ * <p>
+ * If ordering over the entire collection is never needed, the complete index
+ * can be disabled at construction. Each put then skips the complete index
+ * entirely, and methods that depend on it throw
+ * <tt>UnsupportedOperationException</tt>. Iteration over
+ * {@link #entrySet()}, {@link #keySet()} and {@link #values()} remains
+ * available, but proceeds group by group in no particular order.
  *
  * @param <G> Group identifiers type
  * @param <K> Key type
@@ -48,6 +55,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
     private Comparator<? super G> mGroupComparator = null;
     private Comparator<? super V> mValueComparator = null;
+    private final boolean mIndexAll;
+    //Orders nodes by value, then group. Shared to avoid allocating a comparator per operation.
+    private final Comparator<Node<K, V>> mNodeOrder;
     
     //Shared values
     private transient int mModCount = 0;
@@ -76,8 +86,21 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public GroupMap( Comparator<? super G> groupComparator, Comparator<? super V> valueComparator ) {
+        this( groupComparator, valueComparator, true );
+    }
+
+    /**
+     * @param groupComparator Comparator for groups, or null for natural ordering.
+     * @param valueComparator Comparator for values, or null for natural ordering.
+     * @param indexAll        If false, the complete index over all elements is
+     *                        not maintained, and methods that require it throw
+     *                        <tt>UnsupportedOperationException</tt>.
+     */
+    public GroupMap( Comparator<? super G> groupComparator, Comparator<? super V> valueComparator, boolean indexAll ) {
         mGroupComparator = groupComparator;
+        mIndexAll = indexAll;
         mValueComparator = valueComparator;
+        mNodeOrder = nodeComparator();
         mGroupLoadFactor = DEFAULT_LOAD_FACTOR;
         mKeyLoadFactor = DEFAULT_LOAD_FACTOR;
 
@@ -144,18 +167,129 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         return ret.mValue;
     }
 
+    /**
+     * Changes the value associated with a key without changing its group. The
+     * existing entry is kept and repositioned only within indices where the
+     * new value leaves it out of order with its neighbors, so small changes
+     * usually require no tree modification. As with {@link #put}, any other
+     * entry in the same group with an equivalent value is removed.
+     *
+     * @param key   Key of entry to update.
+     * @param value New value for entry.
+     * @return previous value associated with key, or null if key is not
+     *         present, in which case the collection is not modified.
+     */
+    public V updateValue( K key, V value ) {
+        if( value == null ) { throw new NullPointerException(); }
+
+        Node<K, V> node = findKeyNode( key );
+        if( node == null ) { return null; }
+
+        V prev = node.mValue;
+        node.mValue = value;
+        repositionNode( node );
+        return prev;
+    }
+
+    /**
+     * Restores the position of an entry after its value has been mutated in
+     * place in a way that may change its ordering. This behaves as
+     * {@link #updateValue} with the entry's current value. The collection must
+     * not be otherwise accessed between mutating a value and calling this method.
+     *
+     * @param key Key of entry whose value has changed.
+     * @return true iff key is present.
+     */
+    public boolean reorder( K key ) {
+        Node<K, V> node = findKeyNode( key );
+        if( node == null ) { return false; }
+
+        repositionNode( node );
+        return true;
+    }
+
     @Override
     public void putAll( Map<? extends K, ? extends V> t ) {
         putAll( null, t );
     }
 
 
+    /**
+     * Places all entries of <tt>values</tt> into a single group. If this map
+     * is empty, the entries are bulk loaded as by {@link #putAllGroups}.
+     *
+     * @param group  Group into which values will be placed.
+     * @param values Key-value pairs to place into group.
+     */
     public void putAll( G group, Map<? extends K, ? extends V> values ) {
+        if( mAllCount == 0 && values.size() > 1 ) {
+            putAllGroups( Collections.singletonMap( group, values ) );
+            return;
+        }
+
         for( Map.Entry<? extends K, ? extends V> entry : values.entrySet() ) {
             put( group, entry.getKey(), entry.getValue() );
         }
     }
 
+    /**
+     * Places the entries of several groups into the map at once.
+     * <p>
+     * If this map is empty, the input is sorted once and the key table, the
+     * value index and every group index are built directly in linear time,
+     * with tables sized up front. This is much faster than placing each entry
+     * individually. Repeated keys and comparison-equivalent values within a
+     * group are resolved exactly as if each entry were placed in iteration
+     * order with {@link #put}.
+     * <p>
+     * If this map is not empty, this method is equivalent to calling
+     * {@link #putAll(Object, java.util.Map)} for each group.
+     *
+     * @param groups Map of groups to the key-value pairs to place into each group.
+     */
+    public void putAllGroups( Map<? extends G, ? extends Map<? extends K, ? extends V>> groups ) {
+        if( mAllCount != 0 ) {
+            for( Map.Entry<? extends G, ? extends Map<? extends K, ? extends V>> e : groups.entrySet() ) {
+                putAll( e.getKey(), e.getValue() );
+            }
+            return;
+        }
+
+        int count = 0;
+        for( Map<? extends K, ? extends V> values : groups.values() ) {
+            count += values.size();
+        }
+
+        ensureGroupCapacity( groups.size() );
+        ensureKeyCapacity( count );
+
+        Node<K, V>[] nodes = newNodeArray( count );
+        int len = 0;
+
+        try {
+            for( Map.Entry<? extends G, ? extends Map<? extends K, ? extends V>> e : groups.entrySet() ) {
+                if( e.getValue().isEmpty() ) { continue; }
+
+                GroupNode<K, V> groupNode = getGroupNodeInstance( e.getKey() );
+
+                for( Map.Entry<? extends K, ? extends V> entry : e.getValue().entrySet() ) {
+                    K key   = entry.getKey();
+                    V value = entry.getValue();
+                    if( key == null || value == null ) { throw new NullPointerException(); }
+
+                    nodes[len++] = new Node<K, V>( groupNode, key, value, rehash( key.hashCode() ) );
+                }
+            }
+
+            loadNodes( nodes, len );
+
+        } catch( RuntimeException ex ) {
+            // Map was empty before call.
+            clear();
+            throw ex;
+        }
+    }
+
     @Override
     public V remove( Object key ) {
         Node<K, V> ret = removeNodeByKey( (K)key );
@@ -188,45 +322,123 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
      * @param group Group to remove from collection.
      */
     public void clear( G group ) {
-        //Find group.
-        final GroupNode<K, V>[] buckets = mGroupBuckets;
-        final int               hash    = (group == null ? 0 : rehash( group.hashCode() ));
-        final int               idx     = (hash & (buckets.length - 1));
+        dropGroup( group );
+    }
+
+    /**
+     * Removes a group and all of its elements. When the group holds a large
+     * fraction of the collection, the complete index is rebuilt in linear
+     * time rather than unlinking each element individually.
+     *
+     * @param group Group to remove from collection.
+     * @return true iff the group was present.
+     */
+    public boolean dropGroup( G group ) {
+        GroupNode<K, V> groupNode = findGroupNode( group );
+        if( groupNode == null ) { return false; }
 
-        GroupNode<K, V> prevGroupNode = null;
-        GroupNode<K, V> groupNode     = null;
+        removeGroupNode( groupNode );
 
-        {
-            groupNode = buckets[idx];
+        final int  size    = groupNode.mSize;
+        final int  remain  = mAllCount - size;
+        final long rebuild = (long)size * (32 - Integer.numberOfLeadingZeros( mAllCount ));
 
-            while( groupNode != null ) {
-                if( hash == groupNode.mHash && (group == groupNode.mGroup || group != null && group.equals( groupNode.mGroup )) ) {
-                    break;
+        if( mIndexAll && rebuild > mAllCount ) {
+            Node<K, V>[] nodes = newNodeArray( remain );
+            int          n     = 0;
+
+            for( Node<K, V> node = firstNodeAll(); node != null; node = nextNodeAll( node ) ) {
+                if( node.mGroup == groupNode ) {
+                    removeNodeHash( node );
+                } else {
+                    nodes[n++] = node;
                 }
+            }
+
+            mAllRoot = buildTreeAll( nodes, 0, n - 1, 0, redLevel( n ) );
+            mAllCount = n;
+            mModCount++;
 
-                prevGroupNode = groupNode;
-                groupNode = groupNode.mNext;
+        } else {
+            for( Node<K, V> node = firstNodeGroup( groupNode ); node != null; node = nextNodeGroup( node ) ) {
+                removeNodeAll( node );
+                removeNodeHash( node );
             }
+        }
+
+        return true;
+    }
 
-            if( groupNode == null ) { return; }
+    /**
+     * Moves all elements of one group into another. If <tt>dst</tt> is not
+     * present, the source group is renamed in constant time and its group
+     * index is kept intact. If the complete index is maintained, renaming also
+     * requires a linear scan of the group, because entries whose values tie
+     * with entries of other groups may need repositioning. If <tt>dst</tt> is
+     * present, the two group indices are merged in linear time. As with
+     * {@link #put}, a moved value replaces any equivalent value already in
+     * <tt>dst</tt>, and the replaced entry is removed from the collection.
+     *
+     * @param src Group from which to move elements.
+     * @param dst Group into which elements are moved.
+     * @return true iff the collection was modified.
+     */
+    public boolean moveGroup( G src, G dst ) {
+        GroupNode<K, V> srcNode = findGroupNode( src );
+        if( srcNode == null ) { return false; }
+
+        GroupNode<K, V> dstNode = findGroupNode( dst );
+        if( dstNode == srcNode ) { return false; }
+
+        //Group order only matters between equivalent values, so only those nodes may need repositioning.
+        if( dstNode == null ) {
+            removeGroupNode( srcNode );
+            srcNode.mGroup = dst;
+            srcNode.mHash = (dst == null ? 0 : rehash( dst.hashCode() ));
+            insertGroupNode( srcNode );
+
+            if( mIndexAll ) {
+                for( Node<K, V> node = firstNodeGroup( srcNode ); node != null; node = nextNodeGroup( node ) ) {
+                    reorderNodeAll( node );
+                }
+            }
+            return true;
         }
 
-        mModCount++;
-        mGroupCount--;
+        Node<K, V>[] moved = newNodeArray( srcNode.mSize );
+        int          n     = 0;
 
-        if( prevGroupNode == null ) {
-            buckets[idx] = groupNode.mNext;
-        } else {
-            prevGroupNode.mNext = groupNode.mNext;
+        for( Node<K, V> node = firstNodeGroup( srcNode ); node != null; node = nextNodeGroup( node ) ) {
+            moved[n++] = node;
         }
 
-        Node<K, V> node = firstNodeGroup( groupNode );
+        removeGroupNode( srcNode );
+        mergeGroupNodes( moved, dstNode );
 
-        while( node != null ) {
-            removeNodeAll( node );
-            removeNodeHash( node );
-            node = nextNodeGroup( node );
+        if( mIndexAll ) {
+            for( Node<K, V> node : moved ) {
+                reorderNodeAll( node );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves all elements of several groups into a single group, as by
+     * calling {@link #moveGroup} for each source group.
+     *
+     * @param srcs Groups from which to move elements.
+     * @param dst  Group into which elements are moved.
+     * @return true iff the collection was modified.
+     */
+    public boolean mergeGroups( Collection<? extends G> srcs, G dst ) {
+        boolean ret = false;
+
+        for( G src : srcs ) {
+            ret |= moveGroup( src, dst );
         }
+
+        return ret;
     }
 
     /**
@@ -285,6 +497,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public V firstValue() {
+        checkIndexAll();
         Node<K, V> node = firstNodeAll();
         return (node == null ? null : node.mValue);
     }
@@ -300,6 +513,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public Map.Entry<K, V> firstEntry() {
+        checkIndexAll();
         return firstNodeAll();
     }
 
@@ -313,6 +527,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public V lastValue() {
+        checkIndexAll();
         Node<K, V> node = lastNodeAll();
         return (node == null ? null : node.mValue);
     }
@@ -328,6 +543,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public Map.Entry<K, V> lastEntry() {
+        checkIndexAll();
         return lastNodeAll();
     }
 
@@ -341,6 +557,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public V ceilingValue( V value ) {
+        checkIndexAll();
         Node<K, V> node = ceilingAll( value );
         return (node == null ? null : node.mValue);
     }
@@ -353,6 +570,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public Map.Entry<K, V> ceilingEntry( V value ) {
+        checkIndexAll();
         return ceilingAll( value );
     }
 
@@ -363,6 +581,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public V floorValue( V value ) {
+        checkIndexAll();
         Node<K, V> node = floorAll( value );
         return (node == null ? null : node.mValue);
     }
@@ -375,6 +594,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public Map.Entry<K, V> floorEntry( V value ) {
+        checkIndexAll();
         return floorAll( value );
     }
 
@@ -385,6 +605,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public V higherValue( V value ) {
+        checkIndexAll();
         Node<K, V> node = higherAll( value );
         return (node == null ? null : node.mValue);
     }
@@ -397,6 +618,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public Map.Entry<K, V> higherEntry( V value ) {
+        checkIndexAll();
         return higherAll( value );
     }
 
@@ -407,6 +629,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public V lowerValue( V value ) {
+        checkIndexAll();
         Node<K, V> node = lowerAll( value );
         return (node == null ? null : node.mValue);
     }
@@ -419,6 +642,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     public Map.Entry<K, V> lowerEntry( V value ) {
+        checkIndexAll();
         return lowerAll( value );
     }
 
@@ -428,11 +652,145 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
 
+    /**
+     * Removes and returns the entry with the lowest value within an
+     * equivalence class or range.
+     *
+     * @param comp Selects values <tt>v</tt> where <tt>comp.compareTo( v ) == 0</tt>.
+     * @return removed entry, or null if no value is selected.
+     * @see #valueRange
+     */
+    public Map.Entry<K, V> pollFirstEntry( Comparable<? super V> comp ) {
+        checkIndexAll();
+        Node<K, V> node = firstEquivalentAll( comp );
+        if( node != null ) { removeNodeCompletely( node, true ); }
+
+        return node;
+    }
+
+    public Map.Entry<K, V> pollFirstEntry( G group, Comparable<? super V> comp ) {
+        GroupNode<K, V> groupNode = findGroupNode( group );
+        if( groupNode == null ) { return null; }
+
+        Node<K, V> node = firstEquivalentGroup( groupNode, comp );
+        if( node != null ) { removeNodeCompletely( node, true ); }
+
+        return node;
+    }
+
+    /**
+     * Removes and returns the entry with the greatest value within an
+     * equivalence class or range.
+     *
+     * @param comp Selects values <tt>v</tt> where <tt>comp.compareTo( v ) == 0</tt>.
+     * @return removed entry, or null if no value is selected.
+     * @see #valueRange
+     */
+    public Map.Entry<K, V> pollLastEntry( Comparable<? super V> comp ) {
+        checkIndexAll();
+        Node<K, V> node = lastEquivalentAll( comp );
+        if( node != null ) { removeNodeCompletely( node, true ); }
+
+        return node;
+    }
+
+    public Map.Entry<K, V> pollLastEntry( G group, Comparable<? super V> comp ) {
+        GroupNode<K, V> groupNode = findGroupNode( group );
+        if( groupNode == null ) { return null; }
+
+        Node<K, V> node = lastEquivalentGroup( groupNode, comp );
+        if( node != null ) { removeNodeCompletely( node, true ); }
+
+        return node;
+    }
+
+    /**
+     * @param key Key to find
+     * @return number of elements that precede the element for <tt>key</tt>
+     *         within the entire collection, or -1 if <tt>key</tt> is not present.
+     */
+    public int rank( K key ) {
+        checkIndexAll();
+        Node<K, V> node = findKeyNode( key );
+        return node == null ? -1 : rankAll( node );
+    }
+
+    /**
+     * @param key Key to find
+     * @return number of elements that precede the element for <tt>key</tt>
+     *         within its group, or -1 if <tt>key</tt> is not present.
+     */
+    public int groupRank( K key ) {
+        Node<K, V> node = findKeyNode( key );
+        return node == null ? -1 : rankGroup( node );
+    }
+
+    /**
+     * @param index Position of element within the entire collection.
+     * @return the entry at position <tt>index</tt>
+     * @throws IndexOutOfBoundsException if index is negative or not less than <tt>size()</tt>
+     */
+    public Map.Entry<K, V> select( int index ) {
+        checkIndexAll();
+        if( index < 0 || index >= mAllCount ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + mAllCount );
+        }
+        return selectAll( index );
+    }
+
+    /**
+     * @param group Group to search
+     * @param index Position of element within group.
+     * @return the entry at position <tt>index</tt> within <tt>group</tt>
+     * @throws IndexOutOfBoundsException if index is negative or not less than <tt>size( group )</tt>
+     */
+    public Map.Entry<K, V> select( G group, int index ) {
+        GroupNode<K, V> groupNode = findGroupNode( group );
+        int size = groupNode == null ? 0 : groupNode.mSize;
+        if( index < 0 || index >= size ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+        }
+        return selectGroup( groupNode, index );
+    }
+
+    /**
+     * Counts values within a range. A value <tt>v</tt> is within range if
+     * <tt>low.compareTo( v ) &lt;= 0</tt> and <tt>high.compareTo( v ) &gt;= 0</tt>.
+     *
+     * @param low  Lower bound of range, inclusive.
+     * @param high Upper bound of range, inclusive.
+     * @return number of values within range in the entire collection.
+     */
+    public int countRange( Comparable<? super V> low, Comparable<? super V> high ) {
+        checkIndexAll();
+        int ret = countBelowAll( high, true ) - countBelowAll( low, false );
+        return ret < 0 ? 0 : ret;
+    }
+
+    /**
+     * Counts values within a range in a single group.
+     *
+     * @param group Group to search
+     * @param low   Lower bound of range, inclusive.
+     * @param high  Upper bound of range, inclusive.
+     * @return number of values within range in <tt>group</tt>.
+     * @see #countRange(Comparable, Comparable)
+     */
+    public int countRange( G group, Comparable<? super V> low, Comparable<? super V> high ) {
+        GroupNode<K, V> groupNode = findGroupNode( group );
+        if( groupNode == null ) { return 0; }
+
+        int ret = countBelowGroup( groupNode, high, true ) - countBelowGroup( groupNode, low, false );
+        return ret < 0 ? 0 : ret;
+    }
+
+
     public Set<K> keySet() {
         return new AllKeySet( true, null );
     }
 
     public Set<K> keySet( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllKeySet( true, comp );
     }
 
@@ -445,10 +803,12 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
     public Set<K> descendingKeySet() {
+        checkIndexAll();
         return new AllKeySet( false, null );
     }
 
     public Set<K> descendingKeySet( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllKeySet( false, comp );
     }
 
@@ -466,6 +826,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
     public Set<Map.Entry<K, V>> entrySet( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllEntrySet( true, comp );
     }
 
@@ -478,10 +839,12 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
     public Set<Map.Entry<K, V>> descendingEntrySet() {
+        checkIndexAll();
         return new AllEntrySet( false, null );
     }
 
     public Set<Map.Entry<K, V>> descendingEntrySet( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllEntrySet( false, comp );
     }
 
@@ -499,6 +862,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
     public Collection<V> values( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllValues( true, comp );
     }
 
@@ -511,10 +875,12 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
     public Collection<V> descendingValues() {
+        checkIndexAll();
         return new AllValues( false, null );
     }
 
     public Collection<V> descendingValues( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllValues( false, comp );
     }
 
@@ -526,6 +892,122 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         return new GroupValues( false, group, comp );
     }
 
+    /**
+     * Creates a selector for a range of values under this map's value
+     * ordering. The result may be passed to any method that accepts an
+     * equivalence class, such as {@link #entrySet(Comparable)},
+     * {@link #groupValues(Object, Comparable)}, {@link #countRange} or
+     * {@link #pollFirstEntry(Comparable)}. Views over a range locate their
+     * first element in O(log n) and stop at the end of the range.
+     *
+     * @param low           Lower bound of range, or null if unbounded.
+     * @param lowInclusive  Whether <tt>low</tt> is included in range.
+     * @param high          Upper bound of range, or null if unbounded.
+     * @param highInclusive Whether <tt>high</tt> is included in range.
+     * @return Comparable that is equal to values within range.
+     */
+    public Comparable<V> valueRange( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return new ValueRange( low, lowInclusive, high, highInclusive );
+    }
+
+    /**
+     * @return view of values below <tt>high</tt> in the entire collection, in ascending order.
+     */
+    public Collection<V> headValues( V high, boolean inclusive ) {
+        return values( valueRange( null, false, high, inclusive ) );
+    }
+
+    /**
+     * @return view of values above <tt>low</tt> in the entire collection, in ascending order.
+     */
+    public Collection<V> tailValues( V low, boolean inclusive ) {
+        return values( valueRange( low, inclusive, null, false ) );
+    }
+
+    /**
+     * @return view of values between <tt>low</tt> and <tt>high</tt> in the entire collection, in ascending order.
+     * @see #valueRange
+     */
+    public Collection<V> subValues( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return values( valueRange( low, lowInclusive, high, highInclusive ) );
+    }
+
+    /**
+     * @return view of values between <tt>low</tt> and <tt>high</tt> in the entire collection, in descending order.
+     * @see #valueRange
+     */
+    public Collection<V> descendingSubValues( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return descendingValues( valueRange( low, lowInclusive, high, highInclusive ) );
+    }
+
+    /**
+     * @return view of values between <tt>low</tt> and <tt>high</tt> within a group, in ascending order.
+     * @see #valueRange
+     */
+    public Collection<V> groupSubValues( G group, V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return groupValues( group, valueRange( low, lowInclusive, high, highInclusive ) );
+    }
+
+    /**
+     * @return view of values between <tt>low</tt> and <tt>high</tt> within a group, in descending order.
+     * @see #valueRange
+     */
+    public Collection<V> descendingGroupSubValues( G group, V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return descendingGroupValues( group, valueRange( low, lowInclusive, high, highInclusive ) );
+    }
+
+    /**
+     * Provides a view of the entries within several groups, in the same
+     * order as the entire collection. The view is produced by lazily merging
+     * the indices of each selected group, so iteration only touches the
+     * selected groups.
+     *
+     * @param groups Groups to include in view.
+     * @return view of entries within all selected groups.
+     */
+    public Set<Map.Entry<K, V>> multiGroupEntrySet( Collection<? extends G> groups ) {
+        return new MultiGroupEntrySet( true, groups, null );
+    }
+
+    /**
+     * @param groups Groups to include in view.
+     * @param comp   Limits view to values <tt>v</tt> where <tt>comp.compareTo( v ) == 0</tt>.
+     * @return view of entries within all selected groups.
+     * @see #multiGroupEntrySet(java.util.Collection)
+     */
+    public Set<Map.Entry<K, V>> multiGroupEntrySet( Collection<? extends G> groups, Comparable<? super V> comp ) {
+        return new MultiGroupEntrySet( true, groups, comp );
+    }
+
+    public Set<Map.Entry<K, V>> descendingMultiGroupEntrySet( Collection<? extends G> groups ) {
+        return new MultiGroupEntrySet( false, groups, null );
+    }
+
+    public Set<Map.Entry<K, V>> descendingMultiGroupEntrySet( Collection<? extends G> groups, Comparable<? super V> comp ) {
+        return new MultiGroupEntrySet( false, groups, comp );
+    }
+
+    /**
+     * @param groups Groups to include in view.
+     * @return view of values within all selected groups.
+     * @see #multiGroupEntrySet(java.util.Collection)
+     */
+    public Collection<V> multiGroupValues( Collection<? extends G> groups ) {
+        return new MultiGroupValues( true, groups, null );
+    }
+
+    public Collection<V> multiGroupValues( Collection<? extends G> groups, Comparable<? super V> comp ) {
+        return new MultiGroupValues( true, groups, comp );
+    }
+
+    public Collection<V> descendingMultiGroupValues( Collection<? extends G> groups ) {
+        return new MultiGroupValues( false, groups, null );
+    }
+
+    public Collection<V> descendingMultiGroupValues( Collection<? extends G> groups, Comparable<? super V> comp ) {
+        return new MultiGroupValues( false, groups, comp );
+    }
+
 
     /**
      * Provides a view to the set of groups contained in this collection.  The
@@ -544,6 +1026,17 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     private Node<K, V> findNodeThatContains( Object obj ) {
         if( obj == null ) { return null; }
 
+        if( !mIndexAll ) {
+            for( GroupNode<K, V> g : mGroupBuckets ) {
+                for( ; g != null; g = g.mNext ) {
+                    Node<K, V> node = findNodeThatContains( (G)g.mGroup, obj );
+                    if( node != null ) { return node; }
+                }
+            }
+
+            return null;
+        }
+
         final V value = (V)obj;
 
         if( mValueComparator != null ) {
@@ -671,6 +1164,17 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         }
     }
 
+    private void insertGroupNode( GroupNode<K, V> groupNode ) {
+        final GroupNode<K, V>[] buckets = mGroupBuckets;
+        final int               idx     = (groupNode.mHash & (buckets.length - 1));
+
+        mModCount++;
+        groupNode.mNext = buckets[idx];
+        buckets[idx] = groupNode;
+
+        if( mGroupCount++ >= mGroupThreshold ) { resizeGroups( 2 * buckets.length ); }
+    }
+
     private void resizeGroups( int newCapacity ) {
         GroupNode<K, V>[] oldBuckets = mGroupBuckets;
 
@@ -773,6 +1277,24 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         mKeyThreshold = (int)(newCapacity * mKeyLoadFactor);
     }
 
+    private void ensureGroupCapacity( int count ) {
+        int capacity = mGroupBuckets.length;
+        while( capacity < MAXIMUM_CAPACITY && (int)(capacity * mGroupLoadFactor) <= count ) {
+            capacity <<= 1;
+        }
+
+        if( capacity > mGroupBuckets.length ) { resizeGroups( capacity ); }
+    }
+
+    private void ensureKeyCapacity( int count ) {
+        int capacity = mKeyBuckets.length;
+        while( capacity < MAXIMUM_CAPACITY && (int)(capacity * mKeyLoadFactor) <= count ) {
+            capacity <<= 1;
+        }
+
+        if( capacity > mKeyBuckets.length ) { resizeKeys( capacity ); }
+    }
+
     private static int rehash( int hash ) {
         hash ^= (hash >>> 20) ^ (hash >>> 12);
         return hash ^ (hash >>> 7) ^ (hash >>> 4);
@@ -797,6 +1319,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         mAllCount++;
         mModCount++;
 
+        if( !mIndexAll ) { return; }
+
         if( parent == null ) {
             mAllRoot = node;
             node.mAllColor = BLACK;
@@ -811,6 +1335,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             parent.mAllRight = node;
         }
 
+        for( Node<K, V> p = parent; p != null; p = p.mAllParent ) { p.mAllSize++; }
+
         while( true ) {
             if( parent == null ) {
                 node.mAllColor = BLACK;
@@ -869,6 +1395,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         mAllCount--;
         mModCount++;
 
+        if( !mIndexAll ) { return; }
+
         //If we are deleting a node with two children, swap
         //it with a node that has at most one child.
         if( node.mAllLeft != null && node.mAllRight != null ) {
@@ -902,6 +1430,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             }
         }
 
+        for( Node<K, V> p = newParent; p != null; p = p.mAllParent ) { p.mAllSize--; }
+
         //If oldParent was RED, the constraints will be maintained.
         if( oldParent.mAllColor == RED ) { return; }
 
@@ -1009,6 +1539,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
                 right.mAllParent.mAllRight = right;
             }
         }
+
+        right.mAllSize = node.mAllSize;
+        node.mAllSize = sizeAll( node.mAllLeft ) + sizeAll( node.mAllRight ) + 1;
     }
 
     private void rotateRightAll( Node<K, V> node ) {
@@ -1034,6 +1567,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
                 left.mAllParent.mAllLeft = left;
             }
         }
+
+        left.mAllSize = node.mAllSize;
+        node.mAllSize = sizeAll( node.mAllLeft ) + sizeAll( node.mAllRight ) + 1;
     }
 
     private void swapNodesAll( Node<K, V> a, Node<K, V> b ) {
@@ -1047,6 +1583,10 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             boolean tempColor = a.mAllColor;
             a.mAllColor = b.mAllColor;
             b.mAllColor = tempColor;
+
+            int tempSize = a.mAllSize;
+            a.mAllSize = b.mAllSize;
+            b.mAllSize = tempSize;
         }
 
         Node<K, V> tempNode;
@@ -1131,22 +1671,106 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         }
     }
 
-    private Node<K, V> firstNodeAll() {
-        Node<K, V> node = mAllRoot;
-
-        if( node == null ) { return null; }
-
-        while( node.mAllLeft != null ) { node = node.mAllLeft; }
+    private static int sizeAll( Node<?, ?> node ) {
+        return node == null ? 0 : node.mAllSize;
+    }
 
-        return node;
+    private int rankAll( Node<K, V> node ) {
+        int ret = sizeAll( node.mAllLeft );
+        while( node.mAllParent != null ) {
+            if( node == node.mAllParent.mAllRight ) {
+                ret += sizeAll( node.mAllParent.mAllLeft ) + 1;
+            }
+            node = node.mAllParent;
+        }
+        return ret;
     }
 
-    private Node<K, V> lastNodeAll() {
+    private Node<K, V> selectAll( int index ) {
         Node<K, V> node = mAllRoot;
+        while( true ) {
+            int left = sizeAll( node.mAllLeft );
+            if( index < left ) {
+                node = node.mAllLeft;
+            } else if( index > left ) {
+                index -= left + 1;
+                node = node.mAllRight;
+            } else {
+                return node;
+            }
+        }
+    }
 
-        if( node == null ) { return null; }
+    /**
+     * @return number of nodes with values less than <tt>comp</tt>, or less than
+     *         or equivalent to <tt>comp</tt> if <tt>inclusive</tt>.
+     */
+    private int countBelowAll( Comparable<? super V> comp, boolean inclusive ) {
+        Node<K, V> node = mAllRoot;
+        int        ret  = 0;
 
-        while( node.mAllRight != null ) { node = node.mAllRight; }
+        while( node != null ) {
+            int c = comp.compareTo( node.mValue );
+
+            if( c > 0 || inclusive && c == 0 ) {
+                ret += sizeAll( node.mAllLeft ) + 1;
+                node = node.mAllRight;
+            } else {
+                node = node.mAllLeft;
+            }
+        }
+
+        return ret;
+    }
+
+    private void checkIndexAll() {
+        if( !mIndexAll ) {
+            throw new UnsupportedOperationException( "Complete index disabled for this GroupMap." );
+        }
+    }
+
+    /**
+     * @return first node of the first non-empty group at or after <tt>group</tt>
+     *         in its bucket chain, then at or after bucket <tt>idx</tt>.
+     */
+    private Node<K, V> firstNodeByGroup( GroupNode<K, V> group, int idx ) {
+        final GroupNode<K, V>[] buckets = mGroupBuckets;
+
+        while( true ) {
+            for( ; group != null; group = group.mNext ) {
+                if( group.mRoot != null ) { return firstNodeGroup( group ); }
+            }
+
+            if( idx >= buckets.length ) { return null; }
+
+            group = buckets[idx++];
+        }
+    }
+
+    private Node<K, V> nextNodeByGroup( Node<K, V> node ) {
+        Node<K, V> next = nextNodeGroup( node );
+        if( next != null ) { return next; }
+
+        GroupNode<K, V> group = node.mGroup;
+        return firstNodeByGroup( group.mNext, (group.mHash & (mGroupBuckets.length - 1)) + 1 );
+    }
+
+    private Node<K, V> firstNodeAll() {
+        Node<K, V> node = mAllRoot;
+
+        if( node == null ) { return null; }
+
+        while( node.mAllLeft != null ) { node = node.mAllLeft; }
+
+        return node;
+    }
+
+    private Node<K, V> lastNodeAll() {
+        Node<K, V> node = mAllRoot;
+
+        if( node == null ) { return null; }
+
+        while( node.mAllRight != null ) { node = node.mAllRight; }
 
         return node;
     }
@@ -1417,6 +2041,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             parent.mGroupRight = node;
         }
 
+        for( Node<K, V> p = parent; p != null; p = p.mGroupParent ) { p.mGroupSize++; }
+
         while( true ) {
             if( parent == null ) {
                 node.mGroupColor = BLACK;
@@ -1508,6 +2134,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             }
         }
 
+        for( Node<K, V> p = newParent; p != null; p = p.mGroupParent ) { p.mGroupSize--; }
+
         //If oldParent was RED, the constraints will be maintained.
         if( oldParent.mGroupColor == RED ) { return; }
 
@@ -1615,6 +2243,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
                 right.mGroupParent.mGroupRight = right;
             }
         }
+
+        right.mGroupSize = node.mGroupSize;
+        node.mGroupSize = sizeGroup( node.mGroupLeft ) + sizeGroup( node.mGroupRight ) + 1;
     }
 
     private void rotateRightGroup( GroupNode<K, V> group, Node<K, V> node ) {
@@ -1640,6 +2271,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
                 left.mGroupParent.mGroupLeft = left;
             }
         }
+
+        left.mGroupSize = node.mGroupSize;
+        node.mGroupSize = sizeGroup( node.mGroupLeft ) + sizeGroup( node.mGroupRight ) + 1;
     }
 
     private void swapNodesGroup( GroupNode<K, V> group, Node<K, V> a, Node<K, V> b ) {
@@ -1653,6 +2287,10 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             boolean tempColor = a.mGroupColor;
             a.mGroupColor = b.mGroupColor;
             b.mGroupColor = tempColor;
+
+            int tempSize = a.mGroupSize;
+            a.mGroupSize = b.mGroupSize;
+            b.mGroupSize = tempSize;
         }
 
         Node<K, V> tempNode;
@@ -1737,6 +2375,58 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         }
     }
 
+    private static int sizeGroup( Node<?, ?> node ) {
+        return node == null ? 0 : node.mGroupSize;
+    }
+
+    private int rankGroup( Node<K, V> node ) {
+        int ret = sizeGroup( node.mGroupLeft );
+        while( node.mGroupParent != null ) {
+            if( node == node.mGroupParent.mGroupRight ) {
+                ret += sizeGroup( node.mGroupParent.mGroupLeft ) + 1;
+            }
+            node = node.mGroupParent;
+        }
+        return ret;
+    }
+
+    private Node<K, V> selectGroup( GroupNode<K, V> group, int index ) {
+        Node<K, V> node = group.mRoot;
+        while( true ) {
+            int left = sizeGroup( node.mGroupLeft );
+            if( index < left ) {
+                node = node.mGroupLeft;
+            } else if( index > left ) {
+                index -= left + 1;
+                node = node.mGroupRight;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * @return number of nodes in group with values less than <tt>comp</tt>,
+     *         or less than or equivalent to <tt>comp</tt> if <tt>inclusive</tt>.
+     */
+    private int countBelowGroup( GroupNode<K, V> group, Comparable<? super V> comp, boolean inclusive ) {
+        Node<K, V> node = group.mRoot;
+        int        ret  = 0;
+
+        while( node != null ) {
+            int c = comp.compareTo( node.mValue );
+
+            if( c > 0 || inclusive && c == 0 ) {
+                ret += sizeGroup( node.mGroupLeft ) + 1;
+                node = node.mGroupRight;
+            } else {
+                node = node.mGroupLeft;
+            }
+        }
+
+        return ret;
+    }
+
     private Node<K, V> firstNodeGroup( GroupNode<K, V> group ) {
         Node<K, V> node = group.mRoot;
 
@@ -2444,15 +3134,298 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         }
     }
 
+    /**
+     * Loads nodes into an empty map. Nodes must already be assigned to their
+     * groups, and the tables must already be large enough to hold all nodes.
+     */
+    private void loadNodes( Node<K, V>[] nodes, int len ) {
+        mModCount++;
+
+        //Placing nodes in order with put() would keep a node only if no later
+        //node has the same key, and no later node in the same group has an
+        //equivalent value. A node displaced by either rule still displaces
+        //earlier nodes by the other, so both rules are applied to all nodes.
+
+        //Fill key table. Last occurrence of each key wins.
+        final Node<K, V>[] buckets = mKeyBuckets;
+
+        for( int i = len - 1; i >= 0; i-- ) {
+            Node<K, V> node = nodes[i];
+            K          key  = node.mKey;
+            int        idx  = node.mHash & (buckets.length - 1);
+            Node<K, V> n    = buckets[idx];
+
+            while( n != null ) {
+                if( node.mHash == n.mHash && (key == n.mKey || key.equals( n.mKey )) ) { break; }
+
+                n = n.mNext;
+            }
+
+            if( n == null ) {
+                node.mNext = buckets[idx];
+                buckets[idx] = node;
+                mKeyCount++;
+            }
+        }
+
+        //Sort into complete order. Sort is stable, so last occurrence of each value in a group wins.
+        final Comparator<Node<K, V>> comp = mNodeOrder;
+        Arrays.sort( nodes, 0, len, comp );
+        int count = 0;
+
+        for( int i = 0; i < len; i++ ) {
+            Node<K, V> node = nodes[i];
+            if( findKeyNode( node.mKey ) != node ) { continue; }
+
+            if( i + 1 < len && node.mGroup == nodes[i + 1].mGroup && comp.compare( node, nodes[i + 1] ) == 0 ) {
+                removeNodeHash( node );
+            } else {
+                nodes[count++] = node;
+            }
+        }
+
+        mAllRoot = (mIndexAll ? buildTreeAll( nodes, 0, count - 1, 0, redLevel( count ) ) : null);
+        mAllCount = count;
+
+        //Chain nodes of each group in order, then build group trees.
+        for( int i = count - 1; i >= 0; i-- ) {
+            Node<K, V>      node  = nodes[i];
+            GroupNode<K, V> group = node.mGroup;
+            node.mGroupRight = group.mRoot;
+            group.mRoot = node;
+            group.mSize++;
+        }
+
+        final GroupNode<K, V>[] groupBuckets = mGroupBuckets;
+
+        //As with put(), a group whose entries were all displaced remains present and empty.
+        for( int i = 0; i < groupBuckets.length; i++ ) {
+            for( GroupNode<K, V> group = groupBuckets[i]; group != null; group = group.mNext ) {
+                int n = 0;
+                for( Node<K, V> node = group.mRoot; node != null; node = node.mGroupRight ) {
+                    nodes[n++] = node;
+                }
+
+                group.mRoot = buildTreeGroup( nodes, 0, n - 1, 0, redLevel( n ) );
+            }
+        }
+    }
+
+    /**
+     * Merges sorted nodes into a group, rebuilding the group index. Existing
+     * nodes with values equivalent to merged nodes are removed from the collection.
+     */
+    private void mergeGroupNodes( Node<K, V>[] moved, GroupNode<K, V> dst ) {
+        Node<K, V>[] out = newNodeArray( dst.mSize + moved.length );
+        Node<K, V>   a   = firstNodeGroup( dst );
+        int          j   = 0;
+        int          n   = 0;
+
+        while( a != null || j < moved.length ) {
+            int c = (a == null ? 1 : j == moved.length ? -1 : compareValues( a.mValue, moved[j].mValue ));
+
+            if( c < 0 ) {
+                out[n++] = a;
+                a = nextNodeGroup( a );
+            } else {
+                if( c == 0 ) {
+                    Node<K, V> dead = a;
+                    a = nextNodeGroup( a );
+                    removeNodeAll( dead );
+                    removeNodeHash( dead );
+                }
+
+                moved[j].mGroup = dst;
+                out[n++] = moved[j++];
+            }
+        }
+
+        dst.mRoot = buildTreeGroup( out, 0, n - 1, 0, redLevel( n ) );
+        dst.mSize = n;
+        mModCount++;
+    }
+
+    /**
+     * Repositions node within complete index after its group has changed.
+     * A node is out of place only if it ties in value with a neighbor.
+     */
+    private void reorderNodeAll( Node<K, V> node ) {
+        final Comparator<Node<K, V>> comp = mNodeOrder;
+        Node<K, V> prev = prevNodeAll( node );
+        Node<K, V> next = nextNodeAll( node );
+
+        if( (prev != null && comp.compare( prev, node ) > 0) || (next != null && comp.compare( node, next ) > 0) ) {
+            reinsertNodeAll( node, comp );
+        }
+    }
+
+    private void reinsertNodeAll( Node<K, V> node, Comparator<Node<K, V>> comp ) {
+        removeNodeAll( node );
+
+        node.mAllColor = RED;
+        node.mAllParent = null;
+        node.mAllLeft = null;
+        node.mAllRight = null;
+        node.mAllSize = 1;
+
+        Node<K, V> parent = mAllRoot;
+        boolean    left   = true;
+
+        while( parent != null ) {
+            left = comp.compare( node, parent ) < 0;
+            Node<K, V> child = (left ? parent.mAllLeft : parent.mAllRight);
+            if( child == null ) { break; }
+            parent = child;
+        }
+
+        insertNodeAll( node, parent, left );
+    }
+
+    /**
+     * Moves a node whose value has changed to its proper place in each index,
+     * first checking whether its neighbors are still in order. Other nodes in
+     * the same group with equivalent values are removed.
+     */
+    private void repositionNode( Node<K, V> node ) {
+        final GroupNode<K, V> group = node.mGroup;
+        final V               value = node.mValue;
+
+        Node<K, V> prev = prevNodeGroup( node );
+        Node<K, V> next = nextNodeGroup( node );
+
+        if( (prev != null && compareValues( prev.mValue, value ) >= 0) || (next != null && compareValues( value, next.mValue ) >= 0) ) {
+            removeNodeGroup( group, node );
+
+            node.mGroupColor = RED;
+            node.mGroupParent = null;
+            node.mGroupLeft = null;
+            node.mGroupRight = null;
+            node.mGroupSize = 1;
+
+            Node<K, V> parent = group.mRoot;
+            boolean    left   = true;
+
+            while( parent != null ) {
+                int c = compareValues( value, parent.mValue );
+
+                if( c == 0 ) {
+                    removeNodeCompletely( parent, false );
+                    parent = group.mRoot;
+                    continue;
+                }
+
+                left = c < 0;
+                Node<K, V> child = (left ? parent.mGroupLeft : parent.mGroupRight);
+                if( child == null ) { break; }
+                parent = child;
+            }
+
+            insertNodeGroup( group, node, parent, left );
+        }
+
+        if( !mIndexAll ) { return; }
+
+        final Comparator<Node<K, V>> comp = mNodeOrder;
+        prev = prevNodeAll( node );
+        next = nextNodeAll( node );
+
+        if( (prev != null && comp.compare( prev, node ) > 0) || (next != null && comp.compare( node, next ) > 0) ) {
+            reinsertNodeAll( node, comp );
+        }
+    }
+
+    private int compareValues( V a, V b ) {
+        if( mValueComparator != null ) { return mValueComparator.compare( a, b ); }
+        return ((Comparable<? super V>)a).compareTo( b );
+    }
+
+    private Comparator<Node<K, V>> nodeComparator() {
+        final Comparator<? super V> valueComp = mValueComparator;
+        final Comparator<? super G> groupComp = mGroupComparator;
+
+        return new Comparator<Node<K, V>>() {
+            public int compare( Node<K, V> a, Node<K, V> b ) {
+                int c;
+                if( valueComp != null ) {
+                    c = valueComp.compare( a.mValue, b.mValue );
+                } else {
+                    c = ((Comparable<? super V>)a.mValue).compareTo( b.mValue );
+                }
+
+                if( c != 0 || a.mGroup == b.mGroup ) { return c; }
+
+                G ga = (G)a.mGroup.mGroup;
+                G gb = (G)b.mGroup.mGroup;
+
+                if( ga == null ) { return -1; }
+                if( gb == null ) { return 1; }
+
+                return groupComp != null ? groupComp.compare( ga, gb ) : ((Comparable<? super G>)ga).compareTo( gb );
+            }
+        };
+    }
+
+    private static <K, V> Node<K, V>[] newNodeArray( int len ) {
+        return (Node<K, V>[])new Node<?, ?>[len];
+    }
+
+    private static <K, V> Node<K, V> buildTreeAll( Node<K, V>[] nodes, int lo, int hi, int level, int redLevel ) {
+        if( hi < lo ) { return null; }
+
+        int        mid  = (lo + hi) >>> 1;
+        Node<K, V> node = nodes[mid];
+
+        node.mAllLeft = buildTreeAll( nodes, lo, mid - 1, level + 1, redLevel );
+        node.mAllRight = buildTreeAll( nodes, mid + 1, hi, level + 1, redLevel );
+        node.mAllParent = null;
+        node.mAllColor = (level == redLevel ? RED : BLACK);
+        node.mAllSize = hi - lo + 1;
+
+        if( node.mAllLeft != null ) { node.mAllLeft.mAllParent = node; }
+        if( node.mAllRight != null ) { node.mAllRight.mAllParent = node; }
+
+        return node;
+    }
+
+    private static <K, V> Node<K, V> buildTreeGroup( Node<K, V>[] nodes, int lo, int hi, int level, int redLevel ) {
+        if( hi < lo ) { return null; }
+
+        int        mid  = (lo + hi) >>> 1;
+        Node<K, V> node = nodes[mid];
+
+        node.mGroupLeft = buildTreeGroup( nodes, lo, mid - 1, level + 1, redLevel );
+        node.mGroupRight = buildTreeGroup( nodes, mid + 1, hi, level + 1, redLevel );
+        node.mGroupParent = null;
+        node.mGroupColor = (level == redLevel ? RED : BLACK);
+        node.mGroupSize = hi - lo + 1;
+
+        if( node.mGroupLeft != null ) { node.mGroupLeft.mGroupParent = node; }
+        if( node.mGroupRight != null ) { node.mGroupRight.mGroupParent = node; }
+
+        return node;
+    }
+
+    /**
+     * @return depth at which nodes must be colored red to build a valid
+     *         red-black tree from <tt>size</tt> sorted nodes.
+     */
+    private static int redLevel( int size ) {
+        int level = 0;
+        for( int m = size - 1; m >= 0; m = m / 2 - 1 ) {
+            level++;
+        }
+        return level;
+    }
+
 
     /***************
      * Node<K,V> structures.
      ***************/
 
     private static final class Node<K, V> implements Map.Entry<K, V> {
-        final GroupNode<K, V> mGroup;
+        GroupNode<K, V> mGroup;
         final K               mKey;
-        final V               mValue;
+        V                     mValue;
 
         final int mHash;
         Node<K, V> mNext = null;
@@ -2461,11 +3434,13 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
         Node<K, V> mGroupParent = null;
         Node<K, V> mGroupLeft   = null;
         Node<K, V> mGroupRight  = null;
+        int        mGroupSize   = 1;
 
         boolean    mAllColor  = RED;
         Node<K, V> mAllParent = null;
         Node<K, V> mAllLeft   = null;
         Node<K, V> mAllRight  = null;
+        int        mAllSize   = 1;
 
         Node( GroupNode<K, V> group, K key, V value, int hash ) {
             mGroup = group;
@@ -2509,8 +3484,8 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
 
     private static class GroupNode<K, V> {
-        final Object mGroup;
-        final int    mHash;
+        Object mGroup;
+        int    mHash;
 
         int        mSize = 0;
         Node<K, V> mRoot = null;
@@ -2542,7 +3517,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             mForward = forward;
             mComp = comp;
 
-            if( forward ) {
+            if( !mIndexAll ) {
+                mNext = firstNodeByGroup( null, 0 );
+            } else if( forward ) {
                 if( comp == null ) {
                     mNext = firstNodeAll();
                 } else {
@@ -2580,7 +3557,9 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
 
             mPrev = mNext;
 
-            if( mForward ) {
+            if( !mIndexAll ) {
+                mNext = nextNodeByGroup( mNext );
+            } else if( mForward ) {
                 mNext = nextNodeAll( mNext );
             } else {
                 mNext = prevNodeAll( mNext );
@@ -2669,6 +3648,117 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
 
+    /**
+     * Performs a k-way merge over the indices of several groups, using a
+     * heap that holds the next node of each group.
+     */
+    private abstract class AbstractMultiGroupIterator {
+
+        private final boolean                mForward;
+        private final Comparable<? super V>  mComp;
+        private final Comparator<Node<K, V>> mOrder;
+        private final Node<K, V>[]           mHeap;
+
+        private int        mHeapSize     = 0;
+        private int        mIterModCount = mModCount;
+        private Node<K, V> mPrev         = null;
+
+
+        protected AbstractMultiGroupIterator( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            mForward = forward;
+            mComp = comp;
+            mOrder = mNodeOrder;
+            mHeap = newNodeArray( groups.size() );
+
+            Set<GroupNode<K, V>> seen = Collections.newSetFromMap( new IdentityHashMap<GroupNode<K, V>, Boolean>() );
+
+            for( G group : groups ) {
+                GroupNode<K, V> groupNode = findGroupNode( group );
+                if( groupNode == null || !seen.add( groupNode ) ) { continue; }
+
+                Node<K, V> node;
+                if( forward ) {
+                    node = comp == null ? firstNodeGroup( groupNode ) : firstEquivalentGroup( groupNode, comp );
+                } else {
+                    node = comp == null ? lastNodeGroup( groupNode ) : lastEquivalentGroup( groupNode, comp );
+                }
+
+                if( node != null ) { mHeap[mHeapSize++] = node; }
+            }
+
+            for( int i = mHeapSize / 2 - 1; i >= 0; i-- ) {
+                siftDown( i );
+            }
+        }
+
+
+        public final boolean hasNext() {
+            return mHeapSize > 0;
+        }
+
+        public final void remove() {
+            if( mPrev == null ) { throw new IllegalStateException(); }
+
+            if( mModCount != mIterModCount ) { throw new ConcurrentModificationException(); }
+
+            removeNodeCompletely( mPrev, true );
+
+            mPrev = null;
+            mIterModCount = mModCount;
+        }
+
+        final Node<K, V> nextNode() {
+            if( mHeapSize == 0 ) { throw new NoSuchElementException(); }
+
+            if( mModCount != mIterModCount ) { throw new ConcurrentModificationException(); }
+
+            Node<K, V> ret  = mHeap[0];
+            Node<K, V> next = mForward ? nextNodeGroup( ret ) : prevNodeGroup( ret );
+
+            if( next != null && mComp != null && mComp.compareTo( next.mValue ) != 0 ) { next = null; }
+
+            if( next != null ) {
+                mHeap[0] = next;
+            } else {
+                mHeap[0] = mHeap[--mHeapSize];
+                mHeap[mHeapSize] = null;
+            }
+
+            if( mHeapSize > 1 ) { siftDown( 0 ); }
+
+            mPrev = ret;
+            return ret;
+        }
+
+
+        private void siftDown( int i ) {
+            final Node<K, V>[] heap = mHeap;
+            final int          size = mHeapSize;
+            Node<K, V>         node = heap[i];
+
+            while( true ) {
+                int child = 2 * i + 1;
+                if( child >= size ) { break; }
+
+                if( child + 1 < size && precedes( heap[child + 1], heap[child] ) ) { child++; }
+
+                if( !precedes( heap[child], node ) ) { break; }
+
+                heap[i] = heap[child];
+                i = child;
+            }
+
+            heap[i] = node;
+        }
+
+        private boolean precedes( Node<K, V> a, Node<K, V> b ) {
+            int c = mOrder.compare( a, b );
+            return mForward ? c < 0 : c > 0;
+        }
+
+    }
+
+
     private final class AllKeyIterator extends AbstractAllIterator implements Iterator<K> {
 
         protected AllKeyIterator( boolean forward, Comparable<? super V> comp ) {
@@ -2747,6 +3837,32 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
 
+    private final class MultiGroupEntryIterator extends AbstractMultiGroupIterator implements Iterator<Map.Entry<K, V>> {
+
+        protected MultiGroupEntryIterator( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            super( forward, groups, comp );
+        }
+
+        public Map.Entry<K, V> next() {
+            return nextNode();
+        }
+
+    }
+
+
+    private final class MultiGroupValueIterator extends AbstractMultiGroupIterator implements Iterator<V> {
+
+        protected MultiGroupValueIterator( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            super( forward, groups, comp );
+        }
+
+        public V next() {
+            return nextNode().mValue;
+        }
+
+    }
+
+
     private final class GroupTableIterator implements Iterator<G> {
         GroupNode<K, V> mPrev;
         GroupNode<K, V> mNext;
@@ -2822,15 +3938,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             if( mComp == null ) {
                 return mAllCount;
             } else {
-                Iterator<K> iter  = iterator();
-                int         count = 0;
-
-                while( iter.hasNext() ) {
-                    iter.next();
-                    count++;
-                }
-
-                return count;
+                return countRange( mComp, mComp );
             }
         }
 
@@ -2889,15 +3997,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             if( mComp == null ) {
                 return GroupMap.this.size( mGroup );
             } else {
-                Iterator<K> iter  = iterator();
-                int         count = 0;
-
-                while( iter.hasNext() ) {
-                    iter.next();
-                    count++;
-                }
-
-                return count;
+                return countRange( mGroup, mComp, mComp );
             }
         }
 
@@ -2962,15 +4062,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             if( mComp == null ) {
                 return mAllCount;
             } else {
-                Iterator<Map.Entry<K, V>> iter  = iterator();
-                int                       count = 0;
-
-                while( iter.hasNext() ) {
-                    iter.next();
-                    count++;
-                }
-
-                return count;
+                return countRange( mComp, mComp );
             }
         }
 
@@ -3043,15 +4135,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             if( mComp == null ) {
                 return GroupMap.this.size( mGroup );
             } else {
-                Iterator<Map.Entry<K, V>> iter  = iterator();
-                int                       count = 0;
-
-                while( iter.hasNext() ) {
-                    iter.next();
-                    count++;
-                }
-
-                return count;
+                return countRange( mGroup, mComp, mComp );
             }
         }
 
@@ -3130,15 +4214,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             if( mComp == null ) {
                 return mAllCount;
             } else {
-                Iterator<V> iter  = iterator();
-                int         count = 0;
-
-                while( iter.hasNext() ) {
-                    iter.next();
-                    count++;
-                }
-
-                return count;
+                return countRange( mComp, mComp );
             }
         }
 
@@ -3196,15 +4272,7 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
             if( mComp == null ) {
                 return GroupMap.this.size( mGroup );
             } else {
-                Iterator<V> iter  = iterator();
-                int         count = 0;
-
-                while( iter.hasNext() ) {
-                    iter.next();
-                    count++;
-                }
-
-                return count;
+                return countRange( mGroup, mComp, mComp );
             }
         }
 
@@ -3245,6 +4313,102 @@ public class GroupMap<G,K,V> extends AbstractMap<K,V> {
     }
 
 
+    private final class MultiGroupEntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        private final boolean                 mForward;
+        private final Collection<? extends G> mGroups;
+        private final Comparable<? super V>   mComp;
+
+        MultiGroupEntrySet( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            mForward = forward;
+            mGroups = groups;
+            mComp = comp;
+        }
+
+
+        public int size() {
+            Iterator<Map.Entry<K, V>> iter  = iterator();
+            int                       count = 0;
+
+            while( iter.hasNext() ) {
+                iter.next();
+                count++;
+            }
+
+            return count;
+        }
+
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new MultiGroupEntryIterator( mForward, mGroups, mComp );
+        }
+
+    }
+
+
+    private final class MultiGroupValues extends AbstractCollection<V> {
+
+        private final boolean                 mForward;
+        private final Collection<? extends G> mGroups;
+        private final Comparable<? super V>   mComp;
+
+        MultiGroupValues( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            mForward = forward;
+            mGroups = groups;
+            mComp = comp;
+        }
+
+
+        public int size() {
+            Iterator<V> iter  = iterator();
+            int         count = 0;
+
+            while( iter.hasNext() ) {
+                iter.next();
+                count++;
+            }
+
+            return count;
+        }
+
+        public Iterator<V> iterator() {
+            return new MultiGroupValueIterator( mForward, mGroups, mComp );
+        }
+
+    }
+
+
+    private final class ValueRange implements Comparable<V> {
+
+        private final V       mLow;
+        private final boolean mLowInclusive;
+        private final V       mHigh;
+        private final boolean mHighInclusive;
+
+        ValueRange( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+            mLow = low;
+            mLowInclusive = lowInclusive;
+            mHigh = high;
+            mHighInclusive = highInclusive;
+        }
+
+
+        public int compareTo( V value ) {
+            if( mLow != null ) {
+                int c = compareValues( mLow, value );
+                if( c > 0 || c == 0 && !mLowInclusive ) { return 1; }
+            }
+
+            if( mHigh != null ) {
+                int c = compareValues( value, mHigh );
+                if( c > 0 || c == 0 && !mHighInclusive ) { return -1; }
+            }
+
+            return 0;
+        }
+
+    }
+
+
     private final class Groups extends AbstractSet<G> {
 
         public int size() {
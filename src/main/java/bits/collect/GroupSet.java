@@ -34,6 +34,12 @@ import java.util.*;
  * default (<tt>add</tt> and <tt>remove</tt>), some of the methods that do not
  * specify a group operate over all groups (<tt>size</tt>, <tt>clear</tt> and
  * <tt>contains</tt>).  See method documentation for specific details.
+ * <p>
+ * If ordering over the entire set is never needed, the complete index can be
+ * disabled at construction. Each add then skips the complete index entirely,
+ * and methods that depend on it throw <tt>UnsupportedOperationException</tt>.
+ * {@link #iterator()} remains available, but proceeds group by group in no
+ * particular order.
  *
  * @param <G> Group type
  * @param <V> Element type
@@ -48,6 +54,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
 
     private final Comparator<? super G> mGroupComparator;
     private final Comparator<? super V> mValueComparator;
+    private final boolean               mIndexAll;
 
     //Common variables.
     private transient int mModCount = 0;
@@ -70,7 +77,19 @@ public class GroupSet<G, V> extends AbstractSet<V> {
 
 
     public GroupSet( Comparator<? super G> groupComparator, Comparator<? super V> valueComparator ) {
+        this( groupComparator, valueComparator, true );
+    }
+
+    /**
+     * @param groupComparator Comparator for groups, or null for natural ordering.
+     * @param valueComparator Comparator for values, or null for natural ordering.
+     * @param indexAll        If false, the complete index over all elements is
+     *                        not maintained, and methods that require it throw
+     *                        <tt>UnsupportedOperationException</tt>.
+     */
+    public GroupSet( Comparator<? super G> groupComparator, Comparator<? super V> valueComparator, boolean indexAll ) {
         mGroupComparator = groupComparator;
+        mIndexAll = indexAll;
         mValueComparator = valueComparator;
         mGroupLoadFactor = DEFAULT_GROUP_LOAD_FACTOR;
 
@@ -458,6 +477,10 @@ public class GroupSet<G, V> extends AbstractSet<V> {
      * @return true iff collection is modified as a result.
      */
     public boolean addAll( G group, Collection<? extends V> values ) {
+        if( mAllCount == 0 && values.size() > 1 ) {
+            return addAllGroups( Collections.singletonMap( group, values ) );
+        }
+
         boolean modified = false;
 
         for( V value : values ) {
@@ -469,6 +492,64 @@ public class GroupSet<G, V> extends AbstractSet<V> {
         return modified;
     }
 
+    /**
+     * Adds the values of several groups into the set at once.
+     * <p>
+     * If this set is empty, the input is sorted once and the complete index
+     * and every group index are built directly in linear time, with the group
+     * table sized up front. This is much faster than adding each value
+     * individually. Equivalent values are resolved exactly as if each value
+     * were added in iteration order with {@link #add(Object, Object)}.
+     * <p>
+     * If this set is not empty, this method is equivalent to calling
+     * {@link #addAll(Object, java.util.Collection)} for each group.
+     *
+     * @param groups Map of groups to the values to add to each group.
+     * @return true iff collection is modified as a result.
+     */
+    public boolean addAllGroups( Map<? extends G, ? extends Collection<? extends V>> groups ) {
+        if( mAllCount != 0 ) {
+            boolean modified = false;
+            for( Map.Entry<? extends G, ? extends Collection<? extends V>> e : groups.entrySet() ) {
+                modified |= addAll( e.getKey(), e.getValue() );
+            }
+            return modified;
+        }
+
+        int count = 0;
+        for( Collection<? extends V> values : groups.values() ) {
+            count += values.size();
+        }
+
+        ensureGroupCapacity( groups.size() );
+
+        Node[] nodes = new Node[count];
+        int len = 0;
+
+        try {
+            for( Map.Entry<? extends G, ? extends Collection<? extends V>> e : groups.entrySet() ) {
+                if( e.getValue().isEmpty() ) { continue; }
+
+                GroupNode groupNode = getGroupNodeInstance( e.getKey() );
+
+                for( V value : e.getValue() ) {
+                    if( value == null ) { throw new NullPointerException(); }
+
+                    nodes[len++] = new Node( groupNode, value );
+                }
+            }
+
+            loadNodes( nodes, len );
+
+        } catch( RuntimeException ex ) {
+            // Set was empty before call.
+            clear();
+            throw ex;
+        }
+
+        return mAllCount > 0;
+    }
+
     /**
      * Removes a value from the "null" group.
      *
@@ -717,6 +798,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
 
 
     public V first() {
+        checkIndexAll();
         Node node = firstNodeAll();
         return (node == null ? null : (V)node.mValue);
     }
@@ -730,6 +812,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V first( Comparable<? super V> comp ) {
+        checkIndexAll();
         Node node = firstEquivalentAll( comp );
         return (node == null ? null : (V)node.mValue);
     }
@@ -743,6 +826,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V last() {
+        checkIndexAll();
         Node node = lastNodeAll();
         return (node == null ? null : (V)node.mValue);
     }
@@ -756,6 +840,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V last( Comparable<? super V> comp ) {
+        checkIndexAll();
         Node node = lastEquivalentAll( comp );
         return (node == null ? null : (V)node.mValue);
     }
@@ -769,6 +854,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V ceiling( V value ) {
+        checkIndexAll();
         if( value == null ) { return null; }
 
         Node node = mAllRoot;
@@ -846,6 +932,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V floor( V value ) {
+        checkIndexAll();
         if( value == null ) { return null; }
 
         Node node = mAllRoot;
@@ -925,6 +1012,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V higher( V value ) {
+        checkIndexAll();
         if( value == null ) { return null; }
 
         Node node = mAllRoot;
@@ -1004,6 +1092,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public V lower( V value ) {
+        checkIndexAll();
         if( value == null ) { return null; }
 
         Node node = mAllRoot;
@@ -1093,6 +1182,7 @@ public class GroupSet<G, V> extends AbstractSet<V> {
 
 
     public Set<V> subset( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllSubset( true, comp );
     }
 
@@ -1105,10 +1195,12 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
     public Set<V> descendingSubset( Comparable<? super V> comp ) {
+        checkIndexAll();
         return new AllSubset( false, comp );
     }
 
     public Set<V> descendingSet() {
+        checkIndexAll();
         return new AllSubset( false, null );
     }
 
@@ -1120,6 +1212,37 @@ public class GroupSet<G, V> extends AbstractSet<V> {
         return new GroupSubset( false, group, comp );
     }
 
+    /**
+     * Provides a view of the values within several groups, in the same
+     * order as the entire collection. The view is produced by lazily merging
+     * the indices of each selected group, so iteration only touches the
+     * selected groups.
+     *
+     * @param groups Groups to include in view.
+     * @return view of values within all selected groups.
+     */
+    public Collection<V> multiGroupSubset( Collection<? extends G> groups ) {
+        return new MultiGroupSubset( true, groups, null );
+    }
+
+    /**
+     * @param groups Groups to include in view.
+     * @param comp   Limits view to values <tt>v</tt> where <tt>comp.compareTo( v ) == 0</tt>.
+     * @return view of values within all selected groups.
+     * @see #multiGroupSubset(java.util.Collection)
+     */
+    public Collection<V> multiGroupSubset( Collection<? extends G> groups, Comparable<? super V> comp ) {
+        return new MultiGroupSubset( true, groups, comp );
+    }
+
+    public Collection<V> descendingMultiGroupSubset( Collection<? extends G> groups ) {
+        return new MultiGroupSubset( false, groups, null );
+    }
+
+    public Collection<V> descendingMultiGroupSubset( Collection<? extends G> groups, Comparable<? super V> comp ) {
+        return new MultiGroupSubset( false, groups, comp );
+    }
+
     /**
      * Provides a view to the set of groups contained in this collection.  The
      * returned view does not support <tt>add</tt> or <tt>remove</tt>, although
@@ -1137,6 +1260,17 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     private Node findNodeThatContains( Object obj ) {
         if( obj == null ) { return null; }
 
+        if( !mIndexAll ) {
+            for( GroupNode g : mGroupBuckets ) {
+                for( ; g != null; g = g.mNext ) {
+                    Node node = findNodeThatContains( (G)g.mGroup, obj );
+                    if( node != null ) { return node; }
+                }
+            }
+
+            return null;
+        }
+
         final V value = (V)obj;
 
         if( mValueComparator != null ) {
@@ -1302,6 +1436,153 @@ public class GroupSet<G, V> extends AbstractSet<V> {
         }
     }
 
+    private void ensureGroupCapacity( int count ) {
+        int capacity = mGroupBuckets.length;
+        while( capacity < MAXIMUM_GROUP_CAPACITY && (int)(capacity * mGroupLoadFactor) <= count ) {
+            capacity <<= 1;
+        }
+
+        if( capacity > mGroupBuckets.length ) { resizeGroups( capacity ); }
+    }
+
+    /**
+     * Loads nodes into an empty set. Nodes must already be assigned to their
+     * groups, and the group table must already be large enough.
+     */
+    private void loadNodes( Node[] nodes, int len ) {
+        mModCount++;
+
+        //Sort into complete order. Sort is stable, so first occurrence of each value in a group wins.
+        Comparator<Node> comp = nodeComparator();
+        Arrays.sort( nodes, 0, len, comp );
+        int count = 0;
+
+        for( int i = 0; i < len; i++ ) {
+            if( count > 0 && comp.compare( nodes[count - 1], nodes[i] ) == 0 && (mIndexAll || nodes[count - 1].mGroup == nodes[i].mGroup) ) {
+                // Equivalent values in distinct, equivalent groups replace each other,
+                // but as with add(), only if the complete index is maintained.
+                if( nodes[count - 1].mGroup != nodes[i].mGroup ) {
+                    nodes[count - 1] = nodes[i];
+                }
+            } else {
+                nodes[count++] = nodes[i];
+            }
+        }
+
+        mAllRoot = (mIndexAll ? buildTreeAll( nodes, 0, count - 1, 0, redLevel( count ) ) : null);
+        mAllCount = count;
+
+        //Chain nodes of each group in order, then build group trees.
+        for( int i = count - 1; i >= 0; i-- ) {
+            Node      node  = nodes[i];
+            GroupNode group = node.mGroup;
+            node.mGroupRight = group.mRoot;
+            group.mRoot = node;
+            group.mCount++;
+        }
+
+        //As with add(), a group whose values were all replaced by equivalent groups is removed.
+        final GroupNode[] groupBuckets = mGroupBuckets;
+
+        for( int i = 0; i < groupBuckets.length; i++ ) {
+            GroupNode prev  = null;
+            GroupNode group = groupBuckets[i];
+
+            while( group != null ) {
+                if( group.mCount == 0 ) {
+                    mGroupCount--;
+                    if( prev == null ) {
+                        groupBuckets[i] = group.mNext;
+                    } else {
+                        prev.mNext = group.mNext;
+                    }
+                } else {
+                    int n = 0;
+                    for( Node node = group.mRoot; node != null; node = node.mGroupRight ) {
+                        nodes[n++] = node;
+                    }
+
+                    group.mRoot = buildTreeGroup( nodes, 0, n - 1, 0, redLevel( n ) );
+                    prev = group;
+                }
+
+                group = group.mNext;
+            }
+        }
+    }
+
+    private Comparator<Node> nodeComparator() {
+        final Comparator<? super V> valueComp = mValueComparator;
+        final Comparator<? super G> groupComp = mGroupComparator;
+
+        return new Comparator<Node>() {
+            public int compare( Node a, Node b ) {
+                int c;
+                if( valueComp != null ) {
+                    c = valueComp.compare( (V)a.mValue, (V)b.mValue );
+                } else {
+                    c = ((Comparable<? super V>)a.mValue).compareTo( (V)b.mValue );
+                }
+
+                if( c != 0 || a.mGroup == b.mGroup ) { return c; }
+
+                G ga = (G)a.mGroup.mGroup;
+                G gb = (G)b.mGroup.mGroup;
+
+                if( ga == null ) { return -1; }
+                if( gb == null ) { return 1; }
+
+                return groupComp != null ? groupComp.compare( ga, gb ) : ((Comparable<? super G>)ga).compareTo( gb );
+            }
+        };
+    }
+
+    private static Node buildTreeAll( Node[] nodes, int lo, int hi, int level, int redLevel ) {
+        if( hi < lo ) { return null; }
+
+        int  mid  = (lo + hi) >>> 1;
+        Node node = nodes[mid];
+
+        node.mAllLeft = buildTreeAll( nodes, lo, mid - 1, level + 1, redLevel );
+        node.mAllRight = buildTreeAll( nodes, mid + 1, hi, level + 1, redLevel );
+        node.mAllParent = null;
+        node.mAllColor = (level == redLevel ? RED : BLACK);
+
+        if( node.mAllLeft != null ) { node.mAllLeft.mAllParent = node; }
+        if( node.mAllRight != null ) { node.mAllRight.mAllParent = node; }
+
+        return node;
+    }
+
+    private static Node buildTreeGroup( Node[] nodes, int lo, int hi, int level, int redLevel ) {
+        if( hi < lo ) { return null; }
+
+        int  mid  = (lo + hi) >>> 1;
+        Node node = nodes[mid];
+
+        node.mGroupLeft = buildTreeGroup( nodes, lo, mid - 1, level + 1, redLevel );
+        node.mGroupRight = buildTreeGroup( nodes, mid + 1, hi, level + 1, redLevel );
+        node.mGroupParent = null;
+        node.mGroupColor = (level == redLevel ? RED : BLACK);
+
+        if( node.mGroupLeft != null ) { node.mGroupLeft.mGroupParent = node; }
+        if( node.mGroupRight != null ) { node.mGroupRight.mGroupParent = node; }
+
+        return node;
+    }
+
+    /**
+     * @return depth at which nodes must be colored red to build a valid
+     *         red-black tree from <tt>size</tt> sorted nodes.
+     */
+    private static int redLevel( int size ) {
+        int level = 0;
+        for( int m = size - 1; m >= 0; m = m / 2 - 1 ) {
+            level++;
+        }
+        return level;
+    }
+
     private static int rehash( int hash ) {
         hash ^= (hash >>> 20) ^ (hash >>> 12);
         return hash ^ (hash >>> 7) ^ (hash >>> 4);
@@ -1326,6 +1607,8 @@ public class GroupSet<G, V> extends AbstractSet<V> {
         mAllCount++;
         mModCount++;
 
+        if( !mIndexAll ) { return; }
+
         if( parent == null ) {
             mAllRoot = node;
             node.mAllColor = BLACK;
@@ -1398,6 +1681,8 @@ public class GroupSet<G, V> extends AbstractSet<V> {
         mAllCount--;
         mModCount++;
 
+        if( !mIndexAll ) { return; }
+
         //If we are deleting a node with two children, swap
         //it with a node that has at most one child.
         if( node.mAllLeft != null && node.mAllRight != null ) {
@@ -1565,6 +1850,38 @@ public class GroupSet<G, V> extends AbstractSet<V> {
         }
     }
 
+    private void checkIndexAll() {
+        if( !mIndexAll ) {
+            throw new UnsupportedOperationException( "Complete index disabled for this GroupSet." );
+        }
+    }
+
+    /**
+     * @return first node of the first non-empty group at or after <tt>group</tt>
+     *         in its bucket chain, then at or after bucket <tt>idx</tt>.
+     */
+    private Node firstNodeByGroup( GroupNode group, int idx ) {
+        final GroupNode[] buckets = mGroupBuckets;
+
+        while( true ) {
+            for( ; group != null; group = group.mNext ) {
+                if( group.mRoot != null ) { return firstNodeGroup( group ); }
+            }
+
+            if( idx >= buckets.length ) { return null; }
+
+            group = buckets[idx++];
+        }
+    }
+
+    private Node nextNodeByGroup( Node node ) {
+        Node next = nextNodeGroup( node );
+        if( next != null ) { return next; }
+
+        GroupNode group = node.mGroup;
+        return firstNodeByGroup( group.mNext, (group.mHash & (mGroupBuckets.length - 1)) + 1 );
+    }
+
     private Node firstNodeAll() {
         Node node = mAllRoot;
 
@@ -2292,7 +2609,9 @@ public class GroupSet<G, V> extends AbstractSet<V> {
             mForward = forward;
             mComp = comp;
 
-            if( forward ) {
+            if( !mIndexAll ) {
+                mNext = firstNodeByGroup( null, 0 );
+            } else if( forward ) {
                 if( comp == null ) {
                     mNext = firstNodeAll();
                 } else {
@@ -2320,7 +2639,9 @@ public class GroupSet<G, V> extends AbstractSet<V> {
             V ret = (V)mNext.mValue;
             mPrev = mNext;
 
-            if( mForward ) {
+            if( !mIndexAll ) {
+                mNext = nextNodeByGroup( mNext );
+            } else if( mForward ) {
                 mNext = nextNodeAll( mNext );
             } else {
                 mNext = prevNodeAll( mNext );
@@ -2418,6 +2739,117 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
 
+    /**
+     * Performs a k-way merge over the indices of several groups, using a
+     * heap that holds the next node of each group.
+     */
+    private final class MultiGroupIterator implements Iterator<V> {
+
+        private final boolean               mForward;
+        private final Comparable<? super V> mComp;
+        private final Comparator<Node>      mOrder;
+        private final Node[]                mHeap;
+
+        private int  mHeapSize     = 0;
+        private int  mIterModCount = mModCount;
+        private Node mPrev         = null;
+
+
+        MultiGroupIterator( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            mForward = forward;
+            mComp = comp;
+            mOrder = nodeComparator();
+            mHeap = new Node[groups.size()];
+
+            Set<GroupNode> seen = Collections.newSetFromMap( new IdentityHashMap<GroupNode, Boolean>() );
+
+            for( G group : groups ) {
+                GroupNode groupNode = findGroupNode( group );
+                if( groupNode == null || !seen.add( groupNode ) ) { continue; }
+
+                Node node;
+                if( forward ) {
+                    node = comp == null ? firstNodeGroup( groupNode ) : firstEquivalentGroup( groupNode, comp );
+                } else {
+                    node = comp == null ? lastNodeGroup( groupNode ) : lastEquivalentGroup( groupNode, comp );
+                }
+
+                if( node != null ) { mHeap[mHeapSize++] = node; }
+            }
+
+            for( int i = mHeapSize / 2 - 1; i >= 0; i-- ) {
+                siftDown( i );
+            }
+        }
+
+
+        public boolean hasNext() {
+            return mHeapSize > 0;
+        }
+
+        public V next() {
+            if( mHeapSize == 0 ) { throw new NoSuchElementException(); }
+
+            if( mModCount != mIterModCount ) { throw new ConcurrentModificationException(); }
+
+            Node ret  = mHeap[0];
+            Node next = mForward ? nextNodeGroup( ret ) : prevNodeGroup( ret );
+
+            if( next != null && mComp != null && mComp.compareTo( (V)next.mValue ) != 0 ) { next = null; }
+
+            if( next != null ) {
+                mHeap[0] = next;
+            } else {
+                mHeap[0] = mHeap[--mHeapSize];
+                mHeap[mHeapSize] = null;
+            }
+
+            if( mHeapSize > 1 ) { siftDown( 0 ); }
+
+            mPrev = ret;
+            return (V)ret.mValue;
+        }
+
+        public void remove() {
+            if( mPrev == null ) { throw new IllegalStateException(); }
+
+            if( mModCount != mIterModCount ) { throw new ConcurrentModificationException(); }
+
+            removeNodeCompletely( mPrev, true );
+
+            mPrev = null;
+            mIterModCount = mModCount;
+        }
+
+
+        private void siftDown( int i ) {
+            final Node[] heap = mHeap;
+            final int    size = mHeapSize;
+            Node         node = heap[i];
+
+            while( true ) {
+                int child = 2 * i + 1;
+                if( child >= size ) { break; }
+
+                if( child + 1 < size && precedes( heap[child + 1], heap[child] ) ) { child++; }
+
+                if( !precedes( heap[child], node ) ) { break; }
+
+                heap[i] = heap[child];
+                i = child;
+            }
+
+            heap[i] = node;
+        }
+
+        private boolean precedes( Node a, Node b ) {
+            int c = mOrder.compare( a, b );
+            return mForward ? c < 0 : c > 0;
+        }
+
+    }
+
+
     private final class GroupTableIterator implements Iterator<G> {
         GroupNode mPrev;
         GroupNode mNext;
@@ -2608,6 +3040,38 @@ public class GroupSet<G, V> extends AbstractSet<V> {
     }
 
 
+    private final class MultiGroupSubset extends AbstractCollection<V> {
+
+        private final boolean                 mForward;
+        private final Collection<? extends G> mGroups;
+        private final Comparable<? super V>   mComp;
+
+        MultiGroupSubset( boolean forward, Collection<? extends G> groups, Comparable<? super V> comp ) {
+            mForward = forward;
+            mGroups = groups;
+            mComp = comp;
+        }
+
+
+        public int size() {
+            Iterator<V> iter  = iterator();
+            int         count = 0;
+
+            while( iter.hasNext() ) {
+                iter.next();
+                count++;
+            }
+
+            return count;
+        }
+
+        public Iterator<V> iterator() {
+            return new MultiGroupIterator( mForward, mGroups, mComp );
+        }
+
+    }
+
+
     private final class Groups extends AbstractSet<G> {
 
         public int size() {
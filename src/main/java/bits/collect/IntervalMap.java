@@ -5,6 +5,9 @@
  */
 package bits.collect;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 
@@ -36,6 +39,12 @@ import java.util.*;
  * However, note well that any custom IntervalComparators must handle degenerate intervals
  * accordingly; as if the endpoints are actually infinitesimally separated!
  *
+ * <p>All key, mValue and entry views returned by IntervalMap, including query
+ * views such as {@link #intersectionValues}, implement {@link Partitionable}.
+ * Partitions are divided along subtrees, pruned as the query itself would be,
+ * so large query results can be traversed in parallel without first
+ * collecting them.
+ *
  * <p>Issue: The IntervalMap lastEntryByMax() does not resolve ties in a defined way.
  * That is, if there are multiple intervals in the map with the same max mValue,
  * IntervalMap makes no guarantees about which will be returned. This should
@@ -638,6 +647,41 @@ public class IntervalMap<K, V> implements Map<K, V> {
     }
 
 
+    /**
+     * Of all intervals that lie entirely before <tt>key</tt>, finds the one
+     * that ends last. Subtrees are pruned by their max stops, so this does not
+     * scan every interval before <tt>key</tt>.
+     *
+     * @param key interval
+     * @return the entry with the greatest max among intervals that end at or
+     *         before the min of <tt>key</tt> without intersecting it.
+     */
+    public Map.Entry<K, V> lastEntryEndingBefore( K key ) {
+        return lastEndingBeforeNode( key );
+    }
+
+
+    public K lastKeyEndingBefore( K key ) {
+        Node node = lastEndingBeforeNode( key );
+        return node == null ? null : node.mKey;
+    }
+
+    /**
+     * @param key interval
+     * @return the first entry, in ascending order, with an interval that lies
+     *         entirely after <tt>key</tt>.
+     */
+    public Map.Entry<K, V> firstEntryStartingAfter( K key ) {
+        return firstStartingAfterNode( key );
+    }
+
+
+    public K firstKeyStartingAfter( K key ) {
+        Node node = firstStartingAfterNode( key );
+        return node == null ? null : node.mKey;
+    }
+
+
     public Map.Entry<K, V> firstEquivEntry( K key ) {
         return firstEquivNode( key );
     }
@@ -1053,6 +1097,110 @@ public class IntervalMap<K, V> implements Map<K, V> {
     }
 
 
+    /**
+     * Writes all mappings to a stream in ascending order. The format is the
+     * number of entries as an int, followed by each key and mValue as written by
+     * the provided codecs. The result may be restored with {@link #read}.
+     *
+     * @param out        Destination stream
+     * @param keyCodec   Codec used to write each key
+     * @param valueCodec Codec used to write each mValue
+     */
+    public void write( DataOutput out, Codec<? super K> keyCodec, Codec<? super V> valueCodec ) throws IOException {
+        out.writeInt( mSize );
+        for( Node node = firstNode(); node != null; node = nextNode( node ) ) {
+            keyCodec.write( node.mKey, out );
+            valueCodec.write( node.mValue, out );
+        }
+    }
+
+    /**
+     * Replaces the contents of this map with mappings read from a stream
+     * produced by {@link #write}. Because the entries are already sorted,
+     * the tree is built directly in linear time, without rebalancing. The
+     * only comparisons performed are to verify that the input is in order.
+     * If an exception is thrown, the map is left empty.
+     *
+     * @param in         Source stream
+     * @param keyCodec   Codec used to read each key
+     * @param valueCodec Codec used to read each mValue
+     * @throws IOException if the stream cannot be read or is not in ascending order.
+     */
+    public void read( DataInput in, Codec<? extends K> keyCodec, Codec<? extends V> valueCodec ) throws IOException {
+        final int size = in.readInt();
+        if( size < 0 ) {
+            throw new IOException( "Invalid entry count: " + size );
+        }
+
+        clear();
+        if( size == 0 ) {
+            return;
+        }
+
+        Object[] prev = { null };
+        Node root = buildFromSorted( 0, 0, size - 1, redLevel( size ), in, keyCodec, valueCodec, prev );
+        root.mColor = BLACK;
+        mRoot = root;
+        mSize = size;
+        mModCount++;
+    }
+
+
+
+    /* ************************************************************
+     * Package private accessors
+     * ***********************************************************
+     */
+
+    IntervalComparator<? super K> comparator() {
+        return mComp;
+    }
+
+    /**
+     * @return counter that changes whenever the structure of this map
+     *         changes. Allows derived indices to detect when they are stale.
+     */
+    int modCount() {
+        return mModCount;
+    }
+
+
+
+    /* ************************************************************
+     * Package private nearest-interval support
+     * ***********************************************************
+     */
+
+    /**
+     * @return iterator over all entries that lie entirely before <tt>key</tt>,
+     *         ordered by descending max. Performs a best-first search bounded
+     *         by max stops, so retrieving the first <i>k</i> entries does not
+     *         require visiting every interval before <tt>key</tt>.
+     */
+    Iterator<Map.Entry<K, V>> endingBeforeIterator( K key ) {
+        return new EndingBeforeIterator( key );
+    }
+
+    /**
+     * @return iterator over all entries that lie entirely after <tt>key</tt>,
+     *         in ascending order.
+     */
+    Iterator<Map.Entry<K, V>> startingAfterIterator( K key ) {
+        return new AbstractIterator<Map.Entry<K, V>>( firstStartingAfterNode( key ) ) {
+            @Override
+            public Map.Entry<K, V> next() {
+                return nextIterNode();
+            }
+
+            @Override
+            Node doNextIterNode( Node node ) {
+                return nextNode( node );
+            }
+        };
+    }
+
+
+
     /* ************************************************************
      * Package private debugging
      * ***********************************************************
@@ -1067,6 +1215,47 @@ public class IntervalMap<K, V> implements Map<K, V> {
     }
 
 
+    /**
+     * @return true iff parent links are consistent, no red node has a red
+     *         child, and every path from the root has the same number of
+     *         black nodes.
+     */
+    boolean validateBalance() {
+        if( mRoot == null ) {
+            return true;
+        }
+
+        return mRoot.mParent == null && mRoot.mColor == BLACK && blackHeight( mRoot ) >= 0;
+    }
+
+
+    private int blackHeight( Node node ) {
+        if( node == null ) {
+            return 0;
+        }
+
+        if( node.mLeft != null && node.mLeft.mParent != node ||
+            node.mRight != null && node.mRight.mParent != node )
+        {
+            return -1;
+        }
+
+        if( node.mColor == RED &&
+            (node.mLeft != null && node.mLeft.mColor == RED || node.mRight != null && node.mRight.mColor == RED) )
+        {
+            return -1;
+        }
+
+        int left = blackHeight( node.mLeft );
+        int right = blackHeight( node.mRight );
+        if( left < 0 || left != right ) {
+            return -1;
+        }
+
+        return left + (node.mColor == BLACK ? 1 : 0);
+    }
+
+
     private Node validateMaxStops( Node node ) {
         Node stop = node;
 
@@ -1501,6 +1690,66 @@ public class IntervalMap<K, V> implements Map<K, V> {
     }
 
 
+    private Node lastEndingBeforeNode( K key ) {
+        Object[] ret = { null };
+        searchLastEndingBefore( mRoot, key, ret );
+        return (Node)ret[0];
+    }
+
+
+    private void searchLastEndingBefore( Node node, K key, Object[] ret ) {
+        while( node != null ) {
+            Node best = (Node)ret[0];
+
+            // Prune subtree if it cannot contain a later max.
+            if( best != null && mComp.compareMaxes( node.mMaxStop.mKey, best.mKey ) <= 0 ) {
+                return;
+            }
+
+            // If entire subtree ends before mKey, the max stop is the answer.
+            if( mComp.compareMinToMax( key, node.mMaxStop.mKey ) >= 0 ) {
+                ret[0] = node.mMaxStop;
+                return;
+            }
+
+            // If node does not start before mKey, neither node nor its right
+            // subtree can end before mKey.
+            if( mComp.compareMins( node.mKey, key ) >= 0 ) {
+                node = node.mLeft;
+                continue;
+            }
+
+            if( mComp.compareMinToMax( key, node.mKey ) >= 0 &&
+                (best == null || mComp.compareMaxes( node.mKey, best.mKey ) > 0) )
+            {
+                ret[0] = node;
+            }
+
+            // Right subtree is more likely to hold later maxes, so search it
+            // first to improve pruning of left subtree.
+            searchLastEndingBefore( node.mRight, key, ret );
+            node = node.mLeft;
+        }
+    }
+
+
+    private Node firstStartingAfterNode( K key ) {
+        Node node = mRoot;
+        Node ret = null;
+
+        while( node != null ) {
+            if( mComp.compareMinToMax( node.mKey, key ) >= 0 ) {
+                ret = node;
+                node = node.mLeft;
+            } else {
+                node = node.mRight;
+            }
+        }
+
+        return ret;
+    }
+
+
     private Node firstSupersetNode( K key ) {
         if( mRoot == null ) {
             return null;
@@ -2063,6 +2312,84 @@ public class IntervalMap<K, V> implements Map<K, V> {
         }
     }
 
+    /**
+     * Builds a balanced subtree from entries read in ascending order. Nodes
+     * are black, except for those on the deepest level of an incomplete tree,
+     * which are red. Based on the same approach as java.util.TreeMap.
+     *
+     * @param level    Depth of current subtree root
+     * @param lo       Index of first entry in subtree
+     * @param hi       Index of last entry in subtree
+     * @param redLevel Depth of nodes that should be colored red
+     * @param prev     Holds the last node read, used to verify order.
+     * @return root of subtree, with mMaxStop computed.
+     */
+    private Node buildFromSorted( int level,
+                                  int lo,
+                                  int hi,
+                                  int redLevel,
+                                  DataInput in,
+                                  Codec<? extends K> keyCodec,
+                                  Codec<? extends V> valueCodec,
+                                  Object[] prev )
+                                  throws IOException
+    {
+        final int mid = (lo + hi) >>> 1;
+        Node left = null;
+
+        if( lo < mid ) {
+            left = buildFromSorted( level + 1, lo, mid - 1, redLevel, in, keyCodec, valueCodec, prev );
+        }
+
+        K key = keyCodec.read( in );
+        V value = valueCodec.read( in );
+        if( key == null ) {
+            throw new IOException( "Null key in stream." );
+        }
+
+        Node last = (Node)prev[0];
+        if( last != null ) {
+            int c = mComp.compareMins( key, last.mKey );
+            if( c == 0 ) {
+                c = mComp.compareMaxes( key, last.mKey );
+            }
+            if( c < 0 ) {
+                throw new IOException( "Entries are not in ascending order." );
+            }
+        }
+
+        Node node = new Node( key, value );
+        node.mColor = level == redLevel ? RED : BLACK;
+        prev[0] = node;
+
+        if( left != null ) {
+            node.mLeft = left;
+            left.mParent = node;
+            node.mMaxStop = maxStopNode( node, left.mMaxStop );
+        }
+
+        if( mid < hi ) {
+            Node right = buildFromSorted( level + 1, mid + 1, hi, redLevel, in, keyCodec, valueCodec, prev );
+            node.mRight = right;
+            right.mParent = node;
+            node.mMaxStop = maxStopNode( node.mMaxStop, right.mMaxStop );
+        }
+
+        return node;
+    }
+
+    /**
+     * @return depth at which nodes must be red for a tree of <tt>size</tt>
+     *         nodes built by {@link #buildFromSorted} to be balanced.
+     */
+    private static int redLevel( int size ) {
+        int level = 0;
+        for( int m = size - 1; m >= 0; m = m / 2 - 1 ) {
+            level++;
+        }
+        return level;
+    }
+
     /**
      * Remove the given node. Does update mMaxStop stuff.
      */
@@ -2714,12 +3041,444 @@ public class IntervalMap<K, V> implements Map<K, V> {
 
 
 
+    private final class EndingBeforeIterator implements Iterator<Map.Entry<K, V>>, Comparator<Object[]> {
+        private final K                       mKey;
+        private final PriorityQueue<Object[]> mQueue;
+        private final int                     mIterModCount = mModCount;
+        private       Node                    mNext;
+
+        EndingBeforeIterator( K key ) {
+            mKey = key;
+            mQueue = new PriorityQueue<Object[]>( 16, this );
+            if( mRoot != null ) {
+                mQueue.offer( new Object[]{ mRoot, Boolean.TRUE } );
+            }
+            mNext = advance();
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if( mNext == null ) {
+                throw new NoSuchElementException();
+            }
+            if( mModCount != mIterModCount ) {
+                throw new ConcurrentModificationException();
+            }
+            Node ret = mNext;
+            mNext = advance();
+            return ret;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Queue items are { node, isSubtree }. A subtree is bounded by its
+         * max stop; a single node by its own max.
+         */
+        @Override
+        public int compare( Object[] a, Object[] b ) {
+            return mComp.compareMaxes( boundOf( b ).mKey, boundOf( a ).mKey );
+        }
+
+
+        private Node boundOf( Object[] item ) {
+            Node node = (Node)item[0];
+            return item[1] == Boolean.TRUE ? node.mMaxStop : node;
+        }
+
+
+        private Node advance() {
+            while( true ) {
+                Object[] item = mQueue.poll();
+                if( item == null ) {
+                    return null;
+                }
+
+                Node node = (Node)item[0];
+                if( item[1] != Boolean.TRUE ) {
+                    return node;
+                }
+
+                if( node.mLeft != null ) {
+                    mQueue.offer( new Object[]{ node.mLeft, Boolean.TRUE } );
+                }
+
+                // Node and right subtree can only end before mKey if node starts before mKey.
+                if( mComp.compareMins( node.mKey, mKey ) < 0 ) {
+                    if( mComp.compareMinToMax( mKey, node.mKey ) >= 0 ) {
+                        mQueue.offer( new Object[]{ node, Boolean.FALSE } );
+                    }
+                    if( node.mRight != null ) {
+                        mQueue.offer( new Object[]{ node.mRight, Boolean.TRUE } );
+                    }
+                }
+            }
+        }
+    }
+
+
+
+    /* ************************************************************
+     * Partitioning
+     * ************************************************************/
+
+
+    private static final int PART_KEYS    = 0;
+    private static final int PART_VALUES  = 1;
+    private static final int PART_ENTRIES = 2;
+
+
+    /**
+     * Describes a query in terms that allow a pruned, in-order traversal of
+     * any subtree.
+     */
+    private abstract class Query {
+        /**
+         * @return false if no node in subtree rooted at <tt>node</tt> can
+         *         match. Typically determined from max stop.
+         */
+        boolean mayContain( Node node ) {
+            return true;
+        }
+
+        abstract boolean matches( Node node );
+
+        /**
+         * @return false if ordering guarantees that no node in left subtree can match.
+         */
+        boolean searchLeft( Node node ) {
+            return true;
+        }
+
+        /**
+         * @return false if ordering guarantees that no node in right subtree can match.
+         */
+        boolean searchRight( Node node ) {
+            return true;
+        }
+    }
+
+
+    private final class AllQuery extends Query {
+        @Override
+        boolean matches( Node node ) {
+            return true;
+        }
+    }
+
+
+    private final class EquivQuery extends Query {
+        private final K mKey;
+
+        EquivQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean matches( Node node ) {
+            return compare( node ) == 0;
+        }
+
+        @Override
+        boolean searchLeft( Node node ) {
+            return compare( node ) <= 0;
+        }
+
+        @Override
+        boolean searchRight( Node node ) {
+            return compare( node ) >= 0;
+        }
+
+        private int compare( Node node ) {
+            int c = mComp.compareMins( mKey, node.mKey );
+            return c != 0 ? c : mComp.compareMaxes( mKey, node.mKey );
+        }
+    }
+
+
+    private final class IntersectionQuery extends Query {
+        private final K mKey;
+
+        IntersectionQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return mComp.compareMinToMax( mKey, node.mMaxStop.mKey ) < 0;
+        }
+
+        @Override
+        boolean matches( Node node ) {
+            return mComp.compareMinToMax( mKey, node.mKey ) < 0 &&
+                   mComp.compareMinToMax( node.mKey, mKey ) < 0;
+        }
+
+        @Override
+        boolean searchRight( Node node ) {
+            return mComp.compareMinToMax( node.mKey, mKey ) < 0;
+        }
+    }
+
+
+    private final class SupersetQuery extends Query {
+        private final K mKey;
+
+        SupersetQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return mComp.compareMaxes( mKey, node.mMaxStop.mKey ) <= 0;
+        }
+
+        @Override
+        boolean matches( Node node ) {
+            return mComp.compareMins( mKey, node.mKey ) >= 0 &&
+                   mComp.compareMaxes( mKey, node.mKey ) <= 0;
+        }
+
+        @Override
+        boolean searchRight( Node node ) {
+            return mComp.compareMins( node.mKey, mKey ) <= 0;
+        }
+    }
+
+
+    private final class SubsetQuery extends Query {
+        private final K mKey;
+
+        SubsetQuery( K key ) {
+            mKey = key;
+        }
+
+        @Override
+        boolean mayContain( Node node ) {
+            return mComp.compareMinToMax( mKey, node.mMaxStop.mKey ) < 0;
+        }
+
+        @Override
+        boolean matches( Node node ) {
+            return mComp.compareMins( node.mKey, mKey ) >= 0 &&
+                   mComp.compareMaxes( node.mKey, mKey ) <= 0;
+        }
+
+        @Override
+        boolean searchLeft( Node node ) {
+            return mComp.compareMins( node.mKey, mKey ) >= 0;
+        }
+
+        @Override
+        boolean searchRight( Node node ) {
+            return mComp.compareMinToMax( node.mKey, mKey ) < 0;
+        }
+    }
+
+    /**
+     * Divides the nodes matching a query into disjoint partitions. Each
+     * partition consists of an optional head node followed by a subtree.
+     * Partitions are split breadth-first, so each split roughly halves the
+     * largest partitions: (head, T) becomes (head, T.left) and (T, T.right).
+     * Subtrees that cannot match are pruned as they are split.
+     */
+    private <E> List<Collection<E>> partition( Query query, boolean descending, int elementType, int maxParts ) {
+        List<Object[]> parts = new ArrayList<Object[]>();
+        if( mRoot != null && query.mayContain( mRoot ) ) {
+            parts.add( new Object[]{ null, mRoot } );
+        }
+
+        boolean split = true;
+        while( split && parts.size() < maxParts ) {
+            split = false;
+
+            for( int i = 0; i < parts.size() && parts.size() < maxParts; i++ ) {
+                Object[] part = parts.get( i );
+                Node head = (Node)part[0];
+                Node tree = (Node)part[1];
+                if( tree == null ) {
+                    continue;
+                }
+
+                Node left = query.searchLeft( tree ) ? prunedSubtree( query, tree.mLeft ) : null;
+                Node right = query.searchRight( tree ) ? prunedSubtree( query, tree.mRight ) : null;
+                boolean keepHead = head != null && query.matches( head );
+                boolean keepTree = query.matches( tree );
+
+                parts.remove( i-- );
+                if( keepHead || left != null ) {
+                    parts.add( ++i, new Object[]{ keepHead ? head : null, left } );
+                }
+                if( keepTree || right != null ) {
+                    parts.add( ++i, new Object[]{ keepTree ? tree : null, right } );
+                }
+
+                split = true;
+            }
+        }
+
+        if( descending ) {
+            Collections.reverse( parts );
+        }
+
+        List<Collection<E>> ret = new ArrayList<Collection<E>>( parts.size() );
+        for( Object[] part: parts ) {
+            ret.add( new Partition<E>( query, (Node)part[0], (Node)part[1], descending, elementType ) );
+        }
+
+        return ret;
+    }
+
+
+    private Node prunedSubtree( Query query, Node node ) {
+        return node != null && query.mayContain( node ) ? node : null;
+    }
+
+
+    private final class Partition<E> extends AbstractCollection<E> {
+        private final Query   mQuery;
+        private final Node    mHead;
+        private final Node    mTree;
+        private final boolean mDescending;
+        private final int     mElementType;
+
+        Partition( Query query, Node head, Node tree, boolean descending, int elementType ) {
+            mQuery = query;
+            mHead = head;
+            mTree = tree;
+            mDescending = descending;
+            mElementType = elementType;
+        }
+
+
+        @Override
+        public int size() {
+            return iterSize( iterator() );
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new PartitionIterator<E>( mQuery, mHead, mTree, mDescending, mElementType );
+        }
+    }
+
+    /**
+     * Pruned in-order traversal of a subtree, preceded by a head node
+     * (or followed by it, if descending). Does not ascend above subtree root.
+     */
+    private final class PartitionIterator<E> implements Iterator<E> {
+        private final Query           mQuery;
+        private final boolean         mDescending;
+        private final int             mElementType;
+        private final int             mIterModCount = mModCount;
+        private final ArrayDeque<Node> mStack       = new ArrayDeque<Node>();
+
+        private Node mHead;
+        private Node mNext;
+
+        PartitionIterator( Query query, Node head, Node tree, boolean descending, int elementType ) {
+            mQuery = query;
+            mDescending = descending;
+            mElementType = elementType;
+            mHead = head;
+            if( !descending && head != null ) {
+                mNext = head;
+                mHead = null;
+            }
+            pushSubtree( tree );
+            if( mNext == null ) {
+                mNext = advance();
+            }
+        }
+
+
+        @Override
+        public boolean hasNext() {
+            return mNext != null;
+        }
+
+        @Override
+        public E next() {
+            if( mNext == null ) {
+                throw new NoSuchElementException();
+            }
+            if( mModCount != mIterModCount ) {
+                throw new ConcurrentModificationException();
+            }
+
+            Node node = mNext;
+            mNext = advance();
+
+            switch( mElementType ) {
+            case PART_KEYS:
+                return (E)node.mKey;
+            case PART_VALUES:
+                return (E)node.mValue;
+            default:
+                return (E)node;
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        private Node advance() {
+            while( !mStack.isEmpty() ) {
+                Node node = mStack.pop();
+                if( mDescending ) {
+                    pushSubtree( mQuery.searchLeft( node ) ? node.mLeft : null );
+                } else {
+                    pushSubtree( mQuery.searchRight( node ) ? node.mRight : null );
+                }
+
+                if( mQuery.matches( node ) ) {
+                    return node;
+                }
+            }
+
+            Node head = mHead;
+            mHead = null;
+            return head;
+        }
+
+
+        private void pushSubtree( Node node ) {
+            while( node != null && mQuery.mayContain( node ) ) {
+                mStack.push( node );
+                if( mDescending ) {
+                    node = mQuery.searchRight( node ) ? node.mRight : null;
+                } else {
+                    node = mQuery.searchLeft( node ) ? node.mLeft : null;
+                }
+            }
+        }
+    }
+
+
+
     /* ************************************************************
      * Views
      * ************************************************************/
 
 
-    private abstract class AbstractKeySet extends AbstractCollection<K> implements Set<K> {
+    private abstract class AbstractKeySet extends AbstractCollection<K> implements Set<K>, Partitionable<K> {
         final boolean mDescending;
 
         AbstractKeySet( boolean descending ) {
@@ -2759,13 +3518,21 @@ public class IntervalMap<K, V> implements Map<K, V> {
         }
 
 
+        @Override
+        public List<Collection<K>> partition( int maxParts ) {
+            return IntervalMap.this.<K>partition( query(), mDescending, PART_KEYS, maxParts );
+        }
+
+
         abstract Node firstNodeInSubset();
 
         abstract boolean keyInSubset( K key );
+
+        abstract Query query();
     }
 
 
-    private final class KeySet extends AbstractSet<K> {
+    private final class KeySet extends AbstractSet<K> implements Partitionable<K> {
         private final boolean mDescending;
 
         KeySet( boolean descending ) {
@@ -2817,6 +3584,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
                 }
             };
         }
+
+        @Override
+        public List<Collection<K>> partition( int maxParts ) {
+            return IntervalMap.this.<K>partition( new AllQuery(), mDescending, PART_KEYS, maxParts );
+        }
     }
 
 
@@ -2850,6 +3622,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMins( key, mKey ) == 0 &&
                    mComp.compareMaxes( key, mKey ) == 0;
         }
+
+        @Override
+        Query query() {
+            return new EquivQuery( mKey );
+        }
     }
 
 
@@ -2883,6 +3660,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMinToMax( key, mKey ) < 0 &&
                    mComp.compareMinToMax( mKey, key ) < 0;
         }
+
+        @Override
+        Query query() {
+            return new IntersectionQuery( mKey );
+        }
     }
 
 
@@ -2916,6 +3698,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMins( key, mKey ) >= 0 &&
                    mComp.compareMaxes( key, mKey ) <= 0;
         }
+
+        @Override
+        Query query() {
+            return new SupersetQuery( mKey );
+        }
     }
 
 
@@ -2949,10 +3736,15 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMins( key, mKey ) >= 0 &&
                    mComp.compareMaxes( key, mKey ) <= 0;
         }
+
+        @Override
+        Query query() {
+            return new SubsetQuery( mKey );
+        }
     }
 
 
-    private final class Values extends AbstractCollection<V> {
+    private final class Values extends AbstractCollection<V> implements Partitionable<V> {
         private final boolean mDescending;
 
         Values( boolean descending ) {
@@ -2990,10 +3782,15 @@ public class IntervalMap<K, V> implements Map<K, V> {
                 }
             };
         }
+
+        @Override
+        public List<Collection<V>> partition( int maxParts ) {
+            return IntervalMap.this.<V>partition( new AllQuery(), mDescending, PART_VALUES, maxParts );
+        }
     }
 
 
-    private final class EquivValues extends AbstractCollection<V> {
+    private final class EquivValues extends AbstractCollection<V> implements Partitionable<V> {
         private final K       mKey;
         private final boolean mDescending;
 
@@ -3022,10 +3819,15 @@ public class IntervalMap<K, V> implements Map<K, V> {
                 }
             };
         }
+
+        @Override
+        public List<Collection<V>> partition( int maxParts ) {
+            return IntervalMap.this.<V>partition( new EquivQuery( mKey ), mDescending, PART_VALUES, maxParts );
+        }
     }
 
 
-    private final class IntersectionValues extends AbstractCollection<V> {
+    private final class IntersectionValues extends AbstractCollection<V> implements Partitionable<V> {
         private final K       mKey;
         private final boolean mDescending;
 
@@ -3053,10 +3855,15 @@ public class IntervalMap<K, V> implements Map<K, V> {
                 }
             };
         }
+
+        @Override
+        public List<Collection<V>> partition( int maxParts ) {
+            return IntervalMap.this.<V>partition( new IntersectionQuery( mKey ), mDescending, PART_VALUES, maxParts );
+        }
     }
 
 
-    private final class SupersetValues extends AbstractCollection<V> {
+    private final class SupersetValues extends AbstractCollection<V> implements Partitionable<V> {
         private final K       mKey;
         private final boolean mDescending;
 
@@ -3085,10 +3892,15 @@ public class IntervalMap<K, V> implements Map<K, V> {
                 }
             };
         }
+
+        @Override
+        public List<Collection<V>> partition( int maxParts ) {
+            return IntervalMap.this.<V>partition( new SupersetQuery( mKey ), mDescending, PART_VALUES, maxParts );
+        }
     }
 
 
-    private final class SubsetValues extends AbstractCollection<V> {
+    private final class SubsetValues extends AbstractCollection<V> implements Partitionable<V> {
         private final K       mKey;
         private final boolean mDescending;
 
@@ -3117,10 +3929,17 @@ public class IntervalMap<K, V> implements Map<K, V> {
                 }
             };
         }
+
+        @Override
+        public List<Collection<V>> partition( int maxParts ) {
+            return IntervalMap.this.<V>partition( new SubsetQuery( mKey ), mDescending, PART_VALUES, maxParts );
+        }
     }
 
 
-    private abstract class AbstractEntrySet extends AbstractCollection<Map.Entry<K, V>> implements Set<Map.Entry<K, V>> {
+    private abstract class AbstractEntrySet extends AbstractCollection<Map.Entry<K, V>>
+            implements Set<Map.Entry<K, V>>, Partitionable<Map.Entry<K, V>>
+    {
 
         final boolean mDescending;
 
@@ -3202,10 +4021,18 @@ public class IntervalMap<K, V> implements Map<K, V> {
         }
 
 
+        @Override
+        public List<Collection<Map.Entry<K, V>>> partition( int maxParts ) {
+            return IntervalMap.this.<Map.Entry<K, V>>partition( query(), mDescending, PART_ENTRIES, maxParts );
+        }
+
+
         abstract Node firstNodeInSubset();
 
         abstract boolean keyInSubset( K key );
 
+        abstract Query query();
+
     }
 
 
@@ -3250,6 +4077,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
         boolean keyInSubset( K key ) {
             return true;
         }
+
+        @Override
+        Query query() {
+            return new AllQuery();
+        }
     }
 
 
@@ -3281,6 +4113,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMins( key, mKey ) == 0 &&
                    mComp.compareMaxes( key, mKey ) == 0;
         }
+
+        @Override
+        Query query() {
+            return new EquivQuery( mKey );
+        }
     }
 
 
@@ -3315,6 +4152,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
                    mComp.compareMinToMax( mKey, key ) < 0;
         }
 
+
+        @Override
+        Query query() {
+            return new IntersectionQuery( mKey );
+        }
     }
 
 
@@ -3349,6 +4191,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMins( key, mKey ) >= 0 &&
                    mComp.compareMaxes( key, mKey ) <= 0;
         }
+
+        @Override
+        Query query() {
+            return new SupersetQuery( mKey );
+        }
     }
 
 
@@ -3382,6 +4229,11 @@ public class IntervalMap<K, V> implements Map<K, V> {
             return mComp.compareMins( key, mKey ) <= 0 &&
                    mComp.compareMaxes( key, mKey ) >= 0;
         }
+
+        @Override
+        Query query() {
+            return new SubsetQuery( mKey );
+        }
     }
 
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.Map;
+
+
+/**
+ * LongBoxMap is a version of BoxMap for boxes defined by long arrays
+ * of the form <tt>{ min0, max0, min1, max1, ... }</tt>. Each dimension is
+ * treated the same way as an interval in LongIntervalMap: half-open, with
+ * degenerate intervals treated as if the max were infinitesimally greater
+ * than the min.
+ * <p>
+ * As with LongIntervalMap, the map returns references to the actual keys and
+ * altering those keys while they are in the map has undefined results.
+ *
+ * @param <V> The mValue type to be associated with a box
+ * @author Philip DeCamp
+ * @see LongIntervalMap
+ */
+public class LongBoxMap<V> extends BoxMap<long[], V> {
+
+    /**
+     * Comparator for 2-dimensional boxes: <tt>long[] v = { x0, x1, y0, y1 }</tt>
+     */
+    public static final BoxComparator<long[]> LONG_RECT_COMP = comparator( 2 );
+
+
+    /**
+     * @param dims Number of dimensions
+     * @return comparator for boxes defined by long arrays of length <tt>2 * dims</tt>,
+     *         <tt>{ min0, max0, min1, max1, ... }</tt>, where each dimension
+     *         is compared as by {@link LongIntervalMap#LONG_PAIR_COMP}.
+     */
+    public static BoxComparator<long[]> comparator( final int dims ) {
+        return new BoxComparator<long[]>() {
+            public int dims() {
+                return dims;
+            }
+
+            public int compareMins( long[] a, long[] b, int dim ) {
+                return Long.compare( a[dim * 2], b[dim * 2] );
+            }
+
+            public int compareMaxes( long[] a, long[] b, int dim ) {
+                final int lo = dim * 2;
+                final int hi = lo + 1;
+                if( a[hi] < b[hi] ) {
+                    return -1;
+                }
+                if( a[hi] > b[hi] ) {
+                    return 1;
+                }
+
+                return (a[lo] == a[hi] ? 1 : 0) - (b[lo] == b[hi] ? 1 : 0);
+            }
+
+            public int compareMinToMax( long[] a, long[] b, int dim ) {
+                final int lo = dim * 2;
+                final int hi = lo + 1;
+                if( a[lo] < b[hi] ) {
+                    return -1;
+                }
+                if( a[lo] > b[hi] ) {
+                    return 1;
+                }
+
+                return (b[lo] == b[hi] ? -1 : 0);
+            }
+
+            public double min( long[] box, int dim ) {
+                return box[dim * 2];
+            }
+
+            public double max( long[] box, int dim ) {
+                return box[dim * 2 + 1];
+            }
+        };
+    }
+
+
+    public LongBoxMap() {
+        super( LONG_RECT_COMP );
+    }
+
+
+    public LongBoxMap( Map<long[], ? extends V> map ) {
+        super( LONG_RECT_COMP, map );
+    }
+
+
+    public LongBoxMap( BoxComparator<long[]> comp ) {
+        super( comp );
+    }
+
+
+    public LongBoxMap( BoxComparator<long[]> comp, Map<long[], ? extends V> map ) {
+        super( comp, map );
+    }
+
+}
@@ -5,6 +5,9 @@
  */
 package bits.collect;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 
@@ -31,6 +34,7 @@ import java.util.*;
  * @param <V> The mValue type to be associated with an interval
  * @author Philip DeCamp
  */
+@SuppressWarnings( "unchecked" )
 public class LongIntervalMap<V> extends IntervalMap<long[], V> {
 
     /**
@@ -72,6 +76,28 @@ public class LongIntervalMap<V> extends IntervalMap<long[], V> {
     };
 
 
+    /**
+     * Codec for intervals defined by length-2 long arrays. Each interval is
+     * written as two primitive long values.
+     */
+    public static final Codec<long[]> LONG_PAIR_CODEC = new Codec<long[]>() {
+        public void write( long[] item, DataOutput out ) throws IOException {
+            out.writeLong( item[0] );
+            out.writeLong( item[1] );
+        }
+
+        public long[] read( DataInput in ) throws IOException {
+            long min = in.readLong();
+            long max = in.readLong();
+            return new long[]{ min, max };
+        }
+    };
+
+
+    private boolean   mStabEnabled = false;
+    private StabIndex mStabIndex   = null;
+
+
     public LongIntervalMap() {
         super( LONG_PAIR_COMP );
     }
@@ -224,6 +250,153 @@ public class LongIntervalMap<V> extends IntervalMap<long[], V> {
     }
 
 
+    /**
+     * @param point A point
+     * @return the entry with the greatest max among intervals that end at or before <tt>point</tt>
+     * and do not contain it.
+     * @see #lastEntryEndingBefore(Object)
+     */
+    public Map.Entry<long[], V> lastEntryEndingBefore( long point ) {
+        return super.lastEntryEndingBefore( new long[]{ point, point } );
+    }
+
+    /**
+     * @param point A point
+     * @return the first entry with an interval that starts after <tt>point</tt>.
+     * @see #firstEntryStartingAfter(Object)
+     */
+    public Map.Entry<long[], V> firstEntryStartingAfter( long point ) {
+        return super.firstEntryStartingAfter( new long[]{ point, point } );
+    }
+
+    /**
+     * Finds the interval closest to a point. If any intervals contain
+     * <tt>point</tt>, the first of those is returned. Otherwise, returns
+     * whichever is closer of the interval that ends last before <tt>point</tt>
+     * and the interval that starts first after it, preferring the earlier one
+     * in the case of a tie.
+     *
+     * @param point A point
+     * @return the entry nearest to <tt>point</tt>, or null if map is empty.
+     */
+    public Map.Entry<long[], V> nearestEntry( long point ) {
+        final long[] key = { point, point };
+        Map.Entry<long[], V> ret = firstIntersectionEntry( key );
+        if( ret != null ) {
+            return ret;
+        }
+
+        Map.Entry<long[], V> before = super.lastEntryEndingBefore( key );
+        Map.Entry<long[], V> after  = super.firstEntryStartingAfter( key );
+        if( before == null ) {
+            return after;
+        }
+        if( after == null ) {
+            return before;
+        }
+
+        return compareDistance( point - before.getKey()[1], after.getKey()[0] - point ) <= 0 ? before : after;
+    }
+
+    /**
+     * Finds the <tt>k</tt> intervals closest to a point, ordered by distance.
+     * Intervals containing <tt>point</tt> come first, in ascending order.
+     * The remaining intervals are merged from those ending before <tt>point</tt>,
+     * by descending max, and those starting after, by ascending min. Ties are
+     * resolved in favor of earlier intervals.
+     *
+     * @param point A point
+     * @param k     Maximum number of entries to return
+     * @return list of at most <tt>k</tt> entries nearest to <tt>point</tt>.
+     */
+    public List<Map.Entry<long[], V>> kNearestEntries( long point, int k ) {
+        final long[] key = { point, point };
+        List<Map.Entry<long[], V>> ret = new ArrayList<Map.Entry<long[], V>>( Math.max( 0, Math.min( k, size() ) ) );
+        if( k <= 0 ) {
+            return ret;
+        }
+
+        for( Map.Entry<long[], V> e: intersectionEntrySet( key ) ) {
+            ret.add( e );
+            if( ret.size() >= k ) {
+                return ret;
+            }
+        }
+
+        Iterator<Map.Entry<long[], V>> beforeIter = endingBeforeIterator( key );
+        Iterator<Map.Entry<long[], V>> afterIter  = startingAfterIterator( key );
+        Map.Entry<long[], V> before = beforeIter.hasNext() ? beforeIter.next() : null;
+        Map.Entry<long[], V> after  = afterIter.hasNext() ? afterIter.next() : null;
+
+        while( ret.size() < k ) {
+            if( before == null && after == null ) {
+                break;
+            }
+
+            if( after == null || before != null && compareDistance( point - before.getKey()[1], after.getKey()[0] - point ) <= 0 ) {
+                ret.add( before );
+                before = beforeIter.hasNext() ? beforeIter.next() : null;
+            } else {
+                ret.add( after );
+                after = afterIter.hasNext() ? afterIter.next() : null;
+            }
+        }
+
+        return ret;
+    }
+
+
+    /**
+     * Enables or disables the stabbing index. When enabled, calls to
+     * {@link #stabbingEntries(long)} and {@link #stabbingValues(long)} are
+     * answered from a static index of elementary segments, each with a
+     * flattened list of the intervals that contain it. A query then costs a
+     * binary search plus a contiguous scan of the result.
+     * <p>
+     * The index is rebuilt lazily on the first stabbing query after any
+     * structural modification, which takes O(n log n) time plus the total size
+     * of the lists. Heavily nested intervals can make the index much larger
+     * than the map, so it is best suited to maps that are queried many times
+     * between modifications. The index is only used with the default
+     * comparator, {@link #LONG_PAIR_COMP}.
+     *
+     * @param enable true to use the stabbing index, false to discard it
+     */
+    public void setStabbingIndexEnabled( boolean enable ) {
+        mStabEnabled = enable;
+        if( !enable ) {
+            mStabIndex = null;
+        }
+    }
+
+
+    public boolean isStabbingIndexEnabled() {
+        return mStabEnabled;
+    }
+
+    /**
+     * @param point A point
+     * @return unmodifiable list, in ascending order, of entries with intervals
+     *         that contain <tt>point</tt>. The list is a snapshot: it is not
+     *         affected by later changes to the structure of this map.
+     * @see #setStabbingIndexEnabled(boolean)
+     */
+    public List<Map.Entry<long[], V>> stabbingEntries( long point ) {
+        return stab( point, false );
+    }
+
+    /**
+     * @param point A point
+     * @return unmodifiable list, in ascending order of interval, of values
+     *         mapped to intervals that contain <tt>point</tt>. The list is a
+     *         snapshot: it is not affected by later changes to the structure of this map.
+     * @see #setStabbingIndexEnabled(boolean)
+     */
+    public List<V> stabbingValues( long point ) {
+        return stab( point, true );
+    }
+
+
     /**
      * Removes the mapping for the first interval that is equivalent to
      * <tt>mKey</tt>.
@@ -586,11 +759,210 @@ public class LongIntervalMap<V> extends IntervalMap<long[], V> {
     }
 
 
+    /**
+     * Writes all mappings to a stream in ascending order, with each interval
+     * stored as two primitive long values.
+     *
+     * @param out        Destination stream
+     * @param valueCodec Codec used to write each mValue
+     * @see IntervalMap#write(java.io.DataOutput, Codec, Codec)
+     */
+    public void write( DataOutput out, Codec<? super V> valueCodec ) throws IOException {
+        super.write( out, LONG_PAIR_CODEC, valueCodec );
+    }
+
+    /**
+     * Replaces the contents of this map with mappings read from a stream
+     * produced by {@link #write(java.io.DataOutput, Codec)}. Runs in linear time.
+     *
+     * @param in         Source stream
+     * @param valueCodec Codec used to read each mValue
+     * @see IntervalMap#read(java.io.DataInput, Codec, Codec)
+     */
+    public void read( DataInput in, Codec<? extends V> valueCodec ) throws IOException {
+        super.read( in, LONG_PAIR_CODEC, valueCodec );
+    }
+
+
     public Set<long[]> intersectingKeySet( long min, long max ) {
         return super.intersectionKeySet( new long[]{ min, max } );
     }
 
 
+    private <E> List<E> stab( long point, boolean values ) {
+        if( !mStabEnabled || comparator() != LONG_PAIR_COMP ) {
+            Collection<?> c = values ? intersectionValues( point, point ) : intersectionEntrySet( point, point );
+            return Collections.unmodifiableList( new ArrayList<E>( (Collection<E>)c ) );
+        }
+
+        StabIndex index = mStabIndex;
+        if( index == null || index.mModCount != modCount() ) {
+            index = new StabIndex( entrySet(), size(), modCount() );
+            mStabIndex = index;
+        }
+
+        long[] points = index.mPoints;
+        int i = Arrays.binarySearch( points, point );
+        if( i >= 0 ) {
+            return new StabList<E>( index.mEntries, index.mExactStarts[i], index.mExactStops[i], values );
+        }
+
+        i = -(i + 1) - 1;
+        if( i < 0 ) {
+            return Collections.emptyList();
+        }
+
+        return new StabList<E>( index.mEntries, index.mStarts[i], index.mStops[i], values );
+    }
+
+
+    /**
+     * Compares two non-negative distances that may have overflowed a signed long.
+     */
+    private static int compareDistance( long a, long b ) {
+        return Long.compare( a + Long.MIN_VALUE, b + Long.MIN_VALUE );
+    }
+
+
+    /**
+     * Sorted elementary segment boundaries. For each boundary <tt>mPoints[i]</tt>,
+     * <tt>mEntries[mStarts[i]...mStops[i])</tt> holds the entries that contain
+     * the segment <tt>[mPoints[i], mPoints[i+1])</tt>, and
+     * <tt>mEntries[mExactStarts[i]...mExactStops[i])</tt> holds the entries
+     * that contain <tt>mPoints[i]</tt> itself. The two ranges are the same
+     * unless degenerate intervals lie on the boundary.
+     */
+    private static final class StabIndex {
+        final int      mModCount;
+        final long[]   mPoints;
+        final int[]    mStarts;
+        final int[]    mStops;
+        final int[]    mExactStarts;
+        final int[]    mExactStops;
+        final Object[] mEntries;
+
+        StabIndex( Collection<? extends Map.Entry<long[], ?>> entrySet, int size, int modCount ) {
+            mModCount = modCount;
+
+            Object[] sorted = entrySet.toArray();
+            long[] points = new long[size * 2];
+            for( int i = 0; i < size; i++ ) {
+                long[] key = ((Map.Entry<long[], ?>)sorted[i]).getKey();
+                points[i * 2] = key[0];
+                points[i * 2 + 1] = key[1];
+            }
+
+            Arrays.sort( points );
+            int pointCount = 0;
+            for( int i = 0; i < points.length; i++ ) {
+                if( pointCount == 0 || points[pointCount - 1] != points[i] ) {
+                    points[pointCount++] = points[i];
+                }
+            }
+
+            mPoints = Arrays.copyOf( points, pointCount );
+            mStarts = new int[pointCount];
+            mStops = new int[pointCount];
+            mExactStarts = new int[pointCount];
+            mExactStops = new int[pointCount];
+
+            Object[] active = new Object[size];
+            int activeCount = 0;
+            int next = 0;
+            Object[] out = new Object[Math.max( 16, size * 2 )];
+            int outCount = 0;
+
+            for( int p = 0; p < pointCount; p++ ) {
+                final long point = mPoints[p];
+
+                // Drop intervals that end at this boundary.
+                int n = 0;
+                for( int i = 0; i < activeCount; i++ ) {
+                    if( ((Map.Entry<long[], ?>)active[i]).getKey()[1] > point ) {
+                        active[n++] = active[i];
+                    }
+                }
+                Arrays.fill( active, n, activeCount, null );
+                activeCount = n;
+
+                // Entries are sorted by min, and all mins are boundaries, so
+                // every interval starting here is next in line. Degenerate
+                // intervals come first and are packed in place.
+                final int startedCount = activeCount;
+                final int degenerateFrom = next;
+                int degenerateCount = 0;
+                while( next < size && ((Map.Entry<long[], ?>)sorted[next]).getKey()[0] == point ) {
+                    long[] key = ((Map.Entry<long[], ?>)sorted[next]).getKey();
+                    if( key[1] > key[0] ) {
+                        active[activeCount++] = sorted[next];
+                    } else {
+                        sorted[degenerateFrom + degenerateCount++] = sorted[next];
+                    }
+                    next++;
+                }
+
+                int need = activeCount + (degenerateCount == 0 ? 0 : activeCount + degenerateCount);
+                if( out.length < outCount + need ) {
+                    out = Arrays.copyOf( out, Math.max( out.length * 2, outCount + need ) );
+                }
+
+                mStarts[p] = outCount;
+                System.arraycopy( active, 0, out, outCount, activeCount );
+                outCount += activeCount;
+                mStops[p] = outCount;
+
+                if( degenerateCount == 0 ) {
+                    mExactStarts[p] = mStarts[p];
+                    mExactStops[p] = mStops[p];
+                } else {
+                    // Keep ascending order: earlier intervals, degenerates, then
+                    // other intervals starting at this boundary.
+                    mExactStarts[p] = outCount;
+                    System.arraycopy( active, 0, out, outCount, startedCount );
+                    outCount += startedCount;
+                    System.arraycopy( sorted, degenerateFrom, out, outCount, degenerateCount );
+                    outCount += degenerateCount;
+                    System.arraycopy( active, startedCount, out, outCount, activeCount - startedCount );
+                    outCount += activeCount - startedCount;
+                    mExactStops[p] = outCount;
+                }
+            }
+
+            mEntries = out;
+        }
+    }
+
+
+    private static final class StabList<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[] mEntries;
+        private final int      mOffset;
+        private final int      mSize;
+        private final boolean  mValues;
+
+        StabList( Object[] entries, int start, int stop, boolean values ) {
+            mEntries = entries;
+            mOffset = start;
+            mSize = stop - start;
+            mValues = values;
+        }
+
+
+        @Override
+        public E get( int index ) {
+            if( index < 0 || index >= mSize ) {
+                throw new IndexOutOfBoundsException();
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)mEntries[mOffset + index];
+            return (E)(mValues ? e.getValue() : e);
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+    }
+
+
     @Deprecated public static final IntervalComparator<long[]> HALF_OPEN_WITH_ZERO_LENGTH_COMP = LONG_PAIR_COMP;
 
 }
@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+
+/**
+ * Primitive long version of {@link RingList}. Provides fast insertion and
+ * removal at both the beginning and end of the list without boxing, making
+ * it suitable for sliding windows of timestamps or counters.
+ * <p>
+ * Like RingList, LongRingList grows as needed up to a maximum capacity. By
+ * default, adding to a full list throws an exception. In overwrite mode,
+ * adding to the end of a full list instead discards the first (oldest)
+ * element, and adding to the front discards the last element.
+ * <p>
+ * LongRingList maintains windowed aggregates of its contents. <tt>sum()</tt>
+ * always takes constant time. <tt>min()</tt> and <tt>max()</tt> are backed by
+ * monotonic deques of candidate elements, which are built on the first call
+ * and then maintained in amortized constant time while the list is only
+ * modified by <tt>addLast()</tt>, <tt>addFirst()</tt>, <tt>removeFirst()</tt>
+ * or <tt>clear()</tt>, which covers sliding-window use in either overwrite or
+ * normal mode. Any other modification discards the deques, and the next call
+ * to <tt>min()</tt> or <tt>max()</tt> rebuilds them in linear time.
+ * <p>
+ * Not thread-safe.
+ *
+ * @author Philip DeCamp
+ * @see RingList
+ */
+public class LongRingList extends AbstractLongCollection {
+
+    static final int DEFAULT_INITIAL_CAPACITY = 10;
+    static final int MAXIMUM_CAPACITY         = 1 << 29;
+
+    private final int     mMaxCap;
+    private final boolean mOverwrite;
+
+    private long[] mBuffer;
+    private int mPos  = 0;
+    private int mSize = 0;
+    private long mSum = 0;
+
+    // Sequence number of element at index 0. Elements keep their sequence
+    // numbers while the list is modified at either end.
+    private int      mBase     = 0;
+    private boolean  mTracking = false;
+    private SeqDeque mMinQ     = null;
+    private SeqDeque mMaxQ     = null;
+
+    private transient int mModCount = 0;
+
+
+    public LongRingList() {
+        this( DEFAULT_INITIAL_CAPACITY, MAXIMUM_CAPACITY, false );
+    }
+
+
+    public LongRingList( int initialCapacity ) {
+        this( initialCapacity, MAXIMUM_CAPACITY, false );
+    }
+
+
+    public LongRingList( int initialCapacity, int maximumCapacity ) {
+        this( initialCapacity, maximumCapacity, false );
+    }
+
+    /**
+     * @param initialCapacity Initial capacity of list.
+     * @param maximumCapacity Max capacity of list.
+     * @param overwrite       If true, adding to a full list discards an element from the opposite end instead of failing.
+     */
+    public LongRingList( int initialCapacity, int maximumCapacity, boolean overwrite ) {
+        mMaxCap = Math.max( 0, Math.min( maximumCapacity, MAXIMUM_CAPACITY ) );
+        mOverwrite = overwrite;
+        if( initialCapacity <= 0 ) {
+            initialCapacity = DEFAULT_INITIAL_CAPACITY;
+        }
+
+        initialCapacity = Math.min( initialCapacity, mMaxCap );
+        mBuffer = new long[initialCapacity];
+    }
+
+
+
+    public boolean isOverwrite() {
+        return mOverwrite;
+    }
+
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+
+    public int maximumCapacity() {
+        return mMaxCap;
+    }
+
+    /**
+     * Equivalent to <tt>addLast( v )</tt>.
+     *
+     * @return true
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    @Override
+    public boolean add( long v ) {
+        addLast( v );
+        return true;
+    }
+
+    /**
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public void add( int index, long v ) {
+        if( index < 0 || index > mSize ) {
+            throw new IndexOutOfBoundsException();
+        }
+        if( index == mSize ) {
+            addLast( v );
+            return;
+        }
+        if( index == 0 ) {
+            addFirst( v );
+            return;
+        }
+
+        if( !makeRoom() ) {
+            return;
+        }
+        if( mSize == mBuffer.length ) {
+            removeFirst();
+            index--;
+        }
+
+        mModCount++;
+        mTracking = false;
+        final long[] buf = mBuffer;
+        for( int i = mSize; i > index; i-- ) {
+            buf[slot( i )] = buf[slot( i - 1 )];
+        }
+
+        buf[slot( index )] = v;
+        mSize++;
+        mSum += v;
+    }
+
+    /**
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public void addLast( long v ) {
+        if( !makeRoom() ) {
+            return;
+        }
+        if( mSize == mBuffer.length ) {
+            removeFirst();
+        }
+
+        mModCount++;
+        mBuffer[slot( mSize++ )] = v;
+        mSum += v;
+
+        if( mTracking ) {
+            final int seq = mBase + mSize - 1;
+            while( !mMinQ.isEmpty() && value( mMinQ.last() ) >= v ) {
+                mMinQ.removeLast();
+            }
+            mMinQ.addLast( seq );
+
+            while( !mMaxQ.isEmpty() && value( mMaxQ.last() ) <= v ) {
+                mMaxQ.removeLast();
+            }
+            mMaxQ.addLast( seq );
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if list is full and not in overwrite mode.
+     */
+    public void addFirst( long v ) {
+        if( !makeRoom() ) {
+            return;
+        }
+        if( mSize == mBuffer.length ) {
+            removeLast();
+        }
+
+        mModCount++;
+        mPos = (mPos == 0 ? mBuffer.length : mPos) - 1;
+        mBuffer[mPos] = v;
+        mSize++;
+        mBase--;
+        mSum += v;
+
+        if( mTracking ) {
+            // New first element is a candidate only if it beats every element after it.
+            if( mMinQ.isEmpty() || v < value( mMinQ.first() ) ) {
+                mMinQ.addFirst( mBase );
+            }
+            if( mMaxQ.isEmpty() || v > value( mMaxQ.first() ) ) {
+                mMaxQ.addFirst( mBase );
+            }
+        }
+    }
+
+    /**
+     * Adds <tt>v</tt> to end of list.
+     *
+     * @return true if <tt>v</tt> was added. False iff list is full and not in overwrite mode.
+     */
+    public boolean offer( long v ) {
+        if( !mOverwrite && mSize == mBuffer.length && !ensureCapacity( mSize + 1 ) ) {
+            return false;
+        }
+        addLast( v );
+        return true;
+    }
+
+
+    public long get( int index ) {
+        if( index < 0 || index >= mSize ) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return mBuffer[slot( index )];
+    }
+
+
+    public long set( int index, long v ) {
+        if( index < 0 || index >= mSize ) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        mModCount++;
+        mTracking = false;
+        index = slot( index );
+        long ret = mBuffer[index];
+        mBuffer[index] = v;
+        mSum += v - ret;
+        return ret;
+    }
+
+
+    public long getFirst() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        return mBuffer[mPos];
+    }
+
+
+    public long getLast() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        return mBuffer[slot( mSize - 1 )];
+    }
+
+
+    public long removeFirst() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+
+        mModCount++;
+        long ret = mBuffer[mPos];
+        mPos = slot( 1 );
+        mSize--;
+        mSum -= ret;
+
+        if( mTracking ) {
+            if( mMinQ.first() == mBase ) {
+                mMinQ.removeFirst();
+            }
+            if( mMaxQ.first() == mBase ) {
+                mMaxQ.removeFirst();
+            }
+        }
+
+        mBase++;
+        return ret;
+    }
+
+
+    public long removeLast() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+
+        mModCount++;
+        mTracking = false;
+        long ret = mBuffer[slot( --mSize )];
+        mSum -= ret;
+        return ret;
+    }
+
+    /**
+     * Removes element at given index. Named differently from
+     * <tt>remove( long )</tt> to avoid ambiguity.
+     *
+     * @return removed element
+     */
+    public long removeAt( int index ) {
+        if( index < 0 || index >= mSize ) {
+            throw new NoSuchElementException();
+        }
+        if( index == 0 ) {
+            return removeFirst();
+        }
+        if( index == mSize - 1 ) {
+            return removeLast();
+        }
+
+        mModCount++;
+        mTracking = false;
+        final long[] buf = mBuffer;
+        long ret = buf[slot( index )];
+        for( int i = index + 1; i < mSize; i++ ) {
+            buf[slot( i - 1 )] = buf[slot( i )];
+        }
+
+        mSize--;
+        mSum -= ret;
+        return ret;
+    }
+
+
+    @Override
+    public boolean remove( long v ) {
+        int idx = indexOf( v );
+        if( idx < 0 ) {
+            return false;
+        }
+        removeAt( idx );
+        return true;
+    }
+
+
+    @Override
+    public void clear() {
+        mModCount++;
+        mPos  = 0;
+        mSize = 0;
+        mSum  = 0;
+        mBase = 0;
+        if( mTracking ) {
+            mMinQ.clear();
+            mMaxQ.clear();
+        }
+    }
+
+
+    @Override
+    public boolean contains( long v ) {
+        return indexOf( v ) >= 0;
+    }
+
+
+    public int indexOf( long v ) {
+        for( int i = 0; i < mSize; i++ ) {
+            if( mBuffer[slot( i )] == v ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public int lastIndexOf( long v ) {
+        for( int i = mSize - 1; i >= 0; i-- ) {
+            if( mBuffer[slot( i )] == v ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return sum of all elements, wrapping on overflow. 0 if empty.
+     */
+    public long sum() {
+        return mSum;
+    }
+
+    /**
+     * @return smallest element
+     * @throws NoSuchElementException if list is empty
+     */
+    public long min() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        if( !mTracking ) {
+            rebuildAggregates();
+        }
+        return value( mMinQ.first() );
+    }
+
+    /**
+     * @return largest element
+     * @throws NoSuchElementException if list is empty
+     */
+    public long max() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        if( !mTracking ) {
+            rebuildAggregates();
+        }
+        return value( mMaxQ.first() );
+    }
+
+
+    @Override
+    public LongIterator iterator() {
+        return new Iter();
+    }
+
+
+    @Override
+    public long[] toArray() {
+        return toArray( new long[mSize] );
+    }
+
+
+    @Override
+    public long[] toArray( long[] arr ) {
+        if( arr.length < mSize ) {
+            arr = new long[mSize];
+        }
+
+        int n = Math.min( mSize, mBuffer.length - mPos );
+        System.arraycopy( mBuffer, mPos, arr, 0, n );
+        System.arraycopy( mBuffer, 0, arr, n, mSize - n );
+        return arr;
+    }
+
+
+    public boolean ensureCapacity( int minCap ) {
+        final int oldCap = mBuffer.length;
+        if( minCap <= oldCap ) {
+            return true;
+        } else if( minCap > mMaxCap ) {
+            return false;
+        }
+
+        int newCap = ( oldCap * 3 ) / 2 + 1;
+        if( newCap > mMaxCap ) {
+            newCap = mMaxCap;
+        } else if( newCap < minCap ) {
+            newCap = minCap;
+        }
+
+        mModCount++;
+        long[] arr = toArray( new long[newCap] );
+        mBuffer = arr;
+        mPos    = 0;
+        return true;
+    }
+
+
+
+    /**
+     * Ensures there is room for one more element, or that overwrite mode
+     * may discard one.
+     *
+     * @return false if element cannot be stored at all.
+     */
+    private boolean makeRoom() {
+        if( mSize < mBuffer.length || ensureCapacity( mSize + 1 ) ) {
+            return true;
+        }
+        if( !mOverwrite ) {
+            throw new IllegalStateException( "Maximum capacity exceeded." );
+        }
+        // Zero capacity list discards every element.
+        return mBuffer.length > 0;
+    }
+
+
+    private int slot( int index ) {
+        int s = mPos + index;
+        return s >= mBuffer.length ? s - mBuffer.length : s;
+    }
+
+
+    private long value( int seq ) {
+        return mBuffer[slot( seq - mBase )];
+    }
+
+
+    private void rebuildAggregates() {
+        if( mMinQ == null ) {
+            mMinQ = new SeqDeque( 16 );
+            mMaxQ = new SeqDeque( 16 );
+        } else {
+            mMinQ.clear();
+            mMaxQ.clear();
+        }
+
+        for( int i = 0; i < mSize; i++ ) {
+            final long v = mBuffer[slot( i )];
+            final int seq = mBase + i;
+
+            while( !mMinQ.isEmpty() && value( mMinQ.last() ) >= v ) {
+                mMinQ.removeLast();
+            }
+            mMinQ.addLast( seq );
+
+            while( !mMaxQ.isEmpty() && value( mMaxQ.last() ) <= v ) {
+                mMaxQ.removeLast();
+            }
+            mMaxQ.addLast( seq );
+        }
+
+        mTracking = true;
+    }
+
+
+
+    private final class Iter implements LongIterator {
+
+        private int mIterMod = mModCount;
+        private int mOffset  = 0;
+        private int mPrev    = -1;
+
+
+        public boolean hasNext() {
+            return mOffset < mSize;
+        }
+
+
+        public long next() {
+            if( mIterMod != mModCount ) {
+                throw new ConcurrentModificationException();
+            }
+            if( mOffset >= mSize ) {
+                throw new NoSuchElementException();
+            }
+            mPrev = mOffset++;
+            return mBuffer[slot( mPrev )];
+        }
+
+
+        public void remove() {
+            if( mPrev < 0 ) {
+                throw new IllegalStateException();
+            }
+            if( mIterMod != mModCount ) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt( mPrev );
+            mOffset = mPrev;
+            mPrev = -1;
+            mIterMod = mModCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,1349 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+
+/**
+ * A {@link TreeValueMap} specialized for primitive long values. Each value is
+ * stored as a primitive field of its entry and compared directly, so no value
+ * objects are allocated and no comparator is called. Values are ordered
+ * ascending. Multiple keys may map to equal values.
+ * <p>
+ * As with TreeValueMap, each entry is held in both a hash table over keys and
+ * a red-black tree over values. Changing the value of an existing key reuses
+ * its entry, and leaves the tree untouched if the entry keeps its position.
+ *
+ * @author Philip DeCamp
+ * @see TreeValueMap
+ */
+@SuppressWarnings( "unchecked" )
+public class LongValueTreeMap<K> {
+
+    static final int   DEFAULT_INITIAL_CAPACITY = 16;
+    static final float DEFAULT_LOAD_FACTOR      = 0.75f;
+    static final int   MAXIMUM_CAPACITY         = 1 << 30;
+
+    //Shared values
+    private transient int mModCount = 0;
+
+    //Values for key table.
+    private Node<K>[] mBuckets;
+    private final float mLoadFactor;
+    private int mThreshold;
+
+    //Values for complete index.
+    private Node<K> mRoot = null;
+    private transient int mNodeCount = 0;
+
+    //Cached ends of complete index.
+    private Node<K> mFirst = null;
+    private Node<K> mLast  = null;
+
+    //Maximum number of entries before lowest are evicted.
+    private final int mMaxSize;
+
+
+    public LongValueTreeMap() {
+        this( Integer.MAX_VALUE );
+    }
+
+    /**
+     * Creates a bounded map that holds at most <tt>maxSize</tt> entries. When
+     * an insertion would exceed that size, the entry with the lowest value is
+     * evicted, so the map retains the top <tt>maxSize</tt> entries by value.
+     *
+     * @param maxSize Maximum number of entries. Must be positive.
+     */
+    public LongValueTreeMap( int maxSize ) {
+        if( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize must be positive" );
+        }
+
+        mMaxSize = maxSize;
+        mLoadFactor = DEFAULT_LOAD_FACTOR;
+        mBuckets = newNodeArray( DEFAULT_INITIAL_CAPACITY );
+        mThreshold = (int)(DEFAULT_INITIAL_CAPACITY * mLoadFactor);
+    }
+
+
+    /**
+     * @param key          Key to lookup.
+     * @param missingValue Value to return if key is not present.
+     * @return value associated with key, or <tt>missingValue</tt> if none.
+     */
+    public long get( Object key, long missingValue ) {
+        Node<K> node = findKeyNode( key );
+        return node == null ? missingValue : node.mValue;
+    }
+
+    /**
+     * @return entry associated with key, or null if none.
+     */
+    public Entry<K> getEntry( Object key ) {
+        return findKeyNode( key );
+    }
+
+    /**
+     * Associates a value with a key. If the key is already present, its
+     * entry is reused. If the new value leaves the entry in the same position
+     * relative to its neighbors, the entry is updated in place without
+     * modifying the tree.
+     *
+     * @param key   Key to associate with value. May not be null.
+     * @param value Value to associate with key.
+     * @return true iff key was not previously present and the new entry was
+     *         retained. In a bounded map, a new entry that falls first in value
+     *         order is evicted immediately, and false is returned.
+     */
+    public boolean put( K key, long value ) {
+        if( key == null ) {
+            throw new NullPointerException();
+        }
+
+        Node<K> node = findKeyNode( key );
+        if( node != null ) {
+            setNodeValue( node, value );
+            return false;
+        }
+
+        node = new Node<K>( key, value, rehash( key.hashCode() ) );
+        insertNodeHash( node );
+        insertNodeAll( node );
+
+        if( mNodeCount > mMaxSize ) {
+            Node<K> evicted = mFirst;
+            removeNodeCompletely( evicted );
+            return evicted != node;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds <tt>delta</tt> to the value associated with a key. If the key is
+     * not present, it is inserted with a value of <tt>delta</tt>.
+     *
+     * @param key   Key of value to adjust.
+     * @param delta Amount to add to value.
+     * @return new value associated with key.
+     */
+    public long adjustValue( K key, long delta ) {
+        Node<K> node = findKeyNode( key );
+        if( node == null ) {
+            put( key, delta );
+            return delta;
+        }
+
+        setNodeValue( node, node.mValue + delta );
+        return node.mValue;
+    }
+
+    /**
+     * @param key Key to remove.
+     * @return true iff key was present and removed.
+     */
+    public boolean remove( Object key ) {
+        Node<K> node = findKeyNode( key );
+        if( node == null ) {
+            return false;
+        }
+
+        removeNodeCompletely( node );
+        return true;
+    }
+
+
+    public void clear() {
+        mModCount++;
+
+        Arrays.fill( mBuckets, null );
+        mRoot = null;
+        mFirst = null;
+        mLast = null;
+        mNodeCount = 0;
+    }
+
+
+    public int size() {
+        return mNodeCount;
+    }
+
+
+    public boolean isEmpty() {
+        return mNodeCount == 0;
+    }
+
+
+    public boolean containsKey( Object key ) {
+        return findKeyNode( key ) != null;
+    }
+
+    /**
+     * @return maximum number of entries held by this map before the entries
+     *         with the lowest values are evicted.
+     */
+    public int maxSize() {
+        return mMaxSize;
+    }
+
+
+    public Entry<K> firstEntry() {
+        return mFirst;
+    }
+
+
+    public Entry<K> lastEntry() {
+        return mLast;
+    }
+
+    /**
+     * Removes and returns the entry with the lowest value.
+     *
+     * @return removed entry, or null if map is empty.
+     */
+    public Entry<K> pollFirstEntry() {
+        Node<K> node = mFirst;
+        if( node != null ) {
+            removeNodeCompletely( node );
+        }
+        return node;
+    }
+
+    /**
+     * Removes and returns the entry with the greatest value.
+     *
+     * @return removed entry, or null if map is empty.
+     */
+    public Entry<K> pollLastEntry() {
+        Node<K> node = mLast;
+        if( node != null ) {
+            removeNodeCompletely( node );
+        }
+        return node;
+    }
+
+    /**
+     * @return first entry with value greater than or equal to <tt>value</tt>, or null if none.
+     */
+    public Entry<K> ceilingEntry( long value ) {
+        return ceiling( value );
+    }
+
+    /**
+     * @return last entry with value less than or equal to <tt>value</tt>, or null if none.
+     */
+    public Entry<K> floorEntry( long value ) {
+        return floor( value );
+    }
+
+    /**
+     * @return first entry with value strictly greater than <tt>value</tt>, or null if none.
+     */
+    public Entry<K> higherEntry( long value ) {
+        return value == Long.MAX_VALUE ? null : ceiling( value + 1 );
+    }
+
+    /**
+     * @return last entry with value strictly less than <tt>value</tt>, or null if none.
+     */
+    public Entry<K> lowerEntry( long value ) {
+        return value == Long.MIN_VALUE ? null : floor( value - 1 );
+    }
+
+    /**
+     * @param key Key to find
+     * @return number of entries that precede the entry for <tt>key</tt> in
+     *         ascending order, or -1 if <tt>key</tt> is not present.
+     */
+    public int rank( Object key ) {
+        Node<K> node = findKeyNode( key );
+        if( node == null ) {
+            return -1;
+        }
+
+        int ret = sizeAll( node.mAllLeft );
+        while( node.mAllParent != null ) {
+            if( node == node.mAllParent.mAllRight ) {
+                ret += sizeAll( node.mAllParent.mAllLeft ) + 1;
+            }
+            node = node.mAllParent;
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param index Position of entry in ascending order.
+     * @return the entry at position <tt>index</tt>
+     * @throws IndexOutOfBoundsException if index is negative or not less than <tt>size()</tt>
+     */
+    public Entry<K> select( int index ) {
+        if( index < 0 || index >= mNodeCount ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + mNodeCount );
+        }
+
+        Node<K> node = mRoot;
+        while( true ) {
+            int left = sizeAll( node.mAllLeft );
+            if( index < left ) {
+                node = node.mAllLeft;
+            } else if( index > left ) {
+                index -= left + 1;
+                node = node.mAllRight;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * @param low  Lower bound of range, inclusive.
+     * @param high Upper bound of range, inclusive.
+     * @return number of values within range
+     */
+    public int countRange( long low, long high ) {
+        if( low > high ) {
+            return 0;
+        }
+
+        return countBelow( high, true ) - countBelow( low, false );
+    }
+
+    /**
+     * @return view of all keys, in ascending order of value.
+     */
+    public Set<K> keySet() {
+        return new KeySet( true, Long.MIN_VALUE, Long.MAX_VALUE );
+    }
+
+    /**
+     * @return view of keys with values in <tt>[low, high]</tt>, in ascending order of value.
+     */
+    public Set<K> keySet( long low, long high ) {
+        return new KeySet( true, low, high );
+    }
+
+
+    public Set<K> descendingKeySet() {
+        return new KeySet( false, Long.MIN_VALUE, Long.MAX_VALUE );
+    }
+
+
+    public Set<K> descendingKeySet( long low, long high ) {
+        return new KeySet( false, low, high );
+    }
+
+    /**
+     * @return view of all entries, in ascending order of value.
+     */
+    public Set<Entry<K>> entrySet() {
+        return new EntrySet( true, Long.MIN_VALUE, Long.MAX_VALUE );
+    }
+
+    /**
+     * @return view of entries with values in <tt>[low, high]</tt>, in ascending order of value.
+     */
+    public Set<Entry<K>> entrySet( long low, long high ) {
+        return new EntrySet( true, low, high );
+    }
+
+
+    public Set<Entry<K>> descendingEntrySet() {
+        return new EntrySet( false, Long.MIN_VALUE, Long.MAX_VALUE );
+    }
+
+
+    public Set<Entry<K>> descendingEntrySet( long low, long high ) {
+        return new EntrySet( false, low, high );
+    }
+
+
+    @Override
+    public int hashCode() {
+        int ret = 0;
+        for( Node<K> node = mFirst; node != null; node = nextNodeAll( node ) ) {
+            ret += node.hashCode();
+        }
+        return ret;
+    }
+
+
+    @Override
+    public boolean equals( Object obj ) {
+        if( obj == this ) {
+            return true;
+        }
+
+        if( !(obj instanceof LongValueTreeMap) ) {
+            return false;
+        }
+
+        LongValueTreeMap<?> map = (LongValueTreeMap<?>)obj;
+        if( map.size() != mNodeCount ) {
+            return false;
+        }
+
+        for( Node<K> node = mFirst; node != null; node = nextNodeAll( node ) ) {
+            Node<?> other = map.findKeyNode( node.mKey );
+            if( other == null || other.mValue != node.mValue ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder( "{" );
+        for( Node<K> node = mFirst; node != null; node = nextNodeAll( node ) ) {
+            if( node != mFirst ) {
+                s.append( ", " );
+            }
+            s.append( node );
+        }
+        return s.append( "}" ).toString();
+    }
+
+
+    /**
+     * Entry of a LongValueTreeMap.
+     */
+    public interface Entry<K> {
+        K getKey();
+        long getValue();
+    }
+
+
+
+    private Node<K> findKeyNode( Object key ) {
+        if( key == null ) {
+            return null;
+        }
+
+        final Node<K>[] buckets = mBuckets;
+        final int hash = rehash( key.hashCode() );
+        final int idx = (hash & (buckets.length - 1));
+
+        Node<K> node = buckets[idx];
+        while( node != null ) {
+            if( hash == node.mHash && (key == node.mKey || key.equals( node.mKey )) ) {
+                return node;
+            }
+            node = node.mNext;
+        }
+
+        return null;
+    }
+
+
+    private void insertNodeHash( Node<K> node ) {
+        final Node<K>[] buckets = mBuckets;
+        final int idx = (node.mHash & (buckets.length - 1));
+
+        node.mNext = buckets[idx];
+        buckets[idx] = node;
+
+        if( mNodeCount + 1 >= mThreshold ) {
+            resizeKeys( buckets.length * 2 );
+        }
+    }
+
+
+    private void removeNodeHash( Node<K> node ) {
+        final Node<K>[] buckets = mBuckets;
+        final int idx = (node.mHash & (buckets.length - 1));
+
+        Node<K> parent = null;
+        Node<K> n = buckets[idx];
+
+        while( n != null ) {
+            if( n == node ) {
+                if( parent == null ) {
+                    buckets[idx] = n.mNext;
+                } else {
+                    parent.mNext = n.mNext;
+                }
+                break;
+            }
+
+            parent = n;
+            n = n.mNext;
+        }
+    }
+
+
+    private void resizeKeys( int newCapacity ) {
+        Node<K>[] oldBuckets = mBuckets;
+
+        int oldCap = oldBuckets.length;
+        if( oldCap >= MAXIMUM_CAPACITY ) {
+            mThreshold = Integer.MAX_VALUE;
+            return;
+        }
+
+        Node<K>[] newBuckets = newNodeArray( newCapacity );
+
+        for( int i = 0; i < oldBuckets.length; i++ ) {
+            Node<K> node = oldBuckets[i];
+
+            while( node != null ) {
+                Node<K> next = node.mNext;
+
+                int idx = (node.mHash & (newCapacity - 1));
+                node.mNext = newBuckets[idx];
+                newBuckets[idx] = node;
+
+                node = next;
+            }
+        }
+
+        mBuckets = newBuckets;
+        mThreshold = (int)(newCapacity * mLoadFactor);
+    }
+
+
+    private static <K> Node<K>[] newNodeArray( int len ) {
+        return (Node<K>[])new Node<?>[len];
+    }
+
+
+    private static int rehash( int hash ) {
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        return hash ^ (hash >>> 7) ^ (hash >>> 4);
+    }
+
+
+    private void setNodeValue( Node<K> node, long value ) {
+        node.mValue = value;
+
+        Node<K> lower  = prevNodeAll( node );
+        Node<K> higher = nextNodeAll( node );
+        if( (lower == null || lower.mValue <= value) && (higher == null || value <= higher.mValue) ) {
+            return;
+        }
+
+        removeNode( node );
+        node.mAllColor = RED;
+        node.mAllParent = null;
+        node.mAllLeft = null;
+        node.mAllRight = null;
+        node.mAllSize = 1;
+        insertNodeAll( node );
+    }
+
+
+    private void removeNodeCompletely( Node<K> node ) {
+        removeNodeHash( node );
+        removeNode( node );
+    }
+
+
+    private void insertNodeAll( Node<K> newNode ) {
+        final long value = newNode.mValue;
+        Node<K> node = mRoot;
+
+        if( node == null ) {
+            insertNode( newNode, null, LEFT );
+            return;
+        }
+
+        while( true ) {
+            if( value < node.mValue ) {
+                if( node.mAllLeft == null ) {
+                    insertNode( newNode, node, LEFT );
+                    return;
+                }
+                node = node.mAllLeft;
+            } else {
+                if( node.mAllRight == null ) {
+                    insertNode( newNode, node, RIGHT );
+                    return;
+                }
+                node = node.mAllRight;
+            }
+        }
+    }
+
+
+    private Node<K> ceiling( long value ) {
+        Node<K> node = mRoot;
+        Node<K> ret = null;
+
+        while( node != null ) {
+            if( value <= node.mValue ) {
+                ret = node;
+                node = node.mAllLeft;
+            } else {
+                node = node.mAllRight;
+            }
+        }
+
+        return ret;
+    }
+
+
+    private Node<K> floor( long value ) {
+        Node<K> node = mRoot;
+        Node<K> ret = null;
+
+        while( node != null ) {
+            if( value < node.mValue ) {
+                node = node.mAllLeft;
+            } else {
+                ret = node;
+                node = node.mAllRight;
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return number of nodes with values less than <tt>value</tt>, or less than
+     *         or equal to <tt>value</tt> if <tt>inclusive</tt>.
+     */
+    private int countBelow( long value, boolean inclusive ) {
+        Node<K> node = mRoot;
+        int ret = 0;
+
+        while( node != null ) {
+            if( node.mValue < value || inclusive && node.mValue == value ) {
+                ret += sizeAll( node.mAllLeft ) + 1;
+                node = node.mAllRight;
+            } else {
+                node = node.mAllLeft;
+            }
+        }
+
+        return ret;
+    }
+
+
+
+    /*************************************************************
+     * Fundamental Red-Black Tree Operations
+     *
+     * These operations do not look at the value portion of any
+     * node, and thus may be easily transferred to other classes.
+     *************************************************************/
+
+    private static final boolean LEFT  = true;
+    private static final boolean RIGHT = false;
+    private static final boolean BLACK = false;
+    private static final boolean RED   = true;
+
+
+    private void insertNode( Node<K> node, Node<K> parent, boolean left ) {
+        mNodeCount++;
+        mModCount++;
+
+        if( parent == null ) {
+            mRoot = node;
+            mFirst = node;
+            mLast = node;
+            node.mAllColor = BLACK;
+            return;
+        }
+
+        node.mAllParent = parent;
+
+        if( left ) {
+            parent.mAllLeft = node;
+            if( parent == mFirst ) {
+                mFirst = node;
+            }
+        } else {
+            parent.mAllRight = node;
+            if( parent == mLast ) {
+                mLast = node;
+            }
+        }
+
+        for( Node<K> p = parent; p != null; p = p.mAllParent ) {
+            p.mAllSize++;
+        }
+
+        while( true ) {
+            if( parent == null ) {
+                node.mAllColor = BLACK;
+                return;
+            }
+
+            node.mAllColor = RED;
+
+            if( parent.mAllColor == BLACK ) {
+                return;
+            }
+
+            Node<K> grandParent = parent.mAllParent;
+            Node<K> uncle = (grandParent.mAllLeft == parent ? grandParent.mAllRight : grandParent.mAllLeft);
+
+            if( uncle != null && uncle.mAllColor == RED ) {
+                parent.mAllColor = BLACK;
+                uncle.mAllColor = BLACK;
+                grandParent.mAllColor = RED;
+
+                node = grandParent;
+                parent = grandParent.mAllParent;
+                left = (parent == null || parent.mAllLeft == node);
+
+                continue;
+            }
+
+            if( !left && parent == grandParent.mAllLeft ) {
+                rotateLeft( parent );
+                parent = node;
+                node = parent.mAllLeft;
+                left = true;
+
+            } else if( left && parent == grandParent.mAllRight ) {
+                rotateRight( parent );
+                parent = node;
+                node = parent.mAllRight;
+                left = false;
+            }
+
+            parent.mAllColor = BLACK;
+            grandParent.mAllColor = RED;
+
+            if( left ) {
+                rotateRight( grandParent );
+            } else {
+                rotateLeft( grandParent );
+            }
+
+            break;
+        }
+    }
+
+
+    private void removeNode( Node<K> node ) {
+        mNodeCount--;
+        mModCount++;
+
+        if( node == mFirst ) {
+            mFirst = nextNodeAll( node );
+        }
+        if( node == mLast ) {
+            mLast = prevNodeAll( node );
+        }
+
+        //If we are deleting a node with two children, swap
+        //it with a node that has at most one child.
+        if( node.mAllLeft != null && node.mAllRight != null ) {
+            Node<K> swapNode = node.mAllLeft;
+            while( swapNode.mAllRight != null ) {
+                swapNode = swapNode.mAllRight;
+            }
+
+            swapNodes( node, swapNode );
+        }
+
+        //We are now guaranteed that node has no more than one non-null child.
+        Node<K> oldParent = node;
+        Node<K> newParent = node.mAllParent;
+
+        node = (node.mAllLeft == null ? node.mAllRight : node.mAllLeft);
+
+        if( node != null ) {
+            node.mAllParent = newParent;
+        }
+
+        if( newParent == null ) {
+            mRoot = node;
+        } else if( newParent.mAllLeft == oldParent ) {
+            newParent.mAllLeft = node;
+        } else {
+            newParent.mAllRight = node;
+        }
+
+        for( Node<K> p = newParent; p != null; p = p.mAllParent ) {
+            p.mAllSize--;
+        }
+
+        //If oldParent was RED, the constraints will be maintained.
+        if( oldParent.mAllColor == RED ) {
+            return;
+        }
+
+        //If the oldParent is BLACK and the node is RED, we swap colors.
+        if( node != null && node.mAllColor == RED ) {
+            node.mAllColor = BLACK;
+            return;
+        }
+
+        //If both oldParent and child are black, rebalance the tree.
+        while( true ) {
+            //Case 1: node is new root.
+            if( newParent == null ) {
+                return;
+            }
+
+            //Case 2: Sibling is RED. Reverse newParent and sibling colors and
+            //rotate at newParent.
+            boolean left = node == newParent.mAllLeft;
+            Node<K> sibling = left ? newParent.mAllRight : newParent.mAllLeft;
+
+            if( sibling.mAllColor == RED ) {
+                newParent.mAllColor = RED;
+                sibling.mAllColor = BLACK;
+
+                if( left ) {
+                    rotateLeft( newParent );
+                    sibling = newParent.mAllRight;
+                } else {
+                    rotateRight( newParent );
+                    sibling = newParent.mAllLeft;
+                }
+            }
+
+            if( (sibling.mAllLeft == null || sibling.mAllLeft.mAllColor == BLACK) &&
+                (sibling.mAllRight == null || sibling.mAllRight.mAllColor == BLACK) )
+            {
+                if( newParent.mAllColor == BLACK ) {
+                    //Case 3: newParent, sibling, and sibling's children are black.
+                    sibling.mAllColor = RED;
+                    node = newParent;
+                    newParent = node.mAllParent;
+                    continue;
+                } else {
+                    //Case 4: sibling and sibling's children are black, but
+                    //newParent is red.
+                    sibling.mAllColor = RED;
+                    newParent.mAllColor = BLACK;
+                    return;
+                }
+            }
+
+            //Case 5: sibling is black but has at least one red child.
+            if( left ) {
+                if( sibling.mAllRight == null || sibling.mAllRight.mAllColor == BLACK ) {
+                    rotateRight( sibling );
+                    sibling = sibling.mAllParent;
+                }
+
+                sibling.mAllColor = newParent.mAllColor;
+                sibling.mAllRight.mAllColor = BLACK;
+                rotateLeft( newParent );
+
+            } else {
+                if( sibling.mAllLeft == null || sibling.mAllLeft.mAllColor == BLACK ) {
+                    rotateLeft( sibling );
+                    sibling = sibling.mAllParent;
+                }
+
+                sibling.mAllColor = newParent.mAllColor;
+                sibling.mAllLeft.mAllColor = BLACK;
+                rotateRight( newParent );
+            }
+
+            newParent.mAllColor = BLACK;
+            break;
+        }
+    }
+
+
+    private void rotateLeft( Node<K> node ) {
+        Node<K> right = node.mAllRight;
+        if( right == null ) {
+            return;
+        }
+
+        node.mAllRight = right.mAllLeft;
+        if( node.mAllRight != null ) {
+            node.mAllRight.mAllParent = node;
+        }
+
+        right.mAllLeft = node;
+
+        if( node == mRoot ) {
+            mRoot = right;
+            right.mAllParent = null;
+            node.mAllParent = right;
+        } else {
+            right.mAllParent = node.mAllParent;
+            node.mAllParent = right;
+
+            if( node == right.mAllParent.mAllLeft ) {
+                right.mAllParent.mAllLeft = right;
+            } else {
+                right.mAllParent.mAllRight = right;
+            }
+        }
+
+        right.mAllSize = node.mAllSize;
+        node.mAllSize = sizeAll( node.mAllLeft ) + sizeAll( node.mAllRight ) + 1;
+    }
+
+
+    private void rotateRight( Node<K> node ) {
+        Node<K> left = node.mAllLeft;
+        if( left == null ) {
+            return;
+        }
+
+        node.mAllLeft = left.mAllRight;
+        left.mAllRight = node;
+
+        if( node.mAllLeft != null ) {
+            node.mAllLeft.mAllParent = node;
+        }
+
+        if( node == mRoot ) {
+            mRoot = left;
+            left.mAllParent = null;
+            node.mAllParent = left;
+        } else {
+            left.mAllParent = node.mAllParent;
+            node.mAllParent = left;
+
+            if( node == left.mAllParent.mAllRight ) {
+                left.mAllParent.mAllRight = left;
+            } else {
+                left.mAllParent.mAllLeft = left;
+            }
+        }
+
+        left.mAllSize = node.mAllSize;
+        node.mAllSize = sizeAll( node.mAllLeft ) + sizeAll( node.mAllRight ) + 1;
+    }
+
+
+    private void swapNodes( Node<K> a, Node<K> b ) {
+        if( a.mAllParent == b ) {
+            swapNodes( b, a );
+            return;
+        }
+
+        {
+            boolean tempColor = a.mAllColor;
+            a.mAllColor = b.mAllColor;
+            b.mAllColor = tempColor;
+
+            int tempSize = a.mAllSize;
+            a.mAllSize = b.mAllSize;
+            b.mAllSize = tempSize;
+        }
+
+        Node<K> tempNode;
+
+        if( a.mAllLeft == b ) {
+            a.mAllLeft = b.mAllLeft;
+            b.mAllLeft = a;
+            if( a.mAllLeft != null ) {
+                a.mAllLeft.mAllParent = a;
+            }
+
+            tempNode = a.mAllRight;
+            a.mAllRight = b.mAllRight;
+            b.mAllRight = tempNode;
+            if( a.mAllRight != null ) {
+                a.mAllRight.mAllParent = a;
+            }
+            if( b.mAllRight != null ) {
+                b.mAllRight.mAllParent = b;
+            }
+
+            b.mAllParent = a.mAllParent;
+            a.mAllParent = b;
+
+            if( b.mAllParent == null ) {
+                mRoot = b;
+            } else if( b.mAllParent.mAllLeft == a ) {
+                b.mAllParent.mAllLeft = b;
+            } else {
+                b.mAllParent.mAllRight = b;
+            }
+
+        } else if( a.mAllRight == b ) {
+            a.mAllRight = b.mAllRight;
+            b.mAllRight = a;
+            if( a.mAllRight != null ) {
+                a.mAllRight.mAllParent = a;
+            }
+
+            tempNode = a.mAllLeft;
+            a.mAllLeft = b.mAllLeft;
+            b.mAllLeft = tempNode;
+            if( a.mAllLeft != null ) {
+                a.mAllLeft.mAllParent = a;
+            }
+            if( b.mAllLeft != null ) {
+                b.mAllLeft.mAllParent = b;
+            }
+
+            b.mAllParent = a.mAllParent;
+            a.mAllParent = b;
+
+            if( b.mAllParent == null ) {
+                mRoot = b;
+            } else if( b.mAllParent.mAllLeft == a ) {
+                b.mAllParent.mAllLeft = b;
+            } else {
+                b.mAllParent.mAllRight = b;
+            }
+
+        } else {
+            tempNode = a.mAllLeft;
+            a.mAllLeft = b.mAllLeft;
+            b.mAllLeft = tempNode;
+            if( a.mAllLeft != null ) {
+                a.mAllLeft.mAllParent = a;
+            }
+            if( b.mAllLeft != null ) {
+                b.mAllLeft.mAllParent = b;
+            }
+
+            tempNode = a.mAllRight;
+            a.mAllRight = b.mAllRight;
+            b.mAllRight = tempNode;
+            if( a.mAllRight != null ) {
+                a.mAllRight.mAllParent = a;
+            }
+            if( b.mAllRight != null ) {
+                b.mAllRight.mAllParent = b;
+            }
+
+            tempNode = a.mAllParent;
+            a.mAllParent = b.mAllParent;
+            b.mAllParent = tempNode;
+
+            if( a.mAllParent == null ) {
+                mRoot = a;
+            } else if( a.mAllParent.mAllLeft == b ) {
+                a.mAllParent.mAllLeft = a;
+            } else {
+                a.mAllParent.mAllRight = a;
+            }
+
+            if( b.mAllParent == null ) {
+                mRoot = b;
+            } else if( b.mAllParent.mAllLeft == a ) {
+                b.mAllParent.mAllLeft = b;
+            } else {
+                b.mAllParent.mAllRight = b;
+            }
+        }
+    }
+
+
+    private static int sizeAll( Node<?> node ) {
+        return node == null ? 0 : node.mAllSize;
+    }
+
+
+    private Node<K> nextNodeAll( Node<K> node ) {
+        if( node.mAllRight != null ) {
+            node = node.mAllRight;
+            while( node.mAllLeft != null ) {
+                node = node.mAllLeft;
+            }
+        } else {
+            while( node.mAllParent != null && node.mAllParent.mAllRight == node ) {
+                node = node.mAllParent;
+            }
+            node = node.mAllParent;
+        }
+
+        return node;
+    }
+
+
+    private Node<K> prevNodeAll( Node<K> node ) {
+        if( node.mAllLeft != null ) {
+            node = node.mAllLeft;
+            while( node.mAllRight != null ) {
+                node = node.mAllRight;
+            }
+        } else {
+            while( node.mAllParent != null && node.mAllParent.mAllLeft == node ) {
+                node = node.mAllParent;
+            }
+            node = node.mAllParent;
+        }
+
+        return node;
+    }
+
+
+
+    /***************
+     * Node structures.
+     ***************/
+
+    private static final class Node<K> implements Entry<K> {
+        final K mKey;
+        long mValue;
+
+        final int mHash;
+        Node<K> mNext = null;
+
+        boolean mAllColor  = RED;
+        Node<K> mAllParent = null;
+        Node<K> mAllLeft   = null;
+        Node<K> mAllRight  = null;
+        int     mAllSize   = 1;
+
+        Node( K key, long value, int hash ) {
+            mKey = key;
+            mValue = value;
+            mHash = hash;
+        }
+
+
+        public K getKey() {
+            return mKey;
+        }
+
+        public long getValue() {
+            return mValue;
+        }
+
+
+        @Override
+        public int hashCode() {
+            return mKey.hashCode() ^ (int)(mValue ^ (mValue >>> 32));
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if( !(obj instanceof Entry) ) {
+                return false;
+            }
+
+            Entry<?> e = (Entry<?>)obj;
+            return mValue == e.getValue() && mKey.equals( e.getKey() );
+        }
+
+        @Override
+        public String toString() {
+            return mKey + "=" + mValue;
+        }
+
+    }
+
+
+
+    /***************
+     * Iterators.
+     ***************/
+
+    private abstract class AbstractIterator {
+
+        private final boolean mForward;
+        private final long    mLow;
+        private final long    mHigh;
+
+        private int     mIterModCount = mModCount;
+        private Node<K> mPrev = null;
+        private Node<K> mNext;
+
+
+        protected AbstractIterator( boolean forward, long low, long high ) {
+            mForward = forward;
+            mLow = low;
+            mHigh = high;
+
+            if( low > high ) {
+                mNext = null;
+            } else if( forward ) {
+                mNext = ceiling( low );
+                if( mNext != null && mNext.mValue > high ) {
+                    mNext = null;
+                }
+            } else {
+                mNext = floor( high );
+                if( mNext != null && mNext.mValue < low ) {
+                    mNext = null;
+                }
+            }
+        }
+
+
+        public final boolean hasNext() {
+            return mNext != null;
+        }
+
+        public final void remove() {
+            if( mPrev == null ) {
+                throw new IllegalStateException();
+            }
+
+            if( mModCount != mIterModCount ) {
+                throw new ConcurrentModificationException();
+            }
+
+            removeNodeCompletely( mPrev );
+
+            mPrev = null;
+            mIterModCount = mModCount;
+        }
+
+        final Node<K> nextNode() {
+            if( mNext == null ) {
+                throw new NoSuchElementException();
+            }
+
+            if( mModCount != mIterModCount ) {
+                throw new ConcurrentModificationException();
+            }
+
+            mPrev = mNext;
+
+            if( mForward ) {
+                mNext = nextNodeAll( mNext );
+                if( mNext != null && mNext.mValue > mHigh ) {
+                    mNext = null;
+                }
+            } else {
+                mNext = prevNodeAll( mNext );
+                if( mNext != null && mNext.mValue < mLow ) {
+                    mNext = null;
+                }
+            }
+
+            return mPrev;
+        }
+
+    }
+
+
+    private final class KeyIterator extends AbstractIterator implements Iterator<K> {
+
+        KeyIterator( boolean forward, long low, long high ) {
+            super( forward, low, high );
+        }
+
+        public K next() {
+            return nextNode().mKey;
+        }
+
+    }
+
+
+    private final class EntryIterator extends AbstractIterator implements Iterator<Entry<K>> {
+
+        EntryIterator( boolean forward, long low, long high ) {
+            super( forward, low, high );
+        }
+
+        public Entry<K> next() {
+            return nextNode();
+        }
+
+    }
+
+
+
+    /************
+     * Views
+     ************/
+
+    private abstract class AbstractView<E> extends AbstractSet<E> {
+
+        final boolean mForward;
+        final long    mLow;
+        final long    mHigh;
+
+        AbstractView( boolean forward, long low, long high ) {
+            mForward = forward;
+            mLow = low;
+            mHigh = high;
+        }
+
+
+        public int size() {
+            if( mLow == Long.MIN_VALUE && mHigh == Long.MAX_VALUE ) {
+                return mNodeCount;
+            }
+            return countRange( mLow, mHigh );
+        }
+
+        public void clear() {
+            if( mLow == Long.MIN_VALUE && mHigh == Long.MAX_VALUE ) {
+                LongValueTreeMap.this.clear();
+                return;
+            }
+
+            Iterator<E> iter = iterator();
+            while( iter.hasNext() ) {
+                iter.next();
+                iter.remove();
+            }
+        }
+
+        boolean inRange( Node<K> node ) {
+            return node != null && mLow <= node.mValue && node.mValue <= mHigh;
+        }
+
+    }
+
+
+    private final class KeySet extends AbstractView<K> {
+
+        KeySet( boolean forward, long low, long high ) {
+            super( forward, low, high );
+        }
+
+
+        public boolean contains( Object key ) {
+            return inRange( findKeyNode( key ) );
+        }
+
+        public boolean remove( Object key ) {
+            Node<K> node = findKeyNode( key );
+            if( !inRange( node ) ) {
+                return false;
+            }
+
+            removeNodeCompletely( node );
+            return true;
+        }
+
+        public Iterator<K> iterator() {
+            return new KeyIterator( mForward, mLow, mHigh );
+        }
+
+    }
+
+
+    private final class EntrySet extends AbstractView<Entry<K>> {
+
+        EntrySet( boolean forward, long low, long high ) {
+            super( forward, low, high );
+        }
+
+
+        public boolean contains( Object obj ) {
+            if( !(obj instanceof Entry) ) {
+                return false;
+            }
+
+            Entry<?> e = (Entry<?>)obj;
+            Node<K> node = findKeyNode( e.getKey() );
+            return inRange( node ) && node.mValue == e.getValue();
+        }
+
+        public boolean remove( Object obj ) {
+            if( !contains( obj ) ) {
+                return false;
+            }
+
+            removeNodeCompletely( findKeyNode( ((Entry<?>)obj).getKey() ) );
+            return true;
+        }
+
+        public Iterator<Entry<K>> iterator() {
+            return new EntryIterator( mForward, mLow, mHigh );
+        }
+
+    }
+
+}
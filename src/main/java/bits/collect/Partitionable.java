@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * A collection that can divide its elements into disjoint, ordered partitions
+ * that may be traversed independently, for example, by tasks submitted to a
+ * {@link java.util.concurrent.ForkJoinPool}. Iterating each partition in list
+ * order produces the same sequence as iterating the collection itself.
+ * <p>
+ * Partitions are read-only views. Like other views, they are invalidated by
+ * structural modifications to the backing collection, but any number of
+ * threads may traverse partitions concurrently while the collection is
+ * unmodified.
+ *
+ * @param <E> The element type.
+ * @author Philip DeCamp
+ */
+public interface Partitionable<E> extends Collection<E> {
+
+    /**
+     * @param maxParts Maximum number of partitions to produce.
+     * @return list of at most <tt>maxParts</tt> disjoint partitions. May
+     *         contain fewer partitions if the collection cannot be divided
+     *         further.
+     */
+    List<Collection<E>> partition( int maxParts );
+
+}
@@ -12,16 +12,22 @@ import java.lang.ref.*;
 /**
  * Set that stores all objects using weak or strong references.
  * <p>
- * Note that SemiWeakHashSet only removes stale entries when modified, which
+ * Note that SemiWeakHashSet removes all stale entries when modified, which
  * includes the calling of these method types: <tt>add()</tt>,
  * <tt>addWeakly()</tt>, <tt>remove()</tt>, <tt>clear()</tt> and
  * <tt>vacuum()</tt>. (<tt>vacuum()</tt> does nothing but clear stale entries.)
- * Stale entries are never returned by any method, including methods in
- * associated iterators and views.
+ * Read methods also remove a bounded number of stale entries per call. See
+ * {@link #setReadDrainLimit(int)}. Stale entries are never returned by any
+ * method, including methods in associated iterators and views.
  * <p>
  * SemiWeakHashSet will not store the null mValue, but won't throw an exception
  * if you try.
  * <p>
+ * SemiWeakHashSet may be constructed in identity mode, in which elements are
+ * compared with <tt>==</tt> and hashed with
+ * <tt>System.identityHashCode()</tt>, avoiding calls to <tt>equals()</tt>
+ * and <tt>hashCode()</tt> entirely.
+ * <p>
  * SemiWeakHashSet is not thread-safe.
  * 
  * @see java.lang.ref.WeakReference
@@ -33,6 +39,7 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
     static final int DEFAULT_INITIAL_CAPACITY = 16;
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
     static final int MAXIMUM_CAPACITY = 1 << 30;
+    static final int DEFAULT_READ_DRAIN_LIMIT = 8;
 
 
     private final transient ReferenceQueue<E> mQueue = new ReferenceQueue<>();
@@ -42,6 +49,8 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
     private transient int mModCount;
     private int mThreshold;
     private final float mLoadFactor;
+    private int mReadDrainLimit = DEFAULT_READ_DRAIN_LIMIT;
+    private final boolean mIdentity;
 
     
     public SemiWeakHashSet() {
@@ -55,6 +64,16 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
 
 
     public SemiWeakHashSet( int initialCapacity, float loadFactor ) {
+        this( initialCapacity, loadFactor, false );
+    }
+
+
+    /**
+     * @param initialCapacity initial number of buckets
+     * @param loadFactor      load factor
+     * @param identity        if true, elements are compared by reference instead of with <tt>equals()</tt>
+     */
+    public SemiWeakHashSet( int initialCapacity, float loadFactor, boolean identity ) {
         if( initialCapacity < 0 )
             throw new IllegalArgumentException( "Illegal initial capacity: " + initialCapacity );
 
@@ -63,6 +82,7 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
 
         initialCapacity = Math.min( initialCapacity, MAXIMUM_CAPACITY );
         mLoadFactor = loadFactor;
+        mIdentity = identity;
 
         int capacity = 1;
         while( capacity < initialCapacity ) {
@@ -163,14 +183,14 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
 
         vacuum();
         Node<E>[] buckets = mBuckets;
-        final int hash = rehash( o.hashCode() );
+        final int hash = hash( o );
         final int idx = hash & (buckets.length - 1);
 
         Node<E> parent = null;
         Node<E> child = buckets[idx];
 
         while( child != null ) {
-            if( hash == child.mHash && o.equals( child.get() ) ) {
+            if( hash == child.mHash && matches( o, child.get() ) ) {
                 mModCount++;
                 mSize--;
 
@@ -194,14 +214,16 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
      * Size may not return the exact number of objects actually in the set. If
      * garbage collection has run since the last time the set was modified,
      * WeakHashSet may contain empty nodes that would not normally count towards
-     * the collection size.
+     * the collection size. Each call removes at most {@link #readDrainLimit()}
+     * of those nodes before returning.
      * 
-     * @return the estimated size of the set, not correcting for
+     * @return the estimated size of the set, not fully correcting for
      *         garbage-collected nodes.
      * @see #vacuum()
      */
     @Override
     public int size() {
+        drainOnRead();
         return mSize;
     }
 
@@ -221,6 +243,7 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
      */
     @Override
     public boolean isEmpty() {
+        drainOnRead();
         return mSize == 0;
     }
 
@@ -231,27 +254,106 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
      * @return size of the set immediately after vacuuming has been performed.
      */
     public int vacuum() {
+        return vacuum( Integer.MAX_VALUE );
+    }
+
+    /**
+     * Removes at most <tt>maxNodes</tt> elements that have been
+     * garbage-collected, allowing cleanup to be spread over time. Removing
+     * collected elements does not invalidate iterators.
+     * 
+     * @param maxNodes maximum number of nodes to remove
+     * @return size of the set immediately after vacuuming has been performed.
+     */
+    public int vacuum( int maxNodes ) {
         Node<E> node;
 
-        while( (node = (Node<E>)mQueue.poll()) != null ) {
-            removeNode( node );
+        while( maxNodes-- > 0 && (node = (Node<E>)mQueue.poll()) != null ) {
+            unlinkNode( node );
         }
 
         return mSize;
     }
 
+    /**
+     * @return true iff elements are compared by reference rather than with <tt>equals()</tt>.
+     */
+    public boolean isIdentity() {
+        return mIdentity;
+    }
+
+    /**
+     * @return max number of garbage-collected nodes removed by each read call.
+     * @see #setReadDrainLimit(int)
+     */
+    public int readDrainLimit() {
+        return mReadDrainLimit;
+    }
+
+    /**
+     * Sets the max number of garbage-collected nodes removed by each read call,
+     * such as <tt>contains()</tt>, <tt>size()</tt> and <tt>iterator()</tt>.
+     * Zero disables cleanup on reads.
+     * 
+     * @param maxNodes max nodes to remove per read. Must be non-negative.
+     */
+    public void setReadDrainLimit( int maxNodes ) {
+        if( maxNodes < 0 )
+            throw new IllegalArgumentException( "Illegal read drain limit: " + maxNodes );
+
+        mReadDrainLimit = maxNodes;
+    }
+
 
 
     @Override
     public Iterator<E> iterator() {
+        drainOnRead();
         return new SetIterator();
     }
 
 
+    /**
+     * Visits every live element in the set, regardless of reference strength,
+     * without allocating an iterator. Unless cleanup on reads has been
+     * disabled, collected nodes encountered during the traversal are removed.
+     * <p>
+     * The visitor may call read methods on the set, but must not modify it.
+     * 
+     * @param visitor receives each element
+     * @throws ConcurrentModificationException if the set is modified during the traversal.
+     */
+    public void forEachAlive( Visitor<? super E> visitor ) {
+        final int modCount = mModCount;
+        final Node<E>[] buckets = mBuckets;
+        final boolean unlink = mReadDrainLimit > 0;
+
+        for( int i = 0; i < buckets.length; i++ ) {
+            Node<E> node = buckets[i];
+
+            while( node != null ) {
+                Node<E> next = node.mNext;
+                E element = node.get();
+
+                if( element != null ) {
+                    visitor.visit( element );
+                    if( modCount != mModCount )
+                        throw new ConcurrentModificationException();
+
+                } else if( unlink ) {
+                    unlinkNode( node );
+                }
+
+                node = next;
+            }
+        }
+    }
+
+
 
     private boolean doAdd( E element, boolean strong ) {
         Node<E>[] buckets = mBuckets;
-        final int hash = rehash( element.hashCode() );
+        final int hash = hash( element );
         final int idx = hash & (buckets.length - 1);
 
         Node<E> old = buckets[idx];
@@ -259,7 +361,7 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
             if( hash == old.mHash ) {
                 E oldEl = old.get();
 
-                if( element.equals( oldEl ) ) {
+                if( matches( element, oldEl ) ) {
                     // If the element is only weakly referenced and is being
                     // added strongly,
                     // add strong reference to node.
@@ -326,6 +428,17 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
 
 
     private void removeNode( Node<E> node ) {
+        if( unlinkNode( node ) ) {
+            mModCount++;
+        }
+    }
+
+
+    /**
+     * Removes node without incrementing mModCount. Iterators never hold
+     * collected nodes, so purging them is safe during iteration.
+     */
+    private boolean unlinkNode( Node<E> node ) {
         Node<E>[] buckets = mBuckets;
         int idx = node.mHash & (buckets.length - 1);
         Node<E> parent = null;
@@ -333,7 +446,6 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
 
         while( child != null ) {
             if( child == node ) {
-                mModCount++;
                 mSize--;
 
                 if( parent == null ) {
@@ -342,12 +454,31 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
                     parent.mNext = child.mNext;
                 }
 
-                return;
+                return true;
             }
 
             parent = child;
             child = child.mNext;
         }
+
+        return false;
+    }
+
+
+    private void drainOnRead() {
+        if( mReadDrainLimit > 0 ) {
+            vacuum( mReadDrainLimit );
+        }
+    }
+
+
+    private int hash( Object o ) {
+        return rehash( mIdentity ? System.identityHashCode( o ) : o.hashCode() );
+    }
+
+
+    private boolean matches( Object o, E element ) {
+        return o == element || !mIdentity && o.equals( element );
     }
 
 
@@ -392,13 +523,14 @@ public class SemiWeakHashSet<E> extends AbstractSet<E> {
             return null;
         }
 
+        drainOnRead();
         final Node<E>[] buckets = mBuckets;
-        final int hash = rehash( o.hashCode() );
+        final int hash = hash( o );
         final int idx = (hash & (buckets.length - 1));
 
         Node<E> node = buckets[idx];
         while( node != null ) {
-            if( hash == node.mHash && o.equals( node.get() ) ) {
+            if( hash == node.mHash && matches( o, node.get() ) ) {
                 return node;
             }
             node = node.mNext;
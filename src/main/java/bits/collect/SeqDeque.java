@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.NoSuchElementException;
+
+
+/**
+ * Minimal growable deque of ints. Used by {@link LongRingList} and
+ * {@link DoubleRingList} to hold the sequence numbers of min/max candidates.
+ *
+ * @author Philip DeCamp
+ */
+final class SeqDeque {
+
+    private int[] mBuf;
+    private int mHead = 0;
+    private int mSize = 0;
+
+
+    SeqDeque( int capacity ) {
+        mBuf = new int[Math.max( 4, capacity )];
+    }
+
+
+    int size() {
+        return mSize;
+    }
+
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+
+    int first() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        return mBuf[mHead];
+    }
+
+
+    int last() {
+        if( mSize == 0 ) {
+            throw new NoSuchElementException();
+        }
+        return mBuf[slot( mSize - 1 )];
+    }
+
+
+    void addFirst( int v ) {
+        if( mSize == mBuf.length ) {
+            grow();
+        }
+        mHead = (mHead == 0 ? mBuf.length : mHead) - 1;
+        mBuf[mHead] = v;
+        mSize++;
+    }
+
+
+    void addLast( int v ) {
+        if( mSize == mBuf.length ) {
+            grow();
+        }
+        mBuf[slot( mSize++ )] = v;
+    }
+
+
+    int removeFirst() {
+        int ret = first();
+        mHead = slot( 1 );
+        mSize--;
+        return ret;
+    }
+
+
+    int removeLast() {
+        int ret = last();
+        mSize--;
+        return ret;
+    }
+
+
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+
+
+    private int slot( int i ) {
+        int s = mHead + i;
+        return s >= mBuf.length ? s - mBuf.length : s;
+    }
+
+
+    private void grow() {
+        int[] arr = new int[mBuf.length * 2];
+        for( int i = 0; i < mSize; i++ ) {
+            arr[i] = mBuf[slot( i )];
+        }
+        mBuf  = arr;
+        mHead = 0;
+    }
+
+}
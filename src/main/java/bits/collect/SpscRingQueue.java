@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Bounded, lock-free queue for handing items from exactly one producer thread
+ * to exactly one consumer thread. Elements are stored in a ring of
+ * power-of-two size, as in {@link RingList}, and the queue never grows.
+ * <p>
+ * Because each end of the queue has a single owner, no compare-and-set
+ * operations are needed. The producer publishes items by advancing the tail
+ * counter with an ordered write, and the consumer releases slots by advancing
+ * the head counter the same way. Each thread also keeps a private cached copy
+ * of the other thread's counter and only rereads the shared counter when the
+ * cached copy indicates that the queue is full or empty. Shared and cached
+ * counters are padded onto separate cache lines.
+ * <p>
+ * <tt>offerBatch()</tt> and <tt>drainTo()</tt> transfer a run of items with a
+ * single counter update.
+ * <p>
+ * <tt>offer()</tt> and <tt>offerBatch()</tt> must only be called from the
+ * producer thread, and <tt>poll()</tt>, <tt>peek()</tt>, <tt>drainTo()</tt>,
+ * <tt>clear()</tt> and <tt>iterator()</tt> must only be called from the
+ * consumer thread. This is not checked. <tt>size()</tt> and
+ * <tt>isEmpty()</tt> may be called from any thread, but are only estimates
+ * while the queue is being modified. SpscRingQueue does not permit null
+ * elements.
+ *
+ * @param <E> Element type.
+ * @author Philip DeCamp
+ * @see ConcurrentRingQueue
+ */
+@SuppressWarnings( "unchecked" )
+public class SpscRingQueue<E> extends AbstractQueue<E> {
+
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private static final int PAD  = 16;
+    // Indices into mCounters, which are written by the owning thread and read by the other.
+    private static final int HEAD = PAD;
+    private static final int TAIL = PAD * 2;
+    // Indices into mCached, which are only accessed by the owning thread.
+    private static final int CACHED_TAIL = PAD;
+    private static final int CACHED_HEAD = PAD * 2;
+
+    private static final Visitor<Object> NULL_VISITOR = new Visitor<Object>() {
+        public void visit( Object item ) {}
+    };
+
+
+    private final int             mMask;
+    private final Object[]        mBuffer;
+    private final AtomicLongArray mCounters = new AtomicLongArray( PAD * 3 );
+    private final long[]          mCached   = new long[PAD * 3];
+
+
+    /**
+     * @param capacity Minimum capacity of queue. Will be rounded up to next power of two.
+     */
+    public SpscRingQueue( int capacity ) {
+        if( capacity <= 0 || capacity > MAXIMUM_CAPACITY ) {
+            throw new IllegalArgumentException( "Illegal capacity: " + capacity );
+        }
+
+        int cap = 1;
+        while( cap < capacity ) {
+            cap <<= 1;
+        }
+
+        mMask   = cap - 1;
+        mBuffer = new Object[cap];
+    }
+
+
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+
+    /**
+     * Producer only.
+     */
+    @Override
+    public boolean offer( E item ) {
+        if( item == null ) {
+            throw new NullPointerException();
+        }
+
+        final long tail = mCounters.get( TAIL );
+        if( tail - mCached[CACHED_HEAD] >= mBuffer.length ) {
+            long head = mCounters.get( HEAD );
+            mCached[CACHED_HEAD] = head;
+            if( tail - head >= mBuffer.length ) {
+                return false;
+            }
+        }
+
+        mBuffer[(int)tail & mMask] = item;
+        // Publishes item to consumer.
+        mCounters.lazySet( TAIL, tail + 1 );
+        return true;
+    }
+
+    /**
+     * Producer only. Adds as many items as will fit, in order, with a single
+     * update visible to the consumer.
+     *
+     * @param items Array of items. May not contain null elements.
+     * @param off   Offset into items.
+     * @param len   Number of items to offer.
+     * @return number of items added to queue, from 0 to <tt>len</tt>.
+     * @throws NullPointerException if any item is null, in which case the queue is not modified.
+     */
+    public int offerBatch( E[] items, int off, int len ) {
+        for( int i = off; i < off + len; i++ ) {
+            if( items[i] == null ) {
+                throw new NullPointerException();
+            }
+        }
+
+        final long tail = mCounters.get( TAIL );
+        final int cap = mBuffer.length;
+        long free = cap - (tail - mCached[CACHED_HEAD]);
+
+        if( free < len ) {
+            long head = mCounters.get( HEAD );
+            mCached[CACHED_HEAD] = head;
+            free = cap - (tail - head);
+        }
+
+        final int n = (int)Math.max( 0, Math.min( free, len ) );
+        final Object[] buf = mBuffer;
+        final int mask = mMask;
+
+        for( int i = 0; i < n; i++ ) {
+            buf[(int)(tail + i) & mask] = items[off + i];
+        }
+
+        if( n > 0 ) {
+            mCounters.lazySet( TAIL, tail + n );
+        }
+
+        return n;
+    }
+
+
+    /**
+     * Consumer only.
+     */
+    @Override
+    public E poll() {
+        final long head = mCounters.get( HEAD );
+        if( head >= mCached[CACHED_TAIL] ) {
+            long tail = mCounters.get( TAIL );
+            mCached[CACHED_TAIL] = tail;
+            if( head >= tail ) {
+                return null;
+            }
+        }
+
+        final int idx = (int)head & mMask;
+        E item = (E)mBuffer[idx];
+        mBuffer[idx] = null;
+        // Releases slot to producer.
+        mCounters.lazySet( HEAD, head + 1 );
+        return item;
+    }
+
+    /**
+     * Consumer only.
+     */
+    @Override
+    public E peek() {
+        final long head = mCounters.get( HEAD );
+        if( head >= mCached[CACHED_TAIL] ) {
+            long tail = mCounters.get( TAIL );
+            mCached[CACHED_TAIL] = tail;
+            if( head >= tail ) {
+                return null;
+            }
+        }
+
+        return (E)mBuffer[(int)head & mMask];
+    }
+
+    /**
+     * Consumer only. Removes up to <tt>max</tt> items and passes each to
+     * <tt>visitor</tt> in order, releasing all slots to the producer with a
+     * single update. If <tt>visitor</tt> throws an exception, the item that
+     * caused it and all preceding items are removed.
+     *
+     * @return number of items removed.
+     */
+    public int drainTo( Visitor<? super E> visitor, int max ) {
+        final long head = mCounters.get( HEAD );
+        long avail = mCached[CACHED_TAIL] - head;
+
+        if( avail < max ) {
+            long tail = mCounters.get( TAIL );
+            mCached[CACHED_TAIL] = tail;
+            avail = tail - head;
+        }
+
+        final int n = (int)Math.max( 0, Math.min( avail, max ) );
+        final Object[] buf = mBuffer;
+        final int mask = mMask;
+        int i = 0;
+
+        try {
+            while( i < n ) {
+                int idx = (int)(head + i++) & mask;
+                E item = (E)buf[idx];
+                buf[idx] = null;
+                visitor.visit( item );
+            }
+        } finally {
+            if( i > 0 ) {
+                mCounters.lazySet( HEAD, head + i );
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @see #drainTo(Visitor, int)
+     */
+    public int drainTo( final Collection<? super E> out, int max ) {
+        return drainTo( new Visitor<E>() {
+            public void visit( E item ) {
+                out.add( item );
+            }
+        }, max );
+    }
+
+
+    @Override
+    public int size() {
+        // Read head first so that tail is never behind it.
+        long head = mCounters.get( HEAD );
+        long tail = mCounters.get( TAIL );
+        return (int)Math.max( 0, Math.min( mBuffer.length, tail - head ) );
+    }
+
+
+    @Override
+    public boolean isEmpty() {
+        return mCounters.get( TAIL ) <= mCounters.get( HEAD );
+    }
+
+    /**
+     * Consumer only.
+     */
+    @Override
+    public void clear() {
+        while( drainTo( NULL_VISITOR, mBuffer.length ) > 0 ) {}
+    }
+
+    /**
+     * Consumer only. Returns an iterator over the items in the queue when this
+     * method is called. The iterator does not support <tt>remove()</tt>, and
+     * is invalid once items are removed from the queue.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final long head = mCounters.get( HEAD );
+        final long tail = mCounters.get( TAIL );
+
+        return new Iterator<E>() {
+            long mPos = head;
+
+            public boolean hasNext() {
+                return mPos < tail;
+            }
+
+            public E next() {
+                if( mPos >= tail ) {
+                    throw new NoSuchElementException();
+                }
+                return (E)mBuffer[(int)mPos++ & mMask];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
@@ -37,6 +37,13 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     private Node<K,V> mRoot = null;
     private transient int mNodeCount = 0;
     
+    //Cached ends of complete index.
+    private Node<K,V> mFirst = null;
+    private Node<K,V> mLast  = null;
+    
+    //Maximum number of entries before lowest are evicted.
+    private final int mMaxSize;
+    
 
     public TreeValueMap() {
         this( null );
@@ -44,10 +51,27 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     
     
     public TreeValueMap( Comparator<? super V> optComp ) {
+        this( optComp, Integer.MAX_VALUE );
+    }
+    
+    /**
+     * Creates a bounded map that holds at most <tt>maxSize</tt> entries. When
+     * an insertion would exceed that size, the entry with the lowest mValue is
+     * evicted, so the map retains the top <tt>maxSize</tt> entries by mValue.
+     * 
+     * @param optComp Comparator used to order values, or null to use natural ordering.
+     * @param maxSize Maximum number of entries. Must be positive.
+     */
+    public TreeValueMap( Comparator<? super V> optComp, int maxSize ) {
+        if( maxSize <= 0 ) {
+            throw new IllegalArgumentException( "maxSize must be positive" );
+        }
+        
         int initCapacity = DEFAULT_INITIAL_CAPACITY;
         int capacity    = higherPot( Math.max( 1, initCapacity ) - 1 );
         
         mValueComparator = optComp;
+        mMaxSize      = maxSize;
         mLoadFactor   = DEFAULT_LOAD_FACTOR;
         mBuckets      = new Node[capacity];
         mThreshold    = (int)(capacity * mLoadFactor);
@@ -65,7 +89,56 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     @Override
     public V put( K key, V value ) {
         Node<K,V> ret = putNode( key, value );
-        return ret == null ? null : ret.mValue;
+        V prev = ret == null ? null : ret.mValue;
+        if( mNodeCount > mMaxSize ) {
+            removeNodeCompletely( mFirst );
+        }
+        return prev;
+    }
+    
+    /**
+     * Changes the mValue associated with a key. If the new mValue leaves the
+     * entry in the same position relative to its neighbors, the entry is
+     * updated in place without modifying the tree. Otherwise, the existing
+     * entry is repositioned without allocating a new one. If the key is not
+     * present, this call is equivalent to <code>put( key, value )</code>.
+     * 
+     * @return the previous mValue associated with key, or null if none.
+     */
+    public V updateValue( K key, V value ) {
+        if( value == null ) {
+            throw new NullPointerException();
+        }
+        
+        Node<K,V> node = findKeyNode( key );
+        if( node == null ) {
+            return put( key, value );
+        }
+        
+        V prev = node.mValue;
+        node.mValue = value;
+        repositionNode( node );
+        return prev;
+    }
+    
+    /**
+     * Restores the position of an entry after its mValue has been mutated in
+     * place in a way that may change its ordering. Like
+     * {@link #updateValue}, the entry is only moved if it is out of order with
+     * respect to its neighbors, and is never reallocated. The map must not be
+     * otherwise accessed between mutating a mValue and calling this method.
+     * 
+     * @param key Key of entry whose mValue has changed.
+     * @return true iff key is present.
+     */
+    public boolean reorder( K key ) {
+        Node<K,V> node = findKeyNode( key );
+        if( node == null ) {
+            return false;
+        }
+        
+        repositionNode( node );
+        return true;
     }
     
     
@@ -95,6 +168,8 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         Arrays.fill( mBuckets, null );
         mKeyCount = 0;
         mRoot  = null;
+        mFirst = null;
+        mLast  = null;
         mNodeCount = 0;
     }
 
@@ -138,6 +213,131 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         return lastNode();
     }
     
+    /**
+     * Removes and returns the entry with the lowest mValue.
+     * 
+     * @return removed entry, or null if map is empty.
+     */
+    public Map.Entry<K,V> pollFirstEntry() {
+        Node<K,V> node = mFirst;
+        if( node != null ) {
+            removeNodeCompletely( node );
+        }
+        return node;
+    }
+    
+    /**
+     * Removes and returns the entry with the greatest mValue.
+     * 
+     * @return removed entry, or null if map is empty.
+     */
+    public Map.Entry<K,V> pollLastEntry() {
+        Node<K,V> node = mLast;
+        if( node != null ) {
+            removeNodeCompletely( node );
+        }
+        return node;
+    }
+    
+    /**
+     * Removes and returns the entry with the lowest mValue within an
+     * equivalence class or range.
+     * 
+     * @param comp Selects values <tt>v</tt> where <tt>comp.compareTo( v ) == 0</tt>.
+     * @return removed entry, or null if no value is selected.
+     * @see #valueRange
+     */
+    public Map.Entry<K,V> pollFirstEntry( Comparable<? super V> comp ) {
+        Node<K,V> node = firstEquivalent( comp );
+        if( node != null ) {
+            removeNodeCompletely( node );
+        }
+        return node;
+    }
+    
+    /**
+     * Removes and returns the entry with the greatest mValue within an
+     * equivalence class or range.
+     * 
+     * @param comp Selects values <tt>v</tt> where <tt>comp.compareTo( v ) == 0</tt>.
+     * @return removed entry, or null if no value is selected.
+     * @see #valueRange
+     */
+    public Map.Entry<K,V> pollLastEntry( Comparable<? super V> comp ) {
+        Node<K,V> node = lastEquivalent( comp );
+        if( node != null ) {
+            removeNodeCompletely( node );
+        }
+        return node;
+    }
+    
+    /**
+     * @return maximum number of entries held by this map before the entries
+     *         with the lowest values are evicted.
+     */
+    public int maxSize() {
+        return mMaxSize;
+    }
+    
+    /**
+     * @param key Key to find
+     * @return number of entries that precede the entry for <tt>key</tt> in
+     *         ascending order, or -1 if <tt>key</tt> is not present.
+     */
+    public int rank( K key ) {
+        Node<K,V> node = findKeyNode( key );
+        if( node == null ) {
+            return -1;
+        }
+        
+        int ret = sizeAll( node.mAllLeft );
+        while( node.mAllParent != null ) {
+            if( node == node.mAllParent.mAllRight ) {
+                ret += sizeAll( node.mAllParent.mAllLeft ) + 1;
+            }
+            node = node.mAllParent;
+        }
+        
+        return ret;
+    }
+    
+    /**
+     * @param index Position of entry in ascending order.
+     * @return the entry at position <tt>index</tt>
+     * @throws IndexOutOfBoundsException if index is negative or not less than <tt>size()</tt>
+     */
+    public Map.Entry<K,V> select( int index ) {
+        if( index < 0 || index >= mNodeCount ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + mNodeCount );
+        }
+        
+        Node<K,V> node = mRoot;
+        while( true ) {
+            int left = sizeAll( node.mAllLeft );
+            if( index < left ) {
+                node = node.mAllLeft;
+            } else if( index > left ) {
+                index -= left + 1;
+                node = node.mAllRight;
+            } else {
+                return node;
+            }
+        }
+    }
+    
+    /**
+     * Counts values within a range. A value <tt>v</tt> is within range if
+     * <tt>low.compareTo( v ) &lt;= 0</tt> and <tt>high.compareTo( v ) &gt;= 0</tt>.
+     * 
+     * @param low  Lower bound of range, inclusive.
+     * @param high Upper bound of range, inclusive.
+     * @return number of values within range
+     */
+    public int countRange( Comparable<? super V> low, Comparable<? super V> high ) {
+        int ret = countBelow( high, true ) - countBelow( low, false );
+        return ret < 0 ? 0 : ret;
+    }
+    
     
     public V ceilingValue( V value ) {
         Node<K,V> node = ceiling( value );
@@ -243,6 +443,53 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         return new Values( false, comp );
     }
     
+    /**
+     * Creates a selector for a range of values under this map's ordering. The
+     * result may be passed to any method that accepts an equivalence class,
+     * such as {@link #entrySet(Comparable)}, {@link #descendingKeySet(Comparable)},
+     * {@link #countRange} or {@link #pollFirstEntry(Comparable)}. Views over a
+     * range locate their first element in O(log n) and stop at the end of the range.
+     * 
+     * @param low           Lower bound of range, or null if unbounded.
+     * @param lowInclusive  Whether <tt>low</tt> is included in range.
+     * @param high          Upper bound of range, or null if unbounded.
+     * @param highInclusive Whether <tt>high</tt> is included in range.
+     * @return Comparable that is equal to values within range.
+     */
+    public Comparable<V> valueRange( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return new ValueRange( low, lowInclusive, high, highInclusive );
+    }
+    
+    /**
+     * @return view of values below <tt>high</tt>, in ascending order.
+     */
+    public Collection<V> headValues( V high, boolean inclusive ) {
+        return new Values( true, valueRange( null, false, high, inclusive ) );
+    }
+    
+    /**
+     * @return view of values above <tt>low</tt>, in ascending order.
+     */
+    public Collection<V> tailValues( V low, boolean inclusive ) {
+        return new Values( true, valueRange( low, inclusive, null, false ) );
+    }
+    
+    /**
+     * @return view of values between <tt>low</tt> and <tt>high</tt>, in ascending order.
+     * @see #valueRange
+     */
+    public Collection<V> subValues( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return new Values( true, valueRange( low, lowInclusive, high, highInclusive ) );
+    }
+    
+    /**
+     * @return view of values between <tt>low</tt> and <tt>high</tt>, in descending order.
+     * @see #valueRange
+     */
+    public Collection<V> descendingSubValues( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+        return new Values( false, valueRange( low, lowInclusive, high, highInclusive ) );
+    }
+    
     
     private Node<K,V> findNodeThatContains( Object obj ) {
         if( obj == null ) {
@@ -389,6 +636,8 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         
         if(parent == null) {
             mRoot = node;
+            mFirst = node;
+            mLast = node;
             node.mAllColor = BLACK;
             return;
         }
@@ -397,10 +646,17 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         
         if(left) {
             parent.mAllLeft = node;
+            if(parent == mFirst)
+                mFirst = node;
         }else{
             parent.mAllRight = node;
+            if(parent == mLast)
+                mLast = node;
         }
         
+        for(Node<K,V> p = parent; p != null; p = p.mAllParent)
+            p.mAllSize++;
+        
         while(true) {
             if(parent == null) {
                 node.mAllColor = BLACK;
@@ -460,6 +716,11 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         mNodeCount--;
         mModCount++;
         
+        if(node == mFirst)
+            mFirst = nextNodeAll(node);
+        if(node == mLast)
+            mLast = prevNodeAll(node);
+        
         //If we are deleting a node with two children, swap
         //it with a node that has at most one child.
         if(node.mAllLeft != null && node.mAllRight != null) {
@@ -495,6 +756,9 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
             }
         }
         
+        for(Node<K,V> p = newParent; p != null; p = p.mAllParent)
+            p.mAllSize--;
+        
         //If oldParent was RED, the constraints will be maintained.
         if(oldParent.mAllColor == RED)
             return;
@@ -608,6 +872,9 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
                 right.mAllParent.mAllRight = right;
             }
         }
+        
+        right.mAllSize = node.mAllSize;
+        node.mAllSize = sizeAll(node.mAllLeft) + sizeAll(node.mAllRight) + 1;
     }
     
     
@@ -636,6 +903,9 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
                 left.mAllParent.mAllLeft = left;
             }
         }
+        
+        left.mAllSize = node.mAllSize;
+        node.mAllSize = sizeAll(node.mAllLeft) + sizeAll(node.mAllRight) + 1;
     }
     
     
@@ -649,6 +919,10 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
             boolean tempColor = a.mAllColor;
             a.mAllColor = b.mAllColor;
             b.mAllColor = tempColor;
+            
+            int tempSize = a.mAllSize;
+            a.mAllSize = b.mAllSize;
+            b.mAllSize = tempSize;
         }
         
         Node<K,V> tempNode;
@@ -744,29 +1018,18 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     }
     
     
+    private static int sizeAll( Node<?,?> node ) {
+        return node == null ? 0 : node.mAllSize;
+    }
+    
+    
     private Node<K,V> firstNode() {
-        Node<K,V> node = mRoot;
-        
-        if(node == null)
-            return null;
-        
-        while(node.mAllLeft != null)
-            node = node.mAllLeft;
-        
-        return node;
+        return mFirst;
     }
     
     
     private Node<K,V> lastNode() {
-        Node<K,V> node = mRoot;
-        
-        if(node == null)
-            return null;
-        
-        while(node.mAllRight != null)
-            node = node.mAllRight;
-        
-        return node;
+        return mLast;
     }
     
     
@@ -806,6 +1069,29 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     }
     
     
+    /**
+     * @return number of nodes with values less than <tt>comp</tt>, or less than
+     *         or equivalent to <tt>comp</tt> if <tt>inclusive</tt>.
+     */
+    private int countBelow( Comparable<? super V> comp, boolean inclusive ) {
+        Node<K,V> node = mRoot;
+        int ret = 0;
+        
+        while(node != null) {
+            int c = comp.compareTo(node.mValue);
+            
+            if(c > 0 || inclusive && c == 0) {
+                ret += sizeAll(node.mAllLeft) + 1;
+                node = node.mAllRight;
+            }else{
+                node = node.mAllLeft;
+            }
+        }
+        
+        return ret;
+    }
+    
+    
     private Node<K,V> firstEquivalent( Comparable<? super V> comp ) {
         Node<K,V> node = mRoot;
         Node<K,V> ret = null;
@@ -1137,12 +1423,18 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
             ret = ret.mNext;
         }
         
-        //Insert node into all.
+        insertNodeAll( newNode );
+        return ret;
+    }
+    
+    
+    private void insertNodeAll( Node<K,V> newNode ) {
+        final V value = newNode.mValue;
         Node node = mRoot;
         
         if( node == null ) {
             insertNode( newNode, null, LEFT );
-            return ret;
+            return;
         }
         
         if( mValueComparator != null ) {
@@ -1153,14 +1445,14 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
                 if( c < 0 ) {
                     if( node.mAllLeft == null ) {
                         insertNode(newNode, node, LEFT);
-                        return ret;
+                        return;
                     } else {
                         node = node.mAllLeft;
                     }
                 } else {
                     if( node.mAllRight == null ) {
                         insertNode( newNode, node, RIGHT );
-                        return ret;
+                        return;
                     } else {
                         node = node.mAllRight;
                     }
@@ -1174,14 +1466,14 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
                 if( c < 0 ) {
                     if( node.mAllLeft == null ) {
                         insertNode( newNode, node, LEFT );
-                        return ret;
+                        return;
                     } else {
                         node = node.mAllLeft;
                     }
                 } else {
                     if( node.mAllRight == null ) {
                         insertNode( newNode, node, RIGHT );
-                        return ret;
+                        return;
                     } else {
                         node = node.mAllRight;
                     }
@@ -1191,6 +1483,35 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     }
     
     
+    private void repositionNode( Node<K,V> node ) {
+        final V value = node.mValue;
+        
+        Node<K,V> lower  = prevNodeAll( node );
+        Node<K,V> higher = nextNodeAll( node );
+        if( ( lower == null || compareValues( lower.mValue, value ) <= 0 ) &&
+            ( higher == null || compareValues( value, higher.mValue ) <= 0 ) )
+        {
+            return;
+        }
+        
+        removeNode( node );
+        node.mAllColor  = RED;
+        node.mAllParent = null;
+        node.mAllLeft   = null;
+        node.mAllRight  = null;
+        node.mAllSize   = 1;
+        insertNodeAll( node );
+    }
+    
+    
+    private int compareValues( V a, V b ) {
+        if( mValueComparator != null ) {
+            return mValueComparator.compare( a, b );
+        }
+        return ((Comparable<? super V>)a).compareTo( b );
+    }
+    
+    
     private void removeNodeCompletely( Node<K,V> node ) {
         removeNodeHash( node );
         removeNode( node );
@@ -1204,7 +1525,7 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     
     private static final class Node<K,V> implements Map.Entry<K,V> {
         final K mKey;
-        final V mValue;
+        V mValue;
         
         final int mHash;
         Node<K,V> mNext = null;
@@ -1213,6 +1534,7 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
         Node<K,V> mAllParent = null;
         Node<K,V> mAllLeft = null;
         Node<K,V> mAllRight = null;
+        int mAllSize = 1;
         
         Node( K key, V value, int hash ) {
             mKey = key;
@@ -1396,15 +1718,7 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
             if(mComp == null) {
                 return mNodeCount;
             }else{
-                Iterator<K> iter = iterator();
-                int count = 0;
-                
-                while(iter.hasNext()) {
-                    iter.next();
-                    count++;
-                }
-                
-                return count;
+                return countRange( mComp, mComp );
             }
         }
         
@@ -1465,15 +1779,7 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
             if(mComp == null) {
                 return mNodeCount;
             }else{
-                Iterator<Map.Entry<K,V>> iter = iterator();
-                int count = 0;
-                
-                while(iter.hasNext()) {
-                    iter.next();
-                    count++;
-                }
-                
-                return count;
+                return countRange( mComp, mComp );
             }
         }
         
@@ -1550,15 +1856,7 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
             if(mComp == null) {
                 return mNodeCount;
             }else{
-                Iterator<V> iter = iterator();
-                int count = 0;
-                
-                while(iter.hasNext()) {
-                    iter.next();
-                    count++;
-                }
-                
-                return count;
+                return countRange( mComp, mComp );
             }
         }
         
@@ -1602,6 +1900,42 @@ public class TreeValueMap<K,V> extends AbstractMap<K,V> {
     }
     
     
+    private final class ValueRange implements Comparable<V> {
+        
+        private final V mLow;
+        private final boolean mLowInclusive;
+        private final V mHigh;
+        private final boolean mHighInclusive;
+        
+        ValueRange( V low, boolean lowInclusive, V high, boolean highInclusive ) {
+            mLow = low;
+            mLowInclusive = lowInclusive;
+            mHigh = high;
+            mHighInclusive = highInclusive;
+        }
+        
+        
+        public int compareTo( V value ) {
+            if( mLow != null ) {
+                int c = compareValues( mLow, value );
+                if( c > 0 || c == 0 && !mLowInclusive ) {
+                    return 1;
+                }
+            }
+            
+            if( mHigh != null ) {
+                int c = compareValues( value, mHigh );
+                if( c > 0 || c == 0 && !mHighInclusive ) {
+                    return -1;
+                }
+            }
+            
+            return 0;
+        }
+        
+    }
+    
+    
     private static int higherPot( int val ) {
         if( val <= 0 ) {
             return 1;
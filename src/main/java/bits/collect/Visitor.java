@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+
+/**
+ * Receives each element of a collection during a traversal. Used by
+ * collections that provide visiting methods, such as
+ * {@link WeakHashSet#forEachAlive}, which visit elements without allocating
+ * an iterator.
+ *
+ * @param <T> The type of element visited.
+ * @author Philip DeCamp
+ */
+public interface Visitor<T> {
+
+    /**
+     * @param item Element being visited. Never null.
+     */
+    void visit( T item );
+
+}
@@ -12,14 +12,23 @@ import java.lang.ref.*;
 /**
  * Set that stores all objects using weak references.
  * <p>
- * Note that WeakHashSet only removes stale entries when modified, which
+ * Note that WeakHashSet removes all stale entries when modified, which
  * includes the calling of these method types: <tt>add()</tt>, <tt>remove()</tt>, <tt>clear()</tt> and <tt>vacuum()</tt>. (<tt>vacuum()</tt> does nothing but
- * clear stale entries.) Stale entries are never returned by any method,
- * including methods in associated iterators and views.
+ * clear stale entries.) Read methods, including <tt>contains()</tt>,
+ * <tt>size()</tt> and <tt>iterator()</tt>, also remove a bounded number of
+ * stale entries per call, so read-heavy sets stay compact without long vacuum
+ * pauses. See {@link #setReadDrainLimit(int)}. Stale entries are never
+ * returned by any method, including methods in associated iterators and views.
  * <p>
  * WeakHashSet will not store the null mValue, but won't throw an exception if
  * you try.
  * <p>
+ * WeakHashSet may be constructed in identity mode, in which elements are
+ * compared with <tt>==</tt> and hashed with <tt>System.identityHashCode()</tt>
+ * rather than with <tt>equals()</tt> and <tt>hashCode()</tt>, as in
+ * {@link java.util.IdentityHashMap}. This is appropriate for registries of
+ * listeners or handles where identity is what matters.
+ * <p>
  * WeakHashSet is not thread-safe.
  *
  * @author Philip DeCamp
@@ -31,6 +40,7 @@ public class WeakHashSet<E> extends AbstractSet<E> {
     static final int   DEFAULT_INITIAL_CAPACITY = 16;
     static final float DEFAULT_LOAD_FACTOR      = 0.75f;
     static final int   MAXIMUM_CAPACITY         = 1 << 30;
+    static final int   DEFAULT_READ_DRAIN_LIMIT = 8;
 
 
     private final transient ReferenceQueue<E> mQueue = new ReferenceQueue<>();
@@ -40,6 +50,8 @@ public class WeakHashSet<E> extends AbstractSet<E> {
     private transient int       mModCount;
     private           int       mThreshold;
     private final     float     mLoadFactor;
+    private           int       mReadDrainLimit = DEFAULT_READ_DRAIN_LIMIT;
+    private final     boolean   mIdentity;
 
 
     public WeakHashSet() {
@@ -51,6 +63,15 @@ public class WeakHashSet<E> extends AbstractSet<E> {
     }
 
     public WeakHashSet( int initialCapacity, float loadFactor ) {
+        this( initialCapacity, loadFactor, false );
+    }
+
+    /**
+     * @param initialCapacity initial number of buckets
+     * @param loadFactor      load factor
+     * @param identity        if true, elements are compared by reference instead of with <tt>equals()</tt>
+     */
+    public WeakHashSet( int initialCapacity, float loadFactor, boolean identity ) {
         if( initialCapacity < 0 ) {
             throw new IllegalArgumentException( "Illegal initial capacity: " + initialCapacity );
         }
@@ -61,6 +82,7 @@ public class WeakHashSet<E> extends AbstractSet<E> {
 
         initialCapacity = Math.min( initialCapacity, MAXIMUM_CAPACITY );
         mLoadFactor = loadFactor;
+        mIdentity = identity;
 
         int capacity = 1;
         while( capacity < initialCapacity ) {
@@ -136,13 +158,14 @@ public class WeakHashSet<E> extends AbstractSet<E> {
             return false;
         }
 
+        drainOnRead();
         final Node<E>[] buckets = mBuckets;
-        final int hash = rehash( o.hashCode() );
+        final int hash = hash( o );
         final int idx = (hash & (buckets.length - 1));
 
         Node<E> node = buckets[idx];
         while( node != null ) {
-            if( hash == node.mHash && o.equals( node.get() ) ) {
+            if( hash == node.mHash && matches( o, node.get() ) ) {
                 return true;
             }
 
@@ -171,14 +194,14 @@ public class WeakHashSet<E> extends AbstractSet<E> {
 
         vacuum();
         Node<E>[] buckets = mBuckets;
-        final int hash = rehash( o.hashCode() );
+        final int hash = hash( o );
         final int idx = hash & (buckets.length - 1);
 
         Node<E> parent = null;
         Node<E> child = buckets[idx];
 
         while( child != null ) {
-            if( hash == child.mHash && o.equals( child.get() ) ) {
+            if( hash == child.mHash && matches( o, child.get() ) ) {
                 mModCount++;
                 mSize--;
 
@@ -202,14 +225,16 @@ public class WeakHashSet<E> extends AbstractSet<E> {
      * Size may not return the exact number of objects actually in the set. If
      * garbage collection has run since the last time the set was modified,
      * WeakHashSet may contain empty nodes that would not normally count towards
-     * the collection size.
+     * the collection size. Each call removes at most {@link #readDrainLimit()}
+     * of those nodes before returning.
      *
-     * @return estimated size of the set, not correcting for
+     * @return estimated size of the set, not fully correcting for
      * garbage-collected nodes.
      * @see #vacuum()
      */
     @Override
     public int size() {
+        drainOnRead();
         return mSize;
     }
 
@@ -228,6 +253,7 @@ public class WeakHashSet<E> extends AbstractSet<E> {
      */
     @Override
     public boolean isEmpty() {
+        drainOnRead();
         return mSize == 0;
     }
 
@@ -238,28 +264,116 @@ public class WeakHashSet<E> extends AbstractSet<E> {
      * @return size of the set immediately after vacuuming has been performed.
      */
     public int vacuum() {
+        return vacuum( Integer.MAX_VALUE );
+    }
+
+    /**
+     * Removes at most <tt>maxNodes</tt> nodes that contain garbage-collected
+     * elements. Useful for spreading cleanup over time instead of paying for
+     * it in a single burst. Removing collected nodes does not invalidate
+     * iterators.
+     *
+     * @param maxNodes maximum number of nodes to remove
+     * @return size of the set immediately after vacuuming has been performed.
+     */
+    public int vacuum( int maxNodes ) {
         Node<E> node;
-        while( (node = (Node<E>)mQueue.poll()) != null ) {
-            removeNode( node );
+        while( maxNodes-- > 0 && (node = (Node<E>)mQueue.poll()) != null ) {
+            unlinkNode( node );
         }
         return mSize;
     }
 
+    /**
+     * @return true iff elements are compared by reference rather than with <tt>equals()</tt>.
+     */
+    public boolean isIdentity() {
+        return mIdentity;
+    }
+
+    /**
+     * @return max number of garbage-collected nodes removed by each read call.
+     * @see #setReadDrainLimit(int)
+     */
+    public int readDrainLimit() {
+        return mReadDrainLimit;
+    }
+
+    /**
+     * Sets the max number of garbage-collected nodes removed by each read call,
+     * such as <tt>contains()</tt>, <tt>size()</tt> and <tt>iterator()</tt>.
+     * Zero disables cleanup on reads, leaving it to modification methods and
+     * <tt>vacuum()</tt>.
+     *
+     * @param maxNodes max nodes to remove per read. Must be non-negative.
+     */
+    public void setReadDrainLimit( int maxNodes ) {
+        if( maxNodes < 0 ) {
+            throw new IllegalArgumentException( "Illegal read drain limit: " + maxNodes );
+        }
+        mReadDrainLimit = maxNodes;
+    }
+
 
     @Override
     public Iterator<E> iterator() {
+        drainOnRead();
         return new SetIterator();
     }
 
+    /**
+     * Visits every live element in the set. Unlike iteration, this walks the
+     * table directly and allocates nothing. Unless cleanup on reads has
+     * been disabled with <tt>setReadDrainLimit( 0 )</tt>, collected nodes
+     * encountered during the traversal are removed.
+     * <p>
+     * The visitor may call read methods on the set, but must not modify it.
+     *
+     * @param visitor receives each element
+     * @throws ConcurrentModificationException if the set is modified during the traversal.
+     */
+    public void forEachAlive( Visitor<? super E> visitor ) {
+        final int modCount = mModCount;
+        final Node<E>[] buckets = mBuckets;
+        final boolean unlink = mReadDrainLimit > 0;
+
+        for( int i = 0; i < buckets.length; i++ ) {
+            Node<E> node = buckets[i];
+
+            while( node != null ) {
+                Node<E> next = node.mNext;
+                E element = node.get();
+
+                if( element != null ) {
+                    visitor.visit( element );
+                    if( modCount != mModCount ) {
+                        throw new ConcurrentModificationException();
+                    }
+                } else if( unlink ) {
+                    unlinkNode( node );
+                }
+
+                node = next;
+            }
+        }
+    }
+
+
+    private void drainOnRead() {
+        if( mReadDrainLimit > 0 ) {
+            vacuum( mReadDrainLimit );
+        }
+    }
+
 
     private boolean doAdd( E element ) {
         Node<E>[] buckets = mBuckets;
-        final int hash = rehash( element.hashCode() );
+        final int hash = hash( element );
         final int idx = hash & (buckets.length - 1);
 
         Node<E> old = buckets[idx];
         while( old != null ) {
-            if( hash == old.mHash && element.equals( old.get() ) ) {
+            if( hash == old.mHash && matches( element, old.get() ) ) {
                 return false;
             }
             old = old.mNext;
@@ -282,6 +396,16 @@ public class WeakHashSet<E> extends AbstractSet<E> {
     }
 
     private void removeNode( Node<E> node ) {
+        if( unlinkNode( node ) ) {
+            mModCount++;
+        }
+    }
+
+    /**
+     * Removes node without incrementing mModCount. Iterators skip and never
+     * hold collected nodes, so purging them is safe during iteration.
+     */
+    private boolean unlinkNode( Node<E> node ) {
         Node<E>[] buckets = mBuckets;
         int idx = node.mHash & (buckets.length - 1);
         Node<E> parent = null;
@@ -289,7 +413,6 @@ public class WeakHashSet<E> extends AbstractSet<E> {
 
         while( child != null ) {
             if( child == node ) {
-                mModCount++;
                 mSize--;
 
                 if( parent == null ) {
@@ -298,12 +421,22 @@ public class WeakHashSet<E> extends AbstractSet<E> {
                     parent.mNext = child.mNext;
                 }
 
-                return;
+                return true;
             }
 
             parent = child;
             child = child.mNext;
         }
+
+        return false;
+    }
+
+    private int hash( Object o ) {
+        return rehash( mIdentity ? System.identityHashCode( o ) : o.hashCode() );
+    }
+
+    private boolean matches( Object o, E element ) {
+        return o == element || !mIdentity && o.equals( element );
     }
 
     private int rehash( int hash ) {
@@ -16,14 +16,30 @@ import java.lang.ref.*;
  * are expected to hold their own keys. It also allows the use of normal mKey
  * comparisons instead of expecting <tt>==</tt> to work.
  * <p>
- * Note that WeakValueHashMap only removes stale entries when modified, which
+ * Note that WeakValueHashMap removes all stale entries when modified, which
  * includes the calling of these method types: <tt>put()</tt>, <tt>remove()</tt>, <tt>clear()</tt> and <tt>vacuum()</tt>. (<tt>vacuum()</tt> does nothing but
- * clear stale entries.) Stale entries are never returned by any method,
- * including methods in associated iterators and views.
+ * clear stale entries.) Read methods, including <tt>get()</tt>,
+ * <tt>containsKey()</tt>, <tt>size()</tt> and view iterators, also remove a
+ * bounded number of stale entries per call. See
+ * {@link #setReadDrainLimit(int)}. Stale entries are never returned by any
+ * method, including methods in associated iterators and views.
  * <p>
  * WeakValueHashMap supports the null mValue as a mKey, but cannot contain "null"
  * as a mValue. That is, put(mKey, null) is equivalent to remove(mKey).
  * <p>
+ * WeakValueHashMap may be constructed with identity keys, in which keys are
+ * compared with <tt>==</tt> and hashed with
+ * <tt>System.identityHashCode()</tt>, as in {@link java.util.IdentityHashMap}.
+ * <p>
+ * For use as a cache, values may instead be held with soft references, which
+ * the collector only clears under memory pressure. Additionally, a pin
+ * capacity may be specified, in which case the map holds strong references
+ * to roughly the <tt>pinCapacity</tt> most recently put or retrieved values
+ * in a fixed-size ring. Pinned values are never collected, so hot values
+ * survive collections while the remainder of the map forms a weak or soft
+ * tail. Pins are released in least-recently-used order as newer values are
+ * pinned, or all at once by <tt>clear()</tt> and <tt>unpinAll()</tt>.
+ * <p>
  * WeakValueHashMap is not thread-safe.
  * 
  * @see java.util.WeakHashMap
@@ -35,8 +51,32 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     static final int DEFAULT_INITIAL_CAPACITY = 16;
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
     static final int MAXIMUM_CAPACITY = 1 << 30;
+    static final int DEFAULT_READ_DRAIN_LIMIT = 8;
     
 
+    /**
+     * Receives each entry of the map during <tt>forEachAlive()</tt>.
+     */
+    public interface EntryVisitor<K, V> {
+        /**
+         * @param key   Key of entry. May be null.
+         * @param value Value of entry. Never null.
+         */
+        void visit( K key, V value );
+    }
+
+
+    /**
+     * Reference strength used to hold values.
+     */
+    public enum Strength {
+        /** Values are cleared as soon as they are weakly reachable. */
+        WEAK,
+        /** Values are cleared at the discretion of the collector in response to memory demand. */
+        SOFT
+    }
+
+
     private final transient ReferenceQueue<V> mQueue = new ReferenceQueue<>();
 
     private RefEntry<K, V>[] mBuckets;
@@ -44,6 +84,14 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     private transient int mModCount;
     private int mThreshold;
     private final float mLoadFactor;
+    private int mReadDrainLimit = DEFAULT_READ_DRAIN_LIMIT;
+
+    private final boolean mIdentity;
+    private final Strength mStrength;
+    private final Object[] mPins;
+    private final int mPinRefresh;
+    private int mPinPos = 0;
+    private int mPinSeq = 0;
 
     private transient KeySet mKeySet = null;
     private transient Values mValues = null;
@@ -59,14 +107,47 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     }
 
     public WeakValueHashMap( int initialCapacity, float loadFactor ) {
+        this( initialCapacity, loadFactor, false, Strength.WEAK, 0 );
+    }
+
+    /**
+     * @param initialCapacity initial number of buckets
+     * @param loadFactor      load factor
+     * @param strength        reference strength used to hold values
+     * @param pinCapacity     number of recently used values to hold strongly. May be 0.
+     */
+    public WeakValueHashMap( int initialCapacity, float loadFactor, Strength strength, int pinCapacity ) {
+        this( initialCapacity, loadFactor, false, strength, pinCapacity );
+    }
+
+    /**
+     * @param initialCapacity initial number of buckets
+     * @param loadFactor      load factor
+     * @param identityKeys    if true, keys are compared by reference instead of with <tt>equals()</tt>
+     * @param strength        reference strength used to hold values
+     * @param pinCapacity     number of recently used values to hold strongly. May be 0.
+     */
+    public WeakValueHashMap( int initialCapacity, float loadFactor, boolean identityKeys, Strength strength, int pinCapacity ) {
         if( initialCapacity < 0 )
             throw new IllegalArgumentException( "Illegal initial capacity: " + initialCapacity );
 
         if( loadFactor <= 0 || Float.isNaN( loadFactor ) )
             throw new IllegalArgumentException( "Illegal load factor: " + loadFactor );
 
+        if( strength == null )
+            throw new NullPointerException( "strength" );
+
+        if( pinCapacity < 0 )
+            throw new IllegalArgumentException( "Illegal pin capacity: " + pinCapacity );
+
         initialCapacity = Math.min( initialCapacity, MAXIMUM_CAPACITY );
         mLoadFactor = loadFactor;
+        mIdentity = identityKeys;
+        mStrength = strength;
+        mPins = (pinCapacity > 0 ? new Object[pinCapacity] : null);
+        // Values pinned within the last half-ring are not re-pinned on access,
+        // so a hot value occupies at most two slots.
+        mPinRefresh = Math.max( 1, pinCapacity / 2 );
 
         int capacity = 1;
         while( capacity < initialCapacity ) {
@@ -81,6 +162,7 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
     @Override
     public V get( Object key ) {
+        drainOnRead();
         RefEntry<K, V> entry;
 
         if( key != null ) {
@@ -89,11 +171,21 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
             entry = getByNullKey();
         }
 
-        return (entry != null ? entry.get() : null);
+        if( entry == null )
+            return null;
+
+        V value = entry.get();
+        // Age compared unsigned so that sequence overflow is harmless.
+        if( value != null && mPins != null && ((mPinSeq - entry.mPinSeq) & 0xFFFFFFFFL) >= mPinRefresh ) {
+            pin( entry, value );
+        }
+
+        return value;
     }
 
     @Override
     public boolean containsKey( Object key ) {
+        drainOnRead();
         if( key != null ) {
             return getByKey( key ) != null;
         } else {
@@ -190,15 +282,18 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
         mSize = 0;
         while( mQueue.poll() != null );
+        unpinAll();
     }
 
     @Override
     public int size() {
+        drainOnRead();
         return mSize;
     }
 
     @Override
     public boolean isEmpty() {
+        drainOnRead();
         return mSize == 0;
     }
 
@@ -210,13 +305,126 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
      * @return size of the set immediately after vacuuming has been performed.
      */
     public int vacuum() {
-        RefEntry<K, V> entry;
-        while( (entry = (RefEntry<K, V>)mQueue.poll()) != null ) {
-            removeByEntry( entry );
+        return vacuum( Integer.MAX_VALUE );
+    }
+
+    /**
+     * Removes at most <tt>maxEntries</tt> entries with values that have been
+     * garbage-collected, allowing cleanup to be spread over time. Removing
+     * collected entries does not invalidate iterators.
+     * 
+     * @param maxEntries maximum number of entries to remove
+     * @return size of the map immediately after vacuuming has been performed.
+     */
+    public int vacuum( int maxEntries ) {
+        Reference<? extends V> ref;
+        while( maxEntries-- > 0 && (ref = mQueue.poll()) != null ) {
+            if( ref instanceof SoftValue ) {
+                unlinkEntry( ((SoftValue<K, V>)ref).mEntry );
+            } else {
+                unlinkEntry( (RefEntry<K, V>)ref );
+            }
         }
         return mSize;
     }
 
+    /**
+     * @return max number of garbage-collected entries removed by each read call.
+     * @see #setReadDrainLimit(int)
+     */
+    public int readDrainLimit() {
+        return mReadDrainLimit;
+    }
+
+    /**
+     * Sets the max number of garbage-collected entries removed by each read
+     * call, such as <tt>get()</tt>, <tt>size()</tt> and view iterators. Zero
+     * disables cleanup on reads.
+     * 
+     * @param maxEntries max entries to remove per read. Must be non-negative.
+     */
+    public void setReadDrainLimit( int maxEntries ) {
+        if( maxEntries < 0 )
+            throw new IllegalArgumentException( "Illegal read drain limit: " + maxEntries );
+
+        mReadDrainLimit = maxEntries;
+    }
+
+
+    /**
+     * @return true iff keys are compared by reference rather than with <tt>equals()</tt>.
+     */
+    public boolean hasIdentityKeys() {
+        return mIdentity;
+    }
+
+    /**
+     * @return reference strength used to hold values
+     */
+    public Strength strength() {
+        return mStrength;
+    }
+
+    /**
+     * @return max number of recently used values held with strong references
+     */
+    public int pinCapacity() {
+        return mPins == null ? 0 : mPins.length;
+    }
+
+    /**
+     * Releases all strong references to recently used values. Does not
+     * remove any entries from the map.
+     */
+    public void unpinAll() {
+        Object[] pins = mPins;
+        if( pins == null )
+            return;
+
+        Arrays.fill( pins, null );
+        mPinPos = 0;
+        // Mark every entry as stale so it is pinned again on next access.
+        mPinSeq += pins.length;
+    }
+
+
+    /**
+     * Visits every entry with a live value without allocating an iterator
+     * or entry objects. Unless cleanup on reads has been disabled, entries
+     * with collected values encountered during the traversal are removed.
+     * Visiting does not pin values.
+     * <p>
+     * The visitor may call read methods on the map, but must not modify it.
+     * 
+     * @param visitor receives each key and value
+     * @throws ConcurrentModificationException if the map is modified during the traversal.
+     */
+    public void forEachAlive( EntryVisitor<? super K, ? super V> visitor ) {
+        final int modCount = mModCount;
+        final RefEntry<K, V>[] buckets = mBuckets;
+        final boolean unlink = mReadDrainLimit > 0;
+
+        for( int i = 0; i < buckets.length; i++ ) {
+            RefEntry<K, V> entry = buckets[i];
+
+            while( entry != null ) {
+                RefEntry<K, V> next = entry.mNext;
+                V value = entry.get();
+
+                if( value != null ) {
+                    visitor.visit( entry.mKey, value );
+                    if( modCount != mModCount )
+                        throw new ConcurrentModificationException();
+
+                } else if( unlink ) {
+                    unlinkEntry( entry );
+                }
+
+                entry = next;
+            }
+        }
+    }
+
 
     @Override
     public Set<K> keySet() {
@@ -240,9 +448,13 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
     private void addEntry( K key, V value, int hash, int idx, boolean increment ) {
         RefEntry<K, V> entry = mBuckets[idx];
-        entry = new RefEntry<>( key, value, hash, entry, mQueue );
+        entry = new RefEntry<>( key, value, hash, entry, mQueue, mStrength == Strength.SOFT );
         mBuckets[idx] = entry;
 
+        if( mPins != null ) {
+            pin( entry, value );
+        }
+
         if( increment && mSize++ >= mThreshold ) {
             resize( 2 * mBuckets.length );
         }
@@ -250,14 +462,14 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
     private RefEntry<K, V> putByKey( K key, V value ) {
         final RefEntry<K, V>[] buckets = mBuckets;
-        final int hash = rehash( key.hashCode() );
+        final int hash = hash( key );
         final int idx = hash & (buckets.length - 1);
 
         RefEntry<K, V> parent = null;
         RefEntry<K, V> child = buckets[idx];
 
         while( child != null ) {
-            if( hash == child.mHash && key == child.mKey || key.equals( child.mKey ) ) {
+            if( sameKey( key, hash, child ) ) {
                 if( child.get() == value )
                     return child;
 
@@ -313,10 +525,10 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     }
 
     private RefEntry<K, V> getByKey( Object key ) {
-        final int hash = rehash( key.hashCode() );
+        final int hash = hash( key );
 
         for( RefEntry<K, V> entry = mBuckets[(hash & (mBuckets.length - 1))]; entry != null; entry = entry.mNext ) {
-            if( hash == entry.mHash && key == entry.mKey || key.equals( entry.mKey ) )
+            if( sameKey( key, hash, entry ) )
                 return entry;
         }
 
@@ -335,14 +547,14 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
     private RefEntry<K, V> removeByKey( Object key ) {
         final RefEntry<K, V>[] buckets = mBuckets;
-        final int hash = rehash( key.hashCode() );
+        final int hash = hash( key );
         final int idx = (hash & (buckets.length - 1));
 
         RefEntry<K, V> parent = null;
         RefEntry<K, V> child = buckets[idx];
 
         while( child != null ) {
-            if( hash == child.mHash && key == child.mKey || key.equals( child.mKey ) ) {
+            if( sameKey( key, hash, child ) ) {
                 mModCount++;
                 mSize--;
 
@@ -388,6 +600,18 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     }
 
     private RefEntry<K, V> removeByEntry( RefEntry<K, V> entry ) {
+        if( unlinkEntry( entry ) == null )
+            return null;
+
+        mModCount++;
+        return entry;
+    }
+
+    /**
+     * Removes entry without incrementing mModCount. Iterators never hold
+     * collected entries, so purging them is safe during iteration.
+     */
+    private RefEntry<K, V> unlinkEntry( RefEntry<K, V> entry ) {
         final RefEntry<K, V>[] buckets = mBuckets;
         final int idx = (entry.mHash & (buckets.length - 1));
 
@@ -396,7 +620,6 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
         while( child != null ) {
             if( entry == child ) {
-                mModCount++;
                 mSize--;
 
                 if( parent == null ) {
@@ -418,14 +641,14 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     private RefEntry<K, V> removeByEquivalentEntry( Map.Entry<K, V> entry ) {
         final Object key = entry.getKey();
         final RefEntry<K, V>[] buckets = mBuckets;
-        final int hash = (key == null) ? 0 : rehash( key.hashCode() );
+        final int hash = (key == null) ? 0 : hash( key );
         final int idx = (hash & (buckets.length - 1));
 
         RefEntry<K, V> parent = null;
         RefEntry<K, V> child = buckets[idx];
 
         while( child != null ) {
-            if( child.mHash == hash && entry.equals( child ) ) {
+            if( child.mHash == hash && (!mIdentity || key == child.mKey) && entry.equals( child ) ) {
                 mModCount++;
                 mSize--;
 
@@ -475,6 +698,27 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
         mThreshold = (int)(newCapacity * mLoadFactor);
     }
 
+    private void pin( RefEntry<K, V> entry, V value ) {
+        Object[] pins = mPins;
+        int pos = mPinPos;
+        pins[pos] = value;
+        mPinPos = (pos + 1 == pins.length ? 0 : pos + 1);
+        entry.mPinSeq = mPinSeq++;
+    }
+
+    private void drainOnRead() {
+        if( mReadDrainLimit > 0 )
+            vacuum( mReadDrainLimit );
+    }
+
+    private int hash( Object key ) {
+        return rehash( mIdentity ? System.identityHashCode( key ) : key.hashCode() );
+    }
+
+    private boolean sameKey( Object key, int hash, RefEntry<K, V> entry ) {
+        return hash == entry.mHash && (key == entry.mKey || !mIdentity && key.equals( entry.mKey ));
+    }
+
     private static int rehash( int hash ) {
         hash ^= (hash >>> 20) ^ (hash >>> 12);
         return hash ^ (hash >>> 7) ^ (hash >>> 4);
@@ -492,6 +736,7 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
         int mIndex;
 
         BaseIterator() {
+            drainOnRead();
             mIterModCount = mModCount;
             if( mSize > 0 ) {
                 RefEntry<K, V>[] buckets = mBuckets;
@@ -592,7 +837,7 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     private final class KeySet extends AbstractSet<K> {
 
         public int size() {
-            return mSize;
+            return WeakValueHashMap.this.size();
         }
 
         public boolean contains( Object key ) {
@@ -622,7 +867,7 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     private final class Values extends AbstractCollection<V> {
 
         public int size() {
-            return mSize;
+            return WeakValueHashMap.this.size();
         }
 
         public boolean contains( Object obj ) {
@@ -644,7 +889,7 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
 
         public int size() {
-            return mSize;
+            return WeakValueHashMap.this.size();
         }
 
         public boolean contains( Object obj ) {
@@ -682,18 +927,34 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
 
 
 
+    /**
+     * RefEntry weakly references its value directly, unless it is soft, in
+     * which case the WeakReference part is left empty and the value is held
+     * by an attached SoftValue. This keeps the default weak entries to a
+     * single object.
+     */
     private static final class RefEntry<K, V> extends WeakReference<V> implements Map.Entry<K, V> {
 
         final K mKey;
         final int mHash;
+        final SoftValue<K, V> mSoft;
         RefEntry<K, V> mNext;
+        int mPinSeq;
 
-        RefEntry( K key, V value, int hash, RefEntry<K, V> next, ReferenceQueue<V> queue ) {
-            super( value, queue );
+        RefEntry( K key, V value, int hash, RefEntry<K, V> next, ReferenceQueue<V> queue, boolean soft ) {
+            super( soft ? null : value, soft ? null : queue );
 
             mKey = key;
             mHash = hash;
             mNext = next;
+            mSoft = (soft ? new SoftValue<K, V>( value, queue, this ) : null);
+        }
+
+
+        @Override
+        public V get() {
+            SoftValue<K, V> soft = mSoft;
+            return soft == null ? super.get() : soft.get();
         }
 
 
@@ -739,4 +1000,17 @@ public class WeakValueHashMap<K, V> extends AbstractMap<K, V> {
     }
 
 
+
+    private static final class SoftValue<K, V> extends SoftReference<V> {
+
+        final RefEntry<K, V> mEntry;
+
+        SoftValue( V value, ReferenceQueue<V> queue, RefEntry<K, V> entry ) {
+            super( value, queue );
+            mEntry = entry;
+        }
+
+    }
+
+
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * @author Philip DeCamp
+ */
+public class BoxMapTest {
+
+
+    public long getSeed() {
+        // return System.currentTimeMillis();
+        return 3;
+    }
+
+
+    @Test
+    public void testInsertRemove() {
+        Random rand = new Random( getSeed() );
+        DoubleBoxMap<double[]> map = new DoubleBoxMap<>();
+        List<double[]> stupid = new ArrayList<>();
+
+        for( int i = 0; i < 2000; i++ ) {
+            double[] key = randomBox( rand );
+            map.put( key, key );
+            stupid.add( key );
+        }
+
+        assertTrue( map.validate() );
+        assertEquals( stupid.size(), map.size() );
+
+        for( int i = 0; i < 1500; i++ ) {
+            double[] key = stupid.remove( rand.nextInt( stupid.size() ) );
+            assertNotNull( map.remove( key ) );
+            if( i % 100 == 0 ) {
+                assertTrue( map.validate() );
+            }
+        }
+
+        assertTrue( map.validate() );
+        assertEquals( stupid.size(), map.size() );
+        for( double[] key : stupid ) {
+            assertTrue( map.containsKey( key ) );
+        }
+
+        for( double[] key : stupid ) {
+            assertNotNull( map.remove( key ) );
+        }
+
+        assertTrue( map.isEmpty() );
+        assertTrue( map.validate() );
+    }
+
+
+    @Test
+    public void testQueries() {
+        Random rand = new Random( getSeed() );
+
+        for( int t = 0; t < 20; t++ ) {
+            int count = rand.nextInt( 400 );
+            Map<double[], double[]> src = new IdentityHashMap<>();
+            for( int i = 0; i < count; i++ ) {
+                double[] key = randomBox( rand );
+                src.put( key, key );
+            }
+
+            DoubleBoxMap<double[]> incremental = new DoubleBoxMap<>();
+            for( double[] key : src.keySet() ) {
+                incremental.put( key, key );
+            }
+            DoubleBoxMap<double[]> packed = new DoubleBoxMap<>( src );
+
+            assertTrue( incremental.validate() );
+            assertTrue( packed.validate() );
+
+            for( int s = 0; s < 50; s++ ) {
+                double[] q = randomBox( rand );
+                for( DoubleBoxMap<double[]> map : Arrays.asList( incremental, packed ) ) {
+                    assertEquals( stupidQuery( src.keySet(), q, INTERSECTION ), identitySet( map.intersectionKeySet( q ) ) );
+                    assertEquals( stupidQuery( src.keySet(), q, SUPERSET ), identitySet( map.supersetKeySet( q ) ) );
+                    assertEquals( stupidQuery( src.keySet(), q, SUBSET ), identitySet( map.subsetKeySet( q ) ) );
+                    assertEquals( !stupidQuery( src.keySet(), q, INTERSECTION ).isEmpty(), map.containsIntersectionKey( q ) );
+                }
+            }
+
+            incremental.pack();
+            assertTrue( incremental.validate() );
+            assertEquals( src.size(), incremental.size() );
+        }
+    }
+
+
+    @Test
+    public void testDegenerate() {
+        DoubleBoxMap<String> map = new DoubleBoxMap<>();
+        map.put( new double[]{ 3, 3, 3, 3 }, "point" );
+
+        assertTrue( map.containsIntersectionKey( new double[]{ 2, 4, 2, 4 } ) );
+        assertTrue( map.containsIntersectionKey( new double[]{ 3, 4, 3, 4 } ) );
+        assertTrue( map.containsIntersectionKey( new double[]{ 3, 3, 3, 3 } ) );
+        assertFalse( map.containsIntersectionKey( new double[]{ 2, 3, 2, 4 } ) );
+        assertEquals( "point", map.get( new double[]{ 3, 3, 3, 3 } ) );
+        assertNull( map.get( new double[]{ 3, 4, 3, 3 } ) );
+    }
+
+
+
+    private static final int INTERSECTION = 0;
+    private static final int SUPERSET     = 1;
+    private static final int SUBSET       = 2;
+
+
+    private static double[] randomBox( Random rand ) {
+        double[] ret = new double[4];
+        for( int d = 0; d < 2; d++ ) {
+            double a = rand.nextInt( 100 );
+            double b = a + (rand.nextInt( 4 ) == 0 ? 0 : rand.nextInt( 20 ));
+            ret[d * 2] = a;
+            ret[d * 2 + 1] = b;
+        }
+        return ret;
+    }
+
+
+    private static Set<double[]> identitySet( Collection<double[]> c ) {
+        Set<double[]> ret = Collections.newSetFromMap( new IdentityHashMap<double[], Boolean>() );
+        ret.addAll( c );
+        assertEquals( c.size(), ret.size() );
+        return ret;
+    }
+
+
+    private static Set<double[]> stupidQuery( Collection<double[]> keys, double[] q, int type ) {
+        IntervalComparator<double[]> comp = DoubleIntervalMap.DOUBLE_PAIR_COMP;
+        Set<double[]> ret = Collections.newSetFromMap( new IdentityHashMap<double[], Boolean>() );
+
+        for( double[] k : keys ) {
+            boolean match = true;
+            for( int d = 0; d < 2 && match; d++ ) {
+                double[] a = { k[d * 2], k[d * 2 + 1] };
+                double[] b = { q[d * 2], q[d * 2 + 1] };
+                switch( type ) {
+                case INTERSECTION:
+                    match = comp.compareMinToMax( a, b ) < 0 && comp.compareMinToMax( b, a ) < 0;
+                    break;
+                case SUPERSET:
+                    match = comp.compareMins( a, b ) <= 0 && comp.compareMaxes( a, b ) >= 0;
+                    break;
+                default:
+                    match = comp.compareMins( a, b ) >= 0 && comp.compareMaxes( a, b ) <= 0;
+                    break;
+                }
+            }
+            if( match ) {
+                ret.add( k );
+            }
+        }
+
+        return ret;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class ConcurrentArrayBagTest {
+
+    @Test
+    public void testAgainstList() {
+        Random rand = new Random( 0 );
+        ConcurrentArrayBag<Integer> bag = new ConcurrentArrayBag<Integer>();
+        List<Integer> list              = new ArrayList<Integer>();
+
+        for( int i = 0; i < 5000; i++ ) {
+            Integer n = rand.nextInt( 50 );
+            if( n == 49 ) {
+                n = null;
+            }
+
+            switch( rand.nextInt( 4 ) ) {
+            case 0:
+                assertEquals( list.remove( n ), bag.remove( n ) );
+                break;
+            case 1:
+                assertEquals( list.contains( n ), bag.contains( n ) );
+                break;
+            default:
+                bag.add( n );
+                list.add( n );
+            }
+        }
+
+        assertDeepEqual( bag, list );
+        assertEquals( bag.size(), bag.array().length );
+
+        ConcurrentBag.Filter<Integer> even = new ConcurrentBag.Filter<Integer>() {
+            public boolean matches( Integer item ) {
+                return item != null && item % 2 == 0;
+            }
+        };
+
+        assertTrue( bag.removeMatching( even ) );
+        for( Iterator<Integer> it = list.iterator(); it.hasNext(); ) {
+            if( even.matches( it.next() ) ) {
+                it.remove();
+            }
+        }
+        assertDeepEqual( bag, list );
+        assertFalse( bag.removeMatching( even ) );
+
+        List<Integer> drop = Arrays.asList( 1, 3, null );
+        bag.removeAll( drop );
+        list.removeAll( drop );
+        assertDeepEqual( bag, list );
+
+        bag.addAll( Arrays.asList( 7, 7, 11 ) );
+        list.addAll( Arrays.asList( 7, 7, 11 ) );
+        List<Integer> keep = Arrays.asList( 7, 11, 13 );
+        bag.retainAll( keep );
+        list.retainAll( keep );
+        assertDeepEqual( bag, list );
+
+        bag.clear();
+        assertTrue( bag.isEmpty() );
+        assertEquals( 0, bag.array().length );
+    }
+
+
+    @Test
+    public void testIterator() {
+        ConcurrentArrayBag<Integer> bag = new ConcurrentArrayBag<Integer>( Arrays.asList( 1, 2, 3, 4 ) );
+        Iterator<Integer> iter = bag.iterator();
+
+        // Iterator is unaffected by later modifications.
+        bag.add( 5 );
+        bag.remove( 1 );
+
+        int count = 0;
+        while( iter.hasNext() ) {
+            if( iter.next() % 2 == 0 ) {
+                iter.remove();
+            }
+            count++;
+        }
+
+        assertEquals( 4, count );
+        assertDeepEqual( bag, Arrays.asList( 3, 5 ) );
+
+        final List<Integer> visited = new ArrayList<Integer>();
+        bag.visit( new Visitor<Integer>() {
+            public void visit( Integer item ) {
+                visited.add( item );
+            }
+        } );
+        assertDeepEqual( bag, visited );
+    }
+
+
+    @Test
+    public void testThreads() throws Exception {
+        final ConcurrentArrayBag<Integer> bag = new ConcurrentArrayBag<Integer>();
+        final int perThread = 5000;
+        Thread[] threads = new Thread[8];
+
+        for( int t = 0; t < threads.length; t++ ) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for( int i = 0; i < perThread; i++ ) {
+                        bag.add( id );
+                        if( i % 4 == 0 ) {
+                            bag.remove( id );
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for( Thread t : threads ) {
+            t.join();
+        }
+
+        int[] counts = new int[threads.length];
+        for( Object n : bag.array() ) {
+            counts[(Integer)n]++;
+        }
+        for( int c : counts ) {
+            assertEquals( perThread - perThread / 4, c );
+        }
+    }
+
+
+    private static <T> void assertDeepEqual( ConcurrentArrayBag<T> bag, List<T> ref ) {
+        assertEquals( ref.size(), bag.size() );
+        List<T> list = new ArrayList<T>( bag );
+
+        for( T item: ref ) {
+            assertTrue( list.remove( item ) );
+        }
+    }
+
+}
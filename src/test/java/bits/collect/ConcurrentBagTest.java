@@ -41,6 +41,92 @@ public class ConcurrentBagTest {
     }
     
 
+    @Test
+    public void testRemoveMatching() {
+        Random rand = new Random( 0 );
+        ConcurrentBag<Integer> bag = new ConcurrentBag<Integer>();
+        List<Integer> list         = new ArrayList<Integer>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            Integer n = rand.nextInt( 100 );
+            bag.add( n );
+            list.add( n );
+        }
+        bag.add( null );
+        list.add( null );
+        assertDeepEqual( bag, list );
+
+        ConcurrentBag.Filter<Integer> odd = new ConcurrentBag.Filter<Integer>() {
+            public boolean matches( Integer item ) {
+                return item != null && item % 2 == 1;
+            }
+        };
+
+        assertTrue( bag.removeMatching( odd ) );
+        for( Iterator<Integer> it = list.iterator(); it.hasNext(); ) {
+            if( odd.matches( it.next() ) ) {
+                it.remove();
+            }
+        }
+        assertDeepEqual( bag, list );
+        assertFalse( bag.removeMatching( odd ) );
+
+        List<Integer> drop = Arrays.asList( 0, 2, 4, null );
+        assertTrue( bag.removeAll( drop ) );
+        list.removeAll( drop );
+        assertDeepEqual( bag, list );
+
+        List<Integer> keep = Arrays.asList( 10, 20, 30, 31 );
+        assertTrue( bag.retainAll( keep ) );
+        list.retainAll( keep );
+        assertDeepEqual( bag, list );
+
+        bag.clear();
+        assertEquals( 0, bag.size() );
+        assertTrue( bag.isEmpty() );
+    }
+
+
+    @Test
+    public void testThreads() throws Exception {
+        final ConcurrentBag<Integer> bag = new ConcurrentBag<Integer>();
+        final int perThread = 20000;
+        Thread[] threads = new Thread[8];
+
+        for( int t = 0; t < threads.length; t++ ) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for( int i = 0; i < perThread; i++ ) {
+                        bag.add( id );
+                        if( i % 4 == 0 ) {
+                            // Each thread removes only its own items.
+                            bag.remove( id );
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for( Thread t : threads ) {
+            t.join();
+        }
+
+        int expect = threads.length * (perThread - perThread / 4);
+        assertEquals( expect, bag.size() );
+        assertEquals( expect, new ArrayList<Integer>( bag ).size() );
+
+        int[] counts = new int[threads.length];
+        for( Integer n : bag ) {
+            counts[n]++;
+        }
+        for( int c : counts ) {
+            assertEquals( perThread - perThread / 4, c );
+        }
+    }
+
+
     private static <T> void assertDeepEqual( ConcurrentBag<T> bag, List<T> ref ) {
         assertEquals( bag.size(), ref.size() );
         List<T> list = new ArrayList<T>( bag );
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class ConcurrentGroupMapTest {
+
+    private final Random mRand = new Random( 0 );
+
+
+    @Test
+    public void testAgainstGroupMap() {
+        GroupMap<Integer, Long, Integer> ref            = new GroupMap<Integer, Long, Integer>();
+        ConcurrentGroupMap<Integer, Long, Integer> map = new ConcurrentGroupMap<Integer, Long, Integer>();
+
+        for( int i = 0; i < 20000; i++ ) {
+            Integer g = mRand.nextInt( 11 );
+            if( g == 10 ) {
+                g = null;
+            }
+
+            Long    key   = (long)mRand.nextInt( 500 );
+            Integer value = mRand.nextInt( 200 );
+
+            switch( mRand.nextInt( 4 ) ) {
+            case 0:
+                assertEquals( ref.remove( key ), map.remove( key ) );
+                break;
+            case 1:
+                if( mRand.nextInt( 100 ) == 0 ) {
+                    ref.clear( g );
+                    map.clear( g );
+                }
+                break;
+            default:
+                assertEquals( ref.put( g, key, value ), map.put( g, key, value ) );
+            }
+        }
+
+        assertEquals( ref.size(), map.size() );
+        assertEquals( ref.groups(), map.groups() );
+        assertEquals( new ArrayList<Long>( ref.keySet() ), new ArrayList<Long>( map.keySet() ) );
+        assertEquals( new ArrayList<Integer>( ref.values() ), new ArrayList<Integer>( map.values() ) );
+
+        for( Integer g : ref.groups() ) {
+            assertEquals( ref.size( g ), map.size( g ) );
+            assertEquals( new ArrayList<Long>( ref.groupKeySet( g ) ), new ArrayList<Long>( map.groupKeySet( g ) ) );
+            assertEquals( ref.firstValue( g ), map.firstValue( g ) );
+            assertEquals( ref.lastValue( g ), map.lastValue( g ) );
+        }
+
+        for( int v = -1; v <= 201; v++ ) {
+            assertEquals( ref.ceilingValue( v ), map.ceilingValue( v ) );
+            assertEquals( ref.floorValue( v ), map.floorValue( v ) );
+            assertEquals( ref.higherValue( v ), map.higherValue( v ) );
+            assertEquals( ref.lowerValue( v ), map.lowerValue( v ) );
+            assertEquals( ref.ceilingValue( 3, v ), map.ceilingValue( 3, v ) );
+            assertEquals( ref.floorValue( 3, v ), map.floorValue( 3, v ) );
+        }
+
+        Iterator<Long> iter = map.groupKeySet( 4 ).iterator();
+        while( iter.hasNext() ) {
+            iter.next();
+            iter.remove();
+        }
+
+        ref.clear( 4 );
+        assertEquals( ref.size(), map.size() );
+        assertFalse( map.groups().contains( 4 ) );
+    }
+
+
+    @Test
+    public void testThreads() throws Exception {
+        final ConcurrentGroupMap<Integer, Long, Integer> map = new ConcurrentGroupMap<Integer, Long, Integer>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+
+        for( int t = 0; t < threads.length; t++ ) {
+            final int seed = t;
+
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        Random rand = new Random( seed );
+
+                        for( int i = 0; i < 20000; i++ ) {
+                            Integer g   = rand.nextInt( 16 );
+                            Long    key = (long)rand.nextInt( 1000 );
+
+                            if( rand.nextInt( 3 ) == 0 ) {
+                                map.remove( key );
+                            } else {
+                                map.put( g, key, rand.nextInt( 10000 ) );
+                            }
+
+                            // Reads never block and never fail.
+                            for( Integer v : map.groupValues( g ) ) {
+                                assertNotNull( v );
+                            }
+                        }
+                    } catch( Throwable ex ) {
+                        error.compareAndSet( null, ex );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for( Thread t : threads ) {
+            t.join();
+        }
+
+        if( error.get() != null ) {
+            throw new AssertionError( error.get() );
+        }
+
+        // Indices must agree once writers have finished.
+        int count = 0;
+        for( Integer g : map.groups() ) {
+            assertTrue( map.size( g ) > 0 );
+            assertEquals( map.size( g ), map.groupKeySet( g ).size() );
+
+            int n = 0;
+            for( Long key : map.groupKeySet( g ) ) {
+                assertEquals( g, map.getGroupForKey( key ) );
+                n++;
+            }
+
+            assertEquals( map.size( g ), n );
+            count += n;
+        }
+
+        assertEquals( map.size(), count );
+        assertEquals( map.size(), new ArrayList<Long>( map.keySet() ).size() );
+    }
+
+}
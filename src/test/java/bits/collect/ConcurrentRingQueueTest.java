@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class ConcurrentRingQueueTest {
+
+    @Test
+    public void testAgainstDeque() {
+        Random rand = new Random( 0 );
+        ConcurrentRingQueue<Integer> queue = new ConcurrentRingQueue<Integer>( 100 );
+        Deque<Integer> ref = new ArrayDeque<Integer>();
+        assertEquals( 128, queue.capacity() );
+
+        for( int i = 0; i < 50000; i++ ) {
+            switch( rand.nextInt( 5 ) ) {
+            case 0:
+                assertEquals( ref.poll(), queue.poll() );
+                break;
+            case 1:
+                assertEquals( ref.peek(), queue.peek() );
+                break;
+            default:
+                boolean fits = ref.size() < 128;
+                assertEquals( fits, queue.offer( i ) );
+                if( fits ) {
+                    ref.add( i );
+                }
+            }
+
+            assertEquals( ref.size(), queue.size() );
+        }
+
+        assertEquals( new ArrayList<Integer>( ref ), new ArrayList<Integer>( queue ) );
+        queue.clear();
+        assertTrue( queue.isEmpty() );
+        assertEquals( 128, queue.remainingCapacity() );
+    }
+
+
+    @Test
+    public void testBatch() {
+        ConcurrentRingQueue<Integer> queue = new ConcurrentRingQueue<Integer>( 16 );
+        Integer[] items = new Integer[20];
+        for( int i = 0; i < items.length; i++ ) {
+            items[i] = i;
+        }
+
+        assertEquals( 0, queue.offer( items, 0, 0 ) );
+        assertEquals( 5, queue.offer( items, 0, 5 ) );
+        assertEquals( 11, queue.offer( items, 5, 15 ) );
+        assertEquals( 0, queue.offer( items, 0, 1 ) );
+        assertEquals( 16, queue.size() );
+
+        List<Integer> out = new ArrayList<Integer>();
+        assertEquals( 4, queue.drainTo( out, 4 ) );
+        assertEquals( Arrays.asList( 0, 1, 2, 3 ), out );
+
+        // Wraps around end of ring.
+        assertEquals( 4, queue.offer( items, 16, 4 ) );
+        out.clear();
+        assertEquals( 16, queue.drainTo( out ) );
+        assertEquals( Arrays.asList( 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19 ), out );
+        assertEquals( 0, queue.drainTo( out ) );
+        assertNull( queue.poll() );
+
+        // Slots claimed by a failing visitor are still released.
+        queue.offer( items, 0, 3 );
+        try {
+            queue.drain( new Visitor<Integer>() {
+                public void visit( Integer item ) {
+                    throw new IllegalStateException();
+                }
+            }, 3 );
+            fail();
+        } catch( IllegalStateException ignored ) {}
+
+        assertTrue( queue.isEmpty() );
+        assertEquals( 16, queue.offer( items, 0, 16 ) );
+
+        // Draining stops after the items present at the start, even if the queue keeps refilling.
+        final ConcurrentRingQueue<Integer> refilled = queue;
+        final List<Integer> drained = new ArrayList<Integer>();
+        Collection<Integer> echo = new AbstractCollection<Integer>() {
+            public boolean add( Integer item ) {
+                refilled.offer( item );
+                return drained.add( item );
+            }
+
+            public Iterator<Integer> iterator() {
+                return drained.iterator();
+            }
+
+            public int size() {
+                return drained.size();
+            }
+        };
+        assertEquals( 16, queue.drainTo( echo ) );
+        assertEquals( 16, drained.size() );
+        assertEquals( 16, queue.size() );
+    }
+
+
+    @Test
+    public void testThreads() throws Exception {
+        final ConcurrentRingQueue<Long> queue = new ConcurrentRingQueue<Long>( 64 );
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong sum      = new AtomicLong();
+        final int producers = 4;
+        final int consumers = 4;
+        final int perProducer = 100000;
+        final long total = (long)producers * perProducer;
+
+        Thread[] threads = new Thread[producers + consumers];
+
+        for( int t = 0; t < producers; t++ ) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    Long[] batch = new Long[8];
+                    int i = 0;
+                    while( i < perProducer && error.get() == null ) {
+                        if( id % 2 == 0 ) {
+                            if( queue.offer( (long)(id * perProducer + i) ) ) {
+                                i++;
+                            } else {
+                                Thread.yield();
+                            }
+                        } else {
+                            int n = Math.min( batch.length, perProducer - i );
+                            for( int j = 0; j < n; j++ ) {
+                                batch[j] = (long)(id * perProducer + i + j);
+                            }
+                            int added = queue.offer( batch, 0, n );
+                            i += added;
+                            if( added == 0 ) {
+                                Thread.yield();
+                            }
+                        }
+                    }
+                }
+            };
+        }
+
+        for( int t = producers; t < threads.length; t++ ) {
+            final int id = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        List<Long> batch = new ArrayList<Long>();
+                        long[] last = new long[producers];
+                        Arrays.fill( last, -1 );
+
+                        while( received.get() < total ) {
+                            batch.clear();
+                            if( id % 2 == 0 ) {
+                                Long v = queue.poll();
+                                if( v != null ) {
+                                    batch.add( v );
+                                }
+                            } else {
+                                queue.drainTo( batch, 16 );
+                            }
+
+                            if( batch.isEmpty() ) {
+                                Thread.yield();
+                                continue;
+                            }
+
+                            for( Long v : batch ) {
+                                // Items from each producer arrive in order.
+                                int p = (int)(v / perProducer);
+                                assertTrue( v > last[p] );
+                                last[p] = v;
+                                sum.addAndGet( v );
+                            }
+                            received.addAndGet( batch.size() );
+                        }
+                    } catch( Throwable ex ) {
+                        error.compareAndSet( null, ex );
+                        received.set( Long.MAX_VALUE );
+                    }
+                }
+            };
+        }
+
+        for( Thread t : threads ) {
+            t.start();
+        }
+        for( Thread t : threads ) {
+            t.join();
+        }
+
+        if( error.get() != null ) {
+            throw new AssertionError( error.get() );
+        }
+
+        assertEquals( total, received.get() );
+        assertEquals( total * (total - 1) / 2, sum.get() );
+        assertTrue( queue.isEmpty() );
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class ConcurrentWeakValueHashMapTest {
+
+    @Test
+    public void testAgainstHashMap() {
+        Random rand = new Random( 0 );
+        Map<Integer, String> ref = new HashMap<Integer, String>();
+        ConcurrentWeakValueHashMap<Integer, String> map = new ConcurrentWeakValueHashMap<Integer, String>( 4, 0.75f, 4 );
+
+        for( int i = 0; i < 20000; i++ ) {
+            Integer key   = rand.nextInt( 1000 );
+            String  value = "v" + rand.nextInt( 50 );
+
+            switch( rand.nextInt( 6 ) ) {
+            case 0:
+                assertEquals( ref.remove( key ), map.remove( key ) );
+                break;
+            case 1:
+                String prev = ref.get( key );
+                if( prev == null ) {
+                    ref.put( key, value );
+                }
+                assertEquals( prev, map.putIfAbsent( key, value ) );
+                break;
+            case 2:
+                String cur = ref.get( key );
+                assertEquals( cur != null && cur.equals( value ), map.remove( key, value ) );
+                if( cur != null && cur.equals( value ) ) {
+                    ref.remove( key );
+                }
+                break;
+            case 3:
+                if( ref.containsKey( key ) ) {
+                    assertEquals( ref.put( key, value ), map.replace( key, value ) );
+                } else {
+                    assertNull( map.replace( key, value ) );
+                }
+                break;
+            default:
+                assertEquals( ref.put( key, value ), map.put( key, value ) );
+            }
+        }
+
+        assertEquals( ref.size(), map.size() );
+        assertEquals( ref, map );
+        assertEquals( ref.keySet(), map.keySet() );
+        assertEquals( ref.entrySet(), map.entrySet() );
+        assertEquals( ref.hashCode(), map.hashCode() );
+
+        Iterator<Integer> iter = map.keySet().iterator();
+        while( iter.hasNext() ) {
+            if( iter.next() % 2 == 0 ) {
+                iter.remove();
+            }
+        }
+
+        ref.keySet().retainAll( map.keySet() );
+        assertEquals( ref, map );
+
+        map.clear();
+        assertTrue( map.isEmpty() );
+        assertNull( map.get( 1 ) );
+    }
+
+
+    @Test
+    public void testCollected() throws Exception {
+        ConcurrentWeakValueHashMap<Integer, Object> map = new ConcurrentWeakValueHashMap<Integer, Object>();
+        List<Object> held = new ArrayList<Object>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            Object v = new Object();
+            map.put( i, v );
+            if( i % 2 == 0 ) {
+                held.add( v );
+            }
+        }
+
+        WeakReference<Object> probe = new WeakReference<Object>( map.get( 1 ) );
+        for( int i = 0; i < 50 && probe.get() != null; i++ ) {
+            System.gc();
+            Thread.sleep( 10L );
+        }
+
+        if( probe.get() != null ) {
+            // Collector declined to run.
+            return;
+        }
+
+        assertNull( map.get( 1 ) );
+        assertFalse( map.containsKey( 1 ) );
+
+        // Collected entries count as absent.
+        Object replacement = new Object();
+        assertNull( map.putIfAbsent( 1, replacement ) );
+        assertSame( replacement, map.get( 1 ) );
+        assertSame( held.get( 0 ), map.putIfAbsent( 0, replacement ) );
+
+        for( Object v : map.values() ) {
+            assertNotNull( v );
+        }
+
+        assertTrue( map.vacuum() >= held.size() + 1 );
+        assertTrue( held.size() + 1 <= map.size() );
+    }
+
+
+    @Test
+    public void testGetOrCreate() throws Exception {
+        final ConcurrentWeakValueHashMap<Integer, int[]> map = new ConcurrentWeakValueHashMap<Integer, int[]>();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final List<List<int[]>> results = new ArrayList<List<int[]>>();
+        Thread[] threads = new Thread[8];
+        for( int t = 0; t < threads.length; t++ ) {
+            results.add( new ArrayList<int[]>() );
+        }
+
+        final ConcurrentWeakValueHashMap.Factory<Integer, int[]> factory = new ConcurrentWeakValueHashMap.Factory<Integer, int[]>() {
+            public int[] create( Integer key ) {
+                return new int[]{ key };
+            }
+        };
+
+        for( int t = 0; t < threads.length; t++ ) {
+            final List<int[]> out = results.get( t );
+
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for( int i = 0; i < 5000; i++ ) {
+                            int[] v = map.getOrCreate( i, factory );
+                            assertEquals( i, v[0] );
+                            out.add( v );
+                        }
+                    } catch( Throwable ex ) {
+                        error.compareAndSet( null, ex );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for( Thread t : threads ) {
+            t.join();
+        }
+
+        if( error.get() != null ) {
+            throw new AssertionError( error.get() );
+        }
+
+        // Every thread holds its values strongly, so all must have been canonical.
+        for( int t = 1; t < threads.length; t++ ) {
+            for( int i = 0; i < 5000; i++ ) {
+                assertSame( results.get( 0 ).get( i ), results.get( t ).get( i ) );
+            }
+        }
+
+        assertEquals( 5000, map.size() );
+    }
+
+}
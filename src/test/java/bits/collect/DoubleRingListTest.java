@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class DoubleRingListTest {
+
+    @Test
+    public void testAgainstList() {
+        Random rand = new Random( 0 );
+        DoubleRingList list = new DoubleRingList( 4 );
+        List<Double> ref = new ArrayList<Double>();
+
+        for( int i = 0; i < 20000; i++ ) {
+            double v = rand.nextInt( 50 ) * 0.25 - 6.0;
+            int op = rand.nextInt( 9 );
+
+            if( ref.isEmpty() && op >= 4 ) {
+                op = 0;
+            }
+
+            switch( op ) {
+            case 0:
+            case 1:
+                list.addLast( v );
+                ref.add( v );
+                break;
+            case 2:
+                list.addFirst( v );
+                ref.add( 0, v );
+                break;
+            case 3: {
+                int idx = rand.nextInt( ref.size() + 1 );
+                list.add( idx, v );
+                ref.add( idx, v );
+                break;
+            }
+            case 4:
+                assertEquals( ref.remove( 0 ), list.removeFirst(), 0.0 );
+                break;
+            case 5:
+                assertEquals( ref.remove( ref.size() - 1 ), list.removeLast(), 0.0 );
+                break;
+            case 6: {
+                int idx = rand.nextInt( ref.size() );
+                assertEquals( ref.remove( idx ), list.removeAt( idx ), 0.0 );
+                break;
+            }
+            case 7: {
+                int idx = rand.nextInt( ref.size() );
+                assertEquals( ref.set( idx, v ), list.set( idx, v ), 0.0 );
+                break;
+            }
+            default:
+                assertEquals( ref.remove( (Object)v ), list.remove( v ) );
+            }
+
+            assertAggregates( ref, list );
+        }
+
+        list.clear();
+        ref.clear();
+        assertAggregates( ref, list );
+    }
+
+
+    @Test
+    public void testSlidingWindow() {
+        Random rand = new Random( 1 );
+        DoubleRingList list = new DoubleRingList( 4, 50, true );
+        Deque<Double> ref = new ArrayDeque<Double>();
+
+        for( int i = 0; i < 20000; i++ ) {
+            // Wide range of magnitudes to exercise compensated sum.
+            double v = rand.nextGaussian() * Math.pow( 10, rand.nextInt( 12 ) - 4 );
+            list.add( v );
+            ref.addLast( v );
+            if( ref.size() > 50 ) {
+                ref.removeFirst();
+            }
+            assertAggregates( new ArrayList<Double>( ref ), list );
+        }
+    }
+
+
+    @Test
+    public void testNonFinite() {
+        DoubleRingList list = new DoubleRingList( 3, 3, true );
+        list.add( 1.0 );
+        list.add( Double.POSITIVE_INFINITY );
+        assertEquals( Double.POSITIVE_INFINITY, list.sum(), 0.0 );
+        list.add( Double.NEGATIVE_INFINITY );
+        assertTrue( Double.isNaN( list.sum() ) );
+        assertEquals( Double.NEGATIVE_INFINITY, list.min(), 0.0 );
+        list.add( Double.NaN );
+        assertTrue( Double.isNaN( list.sum() ) );
+        assertTrue( Double.isNaN( list.max() ) );
+        assertTrue( list.contains( Double.NaN ) );
+        list.add( 2.0 );
+        list.add( 3.0 );
+        assertEquals( Double.NaN, list.max(), 0.0 );
+        list.add( 4.0 );
+        assertEquals( 9.0, list.sum(), 0.0 );
+        assertEquals( 2.0, list.min(), 0.0 );
+        assertEquals( 4.0, list.max(), 0.0 );
+
+        list.clear();
+        list.add( 0.0 );
+        list.add( -0.0 );
+        assertEquals( 0x8000000000000000L, Double.doubleToRawLongBits( list.min() ) );
+        assertEquals( 0L, Double.doubleToRawLongBits( list.max() ) );
+    }
+
+
+    @Test
+    public void testOverflow() {
+        DoubleRingList list = new DoubleRingList( 3, 3, true );
+        list.addLast( Double.MAX_VALUE );
+        list.addLast( Double.MAX_VALUE );
+        assertEquals( Double.POSITIVE_INFINITY, list.sum(), 0.0 );
+
+        assertEquals( Double.MAX_VALUE, list.removeFirst(), 0.0 );
+        assertEquals( Double.MAX_VALUE, list.sum(), 0.0 );
+
+        list.addLast( -Double.MAX_VALUE );
+        assertEquals( 0.0, list.sum(), 0.0 );
+
+        // Overflow leaves rolling window.
+        list.addLast( Double.MAX_VALUE );
+        list.addLast( 1.0 );
+        list.addLast( 2.0 );
+        list.addLast( 3.0 );
+        assertEquals( 6.0, list.sum(), 0.0 );
+    }
+
+
+
+    private static void assertAggregates( List<Double> ref, DoubleRingList list ) {
+        assertEquals( ref.size(), list.size() );
+        double sum = 0.0;
+        double abs = 0.0;
+        for( int i = 0; i < ref.size(); i++ ) {
+            assertEquals( ref.get( i ), list.get( i ), 0.0 );
+            sum += ref.get( i );
+            abs += Math.abs( ref.get( i ) );
+        }
+        assertEquals( sum, list.sum(), abs * 1e-12 );
+
+        if( ref.isEmpty() ) {
+            try {
+                list.max();
+                fail();
+            } catch( NoSuchElementException ignored ) {}
+            return;
+        }
+
+        assertEquals( Collections.min( ref ), list.min(), 0.0 );
+        assertEquals( Collections.max( ref ), list.max(), 0.0 );
+    }
+
+}
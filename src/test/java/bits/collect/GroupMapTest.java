@@ -92,6 +92,72 @@ public class GroupMapTest {
 
     
     
+    @Test
+    public void testRank() {
+        for(IntMap map: createMaps()) {
+            testRank(map);
+        }
+    }
+    
+    
+    @Test
+    public void testMultiGroupEntrySet() {
+        for(IntMap map: createMaps()) {
+            testMultiGroupEntrySet(map);
+        }
+    }
+    
+    
+    @Test
+    public void testBulkLoad() {
+        List<IntMap> refs = createMaps();
+        List<IntMap> maps = createMaps();
+        for(int i = 0; i < maps.size(); i++) {
+            testBulkLoad(refs.get(i), maps.get(i));
+        }
+    }
+    
+    @Test
+    public void testBulkLoadCollisions() {
+        List<IntMap> refs = createMaps();
+        List<IntMap> maps = createMaps();
+        for(int i = 0; i < maps.size(); i++) {
+            testBulkLoadCollisions(refs.get(i), maps.get(i));
+        }
+    }
+    
+    @Test
+    public void testUpdateValue() {
+        List<IntMap> refs = createMaps();
+        List<IntMap> maps = createMaps();
+        for(int i = 0; i < maps.size(); i++) {
+            testUpdateValue(refs.get(i), maps.get(i));
+        }
+    }
+    
+    @Test
+    public void testRange() {
+        for(IntMap map: createMaps()) {
+            testRange(map);
+        }
+    }
+    
+    @Test
+    public void testHashOnly() {
+        testHashOnly(new IntMap(null, null), new IntMap(null, null, false));
+        testHashOnly(new IntMap(ORDER, ORDER), new IntMap(ORDER, ORDER, false));
+    }
+    
+    @Test
+    public void testGroupOps() {
+        List<IntMap> refs = createMaps();
+        List<IntMap> maps = createMaps();
+        for(int i = 0; i < maps.size(); i++) {
+            testGroupOps(refs.get(i), maps.get(i));
+        }
+    }
+    
+    
     public void testOneGroup(IntMap map) {
         Integer channel = 3;
         List<Integer> list = new ArrayList<Integer>(5);
@@ -241,6 +307,460 @@ public class GroupMapTest {
     }
     
     
+    public void testRank(IntMap map) {
+        for(int i = 0; i < 20000; i++) {
+            Integer c = mRand.nextInt(10);
+            Integer v = mRand.nextInt(100);
+            
+            if(mRand.nextInt(3) == 0) {
+                map.remove(toKey(c, v));
+            }else{
+                map.put(c, toKey(c, v), v);
+            }
+            
+            if(mRand.nextInt(1000) == 0) {
+                map.clear(c);
+            }
+        }
+        
+        List<Map.Entry<Long,Integer>> all = new ArrayList<Map.Entry<Long,Integer>>(map.entrySet());
+        for(int i = 0; i < all.size(); i++) {
+            assertSame(all.get(i), map.select(i));
+            assertEquals("Rank error", i, map.rank(all.get(i).getKey()));
+        }
+        
+        for(Integer g: map.groups()) {
+            List<Map.Entry<Long,Integer>> group = new ArrayList<Map.Entry<Long,Integer>>(map.groupEntrySet(g));
+            for(int i = 0; i < group.size(); i++) {
+                assertSame(group.get(i), map.select(g, i));
+                assertEquals("Rank error", i, map.groupRank(group.get(i).getKey()));
+            }
+            
+            int lo = mRand.nextInt(100);
+            int hi = lo + mRand.nextInt(20);
+            int count = 0;
+            for(Integer v: map.groupValues(g)) {
+                if(lo <= v && v <= hi)
+                    count++;
+            }
+            assertEquals("Count error", count, map.countRange(g, TreeValueMapTest.probe(lo), TreeValueMapTest.probe(hi)));
+        }
+        
+        int lo = mRand.nextInt(100);
+        int hi = lo + mRand.nextInt(20);
+        int count = 0;
+        for(Integer v: map.values()) {
+            if(lo <= v && v <= hi)
+                count++;
+        }
+        assertEquals("Count error", count, map.countRange(TreeValueMapTest.probe(lo), TreeValueMapTest.probe(hi)));
+        assertEquals("Rank error", -1, map.rank(-1L));
+    }
+    
+    
+    public void testMultiGroupEntrySet(IntMap map) {
+        populate(map, 5000, 40, 500);
+        
+        List<Integer> groups = Arrays.asList(3, null, 17, 3, 25, 99);
+        List<Long> expect = new ArrayList<Long>();
+        List<Long> ranged = new ArrayList<Long>();
+        for(Map.Entry<Long,Integer> e: map.entrySet()) {
+            if(groups.contains(map.getGroupForKey(e.getKey()))) {
+                expect.add(e.getKey());
+                if(100 <= e.getValue() && e.getValue() <= 200)
+                    ranged.add(e.getKey());
+            }
+        }
+        
+        assertEquals("Merge error", expect, keys(map.multiGroupEntrySet(groups)));
+        assertEquals("Size error", expect.size(), map.multiGroupValues(groups).size());
+        
+        Collections.reverse(expect);
+        assertEquals("Merge error", expect, keys(map.descendingMultiGroupEntrySet(groups)));
+        
+        assertEquals("Range error", ranged, keys(map.multiGroupEntrySet(groups, GroupSetTest.range(100, 200))));
+        Collections.reverse(ranged);
+        assertEquals("Range error", ranged, keys(map.descendingMultiGroupEntrySet(groups, GroupSetTest.range(100, 200))));
+    }
+    
+    
+    private static List<Long> keys(Collection<Map.Entry<Long,Integer>> entries) {
+        List<Long> ret = new ArrayList<Long>();
+        for(Map.Entry<Long,Integer> e: entries) {
+            ret.add(e.getKey());
+        }
+        return ret;
+    }
+    
+    
+    public void testBulkLoad(IntMap ref, IntMap map) {
+        Map<Integer,Map<Long,Integer>> groups = new LinkedHashMap<Integer,Map<Long,Integer>>();
+        for(int i = 0; i < 5000; i++) {
+            Integer c = mRand.nextInt(51);
+            Integer v = mRand.nextInt(1000);
+            if(c == 50)
+                c = null;
+            
+            Map<Long,Integer> group = groups.get(c);
+            if(group == null) {
+                group = new LinkedHashMap<Long,Integer>();
+                groups.put(c, group);
+            }
+            
+            group.put(toKey(c, v), v);
+            ref.put(c, toKey(c, v), v);
+        }
+        
+        map.putAllGroups(groups);
+        assertEquals("Size error", ref.size(), map.size());
+        assertEquals("Group error", ref.groups(), map.groups());
+        
+        List<Map.Entry<Long,Integer>> all = new ArrayList<Map.Entry<Long,Integer>>(map.entrySet());
+        assertEquals("Order error", new ArrayList<Long>(ref.keySet()), new ArrayList<Long>(map.keySet()));
+        for(int i = 0; i < all.size(); i++) {
+            assertSame(all.get(i), map.select(i));
+            assertEquals("Get error", all.get(i).getValue(), map.get(all.get(i).getKey()));
+        }
+        
+        for(Integer g: ref.groups()) {
+            List<Map.Entry<Long,Integer>> group = new ArrayList<Map.Entry<Long,Integer>>(map.groupEntrySet(g));
+            assertEquals("Order error", new ArrayList<Long>(ref.groupKeySet(g)), new ArrayList<Long>(map.groupKeySet(g)));
+            for(int i = 0; i < group.size(); i++) {
+                assertEquals("Rank error", i, map.groupRank(group.get(i).getKey()));
+            }
+        }
+        
+        //Trees must remain valid under further modification.
+        for(int i = 0; i < 5000; i++) {
+            Integer c = mRand.nextInt(50);
+            Integer v = mRand.nextInt(1000);
+            
+            if(mRand.nextBoolean()) {
+                ref.remove(toKey(c, v));
+                map.remove(toKey(c, v));
+            }else{
+                ref.put(c, toKey(c, v), v);
+                map.put(c, toKey(c, v), v);
+            }
+        }
+        
+        assertEquals("Order error", new ArrayList<Long>(ref.keySet()), new ArrayList<Long>(map.keySet()));
+        all = new ArrayList<Map.Entry<Long,Integer>>(map.entrySet());
+        for(int i = 0; i < all.size(); i++) {
+            assertEquals("Rank error", i, map.rank(all.get(i).getKey()));
+        }
+    }
+    
+    
+    public void testUpdateValue(IntMap ref, IntMap map) {
+        for(int i = 0; i < 2000; i++) {
+            Integer c = mRand.nextInt(6);
+            Integer v = mRand.nextInt(1000);
+            ref.put(c, (long)i, v);
+            map.put(c, (long)i, v);
+        }
+        
+        for(int i = 0; i < 5000; i++) {
+            Long key = (long)mRand.nextInt(2100);
+            Integer prev = ref.get(key);
+            
+            if(prev == null) {
+                assertNull(map.updateValue(key, 0));
+                continue;
+            }
+            
+            //Mostly small deltas, occasionally large jumps.
+            Integer v = mRand.nextInt(10) == 0 ? mRand.nextInt(1000) : prev + mRand.nextInt(11) - 5;
+            Map.Entry<Long,Integer> entry = map.select(map.rank(key));
+            
+            ref.put(ref.getGroupForKey(key), key, v);
+            assertEquals("Update error", prev, map.updateValue(key, v));
+            assertSame(entry, map.select(map.rank(key)));
+        }
+        
+        assertEquals("Size error", ref.size(), map.size());
+        assertEquals("Order error", new ArrayList<Long>(ref.keySet()), new ArrayList<Long>(map.keySet()));
+        for(Integer g: ref.groups()) {
+            assertEquals("Size error", ref.size(g), map.size(g));
+            assertEquals("Order error", new ArrayList<Long>(ref.groupKeySet(g)), new ArrayList<Long>(map.groupKeySet(g)));
+            
+            int i = 0;
+            for(Long key: map.groupKeySet(g)) {
+                assertEquals("Rank error", i++, map.groupRank(key));
+            }
+        }
+        
+        List<Map.Entry<Long,Integer>> all = new ArrayList<Map.Entry<Long,Integer>>(map.entrySet());
+        for(int i = 0; i < all.size(); i++) {
+            assertEquals("Rank error", i, map.rank(all.get(i).getKey()));
+        }
+        
+        assertFalse(map.reorder(-1L));
+    }
+    
+    
+    public void testRange(IntMap map) {
+        populate(map, 2000, 8, 400);
+        
+        for(int i = 0; i < 100; i++) {
+            Integer lo = mRand.nextInt(420) - 10;
+            Integer hi = lo + mRand.nextInt(60);
+            Integer g = mRand.nextInt(8);
+            boolean loInc = mRand.nextBoolean();
+            boolean hiInc = mRand.nextBoolean();
+            Comparable<Integer> range = map.valueRange(lo, loInc, hi, hiInc);
+            
+            List<Integer> expect = new ArrayList<Integer>();
+            List<Integer> expectGroup = new ArrayList<Integer>();
+            for(Integer v: map.values()) {
+                if(range.compareTo(v) == 0)
+                    expect.add(v);
+            }
+            for(Integer v: map.groupValues(g)) {
+                if(range.compareTo(v) == 0)
+                    expectGroup.add(v);
+            }
+            
+            assertEquals("Range error", expect, new ArrayList<Integer>(map.subValues(lo, loInc, hi, hiInc)));
+            assertEquals("Size error", expect.size(), map.subValues(lo, loInc, hi, hiInc).size());
+            assertEquals("Range error", expectGroup, new ArrayList<Integer>(map.groupSubValues(g, lo, loInc, hi, hiInc)));
+            assertEquals("Size error", expectGroup.size(), map.groupSubValues(g, lo, loInc, hi, hiInc).size());
+            
+            List<Integer> desc = new ArrayList<Integer>(map.descendingGroupSubValues(g, lo, loInc, hi, hiInc));
+            Collections.reverse(desc);
+            assertEquals("Range error", expectGroup, desc);
+            
+            desc = new ArrayList<Integer>(map.descendingSubValues(lo, loInc, hi, hiInc));
+            Collections.reverse(desc);
+            assertEquals("Range error", expect, desc);
+        }
+        
+        Comparable<Integer> range = map.valueRange(100, true, 150, true);
+        int size = map.size();
+        int count = map.countRange(range, range);
+        for(int i = 0; i < count; i++) {
+            Map.Entry<Long,Integer> e = (i % 2 == 0 ? map.pollFirstEntry(range) : map.pollLastEntry(range));
+            assertTrue(range.compareTo(e.getValue()) == 0);
+        }
+        
+        assertNull(map.pollFirstEntry(range));
+        assertEquals("Size error", size - count, map.size());
+        assertEquals("Size error", 0, map.headValues(150, true).size() - map.headValues(100, false).size());
+    }
+    
+    
+    public void testHashOnly(IntMap ref, IntMap map) {
+        for(int i = 0; i < 10000; i++) {
+            Integer c = mRand.nextInt(11);
+            Integer v = mRand.nextInt(300);
+            if(c == 10)
+                c = null;
+            
+            switch(mRand.nextInt(8)) {
+            case 0:
+                assertEquals("Remove error", ref.remove(toKey(c, v)), map.remove(toKey(c, v)));
+                break;
+            case 1:
+                if(mRand.nextInt(20) == 0) {
+                    ref.clear(c);
+                    map.clear(c);
+                }
+                break;
+            default:
+                assertEquals("Put error", ref.put(c, toKey(c, v), v), map.put(c, toKey(c, v), v));
+            }
+        }
+        
+        assertEquals("Size error", ref.size(), map.size());
+        assertEquals("Group error", ref.groups(), map.groups());
+        assertEquals("Set error", new HashSet<Long>(ref.keySet()), new HashSet<Long>(map.keySet()));
+        assertTrue(ref.equals(map));
+        assertTrue(map.equals(ref));
+        
+        for(Integer g: ref.groups()) {
+            assertEquals("Order error", new ArrayList<Long>(ref.groupKeySet(g)), new ArrayList<Long>(map.groupKeySet(g)));
+            assertEquals("First error", ref.firstValue(g), map.firstValue(g));
+            assertEquals("Ceiling error", ref.ceilingValue(g, 150), map.ceilingValue(g, 150));
+        }
+        
+        for(int v = 0; v < 300; v += 7) {
+            assertEquals("Contains error", ref.containsValue(v), map.containsValue(v));
+        }
+        
+        try {
+            map.firstValue();
+            fail();
+        } catch(UnsupportedOperationException expected) {}
+        
+        try {
+            map.descendingKeySet();
+            fail();
+        } catch(UnsupportedOperationException expected) {}
+        
+        //Unordered iteration must still support removal.
+        Iterator<Map.Entry<Long,Integer>> iter = map.entrySet().iterator();
+        while(iter.hasNext()) {
+            Map.Entry<Long,Integer> e = iter.next();
+            if(e.getValue() % 2 == 0) {
+                iter.remove();
+                ref.remove(e.getKey());
+            }
+        }
+        
+        assertEquals("Size error", ref.size(), map.size());
+        assertEquals("Set error", new HashSet<Long>(ref.keySet()), new HashSet<Long>(map.keySet()));
+        
+        map.clear();
+        Map<Integer,Map<Long,Integer>> groups = new HashMap<Integer,Map<Long,Integer>>();
+        for(Integer g: ref.groups()) {
+            Map<Long,Integer> group = new HashMap<Long,Integer>();
+            for(Map.Entry<Long,Integer> e: ref.groupEntrySet(g)) {
+                group.put(e.getKey(), e.getValue());
+            }
+            groups.put(g, group);
+        }
+        
+        map.putAllGroups(groups);
+        assertTrue(ref.equals(map));
+    }
+    
+    
+    public void testBulkLoadCollisions(IntMap ref, IntMap map) {
+        //Keys repeated across groups, and values repeated within groups, must resolve as with put().
+        Map<Integer,Map<Long,Integer>> groups = new LinkedHashMap<Integer,Map<Long,Integer>>();
+        groups.put(1, new LinkedHashMap<Long,Integer>());
+        groups.get(1).put(0L, 0);
+        groups.get(1).put(2L, 0);
+        groups.put(0, new LinkedHashMap<Long,Integer>());
+        groups.get(0).put(2L, 0);
+        assertBulkLoadEquivalent(groups, ref, map);
+        
+        for(int trial = 0; trial < 200; trial++) {
+            groups.clear();
+            int entries = mRand.nextInt(60);
+            for(int i = 0; i < entries; i++) {
+                Integer c = mRand.nextInt(5);
+                if(c == 4)
+                    c = null;
+                
+                Map<Long,Integer> group = groups.get(c);
+                if(group == null) {
+                    group = new LinkedHashMap<Long,Integer>();
+                    groups.put(c, group);
+                }
+                
+                group.put((long)mRand.nextInt(30), mRand.nextInt(10));
+            }
+            
+            assertBulkLoadEquivalent(groups, ref, map);
+        }
+    }
+    
+    
+    private static void assertBulkLoadEquivalent(Map<Integer,Map<Long,Integer>> groups, IntMap ref, IntMap map) {
+        ref.clear();
+        map.clear();
+        
+        for(Map.Entry<Integer,Map<Long,Integer>> g: groups.entrySet()) {
+            for(Map.Entry<Long,Integer> e: g.getValue().entrySet()) {
+                ref.put(g.getKey(), e.getKey(), e.getValue());
+            }
+        }
+        
+        map.putAllGroups(groups);
+        assertEquals("Size error", ref.size(), map.size());
+        assertEquals("Group error", ref.groups(), map.groups());
+        assertEquals("Order error", new ArrayList<Long>(ref.keySet()), new ArrayList<Long>(map.keySet()));
+        
+        for(Long key: ref.keySet()) {
+            assertEquals("Get error", ref.get(key), map.get(key));
+            assertEquals("Group error", ref.getGroupForKey(key), map.getGroupForKey(key));
+        }
+        
+        for(Integer g: ref.groups()) {
+            assertEquals("Order error", new ArrayList<Long>(ref.groupKeySet(g)), new ArrayList<Long>(map.groupKeySet(g)));
+        }
+    }
+    
+    
+    public void testGroupOps(IntMap ref, IntMap map) {
+        for(int i = 0; i < 4000; i++) {
+            Integer c = mRand.nextInt(11);
+            Integer v = mRand.nextInt(300);
+            if(c == 10)
+                c = null;
+            
+            ref.put(c, toKey(c, v), v);
+            map.put(c, toKey(c, v), v);
+        }
+        
+        for(int i = 0; i < 300; i++) {
+            Integer src = mRand.nextInt(13);
+            Integer dst = mRand.nextInt(13);
+            if(src == 12)
+                src = null;
+            if(dst == 12)
+                dst = null;
+            
+            List<Map.Entry<Long,Integer>> moved = new ArrayList<Map.Entry<Long,Integer>>(ref.groupEntrySet(src));
+            
+            switch(mRand.nextInt(4)) {
+            case 0:
+                for(Map.Entry<Long,Integer> e: moved) {
+                    ref.remove(e.getKey());
+                }
+                assertEquals("Drop error", !moved.isEmpty(), map.dropGroup(src));
+                break;
+            case 1:
+                //Refill a group so that later drops and merges have work to do.
+                for(int j = 0; j < 100; j++) {
+                    Integer v = mRand.nextInt(300);
+                    ref.put(src, toKey(src, v), v);
+                    map.put(src, toKey(src, v), v);
+                }
+                break;
+            default:
+                if(src == dst || src != null && src.equals(dst))
+                    moved.clear();
+                for(Map.Entry<Long,Integer> e: moved) {
+                    ref.remove(e.getKey());
+                    ref.put(dst, e.getKey(), e.getValue());
+                }
+                assertEquals("Move error", !moved.isEmpty(), map.moveGroup(src, dst));
+            }
+            
+            assertEquals("Size error", ref.size(), map.size());
+            assertEquals("Group error", ref.groups(), map.groups());
+        }
+        
+        assertEquals("Order error", new ArrayList<Long>(ref.keySet()), new ArrayList<Long>(map.keySet()));
+        for(Integer g: ref.groups()) {
+            assertEquals("Size error", ref.size(g), map.size(g));
+            assertEquals("Order error", new ArrayList<Long>(ref.groupKeySet(g)), new ArrayList<Long>(map.groupKeySet(g)));
+            for(Long key: map.groupKeySet(g)) {
+                assertEquals("Group error", g, map.getGroupForKey(key));
+            }
+        }
+        
+        List<Map.Entry<Long,Integer>> all = new ArrayList<Map.Entry<Long,Integer>>(map.entrySet());
+        for(int i = 0; i < all.size(); i++) {
+            assertEquals("Rank error", i, map.rank(all.get(i).getKey()));
+        }
+        
+        map.mergeGroups(Arrays.asList(0, 1, 2), 3);
+        for(Integer g = 0; g < 3; g++) {
+            for(Map.Entry<Long,Integer> e: new ArrayList<Map.Entry<Long,Integer>>(ref.groupEntrySet(g))) {
+                ref.remove(e.getKey());
+                ref.put(3, e.getKey(), e.getValue());
+            }
+        }
+        
+        assertEquals("Group error", ref.groups(), map.groups());
+        assertEquals("Order error", new ArrayList<Long>(ref.keySet()), new ArrayList<Long>(map.keySet()));
+        assertEquals("Order error", new ArrayList<Long>(ref.groupKeySet(3)), new ArrayList<Long>(map.groupKeySet(3)));
+    }
+    
+    
     public void testIter(boolean useChannel, IntMap map) {
         int[] start = new int[]{-1, -1, 3, 3, 4, 20};
         int[] stop = new int[]{-1, 4, 3, 4, 20, 22};
@@ -790,6 +1310,10 @@ public class GroupMapTest {
             super(groupComp, valueComp);
         }
         
+        public IntMap(Comparator<Integer> groupComp, Comparator<Integer> valueComp, boolean indexAll) {
+            super(groupComp, valueComp, indexAll);
+        }
+        
     }
 
     
@@ -99,6 +99,54 @@ public class GroupSetTest {
     }
 
 
+    @Test
+    public void testMultiGroupSubset() {
+        for( GroupSet<Integer, Integer> set : createSets() ) {
+            testMultiGroupSubset( set );
+        }
+    }
+
+
+    @Test
+    public void testBulkLoad() {
+        List<GroupSet<Integer, Integer>> refs = createSets();
+        List<GroupSet<Integer, Integer>> sets = createSets();
+
+        for( int i = 0; i < sets.size(); i++ ) {
+            testBulkLoad( refs.get( i ), sets.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testBulkLoadCollisions() {
+        // Distinct groups that compare as equivalent make equivalent values replace each other across groups.
+        Comparator<Integer> pairs = new Comparator<Integer>() {
+            public int compare( Integer a, Integer b ) {
+                return ORDER.compare( a / 2, b / 2 );
+            }
+        };
+
+        List<GroupSet<Integer, Integer>> refs = createSets();
+        List<GroupSet<Integer, Integer>> sets = createSets();
+        refs.add( new GroupSet<Integer, Integer>( pairs, ORDER ) );
+        sets.add( new GroupSet<Integer, Integer>( pairs, ORDER ) );
+        refs.add( new GroupSet<Integer, Integer>( pairs, ORDER, false ) );
+        sets.add( new GroupSet<Integer, Integer>( pairs, ORDER, false ) );
+
+        for( int i = 0; i < sets.size(); i++ ) {
+            testBulkLoadCollisions( refs.get( i ), sets.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testHashOnly() {
+        testHashOnly( new GroupSet<Integer, Integer>( null, null ), new GroupSet<Integer, Integer>( null, null, false ) );
+        testHashOnly( new GroupSet<Integer, Integer>( ORDER, ORDER ), new GroupSet<Integer, Integer>( ORDER, ORDER, false ) );
+    }
+
+
 
     public void testOneChannel( GroupSet<Integer, Integer> set ) {
         Integer channel = 3;
@@ -196,6 +244,220 @@ public class GroupSetTest {
     }
 
 
+    public void testMultiGroupSubset( GroupSet<Integer, Integer> set ) {
+        populate( set, 5000, 40, 500 );
+
+        List<Integer> groups = Arrays.asList( 3, null, 17, 3, 25, 99 );
+        List<Integer> expect = new ArrayList<Integer>();
+        for( Integer g : new HashSet<Integer>( groups ) ) {
+            expect.addAll( set.groupSubset( g ) );
+        }
+        Collections.sort( expect );
+
+        assertEquals( "Merge error", expect, new ArrayList<Integer>( set.multiGroupSubset( groups ) ) );
+        assertEquals( "Size error", expect.size(), set.multiGroupSubset( groups ).size() );
+
+        List<Integer> reverse = new ArrayList<Integer>( expect );
+        Collections.reverse( reverse );
+        assertEquals( "Merge error", reverse, new ArrayList<Integer>( set.descendingMultiGroupSubset( groups ) ) );
+
+        List<Integer> ranged = new ArrayList<Integer>();
+        for( Integer v : expect ) {
+            if( 100 <= v && v <= 200 ) {
+                ranged.add( v );
+            }
+        }
+
+        assertEquals( "Range error", ranged, new ArrayList<Integer>( set.multiGroupSubset( groups, range( 100, 200 ) ) ) );
+        Collections.reverse( ranged );
+        assertEquals( "Range error", ranged, new ArrayList<Integer>( set.descendingMultiGroupSubset( groups, range( 100, 200 ) ) ) );
+
+        // Remove through merged iterator.
+        int size = set.size();
+        int removed = 0;
+        Iterator<Integer> iter = set.multiGroupSubset( groups, range( 100, 200 ) ).iterator();
+        while( iter.hasNext() ) {
+            iter.next();
+            iter.remove();
+            removed++;
+        }
+
+        assertEquals( "Remove error", size - removed, set.size() );
+        assertEquals( "Remove error", 0, set.multiGroupSubset( groups, range( 100, 200 ) ).size() );
+    }
+
+
+    static Comparable<Integer> range( final int low, final int high ) {
+        return new Comparable<Integer>() {
+            public int compareTo( Integer v ) {
+                return v < low ? 1 : v > high ? -1 : 0;
+            }
+        };
+    }
+
+
+    public void testHashOnly( GroupSet<Integer, Integer> ref, GroupSet<Integer, Integer> set ) {
+        for( int i = 0; i < 10000; i++ ) {
+            Integer c = mRand.nextInt( 11 );
+            Integer v = mRand.nextInt( 300 );
+            if( c == 10 ) {
+                c = null;
+            }
+
+            switch( mRand.nextInt( 8 ) ) {
+            case 0:
+                assertEquals( "Remove error", ref.remove( c, v ), set.remove( c, v ) );
+                break;
+            case 1:
+                if( mRand.nextInt( 20 ) == 0 ) {
+                    ref.clear( c );
+                    set.clear( c );
+                }
+                break;
+            default:
+                assertEquals( "Add error", ref.add( c, v ), set.add( c, v ) );
+            }
+        }
+
+        assertEquals( "Size error", ref.size(), set.size() );
+        assertEquals( "Group error", ref.groups(), set.groups() );
+
+        List<Integer> all = new ArrayList<Integer>( set );
+        Collections.sort( all );
+        assertEquals( "Order error", new ArrayList<Integer>( ref ), all );
+
+        for( Integer g : ref.groups() ) {
+            assertEquals( "Order error", new ArrayList<Integer>( ref.groupSubset( g ) ), new ArrayList<Integer>( set.groupSubset( g ) ) );
+        }
+
+        for( int v = 0; v < 300; v += 7 ) {
+            assertEquals( "Contains error", ref.contains( v ), set.contains( v ) );
+        }
+
+        try {
+            set.first();
+            fail();
+        } catch( UnsupportedOperationException expected ) {}
+
+        // Unordered iteration must still support removal.
+        Iterator<Integer> iter = set.iterator();
+        while( iter.hasNext() ) {
+            if( iter.next() % 2 == 0 ) {
+                iter.remove();
+            }
+        }
+
+        iter = ref.iterator();
+        while( iter.hasNext() ) {
+            if( iter.next() % 2 == 0 ) {
+                iter.remove();
+            }
+        }
+
+        all = new ArrayList<Integer>( set );
+        Collections.sort( all );
+        assertEquals( "Size error", ref.size(), set.size() );
+        assertEquals( "Order error", new ArrayList<Integer>( ref ), all );
+    }
+
+
+    public void testBulkLoad( GroupSet<Integer, Integer> ref, GroupSet<Integer, Integer> set ) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<Integer, List<Integer>>();
+
+        for( int i = 0; i < 5000; i++ ) {
+            Integer c = mRand.nextInt( 51 );
+            Integer v = mRand.nextInt( 1000 );
+            if( c == 50 ) {
+                c = null;
+            }
+
+            List<Integer> group = groups.get( c );
+            if( group == null ) {
+                group = new ArrayList<Integer>();
+                groups.put( c, group );
+            }
+
+            group.add( v );
+            ref.add( c, v );
+        }
+
+        assertTrue( set.addAllGroups( groups ) );
+        assertEquals( "Size error", ref.size(), set.size() );
+        assertEquals( "Group error", ref.groups(), set.groups() );
+        assertEquals( "Order error", new ArrayList<Integer>( ref ), new ArrayList<Integer>( set ) );
+
+        for( Integer g : ref.groups() ) {
+            assertEquals( "Order error", new ArrayList<Integer>( ref.groupSubset( g ) ), new ArrayList<Integer>( set.groupSubset( g ) ) );
+        }
+
+        //Trees must remain valid under further modification.
+        for( int i = 0; i < 5000; i++ ) {
+            Integer c = mRand.nextInt( 50 );
+            Integer v = mRand.nextInt( 1000 );
+
+            if( mRand.nextBoolean() ) {
+                ref.remove( c, v );
+                set.remove( c, v );
+            } else {
+                ref.add( c, v );
+                set.add( c, v );
+            }
+        }
+
+        assertEquals( "Order error", new ArrayList<Integer>( ref ), new ArrayList<Integer>( set ) );
+        assertEquals( "Order error", new ArrayList<Integer>( ref.descendingSet() ), new ArrayList<Integer>( set.descendingSet() ) );
+    }
+
+
+    public void testBulkLoadCollisions( GroupSet<Integer, Integer> ref, GroupSet<Integer, Integer> set ) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<Integer, List<Integer>>();
+
+        for( int trial = 0; trial < 200; trial++ ) {
+            groups.clear();
+            int values = mRand.nextInt( 60 );
+
+            if( trial == 0 ) {
+                // Group 0 is emptied if groups 0 and 1 are equivalent.
+                groups.put( 0, Arrays.asList( 1 ) );
+                groups.put( 1, Arrays.asList( 1 ) );
+                values = 0;
+            }
+
+            for( int i = 0; i < values; i++ ) {
+                Integer c = mRand.nextInt( 5 );
+                if( c == 4 ) {
+                    c = null;
+                }
+
+                List<Integer> group = groups.get( c );
+                if( group == null ) {
+                    group = new ArrayList<Integer>();
+                    groups.put( c, group );
+                }
+
+                group.add( mRand.nextInt( 10 ) );
+            }
+
+            ref.clear();
+            set.clear();
+
+            for( Map.Entry<Integer, List<Integer>> e : groups.entrySet() ) {
+                for( Integer v : e.getValue() ) {
+                    ref.add( e.getKey(), v );
+                }
+            }
+
+            assertTrue( set.addAllGroups( groups ) == !ref.isEmpty() );
+            assertEquals( "Size error", ref.size(), set.size() );
+            assertEquals( "Group error", ref.groups(), set.groups() );
+
+            for( Integer g : ref.groups() ) {
+                assertEquals( "Order error", new ArrayList<Integer>( ref.groupSubset( g ) ), new ArrayList<Integer>( set.groupSubset( g ) ) );
+            }
+        }
+    }
+
+
     public void testRandom( GroupSet<Integer, Integer> set ) {
         ReferenceGroupSet ref = new ReferenceGroupSet();
 
@@ -5,6 +5,7 @@
  */
 package bits.collect;
 
+import java.io.*;
 import java.util.*;
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -521,6 +522,221 @@ public class LongIntervalMapTest {
 
 
     @Ignore
+    @Test public void testWriteRead() throws IOException {
+        RandomIter iter = new RandomIter( getSeed(), 0, 1000 );
+
+        for( int t = 0; t < 200; t++ ) {
+            final int keyCount = iter.mRand.nextInt( 300 );
+            LongIntervalMap<String> map = new LongIntervalMap<>();
+
+            for( int k = 0; k < keyCount; k++ ) {
+                long[] key = iter.next();
+                map.put( key, Arrays.toString( key ) );
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            map.write( new DataOutputStream( bytes ), STRING_CODEC );
+
+            LongIntervalMap<String> copy = new LongIntervalMap<>();
+            copy.put( 5, 6, "discarded" );
+            copy.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ), STRING_CODEC );
+
+            assertEquals( map.size(), copy.size() );
+            assertTrue( copy.validateMaxStops() );
+            assertTrue( copy.validateBalance() );
+
+            Iterator<Map.Entry<long[], String>> aa = map.entrySet().iterator();
+            Iterator<Map.Entry<long[], String>> bb = copy.entrySet().iterator();
+            while( aa.hasNext() ) {
+                Map.Entry<long[], String> a = aa.next();
+                Map.Entry<long[], String> b = bb.next();
+                assertTrue( Arrays.equals( a.getKey(), b.getKey() ) );
+                assertEquals( a.getValue(), b.getValue() );
+            }
+            assertFalse( bb.hasNext() );
+
+            for( int s = 0; s < 50; s++ ) {
+                long[] key = iter.next();
+                assertDeepEquals( map.intersectionValues( key ), new ArrayList<>( copy.intersectionValues( key ) ) );
+                assertDeepEquals( map.supersetValues( key ), new ArrayList<>( copy.supersetValues( key ) ) );
+            }
+
+            // Restored tree must remain valid under further modification.
+            for( int s = 0; s < 50; s++ ) {
+                long[] key = iter.next();
+                copy.put( key, Arrays.toString( key ) );
+                copy.removeIntersection( iter.next() );
+            }
+            assertTrue( copy.validateMaxStops() );
+            assertTrue( copy.validateBalance() );
+        }
+    }
+
+
+    @Test public void testReadUnsorted() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( 2 );
+        LongIntervalMap.LONG_PAIR_CODEC.write( new long[]{ 5, 6 }, out );
+        STRING_CODEC.write( "a", out );
+        LongIntervalMap.LONG_PAIR_CODEC.write( new long[]{ 1, 2 }, out );
+        STRING_CODEC.write( "b", out );
+
+        LongIntervalMap<String> map = new LongIntervalMap<>();
+        try {
+            map.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ), STRING_CODEC );
+            fail();
+        } catch( IOException expected ) {}
+
+        assertTrue( map.isEmpty() );
+    }
+
+
+    @Test public void testNearest() {
+        RandomIter iter = new RandomIter( getSeed(), 0, 1000 );
+        IntervalComparator<long[]> comp = LongIntervalMap.LONG_PAIR_COMP;
+
+        for( int t = 0; t < 200; t++ ) {
+            final int keyCount = iter.mRand.nextInt( 100 );
+            LongIntervalMap<long[]> map = new LongIntervalMap<>();
+            iter.setSparseness( iter.mRand.nextDouble() * 0.1 );
+
+            for( int k = 0; k < keyCount; k++ ) {
+                long[] key = iter.next();
+                map.put( key, key );
+            }
+
+            for( int s = 0; s < 50; s++ ) {
+                final long p = iter.mRand.nextInt( 1100 ) - 50;
+                final long[] point = { p, p };
+
+                long lastMax = Long.MIN_VALUE;
+                long firstMin = Long.MAX_VALUE;
+                List<Long> dists = new ArrayList<>();
+
+                for( long[] key : map.keySet() ) {
+                    if( comp.compareMinToMax( point, key ) >= 0 ) {
+                        lastMax = Math.max( lastMax, key[1] );
+                        dists.add( p - key[1] );
+                    } else if( comp.compareMinToMax( key, point ) >= 0 ) {
+                        firstMin = Math.min( firstMin, key[0] );
+                        dists.add( key[0] - p );
+                    } else {
+                        dists.add( 0L );
+                    }
+                }
+                Collections.sort( dists );
+
+                Map.Entry<long[], long[]> e = map.lastEntryEndingBefore( p );
+                assertEquals( lastMax, e == null ? Long.MIN_VALUE : e.getKey()[1] );
+                e = map.firstEntryStartingAfter( p );
+                assertEquals( firstMin, e == null ? Long.MAX_VALUE : e.getKey()[0] );
+
+                e = map.nearestEntry( p );
+                if( dists.isEmpty() ) {
+                    assertNull( e );
+                } else {
+                    assertEquals( (long)dists.get( 0 ), distance( e.getKey(), p ) );
+                }
+
+                int k = iter.mRand.nextInt( keyCount + 2 );
+                List<Map.Entry<long[], long[]>> near = map.kNearestEntries( p, k );
+                assertEquals( Math.min( k, keyCount ), near.size() );
+
+                Set<long[]> seen = Collections.newSetFromMap( new IdentityHashMap<long[], Boolean>() );
+                for( int i = 0; i < near.size(); i++ ) {
+                    assertTrue( seen.add( near.get( i ).getKey() ) );
+                    assertEquals( (long)dists.get( i ), distance( near.get( i ).getKey(), p ) );
+                }
+            }
+        }
+    }
+
+
+    @Test public void testStabbing() {
+        RandomIter iter = new RandomIter( getSeed(), 0, 1000 );
+
+        for( int t = 0; t < 100; t++ ) {
+            LongIntervalMap<long[]> map = new LongIntervalMap<>();
+            map.setStabbingIndexEnabled( true );
+            iter.setSparseness( iter.mRand.nextDouble() * 0.1 );
+
+            for( int step = 0; step < 4; step++ ) {
+                final int keyCount = iter.mRand.nextInt( 50 );
+                for( int k = 0; k < keyCount; k++ ) {
+                    long[] key = iter.next();
+                    if( iter.mRand.nextInt( 5 ) == 0 ) {
+                        key[1] = key[0];
+                    }
+                    map.put( key, key );
+                }
+                if( !map.isEmpty() ) {
+                    map.remove( map.firstKey() );
+                }
+
+                for( int s = 0; s < 50; s++ ) {
+                    final long p = iter.mRand.nextInt( 1100 ) - 50;
+                    List<Map.Entry<long[], long[]>> expect = new ArrayList<>( map.intersectionEntrySet( p, p ) );
+                    assertEquals( expect, map.stabbingEntries( p ) );
+                    assertEquals( new ArrayList<>( map.intersectionValues( p, p ) ), map.stabbingValues( p ) );
+                }
+            }
+        }
+    }
+
+
+    @Test public void testPartition() {
+        RandomIter iter = new RandomIter( getSeed(), 0, 1000 );
+        final int[] partCounts = { 1, 2, 3, 7, 64 };
+
+        for( int t = 0; t < 100; t++ ) {
+            final int keyCount = iter.mRand.nextInt( 300 );
+            LongIntervalMap<long[]> map = new LongIntervalMap<>();
+
+            for( int k = 0; k < keyCount; k++ ) {
+                long[] key = iter.next();
+                map.put( key, key );
+            }
+
+            for( int s = 0; s < 10; s++ ) {
+                long[] key = iter.next();
+                List<Collection<?>> views = new ArrayList<>();
+                views.add( map.keySet() );
+                views.add( map.descendingKeySet() );
+                views.add( map.values() );
+                views.add( map.entrySet() );
+                views.add( map.equivKeySet( key ) );
+                views.add( map.intersectionValues( key ) );
+                views.add( map.descendingIntersectionValues( key ) );
+                views.add( map.intersectionEntrySet( key ) );
+                views.add( map.supersetKeySet( key ) );
+                views.add( map.descendingSupersetValues( key ) );
+                views.add( map.subsetValues( key ) );
+                views.add( map.descendingSubsetKeySet( key ) );
+
+                for( Collection<?> view : views ) {
+                    List<Object> expect = new ArrayList<Object>( view );
+
+                    for( int parts : partCounts ) {
+                        List<? extends Collection<?>> split = ((Partitionable<?>)view).partition( parts );
+                        assertTrue( split.size() <= parts );
+                        if( !expect.isEmpty() && keyCount > 8 && parts > 1 && view.size() == keyCount ) {
+                            assertTrue( split.size() > 1 );
+                        }
+
+                        List<Object> joined = new ArrayList<>();
+                        for( Collection<?> part : split ) {
+                            joined.addAll( part );
+                        }
+
+                        assertDeepEquals( expect, joined );
+                    }
+                }
+            }
+        }
+    }
+
+
     @Test public void testSpeed() {
         RandomIter iter = new RandomIter( getSeed(), 0, 10000 );
         final int testCount = 50;
@@ -589,6 +805,14 @@ public class LongIntervalMapTest {
 
 
 
+    private static long distance( long[] key, long p ) {
+        if( LongIntervalMap.LONG_PAIR_COMP.compareMinToMax( new long[]{ p, p }, key ) >= 0 ) {
+            return p - key[1];
+        }
+        return Math.max( 0, key[0] - p );
+    }
+
+
     private static void assertDeepEquals( Collection<?> a, Collection<?> b ) {
         assertEquals( a.size(), b.size() );
 
@@ -663,6 +887,17 @@ public class LongIntervalMapTest {
     }
 
 
+    private static final Codec<String> STRING_CODEC = new Codec<String>() {
+        public void write( String item, DataOutput out ) throws IOException {
+            out.writeUTF( item );
+        }
+
+        public String read( DataInput in ) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+
     private static final Comparator<long[]> SINGLE_INDEX_COMP = new Comparator<long[]>() {
         public int compare( long[] a, long[] b ) {
             if( a[0] < b[0] )
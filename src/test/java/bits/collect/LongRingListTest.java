@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class LongRingListTest {
+
+    @Test
+    public void testAgainstList() {
+        Random rand = new Random( 0 );
+        LongRingList list = new LongRingList( 4 );
+        List<Long> ref = new ArrayList<Long>();
+
+        for( int i = 0; i < 20000; i++ ) {
+            long v = rand.nextInt( 50 ) - 25;
+            int op = rand.nextInt( 10 );
+
+            if( ref.isEmpty() && op >= 4 ) {
+                op = 0;
+            }
+
+            switch( op ) {
+            case 0:
+            case 1:
+                list.addLast( v );
+                ref.add( v );
+                break;
+            case 2:
+                list.addFirst( v );
+                ref.add( 0, v );
+                break;
+            case 3: {
+                int idx = rand.nextInt( ref.size() + 1 );
+                list.add( idx, v );
+                ref.add( idx, v );
+                break;
+            }
+            case 4:
+                assertEquals( (long)ref.remove( 0 ), list.removeFirst() );
+                break;
+            case 5:
+                assertEquals( (long)ref.remove( ref.size() - 1 ), list.removeLast() );
+                break;
+            case 6: {
+                int idx = rand.nextInt( ref.size() );
+                assertEquals( (long)ref.remove( idx ), list.removeAt( idx ) );
+                break;
+            }
+            case 7: {
+                int idx = rand.nextInt( ref.size() );
+                assertEquals( (long)ref.set( idx, v ), list.set( idx, v ) );
+                break;
+            }
+            case 8:
+                assertEquals( ref.remove( v ), list.remove( v ) );
+                break;
+            default:
+                assertEquals( ref.indexOf( v ), list.indexOf( v ) );
+                assertEquals( ref.lastIndexOf( v ), list.lastIndexOf( v ) );
+            }
+
+            assertAggregates( ref, list );
+        }
+
+        LongIterator iter = list.iterator();
+        Iterator<Long> refIter = ref.iterator();
+        while( refIter.hasNext() ) {
+            long v = refIter.next();
+            assertEquals( v, iter.next() );
+            if( v % 2 == 0 ) {
+                iter.remove();
+                refIter.remove();
+            }
+        }
+        assertFalse( iter.hasNext() );
+        assertAggregates( ref, list );
+
+        list.clear();
+        ref.clear();
+        assertAggregates( ref, list );
+    }
+
+
+    @Test
+    public void testSlidingWindow() {
+        Random rand = new Random( 1 );
+        LongRingList list = new LongRingList( 4, 32, true );
+        Deque<Long> ref = new ArrayDeque<Long>();
+
+        for( int i = 0; i < 20000; i++ ) {
+            long v = rand.nextLong() % 1000;
+            list.add( v );
+            ref.addLast( v );
+            if( ref.size() > 32 ) {
+                ref.removeFirst();
+            }
+            if( rand.nextInt( 8 ) == 0 ) {
+                assertEquals( (long)ref.removeFirst(), list.removeFirst() );
+            }
+            assertAggregates( new ArrayList<Long>( ref ), list );
+        }
+
+        assertEquals( 32, list.capacity() );
+    }
+
+
+    @Test
+    public void testCapacity() {
+        LongRingList list = new LongRingList( 2, 4 );
+        assertFalse( list.isOverwrite() );
+        for( int i = 0; i < 4; i++ ) {
+            assertTrue( list.offer( i ) );
+        }
+        assertFalse( list.offer( 4 ) );
+        try {
+            list.add( 4 );
+            fail();
+        } catch( IllegalStateException ignored ) {}
+        assertEquals( 4, list.capacity() );
+
+        list = new LongRingList( 3, 3, true );
+        for( int i = 0; i < 5; i++ ) {
+            assertTrue( list.offer( i ) );
+        }
+        assertArrayEquals( new long[]{ 2, 3, 4 }, list.toArray() );
+        list.addFirst( 9 );
+        assertArrayEquals( new long[]{ 9, 2, 3 }, list.toArray() );
+        list.add( 1, 7 );
+        assertArrayEquals( new long[]{ 7, 2, 3 }, list.toArray() );
+        assertEquals( 12, list.sum() );
+        assertEquals( 2, list.min() );
+        assertEquals( 7, list.max() );
+        assertEquals( "[7, 2, 3]", list.toString() );
+
+        list = new LongRingList( 1, 0, true );
+        list.add( 1 );
+        assertTrue( list.isEmpty() );
+    }
+
+
+
+    private static void assertAggregates( List<Long> ref, LongRingList list ) {
+        assertEquals( ref.size(), list.size() );
+        long sum = 0;
+        for( int i = 0; i < ref.size(); i++ ) {
+            assertEquals( (long)ref.get( i ), list.get( i ) );
+            sum += ref.get( i );
+        }
+        assertEquals( sum, list.sum() );
+
+        if( ref.isEmpty() ) {
+            try {
+                list.min();
+                fail();
+            } catch( NoSuchElementException ignored ) {}
+            return;
+        }
+
+        assertEquals( (long)Collections.min( ref ), list.min() );
+        assertEquals( (long)Collections.max( ref ), list.max() );
+        assertEquals( (long)ref.get( 0 ), list.getFirst() );
+        assertEquals( (long)ref.get( ref.size() - 1 ), list.getLast() );
+    }
+
+}
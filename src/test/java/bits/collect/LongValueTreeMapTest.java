@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class LongValueTreeMapTest {
+
+    private final Random mRand = new Random( 0 );
+
+
+    @Test
+    public void testRandom() {
+        LongValueTreeMap<Integer> map = new LongValueTreeMap<Integer>();
+        Map<Integer, Long> ref = new HashMap<Integer, Long>();
+
+        for( int i = 0; i < 20000; i++ ) {
+            Integer key = mRand.nextInt( 300 );
+            long value  = mRand.nextInt( 200 ) - 100;
+
+            switch( mRand.nextInt( 4 ) ) {
+            case 0:
+                assertEquals( ref.remove( key ) != null, map.remove( key ) );
+                break;
+            case 1:
+                long prev = ref.containsKey( key ) ? ref.get( key ) : 0;
+                ref.put( key, prev + value );
+                assertEquals( prev + value, map.adjustValue( key, value ) );
+                break;
+            default:
+                assertEquals( ref.put( key, value ) == null, map.put( key, value ) );
+            }
+        }
+
+        assertEquals( ref.size(), map.size() );
+
+        List<LongValueTreeMap.Entry<Integer>> list = new ArrayList<LongValueTreeMap.Entry<Integer>>( map.entrySet() );
+        for( int i = 0; i < list.size(); i++ ) {
+            LongValueTreeMap.Entry<Integer> e = list.get( i );
+            assertEquals( (long)ref.get( e.getKey() ), e.getValue() );
+            assertEquals( (long)ref.get( e.getKey() ), map.get( e.getKey(), Long.MIN_VALUE ) );
+            assertSame( e, map.select( i ) );
+            if( i > 0 ) {
+                assertTrue( list.get( i - 1 ).getValue() <= e.getValue() );
+                assertTrue( map.rank( e.getKey() ) <= i );
+            }
+        }
+
+        assertSame( list.get( 0 ), map.firstEntry() );
+        assertSame( list.get( list.size() - 1 ), map.lastEntry() );
+
+        for( long v = -400; v <= 400; v++ ) {
+            LongValueTreeMap.Entry<Integer> ceil = null, floor = null, higher = null, lower = null;
+            int count = 0;
+
+            for( LongValueTreeMap.Entry<Integer> e : list ) {
+                if( ceil == null && e.getValue() >= v ) ceil = e;
+                if( higher == null && e.getValue() > v ) higher = e;
+                if( e.getValue() <= v ) floor = e;
+                if( e.getValue() < v ) lower = e;
+                if( v <= e.getValue() && e.getValue() <= v + 10 ) count++;
+            }
+
+            assertSame( ceil, map.ceilingEntry( v ) );
+            assertSame( floor, map.floorEntry( v ) );
+            assertSame( higher, map.higherEntry( v ) );
+            assertSame( lower, map.lowerEntry( v ) );
+            assertEquals( count, map.countRange( v, v + 10 ) );
+            assertEquals( count, map.entrySet( v, v + 10 ).size() );
+            assertEquals( count, new ArrayList<Integer>( map.keySet( v, v + 10 ) ).size() );
+            assertEquals( count, new ArrayList<Integer>( map.descendingKeySet( v, v + 10 ) ).size() );
+        }
+
+        List<Integer> keys = new ArrayList<Integer>( map.descendingKeySet() );
+        Collections.reverse( keys );
+        assertEquals( new ArrayList<Integer>( map.keySet() ), keys );
+    }
+
+
+    @Test
+    public void testBounded() {
+        LongValueTreeMap<Integer> map = new LongValueTreeMap<Integer>( 10 );
+        for( int i = 0; i < 100; i++ ) {
+            map.put( i, (i * 37) % 100 );
+        }
+
+        assertEquals( 10, map.size() );
+        assertEquals( 90, map.firstEntry().getValue() );
+        assertEquals( 99, map.pollLastEntry().getValue() );
+        assertEquals( 9, map.size() );
+
+        assertTrue( map.put( 200, 95 ) );
+        assertFalse( map.put( 201, 0 ) );
+        assertNull( map.getEntry( 201 ) );
+        assertEquals( 10, map.size() );
+    }
+
+}
@@ -96,6 +96,96 @@ public class SemiWeakHashSetTest {
 
 
 
+    @Test
+    public void testReadDrain() throws Exception {
+        SemiWeakHashSet<double[]> set = new SemiWeakHashSet<double[]>();
+        List<double[]> held = new ArrayList<double[]>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            double[] d = newRandomArray( 10 );
+            if( i % 2 == 0 ) {
+                set.addWeakly( d );
+                held.add( d );
+            } else if( i % 3 == 0 ) {
+                set.add( d );
+            } else {
+                set.addWeakly( d );
+            }
+        }
+
+        int live = held.size() + 167;
+        if( !WeakHashSetTest.collect() )
+            return;
+
+        int count = 0;
+        for( double[] d : set ) {
+            assertTrue( "contains() failed during iteration", set.contains( d ) );
+            count++;
+        }
+        assertEquals( "Invalid number of live elements.", live, count );
+
+        int size = set.size();
+        for( int i = 0; i < 500 && size > live; i++ ) {
+            int next = set.size();
+            assertTrue( "Read drain exceeded limit.", next >= size - set.readDrainLimit() );
+            if( next == size )
+                Thread.sleep( 10L );
+            size = next;
+        }
+        assertEquals( "Reads failed to compact set.", live, size );
+    }
+
+
+
+    @Test
+    public void testIdentity() {
+        SemiWeakHashSet<Object> set = new SemiWeakHashSet<Object>( 16, 0.75f, true );
+        Object a = new WeakHashSetTest.OpaqueObject();
+        Object b = new WeakHashSetTest.OpaqueObject();
+
+        assertTrue( set.addWeakly( a ) );
+        assertTrue( set.add( b ) );
+        assertFalse( "Duplicate add accepted.", set.add( a ) );
+        assertTrue( "Strong add failed to upgrade reference.", set.containsStrongly( a ) );
+        assertTrue( set.containsStrongly( b ) );
+
+        String s0 = new String( "s" );
+        assertTrue( set.add( s0 ) );
+        assertTrue( set.add( new String( "s" ) ) );
+        assertFalse( set.contains( new String( "s" ) ) );
+        assertTrue( set.remove( s0 ) );
+        assertEquals( "Invalid size.", 3, set.size() );
+    }
+
+
+
+    @Test
+    public void testForEachAlive() {
+        SemiWeakHashSet<double[]> set = new SemiWeakHashSet<double[]>();
+        final Set<double[]> expect = Collections.newSetFromMap( new IdentityHashMap<double[], Boolean>() );
+
+        for( int i = 0; i < 1000; i++ ) {
+            double[] d = newRandomArray( 4 );
+            expect.add( d );
+            if( mRand.nextBoolean() ) {
+                set.add( d );
+            } else {
+                set.addWeakly( d );
+            }
+        }
+
+        final Set<double[]> visited = Collections.newSetFromMap( new IdentityHashMap<double[], Boolean>() );
+        set.forEachAlive( new Visitor<double[]>() {
+            public void visit( double[] item ) {
+                visited.add( item );
+            }
+        } );
+
+        assertEquals( "forEachAlive visited wrong elements.", expect, visited );
+    }
+
+
+
     private double[] newRandomArray( int len ) {
         double[] ret = new double[len];
         for( int i = 0; i < len; i++ )
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014. Massachusetts Institute of Technology
+ * Released under the BSD 2-Clause License
+ * http://opensource.org/licenses/BSD-2-Clause
+ */
+package bits.collect;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class SpscRingQueueTest {
+
+    @Test
+    public void testAgainstDeque() {
+        Random rand = new Random( 0 );
+        SpscRingQueue<Integer> queue = new SpscRingQueue<Integer>( 30 );
+        Deque<Integer> ref = new ArrayDeque<Integer>();
+        Integer[] batch = new Integer[10];
+        assertEquals( 32, queue.capacity() );
+
+        for( int i = 0; i < 50000; i++ ) {
+            switch( rand.nextInt( 6 ) ) {
+            case 0:
+                assertEquals( ref.poll(), queue.poll() );
+                break;
+            case 1:
+                assertEquals( ref.peek(), queue.peek() );
+                break;
+            case 2: {
+                int len = rand.nextInt( batch.length + 1 );
+                for( int j = 0; j < len; j++ ) {
+                    batch[j] = i * 100 + j;
+                }
+                int n = queue.offerBatch( batch, 0, len );
+                assertEquals( Math.min( len, 32 - ref.size() ), n );
+                ref.addAll( Arrays.asList( batch ).subList( 0, n ) );
+                break;
+            }
+            case 3: {
+                int max = rand.nextInt( 12 );
+                List<Integer> out = new ArrayList<Integer>();
+                int n = queue.drainTo( out, max );
+                assertEquals( Math.min( max, ref.size() ), n );
+                for( Integer v : out ) {
+                    assertEquals( ref.poll(), v );
+                }
+                break;
+            }
+            default:
+                boolean fits = ref.size() < 32;
+                assertEquals( fits, queue.offer( i ) );
+                if( fits ) {
+                    ref.add( i );
+                }
+            }
+
+            assertEquals( ref.size(), queue.size() );
+            assertEquals( ref.isEmpty(), queue.isEmpty() );
+        }
+
+        assertEquals( new ArrayList<Integer>( ref ), new ArrayList<Integer>( queue ) );
+        queue.clear();
+        assertTrue( queue.isEmpty() );
+        assertNull( queue.poll() );
+
+        // Batch with a null element is rejected without publishing any items.
+        Integer[] bad = { 1, 2, null, 4 };
+        try {
+            queue.offerBatch( bad, 0, bad.length );
+            fail();
+        } catch( NullPointerException ignored ) {}
+        assertTrue( queue.isEmpty() );
+        assertEquals( 2, queue.offerBatch( bad, 0, 2 ) );
+    }
+
+
+    @Test
+    public void testThreads() throws Exception {
+        final SpscRingQueue<Integer> queue = new SpscRingQueue<Integer>( 256 );
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final int total = 2000000;
+
+        Thread producer = new Thread() {
+            public void run() {
+                Integer[] batch = new Integer[16];
+                int i = 0;
+                while( i < total && error.get() == null ) {
+                    int n;
+                    if( (i & 1024) == 0 ) {
+                        n = queue.offer( i ) ? 1 : 0;
+                    } else {
+                        int len = Math.min( batch.length, total - i );
+                        for( int j = 0; j < len; j++ ) {
+                            batch[j] = i + j;
+                        }
+                        n = queue.offerBatch( batch, 0, len );
+                    }
+
+                    if( n == 0 ) {
+                        Thread.yield();
+                    }
+                    i += n;
+                }
+            }
+        };
+
+        Thread consumer = new Thread() {
+            int mExpect = 0;
+
+            public void run() {
+                Visitor<Integer> check = new Visitor<Integer>() {
+                    public void visit( Integer item ) {
+                        assertEquals( mExpect++, (int)item );
+                    }
+                };
+
+                try {
+                    while( mExpect < total ) {
+                        int n;
+                        if( (mExpect & 4096) == 0 ) {
+                            Integer v = queue.poll();
+                            n = v == null ? 0 : 1;
+                            if( v != null ) {
+                                check.visit( v );
+                            }
+                        } else {
+                            n = queue.drainTo( check, 64 );
+                        }
+
+                        if( n == 0 ) {
+                            Thread.yield();
+                        }
+                    }
+                } catch( Throwable ex ) {
+                    error.compareAndSet( null, ex );
+                }
+            }
+        };
+
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+
+        if( error.get() != null ) {
+            throw new AssertionError( error.get() );
+        }
+
+        assertTrue( queue.isEmpty() );
+    }
+
+}
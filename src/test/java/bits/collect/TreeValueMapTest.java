@@ -40,6 +40,212 @@ public class TreeValueMapTest {
         checkOrder( map );
     }
 
+    @Test
+    public void testPriorityQueue() {
+        Random rand = new Random( 1 );
+        TreeValueMap<Integer,Integer> map = new TreeValueMap<Integer,Integer>();
+        TreeValueMap<Integer,Integer> top = new TreeValueMap<Integer,Integer>( null, 10 );
+        Map<Integer,Integer> stupid = new HashMap<Integer,Integer>();
+        List<Integer> all = new ArrayList<Integer>();
+        
+        for( int i = 0; i < 5000; i++ ) {
+            int key = rand.nextInt( 200 );
+            int value = rand.nextInt( 1000 );
+            
+            switch( rand.nextInt( 4 ) ) {
+            case 0:
+                assertEquals( stupid.put( key, value ), map.put( key, value ) );
+                break;
+            case 1:
+                assertEquals( stupid.put( key, value ), map.updateValue( key, value ) );
+                break;
+            case 2:
+                // Small delta, usually updated in place.
+                Integer prev = stupid.get( key );
+                if( prev != null ) {
+                    stupid.put( key, prev + 1 );
+                    assertEquals( prev, map.updateValue( key, prev + 1 ) );
+                }
+                break;
+            default:
+                Map.Entry<Integer,Integer> e = rand.nextBoolean() ? map.pollFirstEntry() : map.pollLastEntry();
+                if( e != null ) {
+                    assertEquals( stupid.remove( e.getKey() ), e.getValue() );
+                }
+                break;
+            }
+            
+            if( !stupid.isEmpty() ) {
+                assertEquals( Collections.min( stupid.values() ), map.firstValue() );
+                assertEquals( Collections.max( stupid.values() ), map.lastValue() );
+            } else {
+                assertNull( map.firstEntry() );
+                assertNull( map.lastEntry() );
+            }
+            
+            top.put( i, value );
+            all.add( value );
+        }
+        
+        assertEquals( stupid, map );
+        checkOrder( map );
+        
+        Collections.sort( all );
+        assertEquals( all.subList( all.size() - 10, all.size() ), new ArrayList<Integer>( top.values() ) );
+    }
+    
+    
+    @Test
+    public void testRank() {
+        Random rand = new Random( 2 );
+        TreeValueMap<Integer,Integer> map = new TreeValueMap<Integer,Integer>();
+        
+        for( int i = 0; i < 3000; i++ ) {
+            int key = rand.nextInt( 300 );
+            switch( rand.nextInt( 3 ) ) {
+            case 0:
+                map.put( key, rand.nextInt( 100 ) );
+                break;
+            case 1:
+                map.updateValue( key, rand.nextInt( 100 ) );
+                break;
+            default:
+                map.remove( key );
+                break;
+            }
+        }
+        
+        List<Map.Entry<Integer,Integer>> list = new ArrayList<Map.Entry<Integer,Integer>>( map.entrySet() );
+        for( int i = 0; i < list.size(); i++ ) {
+            assertSame( list.get( i ), map.select( i ) );
+            assertEquals( i, map.rank( list.get( i ).getKey() ) );
+        }
+        assertEquals( -1, map.rank( -1 ) );
+        
+        for( int i = 0; i < 100; i++ ) {
+            final int lo = rand.nextInt( 110 ) - 5;
+            final int hi = lo + rand.nextInt( 30 ) - 5;
+            int count = 0;
+            for( Integer v: map.values() ) {
+                if( lo <= v && v <= hi ) {
+                    count++;
+                }
+            }
+            assertEquals( count, map.countRange( probe( lo ), probe( hi ) ) );
+        }
+    }
+    
+    
+    static Comparable<Integer> probe( final int v ) {
+        return new Comparable<Integer>() {
+            public int compareTo( Integer o ) {
+                return Integer.compare( v, o );
+            }
+        };
+    }
+    
+    
+    @Test
+    public void testReorder() {
+        Random rand = new Random( 3 );
+        Comparator<long[]> comp = new Comparator<long[]>() {
+            public int compare( long[] a, long[] b ) {
+                return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : 0;
+            }
+        };
+        
+        TreeValueMap<Integer,long[]> map = new TreeValueMap<Integer,long[]>( comp );
+        Map<Integer,Map.Entry<Integer,long[]>> entries = new HashMap<Integer,Map.Entry<Integer,long[]>>();
+        
+        for( int i = 0; i < 200; i++ ) {
+            map.put( i, new long[]{ rand.nextInt( 1000 ) } );
+        }
+        for( Map.Entry<Integer,long[]> e: map.entrySet() ) {
+            entries.put( e.getKey(), e );
+        }
+        
+        for( int i = 0; i < 5000; i++ ) {
+            int key = rand.nextInt( 200 );
+            map.get( key )[0] += rand.nextInt( 21 ) - 10;
+            assertTrue( map.reorder( key ) );
+        }
+        
+        assertFalse( map.reorder( -1 ) );
+        
+        long prev = Long.MIN_VALUE;
+        for( Map.Entry<Integer,long[]> e: map.entrySet() ) {
+            assertTrue( prev <= e.getValue()[0] );
+            assertSame( entries.get( e.getKey() ), e );
+            prev = e.getValue()[0];
+        }
+        
+        List<Map.Entry<Integer,long[]>> list = new ArrayList<Map.Entry<Integer,long[]>>( map.entrySet() );
+        for( int i = 0; i < list.size(); i++ ) {
+            assertEquals( i, map.rank( list.get( i ).getKey() ) );
+        }
+    }
+    
+    
+    @Test
+    public void testRange() {
+        Random rand = new Random( 4 );
+        TreeValueMap<Integer,Integer> map = new TreeValueMap<Integer,Integer>();
+        List<Integer> all = new ArrayList<Integer>();
+        
+        for( int i = 0; i < 500; i++ ) {
+            int v = rand.nextInt( 200 );
+            map.put( i, v );
+            all.add( v );
+        }
+        Collections.sort( all );
+        
+        for( int i = 0; i < 200; i++ ) {
+            int lo = rand.nextInt( 220 ) - 10;
+            int hi = lo + rand.nextInt( 50 );
+            boolean loInc = rand.nextBoolean();
+            boolean hiInc = rand.nextBoolean();
+            
+            List<Integer> expect = new ArrayList<Integer>();
+            for( Integer v: all ) {
+                if( ( v > lo || loInc && v == lo ) && ( v < hi || hiInc && v == hi ) ) {
+                    expect.add( v );
+                }
+            }
+            
+            assertEquals( expect, new ArrayList<Integer>( map.subValues( lo, loInc, hi, hiInc ) ) );
+            assertEquals( expect.size(), map.subValues( lo, loInc, hi, hiInc ).size() );
+            
+            List<Integer> desc = new ArrayList<Integer>( map.descendingSubValues( lo, loInc, hi, hiInc ) );
+            Collections.reverse( desc );
+            assertEquals( expect, desc );
+            
+            int head = 0;
+            int tail = 0;
+            for( Integer v: all ) {
+                if( v < hi || hiInc && v == hi ) {
+                    head++;
+                }
+                if( v > lo || loInc && v == lo ) {
+                    tail++;
+                }
+            }
+            assertEquals( head, map.headValues( hi, hiInc ).size() );
+            assertEquals( tail, map.tailValues( lo, loInc ).size() );
+        }
+        
+        Comparable<Integer> range = map.valueRange( 50, true, 60, false );
+        int count = map.countRange( range, range );
+        for( int i = 0; i < count; i++ ) {
+            Map.Entry<Integer,Integer> e = map.pollFirstEntry( range );
+            assertTrue( e.getValue() >= 50 && e.getValue() < 60 );
+        }
+        assertNull( map.pollFirstEntry( range ) );
+        assertNull( map.pollLastEntry( range ) );
+        assertEquals( 0, map.subValues( 50, true, 60, false ).size() );
+        checkOrder( map );
+    }
+    
+    
     private static <T extends Comparable<T>> void checkOrder( Map<?,T> map ) {
         Comparable<T> prev = null;
         for( Map.Entry<?,T> e: map.entrySet() ) {
@@ -58,6 +58,150 @@ public class WeakHashSetTest {
 
     }
 
+    @Test
+    public void testReadDrain() throws Exception {
+        WeakHashSet<Object> set = new WeakHashSet<Object>();
+        List<Object> held = new ArrayList<Object>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            Object obj = new Object();
+            set.add( obj );
+            if( i % 2 == 0 ) {
+                held.add( obj );
+            }
+        }
+
+        if( !collect() ) {
+            return;
+        }
+
+        // Reads during iteration purge collected nodes without invalidating iterators.
+        int count = 0;
+        for( Object obj : set ) {
+            assertTrue( set.contains( obj ) );
+            count++;
+        }
+        assertEquals( held.size(), count );
+
+        // Reads alone eventually compact the set, removing a bounded number of nodes each.
+        int size = set.size();
+        for( int i = 0; i < 500 && size > held.size(); i++ ) {
+            int next = set.size();
+            assertTrue( next >= size - set.readDrainLimit() );
+            if( next == size ) {
+                Thread.sleep( 10L );
+            }
+            size = next;
+        }
+        assertEquals( held.size(), size );
+
+        set.setReadDrainLimit( 0 );
+        assertEquals( 0, set.readDrainLimit() );
+    }
+
+
+    @Test
+    public void testIdentity() {
+        WeakHashSet<Object> set = new WeakHashSet<Object>( 16, 0.75f, true );
+        assertTrue( set.isIdentity() );
+
+        String a = new String( "a" );
+        String b = new String( "a" );
+        assertTrue( set.add( a ) );
+        assertTrue( set.add( b ) );
+        assertFalse( set.add( a ) );
+        assertEquals( 2, set.size() );
+
+        List<Object> held = new ArrayList<Object>();
+        for( int i = 0; i < 100; i++ ) {
+            Object obj = new OpaqueObject();
+            held.add( obj );
+            assertTrue( set.add( obj ) );
+        }
+
+        for( Object obj : held ) {
+            assertTrue( set.contains( obj ) );
+        }
+
+        assertFalse( set.contains( new String( "a" ) ) );
+        assertFalse( set.contains( new OpaqueObject() ) );
+        assertTrue( set.remove( b ) );
+        assertTrue( set.contains( a ) );
+        assertEquals( 101, set.size() );
+    }
+
+
+    @Test
+    public void testForEachAlive() throws Exception {
+        final WeakHashSet<Object> set = new WeakHashSet<Object>();
+        final Set<Object> held = new HashSet<Object>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            Object obj = new Object();
+            set.add( obj );
+            if( i % 2 == 0 ) {
+                held.add( obj );
+            }
+        }
+
+        boolean collected = collect();
+
+        final Set<Object> visited = new HashSet<Object>();
+        set.forEachAlive( new Visitor<Object>() {
+            public void visit( Object item ) {
+                assertTrue( set.contains( item ) );
+                visited.add( item );
+            }
+        } );
+
+        assertTrue( visited.containsAll( held ) );
+        if( collected ) {
+            assertEquals( held, visited );
+        }
+        assertEquals( new HashSet<Object>( set ), visited );
+
+        try {
+            set.forEachAlive( new Visitor<Object>() {
+                public void visit( Object item ) {
+                    set.add( new Object() );
+                }
+            } );
+            fail( "Expected ConcurrentModificationException" );
+        } catch( ConcurrentModificationException ignored ) {}
+    }
+
+
+    /**
+     * Object that may only be compared by identity.
+     */
+    static class OpaqueObject {
+        @Override
+        public int hashCode() {
+            throw new AssertionError( "hashCode() called" );
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            throw new AssertionError( "equals() called" );
+        }
+    }
+
+
+    /**
+     * Runs the collector until a fresh probe object is cleared.
+     *
+     * @return false if the collector declined to run.
+     */
+    static boolean collect() throws InterruptedException {
+        java.lang.ref.WeakReference<Object> probe = new java.lang.ref.WeakReference<Object>( new Object() );
+        for( int i = 0; i < 50 && probe.get() != null; i++ ) {
+            System.gc();
+            Thread.sleep( 10L );
+        }
+        return probe.get() == null;
+    }
+
+
     public static <T> boolean compare( Set<T> a, Set<T> b ) {
         assertTrue( "Size mismatch", a.size() == b.size() );
 
@@ -61,6 +61,172 @@ public class WeakValueHashMapTest {
     }
 
 
+    @Test
+    public void testReadDrain() throws Exception {
+        WeakValueHashMap<Integer, Object> map = new WeakValueHashMap<Integer, Object>();
+        List<Object> held = new ArrayList<Object>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            Object obj = new Object();
+            map.put( i, obj );
+            if( i % 2 == 0 ) {
+                held.add( obj );
+            }
+        }
+
+        if( !WeakHashSetTest.collect() )
+            return;
+
+        // Reads during iteration purge collected entries without invalidating iterators.
+        int count = 0;
+        for( Map.Entry<Integer, Object> e : map.entrySet() ) {
+            assertSame( e.getValue(), map.get( e.getKey() ) );
+            count++;
+        }
+        assertEquals( held.size(), count );
+
+        int size = map.size();
+        for( int i = 0; i < 500 && size > held.size(); i++ ) {
+            int next = map.keySet().size();
+            assertTrue( "Read drain exceeded limit", next >= size - map.readDrainLimit() );
+            if( next == size )
+                Thread.sleep( 10L );
+            size = next;
+        }
+        assertEquals( held.size(), size );
+    }
+
+
+    @Test
+    public void testPinned() throws Exception {
+        WeakValueHashMap<Integer, Object> map = new WeakValueHashMap<Integer, Object>( 16, 0.75f, WeakValueHashMap.Strength.WEAK, 10 );
+        assertEquals( 10, map.pinCapacity() );
+
+        for( int i = 0; i < 100; i++ ) {
+            map.put( i, new Object() );
+        }
+
+        // Repeated access to a freshly pinned value must not evict other pins.
+        for( int i = 0; i < 100; i++ ) {
+            assertNotNull( map.get( 99 ) );
+        }
+
+        if( !WeakHashSetTest.collect() )
+            return;
+
+        for( int i = 90; i < 100; i++ ) {
+            assertNotNull( "Pinned value collected", map.get( i ) );
+        }
+
+        int live = 0;
+        for( int i = 0; i < 90; i++ ) {
+            if( map.get( i ) != null ) {
+                live++;
+            }
+        }
+        assertTrue( "Unpinned values retained", live < 90 );
+
+        map.unpinAll();
+        if( !WeakHashSetTest.collect() )
+            return;
+
+        assertNull( map.get( 90 ) );
+    }
+
+
+    @Test
+    public void testSoft() throws Exception {
+        WeakValueHashMap<Integer, Object> map = new WeakValueHashMap<Integer, Object>( 16, 0.75f, WeakValueHashMap.Strength.SOFT, 0 );
+        assertEquals( WeakValueHashMap.Strength.SOFT, map.strength() );
+        Map<Integer, Object> ref = new HashMap<Integer, Object>();
+
+        for( int i = 0; i < 100; i++ ) {
+            Object obj = new Object();
+            map.put( i, obj );
+            ref.put( i, obj );
+        }
+
+        assertEquals( ref, map );
+        assertSame( ref.get( 7 ), map.remove( 7 ) );
+        ref.remove( 7 );
+        assertEquals( ref, map );
+        ref = null;
+
+        // Soft values survive collections without memory pressure.
+        if( !WeakHashSetTest.collect() )
+            return;
+
+        assertEquals( 99, map.vacuum() );
+        assertNotNull( map.get( 0 ) );
+    }
+
+
+    @Test
+    public void testIdentityKeys() {
+        WeakValueHashMap<Object, Object> map = new WeakValueHashMap<Object, Object>( 16, 0.75f, true, WeakValueHashMap.Strength.WEAK, 0 );
+        assertTrue( map.hasIdentityKeys() );
+        Map<Object, Object> ref = new IdentityHashMap<Object, Object>();
+
+        for( int i = 0; i < 100; i++ ) {
+            Object key = (i % 2 == 0 ? new WeakHashSetTest.OpaqueObject() : new String( "k" ));
+            Object value = new Object();
+            ref.put( key, value );
+            assertNull( map.put( key, value ) );
+        }
+
+        for( Map.Entry<Object, Object> e : ref.entrySet() ) {
+            assertSame( e.getValue(), map.get( e.getKey() ) );
+            assertTrue( map.containsKey( e.getKey() ) );
+        }
+
+        assertNull( map.get( new String( "k" ) ) );
+        assertEquals( 100, map.size() );
+
+        Object key = ref.keySet().iterator().next();
+        Object value = new Object();
+        assertSame( ref.get( key ), map.put( key, value ) );
+        assertSame( value, map.remove( key ) );
+        assertEquals( 99, map.size() );
+
+        Object nullValue = new Object();
+        map.put( null, nullValue );
+        assertSame( nullValue, map.get( null ) );
+    }
+
+
+    @Test
+    public void testForEachAlive() throws Exception {
+        WeakValueHashMap<Integer, Object> map = new WeakValueHashMap<Integer, Object>();
+        Map<Integer, Object> held = new HashMap<Integer, Object>();
+
+        for( int i = 0; i < 1000; i++ ) {
+            Object obj = new Object();
+            map.put( i, obj );
+            if( i % 3 == 0 ) {
+                held.put( i, obj );
+            }
+        }
+
+        Object nullValue = new Object();
+        map.put( null, nullValue );
+        held.put( null, nullValue );
+
+        WeakHashSetTest.collect();
+
+        final Map<Integer, Object> visited = new HashMap<Integer, Object>();
+        map.forEachAlive( new WeakValueHashMap.EntryVisitor<Integer, Object>() {
+            public void visit( Integer key, Object value ) {
+                assertNull( visited.put( key, value ) );
+            }
+        } );
+
+        for( Map.Entry<Integer, Object> e : held.entrySet() ) {
+            assertSame( e.getValue(), visited.get( e.getKey() ) );
+        }
+        assertEquals( new HashMap<Integer, Object>( map ), visited );
+    }
+
+
     private static boolean compare( Map x, Map y ) {
         assertTrue( "Size mismatch", x.size() == y.size() );
         